@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.keyboard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.android.inputmethod.keyboard.internal.KeyboardIconsSet;
+import com.android.inputmethod.keyboard.internal.KeyboardParams;
+import com.android.inputmethod.latin.common.Constants;
+import com.android.inputmethod.latin.define.ProductionFlags;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks, for every pixel of some keyboards, that the key resolved by the hit map of
+ * {@link ProximityInfo} is the one that {@link KeyDetector#detectHitKey(int,int)} finds by
+ * comparing the nearest keys.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProximityInfoHitMapTests {
+    private static final int KEYBOARD_WIDTH = 1080;
+    private static final int KEYBOARD_HEIGHT = 640;
+    private static final int GRID_WIDTH = 32;
+    private static final int GRID_HEIGHT = 16;
+    private static final int KEY_WIDTH = 108;
+    private static final int ROW_HEIGHT = 160;
+    private static final int HORIZONTAL_GAP = 8;
+    private static final int VERTICAL_GAP = 12;
+    // The hit map must resolve at least this ratio of the pixels of a keyboard without overlaps.
+    private static final float MIN_RESOLVED_RATIO = 0.5f;
+
+    private static KeyboardParams newParams() {
+        final KeyboardParams params = new KeyboardParams();
+        params.mOccupiedWidth = KEYBOARD_WIDTH;
+        params.mOccupiedHeight = KEYBOARD_HEIGHT;
+        params.mHorizontalGap = HORIZONTAL_GAP;
+        params.mVerticalGap = VERTICAL_GAP;
+        return params;
+    }
+
+    private static Key newKey(final int code, final int x, final int y, final int width) {
+        final String label = (code > 0) ? new String(Character.toChars(code)) : null;
+        return new Key(label, KeyboardIconsSet.ICON_UNDEFINED, code, null /* outputText */,
+                null /* hintLabel */, 0 /* labelFlags */, Key.BACKGROUND_TYPE_NORMAL, x, y,
+                width, ROW_HEIGHT, HORIZONTAL_GAP, VERTICAL_GAP);
+    }
+
+    private static void addRow(final List<Key> keys, final KeyboardParams params,
+            final String letters, final int x, final int y, final boolean marksEdges) {
+        for (int i = 0; i < letters.length(); i++) {
+            final Key key = newKey(letters.charAt(i), x + KEY_WIDTH * i, y, KEY_WIDTH);
+            if (marksEdges && i == 0) {
+                key.markAsLeftEdge(params);
+            }
+            if (marksEdges && i == letters.length() - 1) {
+                key.markAsRightEdge(params);
+            }
+            if (marksEdges && y == 0) {
+                key.markAsTopEdge(params);
+            }
+            keys.add(key);
+        }
+    }
+
+    /**
+     * @param marksEdges whether the hit boxes of the keys at the edges are enlarged to the edges
+     * of the keyboard, as the keyboard builder does. When they are not, the gaps at the ends of
+     * the shorter rows are not on any key.
+     */
+    private static List<Key> newQwertyKeys(final boolean marksEdges) {
+        final KeyboardParams params = newParams();
+        final ArrayList<Key> keys = new ArrayList<>();
+        addRow(keys, params, "qwertyuiop", 0 /* x */, 0 /* y */, marksEdges);
+        keys.add(new Key.Spacer(params, 0, ROW_HEIGHT, KEY_WIDTH / 2, ROW_HEIGHT));
+        addRow(keys, params, "asdfghjkl", KEY_WIDTH / 2, ROW_HEIGHT, marksEdges);
+        keys.add(new Key.Spacer(params, KEYBOARD_WIDTH - KEY_WIDTH / 2, ROW_HEIGHT,
+                KEY_WIDTH / 2, ROW_HEIGHT));
+        final int thirdRowY = ROW_HEIGHT * 2;
+        keys.add(newKey(Constants.CODE_SHIFT, 0, thirdRowY, KEY_WIDTH * 3 / 2));
+        addRow(keys, params, "zxcvbnm", KEY_WIDTH * 3 / 2, thirdRowY, false /* marksEdges */);
+        keys.add(newKey(Constants.CODE_DELETE, KEY_WIDTH * 17 / 2, thirdRowY, KEY_WIDTH * 3 / 2));
+        final int fourthRowY = ROW_HEIGHT * 3;
+        keys.add(newKey(Constants.CODE_SWITCH_ALPHA_SYMBOL, 0, fourthRowY, KEY_WIDTH * 3 / 2));
+        keys.add(newKey(Constants.CODE_SPACE, KEY_WIDTH * 3 / 2, fourthRowY, KEY_WIDTH * 7));
+        keys.add(newKey(Constants.CODE_ENTER, KEY_WIDTH * 17 / 2, fourthRowY, KEY_WIDTH * 3 / 2));
+        if (marksEdges) {
+            for (int i = keys.size() - 3; i < keys.size(); i++) {
+                keys.get(i).markAsBottomEdge(params);
+            }
+        }
+        return keys;
+    }
+
+    // The comparison of the nearest keys of KeyDetector#detectHitKey, without the hit map.
+    private static Key detectHitKeyFromNearestKeys(final ProximityInfo proximityInfo,
+            final int x, final int y) {
+        int minDistance = Integer.MAX_VALUE;
+        Key primaryKey = null;
+        for (final Key key : proximityInfo.getNearestKeys(x, y)) {
+            if (!key.isOnKey(x, y)) {
+                continue;
+            }
+            final int distance = key.squaredDistanceToEdge(x, y);
+            if (distance > minDistance) {
+                continue;
+            }
+            if (primaryKey == null || distance < minDistance
+                    || key.getCode() > primaryKey.getCode()) {
+                minDistance = distance;
+                primaryKey = key;
+            }
+        }
+        return primaryKey;
+    }
+
+    /**
+     * Compares the hit map with the nearest keys at every pixel of the keyboard.
+     *
+     * @return the number of pixels resolved by the hit map.
+     */
+    private static int compareAllPixels(final List<Key> sortedKeys) {
+        final ProximityInfo proximityInfo = new ProximityInfo(GRID_WIDTH, GRID_HEIGHT,
+                KEYBOARD_WIDTH, KEYBOARD_HEIGHT, KEY_WIDTH, ROW_HEIGHT, sortedKeys);
+        int resolvedCount = 0;
+        for (int y = 0; y < KEYBOARD_HEIGHT; y++) {
+            for (int x = 0; x < KEYBOARD_WIDTH; x++) {
+                final int hitKeyIndex = proximityInfo.getHitKeyIndex(x, y);
+                if (hitKeyIndex == ProximityInfo.UNRESOLVED_HIT_KEY) {
+                    continue;
+                }
+                resolvedCount++;
+                final Key expectedKey = detectHitKeyFromNearestKeys(proximityInfo, x, y);
+                final Key hitKey = (hitKeyIndex == ProximityInfo.NO_HIT_KEY) ? null
+                        : sortedKeys.get(hitKeyIndex);
+                assertSame("(" + x + ", " + y + ")", expectedKey, hitKey);
+            }
+        }
+        return resolvedCount;
+    }
+
+    private static void assertMostlyResolved(final int resolvedCount) {
+        if (!ProductionFlags.ENABLE_KEY_HIT_MAP) {
+            assertEquals(0, resolvedCount);
+            return;
+        }
+        assertTrue("resolved " + resolvedCount + " pixels",
+                resolvedCount >= KEYBOARD_WIDTH * KEYBOARD_HEIGHT * MIN_RESOLVED_RATIO);
+    }
+
+    @Test
+    public void testKeysWithEdges() {
+        assertMostlyResolved(compareAllPixels(newQwertyKeys(true /* marksEdges */)));
+    }
+
+    @Test
+    public void testKeysWithGaps() {
+        assertMostlyResolved(compareAllPixels(newQwertyKeys(false /* marksEdges */)));
+    }
+
+    @Test
+    public void testOverlappingKeys() {
+        final List<Key> keys = newQwertyKeys(true /* marksEdges */);
+        // A key over the boundary between "q" and "w", whose hit box overlaps both of theirs.
+        keys.add(1, newKey('1', KEY_WIDTH / 2, 0 /* y */, KEY_WIDTH));
+        compareAllPixels(keys);
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.keyboard.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.view.ContextThemeWrapper;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.android.inputmethod.keyboard.Key;
+import com.android.inputmethod.keyboard.KeyboardTheme;
+import com.android.inputmethod.latin.common.Constants;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * Writes the parameters of a small keyboard as a compiled layout, and checks that they are read
+ * back as they were, and that a layout with another descriptor or a corrupted layout is rejected
+ * and deleted.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CompiledKeyboardLayoutTests {
+    private static final String DESCRIPTOR = "CompiledKeyboardLayoutTests";
+    private static final int KEY_WIDTH = 108;
+    private static final int ROW_HEIGHT = 160;
+    private static final int HORIZONTAL_GAP = 8;
+    private static final int VERTICAL_GAP = 12;
+
+    private Context mContext;
+    private File mFile;
+
+    @Before
+    public void setUp() {
+        final Context targetContext =
+                InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mContext = new ContextThemeWrapper(targetContext,
+                KeyboardTheme.getKeyboardTheme(targetContext).mStyleId);
+        mFile = new File(new File(mContext.getCacheDir(), DESCRIPTOR), "test.layout");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+        mFile.getParentFile().delete();
+    }
+
+    private static Key newKey(final String label, final int code, final String outputText,
+            final String hintLabel, final int x, final int y, final int width) {
+        return new Key(label, KeyboardIconsSet.ICON_UNDEFINED, code, outputText, hintLabel,
+                0 /* labelFlags */, Key.BACKGROUND_TYPE_NORMAL, x, y, width, ROW_HEIGHT,
+                HORIZONTAL_GAP, VERTICAL_GAP);
+    }
+
+    private static KeyboardParams newParams() {
+        final KeyboardParams params = new KeyboardParams();
+        params.mThemeId = 3;
+        params.mOccupiedWidth = KEY_WIDTH * 4;
+        params.mOccupiedHeight = ROW_HEIGHT * 2;
+        params.mBaseWidth = params.mOccupiedWidth;
+        params.mBaseHeight = params.mOccupiedHeight;
+        params.mTopPadding = 1;
+        params.mBottomPadding = 2;
+        params.mLeftPadding = 3;
+        params.mRightPadding = 4;
+        params.mDefaultRowHeight = ROW_HEIGHT;
+        params.mDefaultKeyWidth = KEY_WIDTH;
+        params.mHorizontalGap = HORIZONTAL_GAP;
+        params.mVerticalGap = VERTICAL_GAP;
+        params.mMaxMoreKeysKeyboardColumn = 5;
+        params.GRID_WIDTH = 32;
+        params.GRID_HEIGHT = 16;
+        params.onAddKey(newKey("q", 'q', null, "1", 0, 0, KEY_WIDTH));
+        params.onAddKey(newKey("w", 'w', null, "2", KEY_WIDTH, 0, KEY_WIDTH));
+        params.onAddKey(newKey("e", 'e', null, null, KEY_WIDTH * 2, 0, KEY_WIDTH * 2));
+        params.onAddKey(newKey(".com", Constants.CODE_OUTPUT_TEXT, ".com", null, 0,
+                ROW_HEIGHT, KEY_WIDTH * 2));
+        params.onAddKey(newKey(null, Constants.CODE_SPACE, null, null, KEY_WIDTH * 2,
+                ROW_HEIGHT, KEY_WIDTH * 2));
+        return params;
+    }
+
+    private boolean read(final String descriptor, final KeyboardParams params) {
+        return CompiledKeyboardLayout.read(mContext, mFile, descriptor, params);
+    }
+
+    private void corrupt(final long offsetFromEnd) throws IOException {
+        final RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            final long offset = file.length() - offsetFromEnd;
+            file.seek(offset);
+            final int value = file.read();
+            file.seek(offset);
+            file.write(value ^ 0xFF);
+        } finally {
+            file.close();
+        }
+    }
+
+    @Test
+    public void testRoundTrip() {
+        final KeyboardParams params = newParams();
+        CompiledKeyboardLayout.write(mFile, DESCRIPTOR, params);
+        final KeyboardParams readParams = new KeyboardParams();
+        assertTrue(read(DESCRIPTOR, readParams));
+        assertEquals(params.mThemeId, readParams.mThemeId);
+        assertEquals(params.mOccupiedWidth, readParams.mOccupiedWidth);
+        assertEquals(params.mOccupiedHeight, readParams.mOccupiedHeight);
+        assertEquals(params.mBaseWidth, readParams.mBaseWidth);
+        assertEquals(params.mBaseHeight, readParams.mBaseHeight);
+        assertEquals(params.mTopPadding, readParams.mTopPadding);
+        assertEquals(params.mBottomPadding, readParams.mBottomPadding);
+        assertEquals(params.mLeftPadding, readParams.mLeftPadding);
+        assertEquals(params.mRightPadding, readParams.mRightPadding);
+        assertEquals(params.mDefaultRowHeight, readParams.mDefaultRowHeight);
+        assertEquals(params.mDefaultKeyWidth, readParams.mDefaultKeyWidth);
+        assertEquals(params.mHorizontalGap, readParams.mHorizontalGap);
+        assertEquals(params.mVerticalGap, readParams.mVerticalGap);
+        assertEquals(params.mMaxMoreKeysKeyboardColumn, readParams.mMaxMoreKeysKeyboardColumn);
+        assertEquals(params.GRID_WIDTH, readParams.GRID_WIDTH);
+        assertEquals(params.GRID_HEIGHT, readParams.GRID_HEIGHT);
+        assertEquals(params.mMostCommonKeyWidth, readParams.mMostCommonKeyWidth);
+        assertEquals(params.mMostCommonKeyHeight, readParams.mMostCommonKeyHeight);
+        assertEquals(new ArrayList<>(params.mSortedKeys), new ArrayList<>(readParams.mSortedKeys));
+        final Iterator<Key> readKeys = readParams.mSortedKeys.iterator();
+        for (final Key key : params.mSortedKeys) {
+            final Key readKey = readKeys.next();
+            assertEquals(key.getHitBox(), readKey.getHitBox());
+            assertEquals(key.getHorizontalGap(), readKey.getHorizontalGap());
+            assertEquals(key.getVerticalGap(), readKey.getVerticalGap());
+        }
+    }
+
+    @Test
+    public void testOtherDescriptor() {
+        CompiledKeyboardLayout.write(mFile, DESCRIPTOR, newParams());
+        assertFalse(read(DESCRIPTOR + " density=480", new KeyboardParams()));
+        assertFalse(mFile.exists());
+    }
+
+    @Test
+    public void testCorruptedContents() throws IOException {
+        CompiledKeyboardLayout.write(mFile, DESCRIPTOR, newParams());
+        // The last byte of the contents, just before the checksum.
+        corrupt(Long.SIZE / Byte.SIZE + 1);
+        assertFalse(read(DESCRIPTOR, new KeyboardParams()));
+        assertFalse(mFile.exists());
+    }
+
+    @Test
+    public void testCorruptedChecksum() throws IOException {
+        CompiledKeyboardLayout.write(mFile, DESCRIPTOR, newParams());
+        corrupt(1);
+        assertFalse(read(DESCRIPTOR, new KeyboardParams()));
+        assertFalse(mFile.exists());
+    }
+
+    @Test
+    public void testTruncated() throws IOException {
+        CompiledKeyboardLayout.write(mFile, DESCRIPTOR, newParams());
+        final RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.setLength(file.length() / 2);
+        } finally {
+            file.close();
+        }
+        assertFalse(read(DESCRIPTOR, new KeyboardParams()));
+        assertFalse(mFile.exists());
+    }
+}
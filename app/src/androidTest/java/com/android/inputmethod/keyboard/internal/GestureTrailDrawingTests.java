@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.keyboard.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+/**
+ * Draws a gesture trail into an offscreen buffer as {@link GestureTrailsDrawingPreview} does,
+ * once as a {@link GestureTrailMesh} and once as a {@link RoundedLine} path per segment, with and
+ * without a shadow. The frame times, rasterization included, are logged with the tag of this
+ * class, to compare with the UI thread work that GestureTrailMeshBenchmark measures on the JVM.
+ *
+ * The stroke is the synthetic one of the benchmark: 256 points that cross a 1080 by 640 pixels
+ * keyboard three times, with the default trail parameters at 3x density.
+ */
+@RunWith(AndroidJUnit4.class)
+public class GestureTrailDrawingTests {
+    private static final String TAG = GestureTrailDrawingTests.class.getSimpleName();
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 640;
+    private static final int POINT_COUNT = 256;
+    private static final int TIME_STEP_MS = 3;
+    private static final float START_WIDTH = 30.0f;
+    private static final float END_WIDTH = 7.5f;
+    private static final int FADEOUT_START_DELAY = 100;
+    private static final int FADEOUT_DURATION = 800;
+    private static final int LINGER_DURATION = FADEOUT_START_DELAY + FADEOUT_DURATION;
+    private static final int WAVE_COUNT = 3;
+    private static final int TRAIL_COLOR = 0xFF4DB6AC;
+    // The width of the transparent edge of the mesh when the trail has no shadow.
+    private static final float MESH_ANTIALIAS_WIDTH = 1.0f;
+    // The shadow of a theme that sets gestureTrailShadowRatio to 50.
+    private static final float SHADOW_RATIO = 0.5f;
+    private static final int WARMUP_FRAME_COUNT = 20;
+    private static final int MEASURED_FRAME_COUNT = 100;
+
+    private interface TrailRenderer {
+        void draw(Canvas canvas, Paint paint, Rect outBounds);
+    }
+
+    private final float[] mXs = new float[POINT_COUNT];
+    private final float[] mYs = new float[POINT_COUNT];
+    private final float[] mRadii = new float[POINT_COUNT];
+    private final int[] mAlphas = new int[POINT_COUNT];
+    private final GestureTrailMesh mMesh = new GestureTrailMesh();
+    private final RoundedLine mRoundedLine = new RoundedLine();
+    private final Rect mSegmentBounds = new Rect();
+    private final Paint mPaint = new Paint();
+    private Bitmap mBuffer;
+    private Canvas mCanvas;
+
+    @Before
+    public void setUp() {
+        for (int i = 0; i < POINT_COUNT; i++) {
+            final float position = (float)i / (POINT_COUNT - 1);
+            final double angle = Math.PI * WAVE_COUNT * position;
+            mXs[i] = (float)(WIDTH * (0.5 - 0.4 * Math.cos(angle)));
+            mYs[i] = HEIGHT * (0.1f + 0.8f * position);
+            // The first point is the oldest one.
+            final int elapsedTime = (POINT_COUNT - 1 - i) * TIME_STEP_MS;
+            mRadii[i] = (START_WIDTH
+                    - (START_WIDTH - END_WIDTH) * elapsedTime / LINGER_DURATION) / 2.0f;
+            mAlphas[i] = (elapsedTime < FADEOUT_START_DELAY) ? 255
+                    : 255 - 255 * (elapsedTime - FADEOUT_START_DELAY) / FADEOUT_DURATION;
+        }
+        mPaint.setAntiAlias(true);
+        mPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+        mBuffer = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mBuffer);
+    }
+
+    @After
+    public void tearDown() {
+        mCanvas.setBitmap(null);
+        mBuffer.recycle();
+    }
+
+    private TrailRenderer newMeshRenderer(final boolean shadowEnabled) {
+        return new TrailRenderer() {
+            @Override
+            public void draw(final Canvas canvas, final Paint paint, final Rect outBounds) {
+                final GestureTrailMesh mesh = mMesh;
+                mesh.reset(TRAIL_COLOR);
+                for (int i = 0; i < POINT_COUNT; i++) {
+                    final float outerRadius = mRadii[i] + (shadowEnabled
+                            ? mRadii[i] * SHADOW_RATIO : MESH_ANTIALIAS_WIDTH);
+                    mesh.addPoint(mXs[i], mYs[i], mRadii[i], outerRadius, mAlphas[i]);
+                }
+                mesh.endStroke();
+                mesh.draw(canvas);
+                mesh.getBounds(outBounds);
+            }
+        };
+    }
+
+    // The same loop as the one of GestureTrailDrawingPoints that draws a path per segment.
+    private TrailRenderer newRoundedLineRenderer(final boolean shadowEnabled) {
+        return new TrailRenderer() {
+            @Override
+            public void draw(final Canvas canvas, final Paint paint, final Rect outBounds) {
+                final RoundedLine roundedLine = mRoundedLine;
+                paint.setColor(TRAIL_COLOR);
+                paint.setStyle(Paint.Style.FILL);
+                for (int i = 1; i < POINT_COUNT; i++) {
+                    final Path path = roundedLine.makePath(mXs[i - 1], mYs[i - 1], mRadii[i - 1],
+                            mXs[i], mYs[i], mRadii[i]);
+                    if (path.isEmpty()) {
+                        continue;
+                    }
+                    roundedLine.getBounds(mSegmentBounds);
+                    if (shadowEnabled) {
+                        final float shadow = mRadii[i] * SHADOW_RATIO;
+                        paint.setShadowLayer(shadow, 0.0f, 0.0f, TRAIL_COLOR);
+                        final int shadowInset = -(int)Math.ceil(shadow);
+                        mSegmentBounds.inset(shadowInset, shadowInset);
+                    }
+                    outBounds.union(mSegmentBounds);
+                    paint.setAlpha(mAlphas[i]);
+                    canvas.drawPath(path, paint);
+                }
+                paint.clearShadowLayer();
+            }
+        };
+    }
+
+    // Clears the previous trail and draws the next one, as GestureTrailsDrawingPreview does.
+    private void drawFrame(final TrailRenderer renderer, final Rect dirtyRect) {
+        if (!dirtyRect.isEmpty()) {
+            mPaint.setColor(Color.TRANSPARENT);
+            mPaint.setStyle(Paint.Style.FILL);
+            mCanvas.drawRect(dirtyRect, mPaint);
+        }
+        dirtyRect.setEmpty();
+        renderer.draw(mCanvas, mPaint, dirtyRect);
+    }
+
+    private void assertDrawsTrail(final String name, final TrailRenderer renderer) {
+        mBuffer.eraseColor(Color.TRANSPARENT);
+        final Rect bounds = new Rect();
+        drawFrame(renderer, bounds);
+        final int lastX = (int)mXs[POINT_COUNT - 1];
+        final int lastY = (int)mYs[POINT_COUNT - 1];
+        assertTrue(name + ": bounds " + bounds, bounds.contains(lastX, lastY));
+        assertEquals(name + ": alpha of the newest point", 255,
+                Color.alpha(mBuffer.getPixel(lastX, lastY)));
+        assertEquals(name + ": alpha away from the trail", 0,
+                Color.alpha(mBuffer.getPixel(0, HEIGHT - 1)));
+    }
+
+    private void logFrameTimes(final String name, final TrailRenderer renderer) {
+        final Rect dirtyRect = new Rect();
+        for (int i = 0; i < WARMUP_FRAME_COUNT; i++) {
+            drawFrame(renderer, dirtyRect);
+        }
+        final long[] frameTimes = new long[MEASURED_FRAME_COUNT];
+        for (int i = 0; i < MEASURED_FRAME_COUNT; i++) {
+            final long startTime = System.nanoTime();
+            drawFrame(renderer, dirtyRect);
+            frameTimes[i] = System.nanoTime() - startTime;
+        }
+        Arrays.sort(frameTimes);
+        Log.i(TAG, name + ": median " + frameTimes[MEASURED_FRAME_COUNT / 2] / 1000
+                + " us, 90th percentile " + frameTimes[MEASURED_FRAME_COUNT * 9 / 10] / 1000
+                + " us");
+    }
+
+    @Test
+    public void testDrawTrail() {
+        assertDrawsTrail("mesh", newMeshRenderer(false /* shadowEnabled */));
+        assertDrawsTrail("mesh with shadow", newMeshRenderer(true /* shadowEnabled */));
+        assertDrawsTrail("rounded lines", newRoundedLineRenderer(false /* shadowEnabled */));
+        assertDrawsTrail("rounded lines with shadow",
+                newRoundedLineRenderer(true /* shadowEnabled */));
+    }
+
+    @Test
+    public void testFrameTimes() {
+        logFrameTimes("mesh", newMeshRenderer(false /* shadowEnabled */));
+        logFrameTimes("mesh with shadow", newMeshRenderer(true /* shadowEnabled */));
+        logFrameTimes("rounded lines", newRoundedLineRenderer(false /* shadowEnabled */));
+        logFrameTimes("rounded lines with shadow",
+                newRoundedLineRenderer(true /* shadowEnabled */));
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import android.text.TextUtils;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.android.inputmethod.latin.common.Constants;
+import com.android.inputmethod.latin.settings.SpacingAndPunctuations;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Checks that {@link CursorContext} only returns the caps mode and the n-gram contexts computed
+ * for the current version of the text before the cursor and for the same arguments.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CursorContextTests {
+    private static final int REQUESTED_MODES = TextUtils.CAP_MODE_SENTENCES;
+
+    private final CursorContext mCursorContext = new CursorContext();
+    private SpacingAndPunctuations mSpacingAndPunctuations;
+    private SpacingAndPunctuations mOtherSpacingAndPunctuations;
+
+    @Before
+    public void setUp() {
+        mSpacingAndPunctuations = new SpacingAndPunctuations(
+                InstrumentationRegistry.getInstrumentation().getTargetContext().getResources());
+        // Another instance, as when the settings are reloaded for another field.
+        mOtherSpacingAndPunctuations = new SpacingAndPunctuations(mSpacingAndPunctuations,
+                new int[] { Constants.CODE_SPACE });
+    }
+
+    private int getCapsMode(final int version, final int requestedModes,
+            final SpacingAndPunctuations spacingAndPunctuations, final boolean hasSpaceBefore) {
+        return mCursorContext.getCapsMode(version, requestedModes, spacingAndPunctuations,
+                hasSpaceBefore);
+    }
+
+    @Test
+    public void testCapsMode() {
+        final int version = mCursorContext.getVersion();
+        assertEquals(CursorContext.NOT_CACHED, getCapsMode(version, REQUESTED_MODES,
+                mSpacingAndPunctuations, false /* hasSpaceBefore */));
+        mCursorContext.setCapsMode(version, REQUESTED_MODES, mSpacingAndPunctuations,
+                false /* hasSpaceBefore */, TextUtils.CAP_MODE_SENTENCES);
+        assertEquals(TextUtils.CAP_MODE_SENTENCES, getCapsMode(version, REQUESTED_MODES,
+                mSpacingAndPunctuations, false /* hasSpaceBefore */));
+        assertEquals(CursorContext.NOT_CACHED, getCapsMode(version,
+                TextUtils.CAP_MODE_CHARACTERS, mSpacingAndPunctuations,
+                false /* hasSpaceBefore */));
+        assertEquals(CursorContext.NOT_CACHED, getCapsMode(version, REQUESTED_MODES,
+                mOtherSpacingAndPunctuations, false /* hasSpaceBefore */));
+        assertEquals(CursorContext.NOT_CACHED, getCapsMode(version, REQUESTED_MODES,
+                mSpacingAndPunctuations, true /* hasSpaceBefore */));
+    }
+
+    @Test
+    public void testCapsModeOfOtherVersion() {
+        final int version = mCursorContext.getVersion();
+        mCursorContext.setCapsMode(version, REQUESTED_MODES, mSpacingAndPunctuations,
+                false /* hasSpaceBefore */, TextUtils.CAP_MODE_SENTENCES);
+        mCursorContext.onTextChanged();
+        final int newVersion = mCursorContext.getVersion();
+        assertEquals(CursorContext.NOT_CACHED, getCapsMode(newVersion, REQUESTED_MODES,
+                mSpacingAndPunctuations, false /* hasSpaceBefore */));
+        // A value computed from the previous version of the text, and set after the edit, is
+        // not returned for the new version.
+        mCursorContext.setCapsMode(version, REQUESTED_MODES, mSpacingAndPunctuations,
+                false /* hasSpaceBefore */, 0 /* capsMode */);
+        assertEquals(CursorContext.NOT_CACHED, getCapsMode(newVersion, REQUESTED_MODES,
+                mSpacingAndPunctuations, false /* hasSpaceBefore */));
+    }
+
+    @Test
+    public void testNgramContext() {
+        final int version = mCursorContext.getVersion();
+        final NgramContext ngramContext = new NgramContext(new NgramContext.WordInfo("hello"));
+        final NgramContext secondNgramContext =
+                new NgramContext(new NgramContext.WordInfo("world"));
+        assertNull(mCursorContext.getNgramContext(version, mSpacingAndPunctuations, 1));
+        mCursorContext.setNgramContext(version, mSpacingAndPunctuations, 1, ngramContext);
+        mCursorContext.setNgramContext(version, mSpacingAndPunctuations, 2, secondNgramContext);
+        assertSame(ngramContext,
+                mCursorContext.getNgramContext(version, mSpacingAndPunctuations, 1));
+        assertSame(secondNgramContext,
+                mCursorContext.getNgramContext(version, mSpacingAndPunctuations, 2));
+        assertNull(mCursorContext.getNgramContext(version, mSpacingAndPunctuations, 0));
+        assertNull(mCursorContext.getNgramContext(version, mOtherSpacingAndPunctuations, 1));
+        mCursorContext.onTextChanged();
+        final int newVersion = mCursorContext.getVersion();
+        assertNull(mCursorContext.getNgramContext(newVersion, mSpacingAndPunctuations, 1));
+        assertNull(mCursorContext.getNgramContext(newVersion, mSpacingAndPunctuations, 2));
+    }
+
+    @Test
+    public void testNgramContextNotCached() {
+        final int version = mCursorContext.getVersion();
+        final NgramContext ngramContext = new NgramContext(new NgramContext.WordInfo("hello"));
+        // Only the contexts up to two words before the cursor are kept.
+        mCursorContext.setNgramContext(version, mSpacingAndPunctuations, 3, ngramContext);
+        assertNull(mCursorContext.getNgramContext(version, mSpacingAndPunctuations, 3));
+        mCursorContext.setNgramContext(version, mSpacingAndPunctuations, -1, ngramContext);
+        assertNull(mCursorContext.getNgramContext(version, mSpacingAndPunctuations, -1));
+    }
+}
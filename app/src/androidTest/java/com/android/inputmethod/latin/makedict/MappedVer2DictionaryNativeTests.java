@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.makedict;
+
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import AOSP.KEYBOARD.R;
+import com.android.inputmethod.latin.BinaryDictionary;
+import com.android.inputmethod.latin.BinaryDictionary.GetNextWordPropertyResult;
+import com.android.inputmethod.latin.Dictionary;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Compares the lookups of {@link MappedVer2Dictionary} with those of the native dictionary, for
+ * every word of the bundled dictionaries and some variants of it.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MappedVer2DictionaryNativeTests {
+    private static final int MAX_REPORTED_MISMATCHES = 20;
+
+    // R.raw.main is a placeholder which is not a valid dictionary.
+    private static final int[] DICTIONARY_IDS = {
+        R.raw.main_de, R.raw.main_en, R.raw.main_es, R.raw.main_fr, R.raw.main_it,
+        R.raw.main_pt_br, R.raw.main_ru,
+    };
+
+    private static void compare(final MappedVer2Dictionary mappedDictionary,
+            final BinaryDictionary nativeDictionary, final String word,
+            final ArrayList<String> outMismatches) {
+        final int probability = mappedDictionary.getFrequency(word);
+        final int nativeProbability = nativeDictionary.getFrequency(word);
+        final int maxProbability = mappedDictionary.getMaxFrequencyOfExactMatches(word);
+        final int nativeMaxProbability = nativeDictionary.getMaxFrequencyOfExactMatches(word);
+        if (probability != nativeProbability || maxProbability != nativeMaxProbability) {
+            outMismatches.add(word + ": mapped=" + probability + "/" + maxProbability
+                    + " native=" + nativeProbability + "/" + nativeMaxProbability);
+        }
+    }
+
+    private static void compareAllWords(final Context context, final int dictionaryId,
+            final ArrayList<String> outMismatches) throws Exception {
+        final String sourceDir = context.getApplicationInfo().sourceDir;
+        final AssetFileDescriptor afd = context.getResources().openRawResourceFd(dictionaryId);
+        final long offset = afd.getStartOffset();
+        final long length = afd.getLength();
+        afd.close();
+        final MappedVer2Dictionary mappedDictionary = new MappedVer2Dictionary(
+                new File(sourceDir), offset, length, Locale.ROOT, Dictionary.TYPE_MAIN);
+        final BinaryDictionary nativeDictionary = new BinaryDictionary(sourceDir, offset, length,
+                false /* useFullEditDistance */, Locale.ROOT, Dictionary.TYPE_MAIN,
+                false /* isUpdatable */);
+        try {
+            assertTrue(nativeDictionary.isValidDictionary());
+            int token = 0;
+            do {
+                final GetNextWordPropertyResult result =
+                        nativeDictionary.getNextWordProperty(token);
+                final String word = result.mWordProperty.mWord;
+                compare(mappedDictionary, nativeDictionary, word, outMismatches);
+                compare(mappedDictionary, nativeDictionary, word.toLowerCase(Locale.ROOT),
+                        outMismatches);
+                compare(mappedDictionary, nativeDictionary, word.toUpperCase(Locale.ROOT),
+                        outMismatches);
+                if (word.codePointCount(0, word.length()) > 1) {
+                    compare(mappedDictionary, nativeDictionary, word.substring(0,
+                            word.offsetByCodePoints(word.length(), -1)), outMismatches);
+                }
+                token = result.mNextToken;
+            } while (token != 0);
+        } finally {
+            nativeDictionary.close();
+        }
+    }
+
+    @Test
+    public void testSameAsNativeDictionary() throws Exception {
+        final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        final ArrayList<String> mismatches = new ArrayList<>();
+        for (final int dictionaryId : DICTIONARY_IDS) {
+            compareAllWords(context, dictionaryId, mismatches);
+        }
+        assertTrue(mismatches.size() + " mismatches, e.g. " + mismatches.subList(0,
+                Math.min(mismatches.size(), MAX_REPORTED_MISMATCHES)), mismatches.isEmpty());
+    }
+}
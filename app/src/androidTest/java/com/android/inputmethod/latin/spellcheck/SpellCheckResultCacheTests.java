@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.spellcheck;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.android.inputmethod.latin.NgramContext;
+import com.android.inputmethod.latin.spellcheck.AndroidWordLevelSpellCheckerSession.Result;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+
+/**
+ * Checks that {@link SpellCheckResultCache} returns the suggestions of a word only for the same
+ * locale and previous words, and that a change to any dictionary drops every entry, including
+ * the entries put with suggestions looked up before the change.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SpellCheckResultCacheTests {
+    private final SpellCheckResultCache mCache = new SpellCheckResultCache();
+    private final NgramContext mNgramContext =
+            new NgramContext(new NgramContext.WordInfo("hello"));
+
+    private static Result newResult() {
+        return new Result(new String[] { "word", "world" },
+                true /* hasRecommendedSuggestions */);
+    }
+
+    private Result put(final String text) {
+        final Result result = newResult();
+        mCache.put(Locale.ENGLISH, text, mNgramContext, result, mCache.getGeneration());
+        return result;
+    }
+
+    @Test
+    public void testSameWord() {
+        final Result result = put("wrod");
+        assertSame(result, mCache.get(Locale.ENGLISH, "wrod",
+                new NgramContext(new NgramContext.WordInfo("hello"))));
+        assertTrue(mCache.hasSuggestions(Locale.ENGLISH, "wrod"));
+    }
+
+    @Test
+    public void testOtherWord() {
+        put("wrod");
+        assertNull(mCache.get(Locale.ENGLISH, "wro", mNgramContext));
+        assertNull(mCache.get(Locale.FRENCH, "wrod", mNgramContext));
+        assertNull(mCache.get(Locale.ENGLISH, "wrod", NgramContext.BEGINNING_OF_SENTENCE));
+        assertNull(mCache.get(Locale.ENGLISH, "wrod", null /* ngramContext */));
+        // Whether the word is misspelled does not depend on the previous words.
+        assertTrue(mCache.hasSuggestions(Locale.ENGLISH, "wrod"));
+        assertFalse(mCache.hasSuggestions(Locale.FRENCH, "wrod"));
+        assertFalse(mCache.hasSuggestions(Locale.ENGLISH, "wro"));
+    }
+
+    @Test
+    public void testNoSuggestions() {
+        mCache.put(Locale.ENGLISH, "xqzt", mNgramContext,
+                new Result(null /* gatheredSuggestions */, false /* hasRecommendedSuggestions */),
+                mCache.getGeneration());
+        assertFalse(mCache.hasSuggestions(Locale.ENGLISH, "xqzt"));
+    }
+
+    @Test
+    public void testDictionaryChanged() {
+        put("wrod");
+        mCache.onDictionaryChanged();
+        assertNull(mCache.get(Locale.ENGLISH, "wrod", mNgramContext));
+        assertFalse(mCache.hasSuggestions(Locale.ENGLISH, "wrod"));
+        // Entries put after the change are kept.
+        final Result result = put("wrod");
+        assertSame(result, mCache.get(Locale.ENGLISH, "wrod", mNgramContext));
+        assertTrue(mCache.hasSuggestions(Locale.ENGLISH, "wrod"));
+    }
+
+    @Test
+    public void testDictionaryChangedDuringLookup() {
+        final int generation = mCache.getGeneration();
+        // A word is added to a dictionary while the suggestions are looked up.
+        mCache.onDictionaryChanged();
+        mCache.put(Locale.ENGLISH, "wrod", mNgramContext, newResult(), generation);
+        assertNull(mCache.get(Locale.ENGLISH, "wrod", mNgramContext));
+        assertFalse(mCache.hasSuggestions(Locale.ENGLISH, "wrod"));
+    }
+
+    @Test
+    public void testClear() {
+        put("wrod");
+        mCache.clear();
+        assertNull(mCache.get(Locale.ENGLISH, "wrod", mNgramContext));
+        assertFalse(mCache.hasSuggestions(Locale.ENGLISH, "wrod"));
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.utils;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import android.content.Context;
+import android.view.ContextThemeWrapper;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.android.inputmethod.keyboard.KeyboardId;
+import com.android.inputmethod.keyboard.KeyboardLayoutSet;
+import com.android.inputmethod.keyboard.KeyboardTheme;
+import com.android.inputmethod.latin.NgramContext;
+import com.android.inputmethod.latin.RichInputMethodManager;
+import com.android.inputmethod.latin.RichInputMethodSubtype;
+import com.android.inputmethod.latin.SuggestedWords.SuggestedWordInfo;
+import com.android.inputmethod.latin.common.ComposedData;
+import com.android.inputmethod.latin.common.InputPointers;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Checks that {@link SuggestionResultsCache} only returns results for exactly the same input,
+ * and that it drops them when the dictionaries change.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SuggestionResultsCacheTests {
+    private static final int GENERATION = 1;
+    // The same as SuggestionResultsCache.MAX_CACHE_SIZE.
+    private static final int MAX_CACHE_SIZE = 32;
+
+    private final SuggestionResultsCache mCache = new SuggestionResultsCache();
+    private final NgramContext mNgramContext =
+            new NgramContext(new NgramContext.WordInfo("hello"));
+    private KeyboardId mAlphabetId;
+    private KeyboardId mSymbolsId;
+
+    @Before
+    public void setUp() {
+        final Context targetContext =
+                InstrumentationRegistry.getInstrumentation().getTargetContext();
+        RichInputMethodManager.init(targetContext);
+        final Context context = new ContextThemeWrapper(targetContext,
+                KeyboardTheme.getKeyboardTheme(targetContext).mStyleId);
+        final KeyboardLayoutSet layoutSet = new KeyboardLayoutSet.Builder(context,
+                null /* editorInfo */)
+                .setKeyboardGeometry(1080 /* keyboardWidth */, 640 /* keyboardHeight */)
+                .setSubtype(RichInputMethodSubtype.getNoLanguageSubtype())
+                .build();
+        mAlphabetId = layoutSet.getKeyboard(KeyboardId.ELEMENT_ALPHABET).mId;
+        mSymbolsId = layoutSet.getKeyboard(KeyboardId.ELEMENT_SYMBOLS).mId;
+        // Sets the generation of the cache.
+        get(mNgramContext, newComposedData("w", false /* isBatchMode */), mAlphabetId);
+    }
+
+    // A new instance each time, so that the cache has to compare the contents.
+    private static ComposedData newComposedData(final String typedWord,
+            final boolean isBatchMode) {
+        final InputPointers inputPointers = new InputPointers(typedWord.length());
+        for (int i = 0; i < typedWord.length(); i++) {
+            inputPointers.addPointer(100 * i, 50, 0 /* pointerId */, 10 * i /* time */);
+        }
+        return new ComposedData(inputPointers, isBatchMode, typedWord);
+    }
+
+    private static SuggestionResults newResults() {
+        final SuggestionResults results = new SuggestionResults(18 /* capacity */,
+                false /* isBeginningOfSentence */,
+                false /* firstSuggestionExceedsConfidenceThreshold */);
+        results.add(new SuggestedWordInfo("word", "" /* prevWordsContext */, 100,
+                SuggestedWordInfo.KIND_CORRECTION, null /* sourceDict */,
+                SuggestedWordInfo.NOT_AN_INDEX, SuggestedWordInfo.NOT_A_CONFIDENCE));
+        return results;
+    }
+
+    private SuggestionResults get(final NgramContext ngramContext,
+            final ComposedData composedData, final KeyboardId keyboardId) {
+        return mCache.get(ngramContext, composedData, keyboardId,
+                true /* blockPotentiallyOffensive */, GENERATION);
+    }
+
+    private SuggestionResults putWord(final String typedWord) {
+        final SuggestionResults results = newResults();
+        mCache.put(mNgramContext, newComposedData(typedWord, false /* isBatchMode */),
+                mAlphabetId, true /* blockPotentiallyOffensive */, GENERATION, results);
+        return results;
+    }
+
+    @Test
+    public void testSameInput() {
+        final SuggestionResults results = putWord("wo");
+        assertSame(results, get(new NgramContext(new NgramContext.WordInfo("hello")),
+                newComposedData("wo", false /* isBatchMode */), mAlphabetId));
+    }
+
+    @Test
+    public void testOtherInput() {
+        putWord("wo");
+        assertNull(get(mNgramContext, newComposedData("w", false /* isBatchMode */),
+                mAlphabetId));
+        assertNull(get(mNgramContext, newComposedData("wor", false /* isBatchMode */),
+                mAlphabetId));
+        assertNull(get(NgramContext.BEGINNING_OF_SENTENCE,
+                newComposedData("wo", false /* isBatchMode */), mAlphabetId));
+        assertNull(get(mNgramContext, newComposedData("wo", false /* isBatchMode */),
+                mSymbolsId));
+        assertNull(mCache.get(mNgramContext, newComposedData("wo", false /* isBatchMode */),
+                mAlphabetId, false /* blockPotentiallyOffensive */, GENERATION));
+        // The same typed word at other coordinates.
+        final ComposedData movedComposedData = newComposedData("wo", false /* isBatchMode */);
+        movedComposedData.mInputPointers.getXCoordinates()[1] += 1;
+        assertNull(get(mNgramContext, movedComposedData, mAlphabetId));
+    }
+
+    @Test
+    public void testDictionaryChange() {
+        putWord("wo");
+        assertNull(mCache.get(mNgramContext, newComposedData("wo", false /* isBatchMode */),
+                mAlphabetId, true /* blockPotentiallyOffensive */, GENERATION + 1));
+        // The results of the previous generation have been dropped.
+        mCache.put(mNgramContext, newComposedData("wo", false /* isBatchMode */), mAlphabetId,
+                true /* blockPotentiallyOffensive */, GENERATION, newResults());
+        assertNull(mCache.get(mNgramContext, newComposedData("wo", false /* isBatchMode */),
+                mAlphabetId, true /* blockPotentiallyOffensive */, GENERATION + 1));
+    }
+
+    @Test
+    public void testClear() {
+        putWord("wo");
+        mCache.clear();
+        assertNull(get(mNgramContext, newComposedData("wo", false /* isBatchMode */),
+                mAlphabetId));
+    }
+
+    @Test
+    public void testNotCached() {
+        final SuggestionResults incompleteResults = newResults();
+        incompleteResults.setIncomplete();
+        mCache.put(mNgramContext, newComposedData("wo", false /* isBatchMode */), mAlphabetId,
+                true /* blockPotentiallyOffensive */, GENERATION, incompleteResults);
+        assertNull(get(mNgramContext, newComposedData("wo", false /* isBatchMode */),
+                mAlphabetId));
+        mCache.put(mNgramContext, newComposedData("wo", true /* isBatchMode */), mAlphabetId,
+                true /* blockPotentiallyOffensive */, GENERATION, newResults());
+        assertNull(get(mNgramContext, newComposedData("wo", true /* isBatchMode */),
+                mAlphabetId));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() {
+        final SuggestionResults firstResults = putWord("a");
+        putWord("b");
+        for (int i = 0; i < MAX_CACHE_SIZE - 2; i++) {
+            putWord("word" + i);
+        }
+        // Makes "a" more recently used than "b".
+        assertSame(firstResults, get(mNgramContext,
+                newComposedData("a", false /* isBatchMode */), mAlphabetId));
+        putWord("c");
+        assertNull(get(mNgramContext, newComposedData("b", false /* isBatchMode */),
+                mAlphabetId));
+        assertSame(firstResults, get(mNgramContext,
+                newComposedData("a", false /* isBatchMode */), mAlphabetId));
+    }
+}
@@ -25,10 +25,8 @@ public final class MD5Calculator {
 
     public static String checksum(final InputStream in) throws IOException {
         // This code from the Android documentation for MessageDigest. Nearly verbatim.
-        MessageDigest digester;
-        try {
-            digester = MessageDigest.getInstance("MD5");
-        } catch (java.security.NoSuchAlgorithmException e) {
+        final MessageDigest digester = getDigester();
+        if (null == digester) {
             return null; // Platform does not support MD5 : can't check, so return null
         }
         final byte[] bytes = new byte[8192];
@@ -36,7 +34,21 @@ public final class MD5Calculator {
         while ((byteCount = in.read(bytes)) > 0) {
             digester.update(bytes, 0, byteCount);
         }
-        final byte[] digest = digester.digest();
+        return toHexString(digester.digest());
+    }
+
+    /**
+     * Returns a new MD5 digester, or null if the platform does not support MD5.
+     */
+    public static MessageDigest getDigester() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (java.security.NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    public static String toHexString(final byte[] digest) {
         final StringBuilder s = new StringBuilder();
         for (int i = 0; i < digest.length; ++i) {
             s.append(String.format("%1$02x", digest[i]));
@@ -23,6 +23,7 @@ import android.graphics.drawable.Drawable;
 import android.text.TextUtils;
 
 import AOSP.KEYBOARD.R;
+import com.android.inputmethod.keyboard.internal.CompiledKeyboardLayout;
 import com.android.inputmethod.keyboard.internal.KeyDrawParams;
 import com.android.inputmethod.keyboard.internal.KeySpecParser;
 import com.android.inputmethod.keyboard.internal.KeyStyle;
@@ -34,6 +35,9 @@ import com.android.inputmethod.keyboard.internal.MoreKeySpec;
 import com.android.inputmethod.latin.common.Constants;
 import com.android.inputmethod.latin.common.StringUtils;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Locale;
 
@@ -441,6 +445,135 @@ public class Key implements Comparable<Key> {
         mEnabled = key.mEnabled;
     }
 
+    /**
+     * Constructor for a key read from a compiled keyboard layout.
+     *
+     * @param in the input positioned on data written by {@link #writeTo(DataOutput)}.
+     */
+    protected Key(@Nonnull final DataInput in) throws IOException {
+        mCode = in.readInt();
+        mLabel = CompiledKeyboardLayout.readString(in);
+        mHintLabel = CompiledKeyboardLayout.readString(in);
+        mLabelFlags = in.readInt();
+        mIconId = in.readInt();
+        mWidth = in.readInt();
+        mHeight = in.readInt();
+        mHorizontalGap = in.readInt();
+        mVerticalGap = in.readInt();
+        mX = in.readInt();
+        mY = in.readInt();
+        mHitBox.set(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+        final int moreKeysCount = in.readInt();
+        if (moreKeysCount > 0) {
+            mMoreKeys = new MoreKeySpec[moreKeysCount];
+            for (int i = 0; i < moreKeysCount; i++) {
+                mMoreKeys[i] = MoreKeySpec.readFrom(in);
+            }
+        } else {
+            mMoreKeys = null;
+        }
+        mMoreKeysColumnAndFlags = in.readInt();
+        mBackgroundType = in.readInt();
+        mActionFlags = in.readInt();
+        mKeyVisualAttributes = KeyVisualAttributes.readFrom(in);
+        if (in.readBoolean()) {
+            final String outputText = CompiledKeyboardLayout.readString(in);
+            final int altCode = in.readInt();
+            final int disabledIconId = in.readInt();
+            final int visualInsetsLeft = in.readInt();
+            final int visualInsetsRight = in.readInt();
+            mOptionalAttributes = OptionalAttributes.newInstance(outputText, altCode,
+                    disabledIconId, visualInsetsLeft, visualInsetsRight);
+        } else {
+            mOptionalAttributes = null;
+        }
+        mEnabled = in.readBoolean();
+        mHashCode = computeHashCode(this);
+    }
+
+    /**
+     * Writes this key for a compiled keyboard layout. The key is read back with
+     * {@link #readFrom(DataInput)}.
+     */
+    public void writeTo(@Nonnull final DataOutput out) throws IOException {
+        out.writeBoolean(isSpacer());
+        out.writeInt(mCode);
+        CompiledKeyboardLayout.writeString(out, mLabel);
+        CompiledKeyboardLayout.writeString(out, mHintLabel);
+        out.writeInt(mLabelFlags);
+        out.writeInt(mIconId);
+        out.writeInt(mWidth);
+        out.writeInt(mHeight);
+        out.writeInt(mHorizontalGap);
+        out.writeInt(mVerticalGap);
+        out.writeInt(mX);
+        out.writeInt(mY);
+        out.writeInt(mHitBox.left);
+        out.writeInt(mHitBox.top);
+        out.writeInt(mHitBox.right);
+        out.writeInt(mHitBox.bottom);
+        if (mMoreKeys == null) {
+            out.writeInt(0);
+        } else {
+            out.writeInt(mMoreKeys.length);
+            for (final MoreKeySpec moreKey : mMoreKeys) {
+                moreKey.writeTo(out);
+            }
+        }
+        out.writeInt(mMoreKeysColumnAndFlags);
+        out.writeInt(mBackgroundType);
+        out.writeInt(mActionFlags);
+        KeyVisualAttributes.writeTo(out, mKeyVisualAttributes);
+        final OptionalAttributes attrs = mOptionalAttributes;
+        out.writeBoolean(attrs != null);
+        if (attrs != null) {
+            CompiledKeyboardLayout.writeString(out, attrs.mOutputText);
+            out.writeInt(attrs.mAltCode);
+            out.writeInt(attrs.mDisabledIconId);
+            out.writeInt(attrs.mVisualInsetsLeft);
+            out.writeInt(attrs.mVisualInsetsRight);
+        }
+        out.writeBoolean(mEnabled);
+    }
+
+    @Nonnull
+    public static Key readFrom(@Nonnull final DataInput in) throws IOException {
+        return in.readBoolean() ? new Spacer(in) : new Key(in);
+    }
+
+    // Rough sizes in bytes of a key with its hit box, of its optional parts, and of a string.
+    private static final int ESTIMATED_KEY_SIZE = 128;
+    private static final int ESTIMATED_OPTIONAL_ATTRIBUTES_SIZE = 40;
+    private static final int ESTIMATED_VISUAL_ATTRIBUTES_SIZE = 104;
+    private static final int ESTIMATED_MORE_KEY_SPEC_SIZE = 32;
+    private static final int ESTIMATED_STRING_SIZE = 40;
+
+    private static int getEstimatedSizeInBytes(@Nullable final String text) {
+        return (text == null) ? 0 : ESTIMATED_STRING_SIZE + text.length() * 2;
+    }
+
+    /**
+     * Returns a rough estimate of the memory used by this key, for the keyboard cache.
+     */
+    public int getEstimatedSizeInBytes() {
+        int size = ESTIMATED_KEY_SIZE + getEstimatedSizeInBytes(mLabel)
+                + getEstimatedSizeInBytes(mHintLabel);
+        if (mMoreKeys != null) {
+            for (final MoreKeySpec moreKey : mMoreKeys) {
+                size += ESTIMATED_MORE_KEY_SPEC_SIZE + getEstimatedSizeInBytes(moreKey.mLabel)
+                        + getEstimatedSizeInBytes(moreKey.mOutputText);
+            }
+        }
+        if (mOptionalAttributes != null) {
+            size += ESTIMATED_OPTIONAL_ATTRIBUTES_SIZE
+                    + getEstimatedSizeInBytes(mOptionalAttributes.mOutputText);
+        }
+        if (mKeyVisualAttributes != null) {
+            size += ESTIMATED_VISUAL_ATTRIBUTES_SIZE;
+        }
+        return size;
+    }
+
     @Nonnull
     public static Key removeRedundantMoreKeys(@Nonnull final Key key,
             @Nonnull final MoreKeySpec.LettersOnBaseLayout lettersOnBaseLayout) {
@@ -1018,5 +1151,9 @@ public class Key implements Comparable<Key> {
                     null /* hintLabel */, 0 /* labelFlags */, BACKGROUND_TYPE_EMPTY, x, y, width,
                     height, params.mHorizontalGap, params.mVerticalGap);
         }
+
+        Spacer(@Nonnull final DataInput in) throws IOException {
+            super(in);
+        }
     }
 }
@@ -16,6 +16,8 @@
 
 package com.android.inputmethod.keyboard;
 
+import java.util.List;
+
 /**
  * This class handles key detection.
  */
@@ -92,9 +94,18 @@ public class KeyDetector {
         final int touchX = getTouchX(x);
         final int touchY = getTouchY(y);
 
+        final int hitKeyIndex = mKeyboard.getHitKeyIndex(touchX, touchY);
+        if (hitKeyIndex != ProximityInfo.UNRESOLVED_HIT_KEY) {
+            return (hitKeyIndex == ProximityInfo.NO_HIT_KEY) ? null
+                    : mKeyboard.getSortedKeys().get(hitKeyIndex);
+        }
         int minDistance = Integer.MAX_VALUE;
         Key primaryKey = null;
-        for (final Key key: mKeyboard.getNearestKeys(touchX, touchY)) {
+        final List<Key> nearestKeys = mKeyboard.getNearestKeys(touchX, touchY);
+        // Iterate by index to avoid allocating an iterator for each touch event.
+        final int nearestKeysCount = nearestKeys.size();
+        for (int i = 0; i < nearestKeysCount; i++) {
+            final Key key = nearestKeys.get(i);
             // An edge key always has its enlarged hitbox to respond to an event that occurred in
             // the empty area around the key. (@see Key#markAsLeftEdge(KeyboardParams)} etc.)
             if (!key.isOnKey(touchX, touchY)) {
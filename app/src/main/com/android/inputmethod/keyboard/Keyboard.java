@@ -100,6 +100,11 @@ public class Keyboard {
 
     private final boolean mProximityCharsCorrectionEnabled;
 
+    // Rough size in bytes of a keyboard without its keys and proximity info.
+    private static final int ESTIMATED_KEYBOARD_SIZE = 512;
+    // Computed lazily. This is deterministic, so racing threads compute the same value.
+    private int mEstimatedSizeInBytes;
+
     public Keyboard(@Nonnull final KeyboardParams params) {
         mId = params.mId;
         mThemeId = params.mThemeId;
@@ -222,6 +227,22 @@ public class Keyboard {
         return false;
     }
 
+    /**
+     * Returns a rough estimate of the memory used by this keyboard, including its keys and its
+     * proximity info, for the keyboard cache. Keys shared with other keyboards are counted in
+     * each of them.
+     */
+    public int getEstimatedSizeInBytes() {
+        if (mEstimatedSizeInBytes == 0) {
+            int size = ESTIMATED_KEYBOARD_SIZE + mProximityInfo.getEstimatedSizeInBytes();
+            for (final Key key : mSortedKeys) {
+                size += key.getEstimatedSizeInBytes();
+            }
+            mEstimatedSizeInBytes = size;
+        }
+        return mEstimatedSizeInBytes;
+    }
+
     @Override
     public String toString() {
         return mId.toString();
@@ -242,6 +263,18 @@ public class Keyboard {
         return mProximityInfo.getNearestKeys(adjustedX, adjustedY);
     }
 
+    /**
+     * Returns the key hit by the given point if it can be found without comparing the nearest
+     * keys. See {@link ProximityInfo#getHitKeyIndex(int,int)}.
+     * @param x the x-coordinate of the point
+     * @param y the y-coordinate of the point
+     * @return the index of the hit key in {@link #getSortedKeys()},
+     * {@link ProximityInfo#NO_HIT_KEY} or {@link ProximityInfo#UNRESOLVED_HIT_KEY}.
+     */
+    public int getHitKeyIndex(final int x, final int y) {
+        return mProximityInfo.getHitKeyIndex(x, y);
+    }
+
     @Nonnull
     public int[] getCoordinates(@Nonnull final int[] codePoints) {
         final int length = codePoints.length;
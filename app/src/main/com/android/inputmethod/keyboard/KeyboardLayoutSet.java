@@ -16,12 +16,15 @@
 
 package com.android.inputmethod.keyboard;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.content.res.XmlResourceParser;
+import android.os.SystemClock;
 import android.text.InputType;
 import android.util.Log;
+import android.util.LruCache;
 import android.util.SparseArray;
 import android.util.Xml;
 import android.view.inputmethod.EditorInfo;
@@ -31,22 +34,29 @@ import AOSP.KEYBOARD.R;
 import com.android.inputmethod.compat.EditorInfoCompatUtils;
 import com.android.inputmethod.compat.InputMethodSubtypeCompatUtils;
 import com.android.inputmethod.compat.UserManagerCompatUtils;
+import com.android.inputmethod.keyboard.internal.CompiledKeyboardLayout;
 import com.android.inputmethod.keyboard.internal.KeyboardBuilder;
 import com.android.inputmethod.keyboard.internal.KeyboardParams;
 import com.android.inputmethod.keyboard.internal.UniqueKeysCache;
 import com.android.inputmethod.latin.InputAttributes;
 import com.android.inputmethod.latin.RichInputMethodSubtype;
+import com.android.inputmethod.latin.define.ProductionFlags;
+import com.android.inputmethod.latin.utils.ExecutorUtils;
 import com.android.inputmethod.latin.utils.InputTypeUtils;
 import com.android.inputmethod.latin.utils.ScriptUtils;
+import com.android.inputmethod.latin.utils.StatsUtils;
 import com.android.inputmethod.latin.utils.SubtypeLocaleUtils;
 import com.android.inputmethod.latin.utils.XmlParseUtils;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
+import java.io.File;
 import java.io.IOException;
-import java.lang.ref.SoftReference;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -75,21 +85,48 @@ public final class KeyboardLayoutSet {
     @Nonnull
     private final Params mParams;
 
-    // How many layouts we forcibly keep in cache. This only includes ALPHABET (default) and
-    // ALPHABET_AUTOMATIC_SHIFTED layouts - other layouts may stay in memory in the map of
-    // soft-references, but we forcibly cache this many alphabetic/auto-shifted layouts.
-    private static final int FORCIBLE_CACHE_SIZE = 4;
-    // By construction of soft references, anything that is also referenced somewhere else
-    // will stay in the cache. So we forcibly keep some references in an array to prevent
-    // them from disappearing from sKeyboardCache.
-    private static final Keyboard[] sForcibleKeyboardCache = new Keyboard[FORCIBLE_CACHE_SIZE];
-    private static final HashMap<KeyboardId, SoftReference<Keyboard>> sKeyboardCache =
-            new HashMap<>();
+    // The maximum estimated size of the cached keyboards. This holds the alphabet, shifted and
+    // symbols keyboards of a few layouts, or a few emoji categories.
+    private static final int MAX_KEYBOARD_CACHE_SIZE_IN_BYTES = 4 * 1024 * 1024;
+    // The least recently used keyboards are evicted when the cache goes over its size, or when
+    // the system asks to trim memory. All accesses are synchronized on the cache itself, as
+    // keyboards may be pre-warmed on a background thread.
+    private static final KeyboardCache sKeyboardCache =
+            new KeyboardCache(MAX_KEYBOARD_CACHE_SIZE_IN_BYTES);
+    // The pre-warmed keyboards that have not been requested yet. Guarded by sKeyboardCache.
+    private static final HashSet<KeyboardId> sPrewarmedKeyboardIds = new HashSet<>();
+    private static int sCacheHitCount;
+    private static int sCacheMissCount;
+    private static int sPrewarmHitCount;
+    private static int sPrewarmBuildCount;
+    private static int sOnDemandBuildCount;
+    private static int sCompiledLayoutReadCount;
+    private static int sXmlLayoutParseCount;
+    // Incremented to cancel the pending pre-warm tasks.
+    private static final AtomicInteger sPrewarmGeneration = new AtomicInteger();
     @Nonnull
     private static final UniqueKeysCache sUniqueKeysCache = UniqueKeysCache.newInstance();
     private final static HashMap<InputMethodSubtype, Integer> sScriptIdsForSubtypes =
             new HashMap<>();
 
+    private static final class KeyboardCache extends LruCache<KeyboardId, Keyboard> {
+        public KeyboardCache(final int maxSizeInBytes) {
+            super(maxSizeInBytes);
+        }
+
+        @Override
+        protected int sizeOf(final KeyboardId id, final Keyboard keyboard) {
+            return keyboard.getEstimatedSizeInBytes();
+        }
+
+        @Override
+        protected void entryRemoved(final boolean evicted, final KeyboardId id,
+                final Keyboard oldKeyboard, final Keyboard newKeyboard) {
+            // The caller holds the monitor of the cache.
+            sPrewarmedKeyboardIds.remove(id);
+        }
+    }
+
     @SuppressWarnings("serial")
     public static final class KeyboardLayoutSetException extends RuntimeException {
         public final KeyboardId mKeyboardId;
@@ -143,10 +180,51 @@ public final class KeyboardLayoutSet {
     }
 
     private static void clearKeyboardCache() {
-        sKeyboardCache.clear();
+        cancelPrewarm();
+        synchronized (sKeyboardCache) {
+            sKeyboardCache.evictAll();
+        }
         sUniqueKeysCache.clear();
     }
 
+    /**
+     * Releases the cached keyboards according to the memory pressure.
+     *
+     * @param level the level passed to {@link ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    public static void onTrimMemory(final int level) {
+        final int maxSizeInBytes;
+        switch (level) {
+        case ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE:
+        case ComponentCallbacks2.TRIM_MEMORY_BACKGROUND:
+            maxSizeInBytes = MAX_KEYBOARD_CACHE_SIZE_IN_BYTES / 2;
+            break;
+        case ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW:
+        case ComponentCallbacks2.TRIM_MEMORY_MODERATE:
+            maxSizeInBytes = MAX_KEYBOARD_CACHE_SIZE_IN_BYTES / 4;
+            break;
+        case ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL:
+        case ComponentCallbacks2.TRIM_MEMORY_COMPLETE:
+            maxSizeInBytes = 0;
+            break;
+        default:
+            // Hiding the UI alone is no reason to rebuild the keyboards next time.
+            return;
+        }
+        synchronized (sKeyboardCache) {
+            // This only shrinks the cache once: it grows back to its maximum size afterwards.
+            sKeyboardCache.trimToSize(maxSizeInBytes);
+        }
+    }
+
+    /**
+     * Cancels the pre-warm tasks that have not finished yet. Their keyboards won't be published
+     * into the cache.
+     */
+    public static void cancelPrewarm() {
+        sPrewarmGeneration.incrementAndGet();
+    }
+
     public static int getScriptId(final Resources resources,
             @Nonnull final InputMethodSubtype subtype) {
         final Integer value = sScriptIdsForSubtypes.get(subtype);
@@ -165,6 +243,17 @@ public final class KeyboardLayoutSet {
 
     @Nonnull
     public Keyboard getKeyboard(final int baseKeyboardLayoutSetElementId) {
+        final ElementParams elementParams = getElementParams(baseKeyboardLayoutSetElementId);
+        final KeyboardId id = getKeyboardId(baseKeyboardLayoutSetElementId, elementParams);
+        try {
+            return getKeyboard(elementParams, id);
+        } catch (final RuntimeException e) {
+            Log.e(TAG, "Can't create keyboard: " + id, e);
+            throw new KeyboardLayoutSetException(e, id);
+        }
+    }
+
+    private int getKeyboardLayoutSetElementId(final int baseKeyboardLayoutSetElementId) {
         final int keyboardLayoutSetElementId;
         switch (mParams.mMode) {
         case KeyboardId.MODE_PHONE:
@@ -184,13 +273,21 @@ public final class KeyboardLayoutSet {
             keyboardLayoutSetElementId = baseKeyboardLayoutSetElementId;
             break;
         }
+        return keyboardLayoutSetElementId;
+    }
 
+    private ElementParams getElementParams(final int baseKeyboardLayoutSetElementId) {
         ElementParams elementParams = mParams.mKeyboardLayoutSetElementIdToParamsMap.get(
-                keyboardLayoutSetElementId);
+                getKeyboardLayoutSetElementId(baseKeyboardLayoutSetElementId));
         if (elementParams == null) {
             elementParams = mParams.mKeyboardLayoutSetElementIdToParamsMap.get(
                     KeyboardId.ELEMENT_ALPHABET);
         }
+        return elementParams;
+    }
+
+    private KeyboardId getKeyboardId(final int baseKeyboardLayoutSetElementId,
+            final ElementParams elementParams) {
         // Note: The keyboard for each shift state, and mode are represented as an elementName
         // attribute in a keyboard_layout_set XML file.  Also each keyboard layout XML resource is
         // specified as an elementKeyboard attribute in the file.
@@ -198,19 +295,34 @@ public final class KeyboardLayoutSet {
 
         mParams.mIsSplitLayoutEnabled = mParams.mIsSplitLayoutEnabledByUser
                 && elementParams.mSupportsSplitLayout;
-        final KeyboardId id = new KeyboardId(keyboardLayoutSetElementId, mParams);
-        try {
-            return getKeyboard(elementParams, id);
-        } catch (final RuntimeException e) {
-            Log.e(TAG, "Can't create keyboard: " + id, e);
-            throw new KeyboardLayoutSetException(e, id);
+        return new KeyboardId(
+                getKeyboardLayoutSetElementId(baseKeyboardLayoutSetElementId), mParams);
+    }
+
+    @Nullable
+    private static Keyboard getCachedKeyboardLocked(final KeyboardId id) {
+        return sKeyboardCache.get(id);
+    }
+
+    @Nullable
+    private static Keyboard getCachedKeyboard(final KeyboardId id) {
+        synchronized (sKeyboardCache) {
+            final Keyboard cachedKeyboard = getCachedKeyboardLocked(id);
+            if (cachedKeyboard == null) {
+                sCacheMissCount++;
+                return null;
+            }
+            sCacheHitCount++;
+            if (sPrewarmedKeyboardIds.remove(id)) {
+                sPrewarmHitCount++;
+            }
+            return cachedKeyboard;
         }
     }
 
     @Nonnull
     private Keyboard getKeyboard(final ElementParams elementParams, final KeyboardId id) {
-        final SoftReference<Keyboard> ref = sKeyboardCache.get(id);
-        final Keyboard cachedKeyboard = (ref == null) ? null : ref.get();
+        final Keyboard cachedKeyboard = getCachedKeyboard(id);
         if (cachedKeyboard != null) {
             if (DEBUG_CACHE) {
                 Log.d(TAG, "keyboard cache size=" + sKeyboardCache.size() + ": HIT  id=" + id);
@@ -218,9 +330,51 @@ public final class KeyboardLayoutSet {
             return cachedKeyboard;
         }
 
-        final KeyboardBuilder<KeyboardParams> builder =
-                new KeyboardBuilder<>(mContext, new KeyboardParams(sUniqueKeysCache));
         sUniqueKeysCache.setEnabled(id.isAlphabetKeyboard());
+        final Keyboard keyboard = buildKeyboard(elementParams, id, sUniqueKeysCache);
+        synchronized (sKeyboardCache) {
+            sOnDemandBuildCount++;
+            sPrewarmedKeyboardIds.remove(id);
+            putKeyboardLocked(id, keyboard);
+        }
+        if (DEBUG_CACHE) {
+            Log.d(TAG, "keyboard cache size=" + sKeyboardCache.size() + ": LOAD id=" + id);
+        }
+        return keyboard;
+    }
+
+    @Nonnull
+    private Keyboard buildKeyboard(final ElementParams elementParams, final KeyboardId id,
+            @Nonnull final UniqueKeysCache uniqueKeysCache) {
+        final long startTime = SystemClock.uptimeMillis();
+        final boolean usesCompiledLayout = ProductionFlags.ENABLE_COMPILED_KEYBOARD_LAYOUTS
+                && !mParams.mDisableTouchPositionCorrectionDataForTest;
+        final String descriptor;
+        final File compiledLayoutFile;
+        if (usesCompiledLayout) {
+            descriptor = CompiledKeyboardLayout.getDescriptor(mContext,
+                    getLayoutDescription(elementParams, id));
+            compiledLayoutFile = CompiledKeyboardLayout.getFile(mContext, descriptor);
+            final KeyboardParams compiledParams = new KeyboardParams(uniqueKeysCache);
+            compiledParams.mId = id;
+            compiledParams.mProximityCharsCorrectionEnabled =
+                    elementParams.mProximityCharsCorrectionEnabled;
+            if (CompiledKeyboardLayout.read(mContext, compiledLayoutFile, descriptor,
+                    compiledParams)) {
+                final Keyboard keyboard = new Keyboard(compiledParams);
+                StatsUtils.onKeyboardBuilt(SystemClock.uptimeMillis() - startTime);
+                synchronized (sKeyboardCache) {
+                    sCompiledLayoutReadCount++;
+                }
+                return keyboard;
+            }
+        } else {
+            descriptor = null;
+            compiledLayoutFile = null;
+        }
+
+        final KeyboardParams params = new KeyboardParams(uniqueKeysCache);
+        final KeyboardBuilder<KeyboardParams> builder = new KeyboardBuilder<>(mContext, params);
         builder.setAllowRedundantMoreKes(elementParams.mAllowRedundantMoreKeys);
         final int keyboardXmlId = elementParams.mKeyboardXmlId;
         builder.load(keyboardXmlId, id);
@@ -229,24 +383,114 @@ public final class KeyboardLayoutSet {
         }
         builder.setProximityCharsCorrectionEnabled(elementParams.mProximityCharsCorrectionEnabled);
         final Keyboard keyboard = builder.build();
-        sKeyboardCache.put(id, new SoftReference<>(keyboard));
-        if ((id.mElementId == KeyboardId.ELEMENT_ALPHABET
-                || id.mElementId == KeyboardId.ELEMENT_ALPHABET_AUTOMATIC_SHIFTED)
-                && !mParams.mIsSpellChecker) {
-            // We only forcibly cache the primary, "ALPHABET", layouts.
-            for (int i = sForcibleKeyboardCache.length - 1; i >= 1; --i) {
-                sForcibleKeyboardCache[i] = sForcibleKeyboardCache[i - 1];
+        StatsUtils.onKeyboardBuilt(SystemClock.uptimeMillis() - startTime);
+        synchronized (sKeyboardCache) {
+            sXmlLayoutParseCount++;
+        }
+        if (usesCompiledLayout) {
+            ExecutorUtils.getBackgroundExecutor(ExecutorUtils.KEYBOARD_LAYOUT).execute(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            CompiledKeyboardLayout.write(compiledLayoutFile, descriptor, params);
+                        }
+                    });
+        }
+        return keyboard;
+    }
+
+    /**
+     * Returns a description of everything in the keyboard id and the element that the parsed
+     * layout depends on.
+     */
+    private static String getLayoutDescription(final ElementParams elementParams,
+            final KeyboardId id) {
+        return id.toString()
+                + " actionLabel=" + id.mCustomActionLabel
+                + " subtype=" + id.mSubtype.getRawSubtype().getExtraValue()
+                + " xml=" + elementParams.mKeyboardXmlId
+                + " proximity=" + elementParams.mProximityCharsCorrectionEnabled
+                + " redundantMoreKeys=" + elementParams.mAllowRedundantMoreKeys;
+    }
+
+    private static void putKeyboardLocked(final KeyboardId id, final Keyboard keyboard) {
+        sKeyboardCache.put(id, keyboard);
+    }
+
+    /**
+     * Builds the keyboards of the given elements on a low priority background thread, so that
+     * switching to them later does not have to parse their XML on the UI thread.
+     *
+     * The keyboard ids are computed on the calling thread. Each keyboard is built by its own task
+     * on the {@link ExecutorUtils#KEYBOARD_LAYOUT} executor, so that the dictionary tasks of the
+     * KEYBOARD executor are never held back. The keyboards are built without the unique keys
+     * cache, which is not thread-safe, and are only published into the cache if
+     * {@link #cancelPrewarm()} has not been called in the meantime and nothing else has built
+     * them first.
+     *
+     * @param baseKeyboardLayoutSetElementIds the elements, as passed to {@link #getKeyboard(int)}.
+     */
+    public void prewarmKeyboards(final int... baseKeyboardLayoutSetElementIds) {
+        final int generation = sPrewarmGeneration.get();
+        final ArrayList<KeyboardId> ids = new ArrayList<>();
+        for (final int baseKeyboardLayoutSetElementId : baseKeyboardLayoutSetElementIds) {
+            final ElementParams elementParams = getElementParams(baseKeyboardLayoutSetElementId);
+            final KeyboardId id = getKeyboardId(baseKeyboardLayoutSetElementId, elementParams);
+            final boolean isCached;
+            synchronized (sKeyboardCache) {
+                isCached = (getCachedKeyboardLocked(id) != null);
             }
-            sForcibleKeyboardCache[0] = keyboard;
-            if (DEBUG_CACHE) {
-                Log.d(TAG, "forcing caching of keyboard with id=" + id);
+            if (isCached || ids.contains(id)) {
+                continue;
             }
+            ids.add(id);
+            ExecutorUtils.getBackgroundExecutor(ExecutorUtils.KEYBOARD_LAYOUT).execute(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            prewarmKeyboard(elementParams, id, generation);
+                        }
+                    });
         }
-        if (DEBUG_CACHE) {
-            Log.d(TAG, "keyboard cache size=" + sKeyboardCache.size() + ": "
-                    + ((ref == null) ? "LOAD" : "GCed") + " id=" + id);
+    }
+
+    private void prewarmKeyboard(final ElementParams elementParams, final KeyboardId id,
+            final int generation) {
+        synchronized (sKeyboardCache) {
+            if (generation != sPrewarmGeneration.get()
+                    || getCachedKeyboardLocked(id) != null) {
+                return;
+            }
+        }
+        final Keyboard keyboard;
+        try {
+            keyboard = buildKeyboard(elementParams, id, UniqueKeysCache.NO_CACHE);
+        } catch (final RuntimeException e) {
+            Log.w(TAG, "Can't pre-warm keyboard: " + id, e);
+            return;
+        }
+        synchronized (sKeyboardCache) {
+            if (generation != sPrewarmGeneration.get() || getCachedKeyboardLocked(id) != null) {
+                return;
+            }
+            sPrewarmBuildCount++;
+            putKeyboardLocked(id, keyboard);
+            sPrewarmedKeyboardIds.add(id);
+        }
+    }
+
+    public static String dump() {
+        synchronized (sKeyboardCache) {
+            return "KeyboardLayoutSet: cacheSizeInBytes=" + sKeyboardCache.size()
+                    + " hits=" + sCacheHitCount
+                    + " misses=" + sCacheMissCount
+                    + " evictions=" + sKeyboardCache.evictionCount()
+                    + " prewarmBuilds=" + sPrewarmBuildCount
+                    + " prewarmHits=" + sPrewarmHitCount
+                    + " onDemandBuilds=" + sOnDemandBuildCount
+                    + " compiledLayoutReads=" + sCompiledLayoutReadCount
+                    + " xmlLayoutParses=" + sXmlLayoutParseCount;
         }
-        return keyboard;
     }
 
     public int getScriptId() {
@@ -109,6 +109,8 @@ public final class KeyboardSwitcher implements KeyboardState.SwitchActions {
 
     public void loadKeyboard(final EditorInfo editorInfo, final SettingsValues settingsValues,
             final int currentAutoCapsState, final int currentRecapitalizeState) {
+        // The keyboards being pre-warmed for the previous editor are not needed any more.
+        KeyboardLayoutSet.cancelPrewarm();
         final KeyboardLayoutSet.Builder builder = new KeyboardLayoutSet.Builder(
                 mThemeContext, editorInfo);
         final Resources res = mThemeContext.getResources();
@@ -126,7 +128,13 @@ public final class KeyboardSwitcher implements KeyboardState.SwitchActions {
             mKeyboardTextsSet.setLocale(mRichImm.getCurrentSubtypeLocale(), mThemeContext);
         } catch (KeyboardLayoutSetException e) {
             Log.w(TAG, "loading keyboard failed: " + e.mKeyboardId, e.getCause());
+            return;
         }
+        // Build the keyboards the user is likely to switch to next in the background, so that the
+        // first shift or symbols key press does not have to parse them on the UI thread.
+        mKeyboardLayoutSet.prewarmKeyboards(KeyboardId.ELEMENT_ALPHABET_AUTOMATIC_SHIFTED,
+                KeyboardId.ELEMENT_ALPHABET_MANUAL_SHIFTED, KeyboardId.ELEMENT_SYMBOLS,
+                KeyboardId.ELEMENT_SYMBOLS_SHIFTED);
     }
 
     public void saveKeyboardState() {
@@ -476,6 +484,19 @@ public final class KeyboardSwitcher implements KeyboardState.SwitchActions {
         return mCurrentInputView;
     }
 
+    /**
+     * Sets the listener of the keys of the keyboard and of the emoji palettes, if they have been
+     * created. The input view is created with LatinIME as their listener.
+     */
+    public void setKeyboardActionListener(final KeyboardActionListener listener) {
+        if (mKeyboardView != null) {
+            mKeyboardView.setKeyboardActionListener(listener);
+        }
+        if (mEmojiPalettesView != null) {
+            mEmojiPalettesView.setKeyboardActionListener(listener);
+        }
+    }
+
     public int getKeyboardShiftMode() {
         final Keyboard keyboard = getKeyboard();
         if (keyboard == null) {
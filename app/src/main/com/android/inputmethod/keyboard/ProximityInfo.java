@@ -19,14 +19,17 @@ package com.android.inputmethod.keyboard;
 import android.graphics.Rect;
 import android.util.Log;
 
+import com.android.inputmethod.annotations.UsedForTesting;
 import com.android.inputmethod.keyboard.internal.TouchPositionCorrection;
 import com.android.inputmethod.latin.common.Constants;
+import com.android.inputmethod.latin.define.ProductionFlags;
 import com.android.inputmethod.latin.utils.JniUtils;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.RandomAccess;
 
 import javax.annotation.Nonnull;
 
@@ -40,8 +43,26 @@ public class ProximityInfo {
     private static final float SEARCH_DISTANCE = 1.2f;
     @Nonnull
     private static final List<Key> EMPTY_KEY_LIST = Collections.emptyList();
+    private static final int[] EMPTY_INT_ARRAY = new int[0];
     private static final float DEFAULT_TOUCH_POSITION_CORRECTION_RADIUS = 0.15f;
 
+    /** Returned by {@link #getHitKeyIndex(int,int)} when no key is hit. */
+    public static final int NO_HIT_KEY = -1;
+    /**
+     * Returned by {@link #getHitKeyIndex(int,int)} when the hit key has to be found by comparing
+     * the nearest keys.
+     */
+    public static final int UNRESOLVED_HIT_KEY = -2;
+    // The width and height in pixels of a cell of the hit map.
+    private static final int HIT_MAP_CELL_SIZE = 4;
+    // The values of the hit map cells. The other values are the index of the hit key plus
+    // HIT_MAP_FIRST_KEY, so that a hit map can only be built for keyboards with up to
+    // MAX_HIT_MAP_KEY_COUNT keys.
+    private static final byte HIT_MAP_UNRESOLVED = 0;
+    private static final byte HIT_MAP_NO_KEY = 1;
+    private static final int HIT_MAP_FIRST_KEY = 2;
+    private static final int MAX_HIT_MAP_KEY_COUNT = 256 - HIT_MAP_FIRST_KEY;
+
     private final int mGridWidth;
     private final int mGridHeight;
     private final int mGridSize;
@@ -54,14 +75,43 @@ public class ProximityInfo {
     private final int mMostCommonKeyHeight;
     @Nonnull
     private final List<Key> mSortedKeys;
+    // The neighbors of the grid cells, in compressed sparse row form: the neighbors of cell i are
+    // the keys of mNeighborKeys at the indices mNeighborKeyIndices[mCellNeighborStarts[i]]
+    // inclusive to mNeighborKeyIndices[mCellNeighborStarts[i + 1]] exclusive.
+    @Nonnull
+    private final Key[] mNeighborKeys;
+    @Nonnull
+    private final int[] mCellNeighborStarts;
+    @Nonnull
+    private int[] mNeighborKeyIndices;
+    // The views returned by getNearestKeys(), built once so that the lookup does not allocate.
+    // The entries of the cells without neighbors are null.
     @Nonnull
-    private final List<Key>[] mGridNeighbors;
+    private final CellNeighborList[] mCellNeighborLists;
+    // The keys hit in each cell of HIT_MAP_CELL_SIZE by HIT_MAP_CELL_SIZE pixels, row by row, or
+    // null if there is no hit map.
+    private byte[] mHitMap;
+    private int mHitMapWidth;
 
-    @SuppressWarnings("unchecked")
     ProximityInfo(final int gridWidth, final int gridHeight, final int minWidth, final int height,
             final int mostCommonKeyWidth, final int mostCommonKeyHeight,
             @Nonnull final List<Key> sortedKeys,
             @Nonnull final TouchPositionCorrection touchPositionCorrection) {
+        this(gridWidth, gridHeight, minWidth, height, mostCommonKeyWidth, mostCommonKeyHeight,
+                sortedKeys);
+        if (minWidth != 0 && height != 0) {
+            mNativeProximityInfo = createNativeProximityInfo(touchPositionCorrection);
+        }
+    }
+
+    /**
+     * Computes the nearest keys of each cell and the hit map, but not the native proximity info,
+     * so that {@link #getNativeProximityInfo()} returns 0. This does not need the native library.
+     */
+    @UsedForTesting
+    ProximityInfo(final int gridWidth, final int gridHeight, final int minWidth, final int height,
+            final int mostCommonKeyWidth, final int mostCommonKeyHeight,
+            @Nonnull final List<Key> sortedKeys) {
         mGridWidth = gridWidth;
         mGridHeight = gridHeight;
         mGridSize = mGridWidth * mGridHeight;
@@ -72,13 +122,18 @@ public class ProximityInfo {
         mMostCommonKeyHeight = mostCommonKeyHeight;
         mMostCommonKeyWidth = mostCommonKeyWidth;
         mSortedKeys = sortedKeys;
-        mGridNeighbors = new List[mGridSize];
+        mNeighborKeys = sortedKeys.toArray(new Key[sortedKeys.size()]);
+        mCellNeighborStarts = new int[mGridSize + 1];
+        mNeighborKeyIndices = EMPTY_INT_ARRAY;
+        mCellNeighborLists = new CellNeighborList[mGridSize];
         if (minWidth == 0 || height == 0) {
             // No proximity required. Keyboard might be more keys keyboard.
             return;
         }
         computeNearestNeighbors();
-        mNativeProximityInfo = createNativeProximityInfo(touchPositionCorrection);
+        if (ProductionFlags.ENABLE_KEY_HIT_MAP && mNeighborKeys.length <= MAX_HIT_MAP_KEY_COUNT) {
+            computeHitMap();
+        }
     }
 
     private long mNativeProximityInfo;
@@ -112,15 +167,13 @@ public class ProximityInfo {
 
     private long createNativeProximityInfo(
             @Nonnull final TouchPositionCorrection touchPositionCorrection) {
-        final List<Key>[] gridNeighborKeys = mGridNeighbors;
         final int[] proximityCharsArray = new int[mGridSize * MAX_PROXIMITY_CHARS_SIZE];
         Arrays.fill(proximityCharsArray, Constants.NOT_A_CODE);
         for (int i = 0; i < mGridSize; ++i) {
-            final List<Key> neighborKeys = gridNeighborKeys[i];
-            final int proximityCharsLength = neighborKeys.size();
+            final int neighborsEnd = mCellNeighborStarts[i + 1];
             int infoIndex = i * MAX_PROXIMITY_CHARS_SIZE;
-            for (int j = 0; j < proximityCharsLength; ++j) {
-                final Key neighborKey = neighborKeys.get(j);
+            for (int j = mCellNeighborStarts[i]; j < neighborsEnd; ++j) {
+                final Key neighborKey = mNeighborKeys[mNeighborKeyIndices[j]];
                 // Excluding from proximityCharsArray
                 if (!needsProximityInfo(neighborKey)) {
                     continue;
@@ -229,6 +282,35 @@ public class ProximityInfo {
         return mNativeProximityInfo;
     }
 
+    // Rough sizes in bytes of an object reference, and of the per key arrays of the native
+    // proximity info.
+    private static final int ESTIMATED_REFERENCE_SIZE = 4;
+    private static final int ESTIMATED_CELL_NEIGHBOR_LIST_SIZE = 24;
+    private static final int ESTIMATED_NATIVE_KEY_SIZE = 40;
+
+    /**
+     * Returns a rough estimate of the memory used by the proximity grid, including its native
+     * counterpart. This does not change during the lifetime of the object.
+     */
+    public int getEstimatedSizeInBytes() {
+        int size = mNeighborKeys.length * ESTIMATED_REFERENCE_SIZE
+                + (mCellNeighborStarts.length + mNeighborKeyIndices.length) * 4
+                + mCellNeighborLists.length * ESTIMATED_REFERENCE_SIZE;
+        for (final CellNeighborList cellNeighborList : mCellNeighborLists) {
+            if (cellNeighborList != null) {
+                size += ESTIMATED_CELL_NEIGHBOR_LIST_SIZE;
+            }
+        }
+        if (mHitMap != null) {
+            size += mHitMap.length;
+        }
+        if (mNativeProximityInfo != 0) {
+            size += mGridSize * MAX_PROXIMITY_CHARS_SIZE * 4
+                    + mSortedKeys.size() * ESTIMATED_NATIVE_KEY_SIZE;
+        }
+        return size;
+    }
+
     @Override
     protected void finalize() throws Throwable {
         try {
@@ -243,26 +325,25 @@ public class ProximityInfo {
 
     private void computeNearestNeighbors() {
         final int defaultWidth = mMostCommonKeyWidth;
-        final int keyCount = mSortedKeys.size();
-        final int gridSize = mGridNeighbors.length;
+        final int keyCount = mNeighborKeys.length;
+        final int gridSize = mGridSize;
         final int threshold = (int) (defaultWidth * SEARCH_DISTANCE);
         final int thresholdSquared = threshold * threshold;
         // Round-up so we don't have any pixels outside the grid
         final int lastPixelXCoordinate = mGridWidth * mCellWidth - 1;
         final int lastPixelYCoordinate = mGridHeight * mCellHeight - 1;
 
-        // For large layouts, 'neighborsFlatBuffer' is about 80k of memory: gridSize is usually 512,
-        // keycount is about 40 and a pointer to a Key is 4 bytes. This contains, for each cell,
-        // enough space for as many keys as there are on the keyboard. Hence, every
-        // keycount'th element is the start of a new cell, and each of these virtual subarrays
-        // start empty with keycount spaces available. This fills up gradually in the loop below.
-        // Since in the practice each cell does not have a lot of neighbors, most of this space is
-        // actually just empty padding in this fixed-size buffer.
-        final Key[] neighborsFlatBuffer = new Key[gridSize * keyCount];
+        // The (cell, key) pairs are first collected in key order, then grouped by cell with a
+        // counting sort, which keeps the keys of each cell in key order. In practice each cell
+        // only has a few neighbors, so this is much smaller than one slot per key and per cell.
+        int[] pairCells = new int[keyCount * 16];
+        int[] pairKeyIndices = new int[pairCells.length];
+        int pairCount = 0;
         final int[] neighborCountPerCell = new int[gridSize];
         final int halfCellWidth = mCellWidth / 2;
         final int halfCellHeight = mCellHeight / 2;
-        for (final Key key : mSortedKeys) {
+        for (int keyIndex = 0; keyIndex < keyCount; keyIndex++) {
+            final Key key = mNeighborKeys[keyIndex];
             if (key.isSpacer()) continue;
 
 /* HOW WE PRE-SELECT THE CELLS (iterate over only the relevant cells, instead of all of them)
@@ -346,7 +427,13 @@ y |---+---+---+---+-v-+-|-+---+---+---+---+---|          | thresholdBase and get
                 int index = baseIndexOfCurrentRow;
                 for (int centerX = xStart; centerX <= xEnd; centerX += mCellWidth) {
                     if (key.squaredDistanceToEdge(centerX, centerY) < thresholdSquared) {
-                        neighborsFlatBuffer[index * keyCount + neighborCountPerCell[index]] = key;
+                        if (pairCount == pairCells.length) {
+                            pairCells = Arrays.copyOf(pairCells, pairCount * 2);
+                            pairKeyIndices = Arrays.copyOf(pairKeyIndices, pairCount * 2);
+                        }
+                        pairCells[pairCount] = index;
+                        pairKeyIndices[pairCount] = keyIndex;
+                        ++pairCount;
                         ++neighborCountPerCell[index];
                     }
                     ++index;
@@ -355,17 +442,143 @@ y |---+---+---+---+-v-+-|-+---+---+---+---+---|          | thresholdBase and get
             }
         }
 
+        final int[] cellNeighborStarts = mCellNeighborStarts;
         for (int i = 0; i < gridSize; ++i) {
-            final int indexStart = i * keyCount;
-            final int indexEnd = indexStart + neighborCountPerCell[i];
-            final ArrayList<Key> neighbors = new ArrayList<>(indexEnd - indexStart);
-            for (int index = indexStart; index < indexEnd; index++) {
-                neighbors.add(neighborsFlatBuffer[index]);
+            cellNeighborStarts[i + 1] = cellNeighborStarts[i] + neighborCountPerCell[i];
+        }
+        final int[] neighborKeyIndices = new int[pairCount];
+        // Reuse the counts as the next free position in each cell.
+        System.arraycopy(cellNeighborStarts, 0, neighborCountPerCell, 0, gridSize);
+        for (int pair = 0; pair < pairCount; ++pair) {
+            neighborKeyIndices[neighborCountPerCell[pairCells[pair]]++] = pairKeyIndices[pair];
+        }
+        mNeighborKeyIndices = neighborKeyIndices;
+        for (int i = 0; i < gridSize; ++i) {
+            if (cellNeighborStarts[i] != cellNeighborStarts[i + 1]) {
+                mCellNeighborLists[i] =
+                        new CellNeighborList(cellNeighborStarts[i], cellNeighborStarts[i + 1]);
+            }
+        }
+    }
+
+    /**
+     * A read-only view on the neighbors of a grid cell.
+     */
+    private final class CellNeighborList extends AbstractList<Key> implements RandomAccess {
+        private final int mStart;
+        private final int mSize;
+
+        public CellNeighborList(final int start, final int end) {
+            mStart = start;
+            mSize = end - start;
+        }
+
+        @Override
+        public Key get(final int location) {
+            if (location < 0 || location >= mSize) {
+                throw new IndexOutOfBoundsException("Invalid index " + location + ", size is "
+                        + mSize);
             }
-            mGridNeighbors[i] = Collections.unmodifiableList(neighbors);
+            return mNeighborKeys[mNeighborKeyIndices[mStart + location]];
+        }
+
+        @Override
+        public int size() {
+            return mSize;
         }
     }
 
+    /**
+     * Resolves the key hit in each cell of the hit map where it is the same for all the points of
+     * the cell, that is where {@link KeyDetector#detectHitKey(int,int)} can only find one key.
+     * This is the case when exactly one of the nearest keys of the cell has a hit box that
+     * overlaps the cell, when that hit box covers the whole cell and when that key is one of the
+     * nearest keys of every grid cell the hit map cell overlaps. The cells that straddle a hit
+     * box boundary are left unresolved.
+     */
+    private void computeHitMap() {
+        final int hitMapWidth = (mKeyboardMinWidth + HIT_MAP_CELL_SIZE - 1) / HIT_MAP_CELL_SIZE;
+        final int hitMapHeight = (mKeyboardHeight + HIT_MAP_CELL_SIZE - 1) / HIT_MAP_CELL_SIZE;
+        final byte[] hitMap = new byte[hitMapWidth * hitMapHeight];
+        int hitMapIndex = 0;
+        for (int top = 0; top < mKeyboardHeight; top += HIT_MAP_CELL_SIZE) {
+            final int bottom = Math.min(top + HIT_MAP_CELL_SIZE, mKeyboardHeight);
+            for (int left = 0; left < mKeyboardMinWidth; left += HIT_MAP_CELL_SIZE) {
+                final int right = Math.min(left + HIT_MAP_CELL_SIZE, mKeyboardMinWidth);
+                hitMap[hitMapIndex++] = resolveHitMapCell(left, top, right, bottom);
+            }
+        }
+        mHitMapWidth = hitMapWidth;
+        mHitMap = hitMap;
+    }
+
+    private byte resolveHitMapCell(final int left, final int top, final int right,
+            final int bottom) {
+        int hitKeyIndex = NO_HIT_KEY;
+        int cellCount = 0;
+        int cellsWithHitKeyCount = 0;
+        for (int row = top / mCellHeight; row <= (bottom - 1) / mCellHeight; row++) {
+            for (int column = left / mCellWidth; column <= (right - 1) / mCellWidth; column++) {
+                final int cellIndex = row * mGridWidth + column;
+                if (cellIndex >= mGridSize) {
+                    return HIT_MAP_UNRESOLVED;
+                }
+                cellCount++;
+                final int neighborsEnd = mCellNeighborStarts[cellIndex + 1];
+                for (int i = mCellNeighborStarts[cellIndex]; i < neighborsEnd; i++) {
+                    final int keyIndex = mNeighborKeyIndices[i];
+                    if (!mNeighborKeys[keyIndex].getHitBox().intersects(left, top, right, bottom)) {
+                        continue;
+                    }
+                    if (hitKeyIndex == NO_HIT_KEY) {
+                        hitKeyIndex = keyIndex;
+                    } else if (hitKeyIndex != keyIndex) {
+                        return HIT_MAP_UNRESOLVED;
+                    }
+                    cellsWithHitKeyCount++;
+                }
+            }
+        }
+        if (hitKeyIndex == NO_HIT_KEY) {
+            return HIT_MAP_NO_KEY;
+        }
+        if (cellsWithHitKeyCount != cellCount
+                || !mNeighborKeys[hitKeyIndex].getHitBox().contains(left, top, right, bottom)) {
+            return HIT_MAP_UNRESOLVED;
+        }
+        return (byte)(hitKeyIndex + HIT_MAP_FIRST_KEY);
+    }
+
+    /**
+     * Returns the key hit by the given point according to the hit map, in O(1).
+     *
+     * @return the index of the hit key in the sorted keys, {@link #NO_HIT_KEY} if no key is hit,
+     * or {@link #UNRESOLVED_HIT_KEY} if the point is outside the keyboard, if the point is close
+     * to a hit box boundary or if there is no hit map.
+     */
+    public int getHitKeyIndex(final int x, final int y) {
+        final byte[] hitMap = mHitMap;
+        if (hitMap == null || x < 0 || x >= mKeyboardMinWidth || y < 0 || y >= mKeyboardHeight) {
+            return UNRESOLVED_HIT_KEY;
+        }
+        final int value = hitMap[(y / HIT_MAP_CELL_SIZE) * mHitMapWidth + x / HIT_MAP_CELL_SIZE]
+                & 0xFF;
+        if (value == HIT_MAP_UNRESOLVED) {
+            return UNRESOLVED_HIT_KEY;
+        }
+        return value == HIT_MAP_NO_KEY ? NO_HIT_KEY : value - HIT_MAP_FIRST_KEY;
+    }
+
+    private int getCellIndex(final int x, final int y) {
+        if (x >= 0 && x < mKeyboardMinWidth && y >= 0 && y < mKeyboardHeight) {
+            final int index = (y / mCellHeight) * mGridWidth + (x / mCellWidth);
+            if (index < mGridSize) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
     public void fillArrayWithNearestKeyCodes(final int x, final int y, final int primaryKeyCode,
             final int[] dest) {
         final int destLength = dest.length;
@@ -376,12 +589,14 @@ y |---+---+---+---+-v-+-|-+---+---+---+---+---|          | thresholdBase and get
         if (primaryKeyCode > Constants.CODE_SPACE) {
             dest[index++] = primaryKeyCode;
         }
-        final List<Key> nearestKeys = getNearestKeys(x, y);
-        for (Key key : nearestKeys) {
+        final int cellIndex = getCellIndex(x, y);
+        final int neighborsStart = (cellIndex < 0) ? 0 : mCellNeighborStarts[cellIndex];
+        final int neighborsEnd = (cellIndex < 0) ? 0 : mCellNeighborStarts[cellIndex + 1];
+        for (int i = neighborsStart; i < neighborsEnd; i++) {
             if (index >= destLength) {
                 break;
             }
-            final int code = key.getCode();
+            final int code = mNeighborKeys[mNeighborKeyIndices[i]].getCode();
             if (code <= Constants.CODE_SPACE) {
                 break;
             }
@@ -392,14 +607,17 @@ y |---+---+---+---+-v-+-|-+---+---+---+---+---|          | thresholdBase and get
         }
     }
 
+    /**
+     * Returns the keys near the given point, as a view on the grid. Neither the lookup nor
+     * iterating the view by index allocates anything.
+     */
     @Nonnull
     public List<Key> getNearestKeys(final int x, final int y) {
-        if (x >= 0 && x < mKeyboardMinWidth && y >= 0 && y < mKeyboardHeight) {
-            int index = (y / mCellHeight) * mGridWidth + (x / mCellWidth);
-            if (index < mGridSize) {
-                return mGridNeighbors[index];
-            }
+        final int cellIndex = getCellIndex(x, y);
+        if (cellIndex < 0) {
+            return EMPTY_KEY_LIST;
         }
-        return EMPTY_KEY_LIST;
+        final CellNeighborList cellNeighborList = mCellNeighborLists[cellIndex];
+        return (cellNeighborList == null) ? EMPTY_KEY_LIST : cellNeighborList;
     }
 }
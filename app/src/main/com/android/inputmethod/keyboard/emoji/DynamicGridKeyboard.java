@@ -22,6 +22,7 @@ import android.util.Log;
 
 import com.android.inputmethod.keyboard.Key;
 import com.android.inputmethod.keyboard.Keyboard;
+import com.android.inputmethod.keyboard.ProximityInfo;
 import com.android.inputmethod.latin.settings.Settings;
 import com.android.inputmethod.latin.utils.JsonUtils;
 
@@ -223,6 +224,12 @@ final class DynamicGridKeyboard extends Keyboard {
         return getSortedKeys();
     }
 
+    @Override
+    public int getHitKeyIndex(final int x, final int y) {
+        // The hit map of the template keyboard does not match the keys of this keyboard.
+        return ProximityInfo.UNRESOLVED_HIT_KEY;
+    }
+
     static final class GridKey extends Key {
         private int mCurrentX;
         private int mCurrentY;
@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.keyboard.internal;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.content.res.Configuration;
+import android.content.res.TypedArray;
+import android.util.Log;
+import android.util.TypedValue;
+
+import AOSP.KEYBOARD.R;
+import com.android.inputmethod.keyboard.Key;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.CRC32;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Reads and writes compiled keyboard layouts.
+ *
+ * A compiled layout is the result of parsing a keyboard XML for a given keyboard id, theme and
+ * configuration: the keyboard parameters and the fully resolved keys. Reading it back is much
+ * cheaper than walking the XML and resolving the key texts again.
+ *
+ * The file starts with a header holding a descriptor of everything the layout depends on, and
+ * ends with a checksum of the contents. A file whose header or checksum does not match is
+ * ignored and deleted.
+ */
+public final class CompiledKeyboardLayout {
+    private static final String TAG = CompiledKeyboardLayout.class.getSimpleName();
+
+    private static final int MAGIC_NUMBER = 0x4B424C43;
+    private static final int FORMAT_VERSION = 1;
+    private static final String DIRECTORY_NAME = "keyboard_layouts";
+    private static final String FILE_EXTENSION = ".layout";
+    private static final String TEMP_FILE_EXTENSION = ".tmp";
+    // The least recently used layouts are deleted above this number of files.
+    private static final int MAX_FILE_COUNT = 64;
+    private static final int MAX_FILE_SIZE = 1024 * 1024;
+
+    private static String sPackageStamp;
+
+    private CompiledKeyboardLayout() {
+        // This utility class is not publicly instantiable.
+    }
+
+    /**
+     * Returns the descriptor of a compiled layout: the layout description plus everything else
+     * the parsed keyboard depends on, that is the app build, the keyboard theme of the context
+     * and the resource configuration.
+     *
+     * @param context the themed context the keyboard is built with.
+     * @param layoutDescription the description of the keyboard id and of the builder options.
+     */
+    @Nonnull
+    public static String getDescriptor(@Nonnull final Context context,
+            @Nonnull final String layoutDescription) {
+        final TypedValue keyboardStyle = new TypedValue();
+        context.getTheme().resolveAttribute(R.attr.keyboardStyle, keyboardStyle, true);
+        final Configuration config = context.getResources().getConfiguration();
+        return layoutDescription
+                + " style=" + keyboardStyle.resourceId
+                + " locale=" + config.locale
+                + " orientation=" + config.orientation
+                + " density=" + config.densityDpi
+                + " smallestWidth=" + config.smallestScreenWidthDp
+                + " fontScale=" + config.fontScale
+                + " package=" + getPackageStamp(context);
+    }
+
+    private static synchronized String getPackageStamp(final Context context) {
+        if (sPackageStamp == null) {
+            try {
+                final PackageInfo info = context.getPackageManager().getPackageInfo(
+                        context.getPackageName(), 0);
+                // The resource ids may change with any update, even without a new version code.
+                sPackageStamp = info.versionCode + "/" + info.lastUpdateTime;
+            } catch (final NameNotFoundException e) {
+                Log.e(TAG, "Could not find package info.", e);
+                sPackageStamp = "";
+            }
+        }
+        return sPackageStamp;
+    }
+
+    @Nonnull
+    public static File getFile(@Nonnull final Context context, @Nonnull final String descriptor) {
+        // Two descriptors may have the same hash code. This is fine, as the descriptor is checked
+        // when reading the file.
+        return new File(new File(context.getCacheDir(), DIRECTORY_NAME),
+                Integer.toHexString(descriptor.hashCode()) + FILE_EXTENSION);
+    }
+
+    /**
+     * Reads a compiled layout into keyboard parameters.
+     *
+     * The keyboard id and the options of the builder must already be set in the parameters. If
+     * this returns false, the parameters may have been partially filled and must be discarded.
+     *
+     * @param context the themed context the keyboard is built with, to load the key icons.
+     * @param file the compiled layout file.
+     * @param descriptor the expected descriptor of the layout.
+     * @param params the parameters to fill.
+     * @return whether the layout has been read.
+     */
+    public static boolean read(@Nonnull final Context context, @Nonnull final File file,
+            @Nonnull final String descriptor, @Nonnull final KeyboardParams params) {
+        if (!file.isFile()) {
+            return false;
+        }
+        try {
+            final byte[] contents = readContents(file, descriptor);
+            if (contents == null) {
+                deleteFile(file);
+                return false;
+            }
+            readParams(new DataInputStream(new ByteArrayInputStream(contents)), params);
+            loadIcons(context, params);
+            // Used to find the least recently used layouts.
+            file.setLastModified(System.currentTimeMillis());
+            return true;
+        } catch (final IOException | RuntimeException e) {
+            Log.w(TAG, "Cannot read compiled keyboard layout " + file, e);
+            deleteFile(file);
+            return false;
+        }
+    }
+
+    @Nullable
+    private static byte[] readContents(final File file, final String descriptor)
+            throws IOException {
+        final long length = file.length();
+        if (length > MAX_FILE_SIZE) {
+            return null;
+        }
+        final DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            if (in.readInt() != MAGIC_NUMBER || in.readInt() != FORMAT_VERSION
+                    || !descriptor.equals(in.readUTF())) {
+                return null;
+            }
+            final int contentsLength = in.readInt();
+            if (contentsLength < 0 || contentsLength > length) {
+                return null;
+            }
+            final byte[] contents = new byte[contentsLength];
+            in.readFully(contents);
+            final CRC32 checksum = new CRC32();
+            checksum.update(contents);
+            return (checksum.getValue() == in.readLong()) ? contents : null;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void readParams(final DataInput in, final KeyboardParams params)
+            throws IOException {
+        params.mThemeId = in.readInt();
+        params.mOccupiedHeight = in.readInt();
+        params.mOccupiedWidth = in.readInt();
+        params.mBaseHeight = in.readInt();
+        params.mBaseWidth = in.readInt();
+        params.mTopPadding = in.readInt();
+        params.mBottomPadding = in.readInt();
+        params.mLeftPadding = in.readInt();
+        params.mRightPadding = in.readInt();
+        params.mKeyVisualAttributes = KeyVisualAttributes.readFrom(in);
+        params.mDefaultRowHeight = in.readInt();
+        params.mDefaultKeyWidth = in.readInt();
+        params.mHorizontalGap = in.readInt();
+        params.mVerticalGap = in.readInt();
+        params.mMoreKeysTemplate = in.readInt();
+        params.mMaxMoreKeysKeyboardColumn = in.readInt();
+        params.GRID_WIDTH = in.readInt();
+        params.GRID_HEIGHT = in.readInt();
+        params.mTouchPositionCorrection.readFrom(in);
+        final int keyCount = in.readInt();
+        for (int i = 0; i < keyCount; i++) {
+            params.onAddKey(Key.readFrom(in));
+        }
+        // The most common key sizes depend on the order the keys were added in while parsing,
+        // so they are not computed again.
+        params.mMostCommonKeyHeight = in.readInt();
+        params.mMostCommonKeyWidth = in.readInt();
+    }
+
+    private static void loadIcons(final Context context, final KeyboardParams params) {
+        // The icons are only defined by the keyboard style of the theme, not in the layouts.
+        final TypedArray keyboardAttr = context.obtainStyledAttributes(
+                null, R.styleable.Keyboard, R.attr.keyboardStyle, R.style.Keyboard);
+        try {
+            params.mIconsSet.loadIcons(keyboardAttr);
+        } finally {
+            keyboardAttr.recycle();
+        }
+    }
+
+    /**
+     * Writes keyboard parameters as a compiled layout.
+     *
+     * This does file I/O and should not be called on the UI thread.
+     *
+     * @param file the compiled layout file to replace.
+     * @param descriptor the descriptor of the layout.
+     * @param params the parameters of a keyboard that has been fully built.
+     */
+    public static void write(@Nonnull final File file, @Nonnull final String descriptor,
+            @Nonnull final KeyboardParams params) {
+        final File directory = file.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "Cannot create directory " + directory);
+            return;
+        }
+        final File tempFile = new File(directory, file.getName() + TEMP_FILE_EXTENSION);
+        try {
+            final ByteArrayOutputStream contentsStream = new ByteArrayOutputStream();
+            writeParams(new DataOutputStream(contentsStream), params);
+            final byte[] contents = contentsStream.toByteArray();
+            final CRC32 checksum = new CRC32();
+            checksum.update(contents);
+            final DataOutputStream out = new DataOutputStream(new FileOutputStream(tempFile));
+            try {
+                out.writeInt(MAGIC_NUMBER);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(descriptor);
+                out.writeInt(contents.length);
+                out.write(contents);
+                out.writeLong(checksum.getValue());
+            } finally {
+                out.close();
+            }
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Cannot rename " + tempFile + " to " + file);
+            }
+        } catch (final IOException e) {
+            Log.w(TAG, "Cannot write compiled keyboard layout " + file, e);
+            deleteFile(tempFile);
+            return;
+        }
+        trimDirectory(directory);
+    }
+
+    private static void writeParams(final DataOutput out, final KeyboardParams params)
+            throws IOException {
+        out.writeInt(params.mThemeId);
+        out.writeInt(params.mOccupiedHeight);
+        out.writeInt(params.mOccupiedWidth);
+        out.writeInt(params.mBaseHeight);
+        out.writeInt(params.mBaseWidth);
+        out.writeInt(params.mTopPadding);
+        out.writeInt(params.mBottomPadding);
+        out.writeInt(params.mLeftPadding);
+        out.writeInt(params.mRightPadding);
+        KeyVisualAttributes.writeTo(out, params.mKeyVisualAttributes);
+        out.writeInt(params.mDefaultRowHeight);
+        out.writeInt(params.mDefaultKeyWidth);
+        out.writeInt(params.mHorizontalGap);
+        out.writeInt(params.mVerticalGap);
+        out.writeInt(params.mMoreKeysTemplate);
+        out.writeInt(params.mMaxMoreKeysKeyboardColumn);
+        out.writeInt(params.GRID_WIDTH);
+        out.writeInt(params.GRID_HEIGHT);
+        params.mTouchPositionCorrection.writeTo(out);
+        out.writeInt(params.mSortedKeys.size());
+        for (final Key key : params.mSortedKeys) {
+            key.writeTo(out);
+        }
+        out.writeInt(params.mMostCommonKeyHeight);
+        out.writeInt(params.mMostCommonKeyWidth);
+    }
+
+    private static void trimDirectory(final File directory) {
+        final File[] files = directory.listFiles();
+        if (files == null || files.length <= MAX_FILE_COUNT) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(final File lhs, final File rhs) {
+                final long lhsLastModified = lhs.lastModified();
+                final long rhsLastModified = rhs.lastModified();
+                return (lhsLastModified < rhsLastModified) ? -1
+                        : (lhsLastModified == rhsLastModified ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length - MAX_FILE_COUNT; i++) {
+            deleteFile(files[i]);
+        }
+    }
+
+    private static void deleteFile(final File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Cannot delete " + file);
+        }
+    }
+
+    public static void writeString(@Nonnull final DataOutput out, @Nullable final String value)
+            throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    @Nullable
+    public static String readString(@Nonnull final DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
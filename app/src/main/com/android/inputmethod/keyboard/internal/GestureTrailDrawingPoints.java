@@ -25,6 +25,7 @@ import android.os.SystemClock;
 
 import com.android.inputmethod.latin.common.Constants;
 import com.android.inputmethod.latin.common.ResizableIntArray;
+import com.android.inputmethod.latin.define.ProductionFlags;
 
 /**
  * This class holds drawing points to represent a gesture trail. The gesture trail may contain
@@ -145,6 +146,10 @@ final class GestureTrailDrawingPoints {
 
     private final RoundedLine mRoundedLine = new RoundedLine();
     private final Rect mRoundedLineBounds = new Rect();
+    // The width of the transparent edge of a trail that has no shadow, to antialias it.
+    private static final float MESH_ANTIALIAS_WIDTH = 1.0f;
+    private final GestureTrailMesh mMesh = ProductionFlags.ENABLE_BATCHED_GESTURE_TRAIL
+            ? new GestureTrailMesh() : null;
 
     /**
      * Draw gesture trail
@@ -185,7 +190,12 @@ final class GestureTrailDrawingPoints {
         }
         mTrailStartIndex = startIndex;
 
-        if (startIndex < trailSize) {
+        if (startIndex < trailSize && mMesh != null) {
+            drawGestureTrailMesh(canvas, outBoundsRect, params, startIndex, trailSize, sinceDown);
+            if (DEBUG_SHOW_POINTS) {
+                debugDrawPoints(canvas, startIndex, trailSize, paint);
+            }
+        } else if (startIndex < trailSize) {
             paint.setColor(params.mTrailColor);
             paint.setStyle(Paint.Style.FILL);
             final RoundedLine roundedLine = mRoundedLine;
@@ -252,6 +262,36 @@ final class GestureTrailDrawingPoints {
         return newSize > 0;
     }
 
+    /**
+     * Draws the trail points from startIndex as a single mesh, with the shadow as its fading
+     * edges.
+     */
+    private void drawGestureTrailMesh(final Canvas canvas, final Rect outBoundsRect,
+            final GestureTrailDrawingParams params, final int startIndex, final int endIndex,
+            final int sinceDown) {
+        final int[] eventTimes = mEventTimes.getPrimitiveArray();
+        final int[] xCoords = mXCoordinates.getPrimitiveArray();
+        final int[] yCoords = mYCoordinates.getPrimitiveArray();
+        final GestureTrailMesh mesh = mMesh;
+        mesh.reset(params.mTrailColor);
+        for (int i = startIndex; i < endIndex; i++) {
+            // A down point starts a new stroke.
+            if (isDownEventXCoord(xCoords[i])) {
+                mesh.endStroke();
+            }
+            final int elapsedTime = sinceDown - eventTimes[i];
+            final float radius = getWidth(elapsedTime, params) / 2.0f;
+            final float bodyRadius = radius * params.mTrailBodyRatio;
+            final float outerRadius = bodyRadius + (params.mTrailShadowEnabled
+                    ? radius * params.mTrailShadowRatio : MESH_ANTIALIAS_WIDTH);
+            mesh.addPoint(getXCoordValue(xCoords[i]), yCoords[i], bodyRadius, outerRadius,
+                    getAlpha(elapsedTime, params));
+        }
+        mesh.endStroke();
+        mesh.draw(canvas);
+        mesh.getBounds(outBoundsRect);
+    }
+
     private void debugDrawPoints(final Canvas canvas, final int startIndex, final int endIndex,
             final Paint paint) {
         final int[] xCoords = mXCoordinates.getPrimitiveArray();
@@ -0,0 +1,391 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.keyboard.internal;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+
+import com.android.inputmethod.latin.common.ResizableIntArray;
+
+import java.util.Arrays;
+
+/**
+ * This class builds a gesture trail as a triangle mesh, so that the whole trail is drawn with a
+ * single {@link Canvas#drawVertices} call instead of a path per segment.
+ *
+ * Each point of a stroke has a body radius, an outer radius and an alpha. The mesh has four
+ * vertices across the stroke at each point: the body is drawn between the two inner ones with the
+ * alpha of the point, and fades out to transparent at the two outer ones. This fading edge stands
+ * for the shadow of the trail, or antialiases the edges of the body when the shadow is disabled.
+ * Both ends of a stroke are closed with half disks.
+ *
+ * The buffers grow as needed and are reused from a frame to the next.
+ */
+final class GestureTrailMesh {
+    // The same as GestureStrokeDrawingPoints.PREVIEW_CAPACITY, so that the buffers rarely grow.
+    // It is not referenced, so that this class only depends on the graphics classes.
+    private static final int DEFAULT_POINT_CAPACITY = 256;
+
+    // The vertices across a stroke at each point: outer, body, body and outer.
+    private static final int VERTICES_PER_POINT = 4;
+    // The three quads between two consecutive points, two triangles each.
+    private static final int INDICES_PER_SEGMENT = 18;
+    // The number of triangle fan steps in the half disk at each end of a stroke.
+    private static final int CAP_STEPS = 6;
+    // The center of a cap, and a body and an outer vertex at each step boundary.
+    private static final int VERTICES_PER_CAP = 1 + 2 * (CAP_STEPS + 1);
+    // A body triangle and two fading edge triangles per step.
+    private static final int INDICES_PER_CAP = 9 * CAP_STEPS;
+    // The indices are shorts, so a single draw call can only address this many vertices.
+    private static final int MAX_VERTICES_PER_BATCH = Short.MAX_VALUE;
+    private static final int MAX_POINTS_PER_BATCH =
+            (MAX_VERTICES_PER_BATCH - 2 * VERTICES_PER_CAP) / VERTICES_PER_POINT;
+    // The width of a joint is limited to this ratio of the radius at sharp turns.
+    private static final float MAX_MITER_RATIO = 2.0f;
+
+    private static final float[] CAP_COS = new float[CAP_STEPS + 1];
+    private static final float[] CAP_SIN = new float[CAP_STEPS + 1];
+    static {
+        for (int i = 0; i <= CAP_STEPS; i++) {
+            final double angle = Math.PI * i / CAP_STEPS;
+            CAP_COS[i] = (float)Math.cos(angle);
+            CAP_SIN[i] = (float)Math.sin(angle);
+        }
+    }
+
+    // The points of the current stroke.
+    private float[] mPointX = new float[DEFAULT_POINT_CAPACITY];
+    private float[] mPointY = new float[DEFAULT_POINT_CAPACITY];
+    private float[] mBodyRadius = new float[DEFAULT_POINT_CAPACITY];
+    private float[] mOuterRadius = new float[DEFAULT_POINT_CAPACITY];
+    private int[] mAlpha = new int[DEFAULT_POINT_CAPACITY];
+    // The directions of the segments of the current stroke, and the normals at its points.
+    private float[] mDirectionX = new float[DEFAULT_POINT_CAPACITY];
+    private float[] mDirectionY = new float[DEFAULT_POINT_CAPACITY];
+    private float[] mNormalX = new float[DEFAULT_POINT_CAPACITY];
+    private float[] mNormalY = new float[DEFAULT_POINT_CAPACITY];
+    private int mPointCount;
+
+    // The mesh. {@link #mVertices} holds x and y for each vertex.
+    private float[] mVertices = new float[DEFAULT_POINT_CAPACITY * VERTICES_PER_POINT * 2];
+    private int[] mColors = new int[DEFAULT_POINT_CAPACITY * VERTICES_PER_POINT];
+    private short[] mIndices = new short[DEFAULT_POINT_CAPACITY * INDICES_PER_SEGMENT];
+    private int mVertexCount;
+    private int mIndexCount;
+    // The first vertex and the first index of each draw call.
+    private final ResizableIntArray mBatchVertexStarts = new ResizableIntArray(1);
+    private final ResizableIntArray mBatchIndexStarts = new ResizableIntArray(1);
+
+    private int mColor;
+    private float mLeft;
+    private float mTop;
+    private float mRight;
+    private float mBottom;
+
+    private final Paint mPaint;
+
+    public GestureTrailMesh() {
+        final Paint paint = new Paint();
+        // The vertex colors are modulated by the paint color.
+        paint.setColor(Color.WHITE);
+        // As with the paths of the trail, the pixels are replaced rather than blended, so that the
+        // triangles that overlap at the joints and the caps do not add up their alpha.
+        paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+        mPaint = paint;
+    }
+
+    /**
+     * Starts a new mesh.
+     *
+     * @param color the color of the trail. Its alpha is replaced by the alpha of each point.
+     */
+    public void reset(final int color) {
+        mColor = color & 0x00FFFFFF;
+        mPointCount = 0;
+        mVertexCount = 0;
+        mIndexCount = 0;
+        mBatchVertexStarts.setLength(0);
+        mBatchIndexStarts.setLength(0);
+        mBatchVertexStarts.add(0);
+        mBatchIndexStarts.add(0);
+        mLeft = Float.MAX_VALUE;
+        mTop = Float.MAX_VALUE;
+        mRight = -Float.MAX_VALUE;
+        mBottom = -Float.MAX_VALUE;
+    }
+
+    /**
+     * Adds a point to the current stroke.
+     *
+     * @param x the x-coordinate of the point.
+     * @param y the y-coordinate of the point.
+     * @param bodyRadius the radius of the body of the stroke at this point.
+     * @param outerRadius the radius of the stroke at this point, including its fading edge.
+     * @param alpha the alpha of the body of the stroke at this point.
+     */
+    public void addPoint(final float x, final float y, final float bodyRadius,
+            final float outerRadius, final int alpha) {
+        if (mPointCount == mPointX.length) {
+            final int capacity = mPointCount * 2;
+            mPointX = Arrays.copyOf(mPointX, capacity);
+            mPointY = Arrays.copyOf(mPointY, capacity);
+            mBodyRadius = Arrays.copyOf(mBodyRadius, capacity);
+            mOuterRadius = Arrays.copyOf(mOuterRadius, capacity);
+            mAlpha = Arrays.copyOf(mAlpha, capacity);
+            mDirectionX = new float[capacity];
+            mDirectionY = new float[capacity];
+            mNormalX = new float[capacity];
+            mNormalY = new float[capacity];
+        }
+        mPointX[mPointCount] = x;
+        mPointY[mPointCount] = y;
+        mBodyRadius[mPointCount] = bodyRadius;
+        mOuterRadius[mPointCount] = outerRadius;
+        mAlpha[mPointCount] = alpha;
+        mPointCount++;
+    }
+
+    /**
+     * Adds the current stroke to the mesh, and starts a new stroke. A stroke that does not move
+     * is not drawn.
+     */
+    public void endStroke() {
+        final int pointCount = mPointCount;
+        mPointCount = 0;
+        if (pointCount < 2 || !computeNormals(pointCount)) {
+            return;
+        }
+        int start = 0;
+        while (start < pointCount - 1) {
+            final int end = Math.min(pointCount, start + MAX_POINTS_PER_BATCH);
+            final boolean hasStartCap = (start == 0);
+            final boolean hasEndCap = (end == pointCount);
+            final int vertexCount = (end - start) * VERTICES_PER_POINT
+                    + ((hasStartCap ? 1 : 0) + (hasEndCap ? 1 : 0)) * VERTICES_PER_CAP;
+            final int indexCount = (end - start - 1) * INDICES_PER_SEGMENT
+                    + ((hasStartCap ? 1 : 0) + (hasEndCap ? 1 : 0)) * INDICES_PER_CAP;
+            final int batchStart = mBatchVertexStarts.get(mBatchVertexStarts.getLength() - 1);
+            if (mVertexCount - batchStart + vertexCount > MAX_VERTICES_PER_BATCH) {
+                mBatchVertexStarts.add(mVertexCount);
+                mBatchIndexStarts.add(mIndexCount);
+            }
+            ensureCapacity(vertexCount, indexCount);
+            appendSection(start, end, hasStartCap, hasEndCap);
+            // The next section starts where this one ends, so that they are joined.
+            start = end - 1;
+        }
+    }
+
+    /**
+     * Computes the directions of the segments and the normals at the points of the current
+     * stroke. A segment between two equal points takes the direction of the previous segment.
+     *
+     * @return false if the stroke does not move.
+     */
+    private boolean computeNormals(final int pointCount) {
+        final int segmentCount = pointCount - 1;
+        int firstMovingSegment = -1;
+        for (int i = 0; i < segmentCount; i++) {
+            final float dx = mPointX[i + 1] - mPointX[i];
+            final float dy = mPointY[i + 1] - mPointY[i];
+            final float length = (float)Math.hypot(dx, dy);
+            if (length > 0.0f) {
+                mDirectionX[i] = dx / length;
+                mDirectionY[i] = dy / length;
+                if (firstMovingSegment < 0) {
+                    firstMovingSegment = i;
+                }
+            } else if (firstMovingSegment >= 0) {
+                mDirectionX[i] = mDirectionX[i - 1];
+                mDirectionY[i] = mDirectionY[i - 1];
+            }
+        }
+        if (firstMovingSegment < 0) {
+            return false;
+        }
+        for (int i = 0; i < firstMovingSegment; i++) {
+            mDirectionX[i] = mDirectionX[firstMovingSegment];
+            mDirectionY[i] = mDirectionY[firstMovingSegment];
+        }
+        mNormalX[0] = -mDirectionY[0];
+        mNormalY[0] = mDirectionX[0];
+        for (int i = 1; i < segmentCount; i++) {
+            // The normal at a joint is the normal of the average direction of both segments,
+            // stretched so that the stroke keeps its width.
+            final float sumX = mDirectionX[i - 1] + mDirectionX[i];
+            final float sumY = mDirectionY[i - 1] + mDirectionY[i];
+            final float length = (float)Math.hypot(sumX, sumY);
+            if (length < 1e-3f) {
+                // The stroke turns back.
+                mNormalX[i] = -mDirectionY[i - 1];
+                mNormalY[i] = mDirectionX[i - 1];
+                continue;
+            }
+            final float normalX = -sumY / length;
+            final float normalY = sumX / length;
+            final float cosine = normalX * -mDirectionY[i - 1] + normalY * mDirectionX[i - 1];
+            final float miter = Math.min(1.0f / cosine, MAX_MITER_RATIO);
+            mNormalX[i] = normalX * miter;
+            mNormalY[i] = normalY * miter;
+        }
+        mNormalX[segmentCount] = -mDirectionY[segmentCount - 1];
+        mNormalY[segmentCount] = mDirectionX[segmentCount - 1];
+        return true;
+    }
+
+    private void ensureCapacity(final int vertexCount, final int indexCount) {
+        final int minVertexCapacity = mVertexCount + vertexCount;
+        if (minVertexCapacity > mColors.length) {
+            final int capacity = Math.max(minVertexCapacity, mColors.length * 2);
+            mVertices = Arrays.copyOf(mVertices, capacity * 2);
+            mColors = Arrays.copyOf(mColors, capacity);
+        }
+        final int minIndexCapacity = mIndexCount + indexCount;
+        if (minIndexCapacity > mIndices.length) {
+            mIndices = Arrays.copyOf(mIndices,
+                    Math.max(minIndexCapacity, mIndices.length * 2));
+        }
+    }
+
+    private void appendSection(final int start, final int end, final boolean hasStartCap,
+            final boolean hasEndCap) {
+        if (hasStartCap) {
+            // A half disk behind the first point.
+            appendCap(start, -mDirectionX[start], -mDirectionY[start]);
+        }
+        final int edgeColor = getColor(0);
+        int previous = -1;
+        for (int i = start; i < end; i++) {
+            final float x = mPointX[i];
+            final float y = mPointY[i];
+            final float bodyX = mNormalX[i] * mBodyRadius[i];
+            final float bodyY = mNormalY[i] * mBodyRadius[i];
+            final float outerX = mNormalX[i] * mOuterRadius[i];
+            final float outerY = mNormalY[i] * mOuterRadius[i];
+            final int bodyColor = getColor(mAlpha[i]);
+            final int current = appendVertex(x - outerX, y - outerY, edgeColor);
+            appendVertex(x - bodyX, y - bodyY, bodyColor);
+            appendVertex(x + bodyX, y + bodyY, bodyColor);
+            appendVertex(x + outerX, y + outerY, edgeColor);
+            if (previous >= 0) {
+                for (int j = 0; j < VERTICES_PER_POINT - 1; j++) {
+                    appendQuad(previous + j, previous + j + 1, current + j + 1, current + j);
+                }
+            }
+            previous = current;
+        }
+        if (hasEndCap) {
+            // A half disk beyond the last point.
+            appendCap(end - 1, mDirectionX[end - 2], mDirectionY[end - 2]);
+        }
+    }
+
+    /**
+     * Appends a half disk around a point, on the side of the given direction.
+     */
+    private void appendCap(final int index, final float directionX, final float directionY) {
+        final float x = mPointX[index];
+        final float y = mPointY[index];
+        final float bodyRadius = mBodyRadius[index];
+        final float outerRadius = mOuterRadius[index];
+        final int bodyColor = getColor(mAlpha[index]);
+        final int edgeColor = getColor(0);
+        // The arc goes from one side of the stroke to the other through the given direction.
+        final float normalX = -directionY;
+        final float normalY = directionX;
+        final int center = appendVertex(x, y, bodyColor);
+        int previous = -1;
+        for (int i = 0; i <= CAP_STEPS; i++) {
+            final float unitX = normalX * CAP_COS[i] + directionX * CAP_SIN[i];
+            final float unitY = normalY * CAP_COS[i] + directionY * CAP_SIN[i];
+            final int current = appendVertex(
+                    x + unitX * bodyRadius, y + unitY * bodyRadius, bodyColor);
+            appendVertex(x + unitX * outerRadius, y + unitY * outerRadius, edgeColor);
+            if (previous >= 0) {
+                appendTriangle(center, previous, current);
+                appendQuad(previous, previous + 1, current + 1, current);
+            }
+            previous = current;
+        }
+    }
+
+    private int getColor(final int alpha) {
+        return (alpha << 24) | mColor;
+    }
+
+    /**
+     * @return the index of the vertex, relative to the first vertex of the current draw call.
+     */
+    private int appendVertex(final float x, final float y, final int color) {
+        mVertices[mVertexCount * 2] = x;
+        mVertices[mVertexCount * 2 + 1] = y;
+        mColors[mVertexCount] = color;
+        mLeft = Math.min(mLeft, x);
+        mTop = Math.min(mTop, y);
+        mRight = Math.max(mRight, x);
+        mBottom = Math.max(mBottom, y);
+        final int batchStart = mBatchVertexStarts.get(mBatchVertexStarts.getLength() - 1);
+        return mVertexCount++ - batchStart;
+    }
+
+    private void appendTriangle(final int v1, final int v2, final int v3) {
+        mIndices[mIndexCount++] = (short)v1;
+        mIndices[mIndexCount++] = (short)v2;
+        mIndices[mIndexCount++] = (short)v3;
+    }
+
+    private void appendQuad(final int v1, final int v2, final int v3, final int v4) {
+        appendTriangle(v1, v2, v3);
+        appendTriangle(v1, v3, v4);
+    }
+
+    /**
+     * Draws the mesh, with one draw call unless it has too many vertices for a single call.
+     */
+    public void draw(final Canvas canvas) {
+        final int batchCount = mBatchVertexStarts.getLength();
+        for (int i = 0; i < batchCount; i++) {
+            final int vertexStart = mBatchVertexStarts.get(i);
+            final int indexStart = mBatchIndexStarts.get(i);
+            final boolean isLast = (i == batchCount - 1);
+            final int vertexEnd = isLast ? mVertexCount : mBatchVertexStarts.get(i + 1);
+            final int indexEnd = isLast ? mIndexCount : mBatchIndexStarts.get(i + 1);
+            if (indexEnd == indexStart) {
+                continue;
+            }
+            canvas.drawVertices(Canvas.VertexMode.TRIANGLES, (vertexEnd - vertexStart) * 2,
+                    mVertices, vertexStart * 2, null /* texs */, 0 /* texOffset */,
+                    mColors, vertexStart, mIndices, indexStart, indexEnd - indexStart, mPaint);
+        }
+    }
+
+    /**
+     * @param outBounds the bounding box of the mesh, or an empty rectangle if it is empty.
+     */
+    public void getBounds(final Rect outBounds) {
+        if (mVertexCount == 0) {
+            outBounds.setEmpty();
+            return;
+        }
+        outBounds.set((int)Math.floor(mLeft), (int)Math.floor(mTop),
+                (int)Math.ceil(mRight), (int)Math.ceil(mBottom));
+    }
+}
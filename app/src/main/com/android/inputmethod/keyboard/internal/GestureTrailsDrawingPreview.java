@@ -28,6 +28,9 @@ import android.os.Handler;
 import android.util.SparseArray;
 
 import com.android.inputmethod.keyboard.PointerTracker;
+import com.android.inputmethod.latin.utils.StatsUtils;
+
+import java.util.concurrent.TimeUnit;
 
 /**
  * Draw preview graphics of multiple gesture trails during gesture input.
@@ -133,8 +136,11 @@ public final class GestureTrailsDrawingPreview extends AbstractDrawingPreview im
         }
         mayAllocateOffscreenBuffer();
         // Draw gesture trails to offscreen buffer.
+        final long startTime = System.nanoTime();
         final boolean needsUpdatingGestureTrail = drawGestureTrails(
                 mOffscreenCanvas, mGesturePaint, mDirtyRect);
+        StatsUtils.onGestureTrailsDrawn(
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
         if (needsUpdatingGestureTrail) {
             mDrawingHandler.removeCallbacks(this);
             mDrawingHandler.postDelayed(this, mDrawingParams.mUpdateInterval);
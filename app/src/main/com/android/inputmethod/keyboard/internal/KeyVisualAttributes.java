@@ -23,6 +23,10 @@ import android.util.SparseIntArray;
 import AOSP.KEYBOARD.R;
 import com.android.inputmethod.latin.utils.ResourceUtils;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
@@ -145,4 +149,72 @@ public final class KeyVisualAttributes {
         mHintLabelOffCenterRatio = ResourceUtils.getFraction(keyAttr,
                 R.styleable.Keyboard_Key_keyHintLabelOffCenterRatio, 0.0f);
     }
+
+    private KeyVisualAttributes(@Nonnull final DataInput in) throws IOException {
+        final int typefaceStyle = in.readInt();
+        mTypeface = (typefaceStyle == TYPEFACE_UNDEFINED) ? null
+                : Typeface.defaultFromStyle(typefaceStyle);
+        mLetterRatio = in.readFloat();
+        mLetterSize = in.readInt();
+        mLabelRatio = in.readFloat();
+        mLabelSize = in.readInt();
+        mLargeLetterRatio = in.readFloat();
+        mHintLetterRatio = in.readFloat();
+        mShiftedLetterHintRatio = in.readFloat();
+        mHintLabelRatio = in.readFloat();
+        mPreviewTextRatio = in.readFloat();
+        mTextColor = in.readInt();
+        mTextInactivatedColor = in.readInt();
+        mTextShadowColor = in.readInt();
+        mFunctionalTextColor = in.readInt();
+        mHintLetterColor = in.readInt();
+        mHintLabelColor = in.readInt();
+        mShiftedLetterHintInactivatedColor = in.readInt();
+        mShiftedLetterHintActivatedColor = in.readInt();
+        mPreviewTextColor = in.readInt();
+        mHintLabelVerticalAdjustment = in.readFloat();
+        mLabelOffCenterRatio = in.readFloat();
+        mHintLabelOffCenterRatio = in.readFloat();
+    }
+
+    private static final int TYPEFACE_UNDEFINED = -1;
+
+    /**
+     * Writes the attributes in the format read by {@link #readFrom(DataInput)}, for the compiled
+     * keyboard layouts.
+     */
+    public static void writeTo(@Nonnull final DataOutput out,
+            @Nullable final KeyVisualAttributes attrs) throws IOException {
+        out.writeBoolean(attrs != null);
+        if (attrs == null) {
+            return;
+        }
+        out.writeInt(attrs.mTypeface == null ? TYPEFACE_UNDEFINED : attrs.mTypeface.getStyle());
+        out.writeFloat(attrs.mLetterRatio);
+        out.writeInt(attrs.mLetterSize);
+        out.writeFloat(attrs.mLabelRatio);
+        out.writeInt(attrs.mLabelSize);
+        out.writeFloat(attrs.mLargeLetterRatio);
+        out.writeFloat(attrs.mHintLetterRatio);
+        out.writeFloat(attrs.mShiftedLetterHintRatio);
+        out.writeFloat(attrs.mHintLabelRatio);
+        out.writeFloat(attrs.mPreviewTextRatio);
+        out.writeInt(attrs.mTextColor);
+        out.writeInt(attrs.mTextInactivatedColor);
+        out.writeInt(attrs.mTextShadowColor);
+        out.writeInt(attrs.mFunctionalTextColor);
+        out.writeInt(attrs.mHintLetterColor);
+        out.writeInt(attrs.mHintLabelColor);
+        out.writeInt(attrs.mShiftedLetterHintInactivatedColor);
+        out.writeInt(attrs.mShiftedLetterHintActivatedColor);
+        out.writeInt(attrs.mPreviewTextColor);
+        out.writeFloat(attrs.mHintLabelVerticalAdjustment);
+        out.writeFloat(attrs.mLabelOffCenterRatio);
+        out.writeFloat(attrs.mHintLabelOffCenterRatio);
+    }
+
+    @Nullable
+    public static KeyVisualAttributes readFrom(@Nonnull final DataInput in) throws IOException {
+        return in.readBoolean() ? new KeyVisualAttributes(in) : null;
+    }
 }
@@ -25,6 +25,9 @@ import com.android.inputmethod.latin.common.CollectionUtils;
 import com.android.inputmethod.latin.common.Constants;
 import com.android.inputmethod.latin.common.StringUtils;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Locale;
@@ -76,6 +79,33 @@ public final class MoreKeySpec {
         mIconId = KeySpecParser.getIconId(moreKeySpec);
     }
 
+    private MoreKeySpec(final int code, @Nullable final String label,
+            @Nullable final String outputText, final int iconId) {
+        mCode = code;
+        mLabel = label;
+        mOutputText = outputText;
+        mIconId = iconId;
+    }
+
+    /**
+     * Writes the spec in the format read by {@link #readFrom(DataInput)}, for the compiled
+     * keyboard layouts.
+     */
+    public void writeTo(@Nonnull final DataOutput out) throws IOException {
+        out.writeInt(mCode);
+        CompiledKeyboardLayout.writeString(out, mLabel);
+        CompiledKeyboardLayout.writeString(out, mOutputText);
+        out.writeInt(mIconId);
+    }
+
+    @Nonnull
+    public static MoreKeySpec readFrom(@Nonnull final DataInput in) throws IOException {
+        final int code = in.readInt();
+        final String label = CompiledKeyboardLayout.readString(in);
+        final String outputText = CompiledKeyboardLayout.readString(in);
+        return new MoreKeySpec(code, label, outputText, in.readInt());
+    }
+
     @Nonnull
     public Key buildKey(final int x, final int y, final int labelFlags,
             @Nonnull final KeyboardParams params) {
@@ -19,6 +19,10 @@ package com.android.inputmethod.keyboard.internal;
 import com.android.inputmethod.annotations.UsedForTesting;
 import com.android.inputmethod.latin.define.DebugFlags;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 public final class TouchPositionCorrection {
     private static final int TOUCH_POSITION_CORRECTION_RECORD_SIZE = 3;
 
@@ -94,4 +98,42 @@ public final class TouchPositionCorrection {
     public float getRadius(final int row) {
         return mRadii[row];
     }
+
+    /**
+     * Writes the loaded data in the format read by {@link #readFrom(DataInput)}, for the compiled
+     * keyboard layouts.
+     */
+    public void writeTo(final DataOutput out) throws IOException {
+        out.writeBoolean(mEnabled);
+        if (mRadii == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(mRadii.length);
+        for (int i = 0; i < mRadii.length; i++) {
+            out.writeFloat(mXs[i]);
+            out.writeFloat(mYs[i]);
+            out.writeFloat(mRadii[i]);
+        }
+    }
+
+    public void readFrom(final DataInput in) throws IOException {
+        final boolean enabled = in.readBoolean();
+        final int length = in.readInt();
+        if (length < 0) {
+            mXs = null;
+            mYs = null;
+            mRadii = null;
+        } else {
+            mXs = new float[length];
+            mYs = new float[length];
+            mRadii = new float[length];
+            for (int i = 0; i < length; i++) {
+                mXs[i] = in.readFloat();
+                mYs[i] = in.readFloat();
+                mRadii[i] = in.readFloat();
+            }
+        }
+        mEnabled = enabled;
+    }
 }
@@ -16,6 +16,7 @@
 
 package com.android.inputmethod.latin;
 
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 import android.util.SparseArray;
@@ -35,6 +36,7 @@ import com.android.inputmethod.latin.makedict.WordProperty;
 import com.android.inputmethod.latin.settings.SettingsValuesForSuggestion;
 import com.android.inputmethod.latin.utils.BinaryDictionaryUtils;
 import com.android.inputmethod.latin.utils.JniUtils;
+import com.android.inputmethod.latin.utils.StatsUtils;
 import com.android.inputmethod.latin.utils.WordInputEventForPersonalization;
 
 import java.io.File;
@@ -71,6 +73,10 @@ public final class BinaryDictionary extends Dictionary {
 
     public static final int NOT_A_VALID_TIMESTAMP = -1;
 
+    // Operations reported to StatsUtils#onDecoderLaggy() when they take longer than this.
+    private static final int DECODER_OPERATION_GET_SUGGESTIONS = 0;
+    private static final long SLOW_DECODER_OPERATION_MS = 200;
+
     // Format to get unigram flags from native side via getWordPropertyNative().
     private static final int FORMAT_WORD_PROPERTY_OUTPUT_FLAG_COUNT = 5;
     private static final int FORMAT_WORD_PROPERTY_IS_NOT_A_WORD_INDEX = 0;
@@ -302,6 +308,7 @@ public final class BinaryDictionary extends Dictionary {
             session.mInputOutputWeightOfLangModelVsSpatialModel[0] =
                     Dictionary.NOT_A_WEIGHT_OF_LANG_MODEL_VS_SPATIAL_MODEL;
         }
+        final long startTime = SystemClock.uptimeMillis();
         // TOOD: Pass multiple previous words information for n-gram.
         getSuggestionsNative(mNativeDict, proximityInfoHandle,
                 getTraverseSession(sessionId).getSession(), inputPointers.getXCoordinates(),
@@ -313,22 +320,21 @@ public final class BinaryDictionary extends Dictionary {
                 session.mSpaceIndices, session.mOutputTypes,
                 session.mOutputAutoCommitFirstWordConfidence,
                 session.mInputOutputWeightOfLangModelVsSpatialModel);
+        final long duration = SystemClock.uptimeMillis() - startTime;
+        StatsUtils.onGetSuggestionsNative(duration);
+        if (duration >= SLOW_DECODER_OPERATION_MS) {
+            StatsUtils.onDecoderLaggy(DECODER_OPERATION_GET_SUGGESTIONS, duration);
+        }
         if (inOutWeightOfLangModelVsSpatialModel != null) {
             inOutWeightOfLangModelVsSpatialModel[0] =
                     session.mInputOutputWeightOfLangModelVsSpatialModel[0];
         }
         final int count = session.mOutputSuggestionCount[0];
-        final ArrayList<SuggestedWordInfo> suggestions = new ArrayList<>();
+        final ArrayList<SuggestedWordInfo> suggestions = new ArrayList<>(count);
         for (int j = 0; j < count; ++j) {
-            final int start = j * DICTIONARY_MAX_WORD_LENGTH;
-            int len = 0;
-            while (len < DICTIONARY_MAX_WORD_LENGTH
-                    && session.mOutputCodePoints[start + len] != 0) {
-                ++len;
-            }
-            if (len > 0) {
-                suggestions.add(new SuggestedWordInfo(
-                        new String(session.mOutputCodePoints, start, len),
+            final String word = session.getOutputWord(j);
+            if (word != null) {
+                suggestions.add(new SuggestedWordInfo(word,
                         "" /* prevWordsContext */,
                         (int)(session.mOutputScores[j] * weightForLocale),
                         session.mOutputTypes[j],
@@ -489,6 +495,23 @@ public final class BinaryDictionary extends Dictionary {
         return true;
     }
 
+    // Remove an n-gram entry from the binary dictionary in native code.
+    public boolean removeNgramEntry(final NgramContext ngramContext, final String word) {
+        if (!ngramContext.isValid() || TextUtils.isEmpty(word)) {
+            return false;
+        }
+        final int[][] prevWordCodePointArrays = new int[ngramContext.getPrevWordCount()][];
+        final boolean[] isBeginningOfSentenceArray = new boolean[ngramContext.getPrevWordCount()];
+        ngramContext.outputToArray(prevWordCodePointArrays, isBeginningOfSentenceArray);
+        final int[] wordCodePoints = StringUtils.toCodePointArray(word);
+        if (!removeNgramEntryNative(mNativeDict, prevWordCodePointArrays,
+                isBeginningOfSentenceArray, wordCodePoints)) {
+            return false;
+        }
+        mHasUpdated = true;
+        return true;
+    }
+
     // Update entries for the word occurrence with the ngramContext.
     public boolean updateEntriesForWordWithNgramContext(@Nonnull final NgramContext ngramContext,
             final String word, final boolean isValidWord, final int count, final int timestamp) {
@@ -42,11 +42,13 @@ import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -71,6 +73,10 @@ public final class BinaryDictionaryFileDumper {
     private static final byte[] MAGIC_NUMBER_VERSION_2 =
             new byte[] { (byte)0x9B, (byte)0xC1, (byte)0x3A, (byte)0xFE };
 
+    private static final byte[] GZIP_MAGIC_NUMBER = new byte[] { (byte)0x1F, (byte)0x8B };
+    // Word lists may be compressed, crypted, then compressed again.
+    private static final int MAX_UNCOMPRESS_COUNT = 2;
+
     private static final boolean SHOULD_VERIFY_MAGIC_NUMBER =
             DecoderSpecificConstants.SHOULD_VERIFY_MAGIC_NUMBER;
     private static final boolean SHOULD_VERIFY_CHECKSUM =
@@ -231,15 +237,6 @@ public final class BinaryDictionaryFileDumper {
     private static void installWordListToStaging(final String wordlistId, final String locale,
             final String rawChecksum, final ContentProviderClient providerClient,
             final Context context) {
-        final int COMPRESSED_CRYPTED_COMPRESSED = 0;
-        final int CRYPTED_COMPRESSED = 1;
-        final int COMPRESSED_CRYPTED = 2;
-        final int COMPRESSED_ONLY = 3;
-        final int CRYPTED_ONLY = 4;
-        final int NONE = 5;
-        final int MODE_MIN = COMPRESSED_CRYPTED_COMPRESSED;
-        final int MODE_MAX = NONE;
-
         final String clientId = context.getString(R.string.dictionary_pack_client_id);
         final Uri.Builder wordListUriBuilder;
         try {
@@ -259,106 +256,73 @@ public final class BinaryDictionaryFileDumper {
             return;
         }
 
-        for (int mode = MODE_MIN; mode <= MODE_MAX; ++mode) {
-            final InputStream originalSourceStream;
-            InputStream inputStream = null;
-            InputStream uncompressedStream = null;
-            InputStream decryptedStream = null;
-            BufferedInputStream bufferedInputStream = null;
-            File outputFile = null;
-            BufferedOutputStream bufferedOutputStream = null;
-            AssetFileDescriptor afd = null;
-            final Uri wordListUri = wordListUriBuilder.build();
-            try {
-                // Open input.
-                afd = openAssetFileDescriptor(providerClient, wordListUri);
-                // If we can't open it at all, don't even try a number of times.
-                if (null == afd) return;
-                originalSourceStream = afd.createInputStream();
-                // Open output.
-                outputFile = new File(tempFileName);
-                // Just to be sure, delete the file. This may fail silently, and return false: this
-                // is the right thing to do, as we just want to continue anyway.
-                outputFile.delete();
-                // Get the appropriate decryption method for this try
-                switch (mode) {
-                    case COMPRESSED_CRYPTED_COMPRESSED:
-                        uncompressedStream =
-                                FileTransforms.getUncompressedStream(originalSourceStream);
-                        decryptedStream = FileTransforms.getDecryptedStream(uncompressedStream);
-                        inputStream = FileTransforms.getUncompressedStream(decryptedStream);
-                        break;
-                    case CRYPTED_COMPRESSED:
-                        decryptedStream = FileTransforms.getDecryptedStream(originalSourceStream);
-                        inputStream = FileTransforms.getUncompressedStream(decryptedStream);
-                        break;
-                    case COMPRESSED_CRYPTED:
-                        uncompressedStream =
-                                FileTransforms.getUncompressedStream(originalSourceStream);
-                        inputStream = FileTransforms.getDecryptedStream(uncompressedStream);
-                        break;
-                    case COMPRESSED_ONLY:
-                        inputStream = FileTransforms.getUncompressedStream(originalSourceStream);
-                        break;
-                    case CRYPTED_ONLY:
-                        inputStream = FileTransforms.getDecryptedStream(originalSourceStream);
-                        break;
-                    case NONE:
-                        inputStream = originalSourceStream;
-                        break;
-                }
-                bufferedInputStream = new BufferedInputStream(inputStream);
-                bufferedOutputStream = new BufferedOutputStream(new FileOutputStream(outputFile));
-                checkMagicAndCopyFileTo(bufferedInputStream, bufferedOutputStream);
-                bufferedOutputStream.flush();
-                bufferedOutputStream.close();
-
-                if (SHOULD_VERIFY_CHECKSUM) {
-                    final String actualRawChecksum = MD5Calculator.checksum(
-                            new BufferedInputStream(new FileInputStream(outputFile)));
-                    Log.i(TAG, "Computed checksum for downloaded dictionary. Expected = "
-                            + rawChecksum + " ; actual = " + actualRawChecksum);
-                    if (!TextUtils.isEmpty(rawChecksum) && !rawChecksum.equals(actualRawChecksum)) {
-                        throw new IOException(
-                                "Could not decode the file correctly : checksum differs");
-                    }
+        BufferedInputStream bufferedInputStream = null;
+        File outputFile = null;
+        BufferedOutputStream bufferedOutputStream = null;
+        AssetFileDescriptor afd = null;
+        final Uri wordListUri = wordListUriBuilder.build();
+        try {
+            // Open input.
+            afd = openAssetFileDescriptor(providerClient, wordListUri);
+            // If we can't open it at all, there is nothing to report.
+            if (null == afd) return;
+            bufferedInputStream = getDecodedWordListStream(afd.createInputStream());
+            // Open output.
+            outputFile = new File(tempFileName);
+            // Just to be sure, delete the file. This may fail silently, and return false: this
+            // is the right thing to do, as we just want to continue anyway.
+            outputFile.delete();
+            // Compute the checksum while copying, so that the file does not need to be read again.
+            final MessageDigest digester = SHOULD_VERIFY_CHECKSUM
+                    ? MD5Calculator.getDigester() : null;
+            final OutputStream fileOutputStream = new FileOutputStream(outputFile);
+            bufferedOutputStream = new BufferedOutputStream(null == digester ? fileOutputStream
+                    : new DigestOutputStream(fileOutputStream, digester));
+            checkMagicAndCopyFileTo(bufferedInputStream, bufferedOutputStream);
+            bufferedOutputStream.flush();
+            bufferedOutputStream.close();
+
+            if (SHOULD_VERIFY_CHECKSUM) {
+                final String actualRawChecksum = null == digester ? null
+                        : MD5Calculator.toHexString(digester.digest());
+                Log.i(TAG, "Computed checksum for downloaded dictionary. Expected = "
+                        + rawChecksum + " ; actual = " + actualRawChecksum);
+                if (!TextUtils.isEmpty(rawChecksum) && !rawChecksum.equals(actualRawChecksum)) {
+                    throw new IOException(
+                            "Could not decode the file correctly : checksum differs");
                 }
+            }
 
-                // move the output file to the final staging file.
-                final File finalFile = new File(finalFileName);
-                if (!FileUtils.renameTo(outputFile, finalFile)) {
-                    Log.e(TAG, String.format("Failed to rename from %s to %s.",
-                            outputFile.getAbsoluteFile(), finalFile.getAbsoluteFile()));
-                }
+            // move the output file to the final staging file.
+            final File finalFile = new File(finalFileName);
+            if (!FileUtils.renameTo(outputFile, finalFile)) {
+                Log.e(TAG, String.format("Failed to rename from %s to %s.",
+                        outputFile.getAbsoluteFile(), finalFile.getAbsoluteFile()));
+            }
 
-                wordListUriBuilder.appendQueryParameter(QUERY_PARAMETER_DELETE_RESULT,
-                        QUERY_PARAMETER_SUCCESS);
-                if (0 >= providerClient.delete(wordListUriBuilder.build(), null, null)) {
-                    Log.e(TAG, "Could not have the dictionary pack delete a word list");
-                }
-                Log.d(TAG, "Successfully copied file for wordlist ID " + wordlistId);
-                // Success! Close files (through the finally{} clause) and return.
-                return;
-            } catch (Exception e) {
-                if (DEBUG) {
-                    Log.e(TAG, "Can't open word list in mode " + mode, e);
-                }
-                if (null != outputFile) {
-                    // This may or may not fail. The file may not have been created if the
-                    // exception was thrown before it could be. Hence, both failure and
-                    // success are expected outcomes, so we don't check the return value.
-                    outputFile.delete();
-                }
-                // Try the next method.
-            } finally {
-                // Ignore exceptions while closing files.
-                closeAssetFileDescriptorAndReportAnyException(afd);
-                closeCloseableAndReportAnyException(inputStream);
-                closeCloseableAndReportAnyException(uncompressedStream);
-                closeCloseableAndReportAnyException(decryptedStream);
-                closeCloseableAndReportAnyException(bufferedInputStream);
-                closeCloseableAndReportAnyException(bufferedOutputStream);
+            wordListUriBuilder.appendQueryParameter(QUERY_PARAMETER_DELETE_RESULT,
+                    QUERY_PARAMETER_SUCCESS);
+            if (0 >= providerClient.delete(wordListUriBuilder.build(), null, null)) {
+                Log.e(TAG, "Could not have the dictionary pack delete a word list");
             }
+            Log.d(TAG, "Successfully copied file for wordlist ID " + wordlistId);
+            // Success! Close files (through the finally{} clause) and return.
+            return;
+        } catch (Exception e) {
+            if (DEBUG) {
+                Log.e(TAG, "Can't decode word list", e);
+            }
+            if (null != outputFile) {
+                // This may or may not fail. The file may not have been created if the
+                // exception was thrown before it could be. Hence, both failure and
+                // success are expected outcomes, so we don't check the return value.
+                outputFile.delete();
+            }
+        } finally {
+            // Ignore exceptions while closing files.
+            closeAssetFileDescriptorAndReportAnyException(afd);
+            closeCloseableAndReportAnyException(bufferedInputStream);
+            closeCloseableAndReportAnyException(bufferedOutputStream);
         }
 
         // We could not copy the file at all. This is very unexpected.
@@ -369,6 +333,61 @@ public final class BinaryDictionaryFileDumper {
         reportBrokenFileToDictionaryProvider(context, providerClient, clientId, wordlistId);
     }
 
+    /**
+     * Wraps a word list stream into the transforms needed to decode it.
+     *
+     * The transforms are picked by looking at the first bytes of each layer: gzip data is
+     * uncompressed, and data that is neither gzip nor a dictionary is decrypted once. This
+     * supports the same combinations as the supported encodings, from compressed, crypted then
+     * compressed again, down to no transform at all, while reading the source only once.
+     *
+     * @param source the raw word list stream.
+     * @return a stream of the decoded word list, which should start with the magic number.
+     */
+    private static BufferedInputStream getDecodedWordListStream(final InputStream source)
+            throws IOException {
+        BufferedInputStream stream = new BufferedInputStream(source);
+        boolean isDecrypted = false;
+        int uncompressCount = 0;
+        while (true) {
+            final byte[] header = peekBytes(stream, MAGIC_NUMBER_VERSION_2.length);
+            if (Arrays.equals(MAGIC_NUMBER_VERSION_2, header)
+                    || Arrays.equals(MAGIC_NUMBER_VERSION_1, header)) {
+                return stream;
+            }
+            if (header.length >= GZIP_MAGIC_NUMBER.length
+                    && header[0] == GZIP_MAGIC_NUMBER[0] && header[1] == GZIP_MAGIC_NUMBER[1]
+                    && uncompressCount < MAX_UNCOMPRESS_COUNT) {
+                stream = new BufferedInputStream(FileTransforms.getUncompressedStream(stream));
+                ++uncompressCount;
+            } else if (!isDecrypted) {
+                stream = new BufferedInputStream(FileTransforms.getDecryptedStream(stream));
+                isDecrypted = true;
+            } else {
+                // Nothing left to undo. checkMagicAndCopyFileTo rejects it if it has to.
+                return stream;
+            }
+        }
+    }
+
+    /**
+     * Returns up to the specified number of bytes from the start of the stream without
+     * consuming them.
+     */
+    private static byte[] peekBytes(final BufferedInputStream stream, final int length)
+            throws IOException {
+        final byte[] buffer = new byte[length];
+        stream.mark(length);
+        int readSize = 0;
+        while (readSize < length) {
+            final int size = stream.read(buffer, readSize, length - readSize);
+            if (size < 0) break;
+            readSize += size;
+        }
+        stream.reset();
+        return readSize == length ? buffer : Arrays.copyOf(buffer, readSize);
+    }
+
     public static boolean reportBrokenFileToDictionaryProvider(final Context context,
             final ContentProviderClient providerClient, final String clientId,
             final String wordlistId) {
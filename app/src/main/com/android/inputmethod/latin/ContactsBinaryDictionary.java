@@ -21,6 +21,9 @@ import android.content.Context;
 import android.net.Uri;
 import android.provider.ContactsContract;
 import android.provider.ContactsContract.Contacts;
+import android.provider.ContactsContract.DeletedContacts;
+import android.provider.ContactsContract.Profile;
+import android.text.TextUtils;
 import android.util.Log;
 
 import com.android.inputmethod.annotations.ExternallyReferenced;
@@ -31,8 +34,11 @@ import com.android.inputmethod.latin.personalization.AccountUtils;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.annotation.Nullable;
 
@@ -50,6 +56,13 @@ public class ContactsBinaryDictionary extends ExpandableBinaryDictionary
     private final boolean mUseFirstLastBigrams;
     private final ContactsManager mContactsManager;
 
+    /**
+     * The state of the last synchronization with the contacts provider, when the dictionary is
+     * updated incrementally. Only accessed with the write lock held.
+     */
+    private ContactsDictionaryCheckpoint mCheckpoint;
+    private final AtomicBoolean mIsUpdatePending = new AtomicBoolean();
+
     protected ContactsBinaryDictionary(final Context context, final Locale locale,
             final File dictFile, final String name) {
         super(context, getDictName(name, locale, dictFile), locale, Dictionary.TYPE_CONTACTS,
@@ -58,6 +71,10 @@ public class ContactsBinaryDictionary extends ExpandableBinaryDictionary
         mContactsManager = new ContactsManager(context);
         mContactsManager.registerForUpdates(this /* listener */);
         reloadDictionaryIfRequired();
+        if (ContactsManager.supportsIncrementalUpdates()) {
+            // Apply the changes made since the dictionary was last updated by another process.
+            onContactsChange();
+        }
     }
 
     // Note: This method is called by {@link DictionaryFacilitator} using Java reflection.
@@ -80,10 +97,19 @@ public class ContactsBinaryDictionary extends ExpandableBinaryDictionary
      */
     @Override
     public void loadInitialContentsLocked() {
+        final File checkpointFile = ContactsDictionaryCheckpoint.getFile(getDictFile());
+        ContactsDictionaryCheckpoint.delete(checkpointFile);
+        // This reads all the contacts, so it supersedes any pending incremental update.
+        mIsUpdatePending.set(false);
+        mCheckpoint = ContactsManager.supportsIncrementalUpdates()
+                ? new ContactsDictionaryCheckpoint(System.currentTimeMillis()) : null;
         loadDeviceAccountsEmailAddressesLocked();
         loadDictionaryForUriLocked(ContactsContract.Profile.CONTENT_URI);
         // TODO: Switch this URL to the newer ContactsContract too
         loadDictionaryForUriLocked(Contacts.CONTENT_URI);
+        if (mCheckpoint != null && flushLocked()) {
+            mCheckpoint.write(checkpointFile);
+        }
     }
 
     /**
@@ -103,6 +129,10 @@ public class ContactsBinaryDictionary extends ExpandableBinaryDictionary
             addUnigramLocked(word, ContactsDictionaryConstants.FREQUENCY_FOR_CONTACTS,
                     false /* isNotAWord */, false /* isPossiblyOffensive */,
                     BinaryDictionary.NOT_A_VALID_TIMESTAMP);
+            if (mCheckpoint != null) {
+                // Account words are never removed incrementally.
+                mCheckpoint.retainWord(word);
+            }
         }
     }
 
@@ -115,6 +145,15 @@ public class ContactsBinaryDictionary extends ExpandableBinaryDictionary
             Log.i(TAG, "No permission to read contacts. Not loading the Dictionary.");
         }
 
+        if (mCheckpoint != null) {
+            // The profile contacts have their own range of ids, so they are recorded with the
+            // other contacts.
+            final HashMap<Long, String> contactNames = mContactsManager.getValidContactNames(uri);
+            for (final Map.Entry<Long, String> contactName : contactNames.entrySet()) {
+                addContactLocked(contactName.getKey(), contactName.getValue());
+            }
+            return;
+        }
         final ArrayList<String> validNames = mContactsManager.getValidNames(uri);
         for (final String name : validNames) {
             addNameLocked(name);
@@ -127,13 +166,11 @@ public class ContactsBinaryDictionary extends ExpandableBinaryDictionary
     }
 
     /**
-     * Adds the words in a name (e.g., firstname/lastname) to the binary dictionary along with their
-     * bigrams depending on locale.
+     * Returns the words in a name that are added to the dictionary.
      */
-    private void addNameLocked(final String name) {
+    private static ArrayList<String> getNameWords(final String name) {
+        final ArrayList<String> words = new ArrayList<>();
         int len = StringUtils.codePointCount(name);
-        NgramContext ngramContext = NgramContext.getEmptyPrevWordsContext(
-                BinaryDictionary.MAX_PREV_WORD_COUNT_FOR_N_GRAM);
         // TODO: Better tokenization for non-Latin writing systems
         for (int i = 0; i < len; i++) {
             if (Character.isLetter(name.codePointAt(i))) {
@@ -147,30 +184,198 @@ public class ContactsBinaryDictionary extends ExpandableBinaryDictionary
                 // capitalization of i.
                 final int wordLen = StringUtils.codePointCount(word);
                 if (wordLen <= MAX_WORD_LENGTH && wordLen > 1) {
-                    if (DEBUG) {
-                        Log.d(TAG, "addName " + name + ", " + word + ", "  + ngramContext);
-                    }
-                    runGCIfRequiredLocked(true /* mindsBlockByGC */);
-                    addUnigramLocked(word,
-                            ContactsDictionaryConstants.FREQUENCY_FOR_CONTACTS, false /* isNotAWord */,
-                            false /* isPossiblyOffensive */,
-                            BinaryDictionary.NOT_A_VALID_TIMESTAMP);
-                    if (ngramContext.isValid() && mUseFirstLastBigrams) {
-                        runGCIfRequiredLocked(true /* mindsBlockByGC */);
-                        addNgramEntryLocked(ngramContext,
-                                word,
-                                ContactsDictionaryConstants.FREQUENCY_FOR_CONTACTS_BIGRAM,
-                                BinaryDictionary.NOT_A_VALID_TIMESTAMP);
-                    }
-                    ngramContext = ngramContext.getNextNgramContext(
-                            new NgramContext.WordInfo(word));
+                    words.add(word);
                 }
             }
         }
+        return words;
+    }
+
+    /**
+     * Adds the words in a name (e.g., firstname/lastname) to the binary dictionary along with their
+     * bigrams depending on locale.
+     */
+    private void addNameLocked(final String name) {
+        NgramContext ngramContext = NgramContext.getEmptyPrevWordsContext(
+                BinaryDictionary.MAX_PREV_WORD_COUNT_FOR_N_GRAM);
+        for (final String word : getNameWords(name)) {
+            if (DEBUG) {
+                Log.d(TAG, "addName " + name + ", " + word + ", "  + ngramContext);
+            }
+            runGCIfRequiredLocked(true /* mindsBlockByGC */);
+            addUnigramLocked(word,
+                    ContactsDictionaryConstants.FREQUENCY_FOR_CONTACTS, false /* isNotAWord */,
+                    false /* isPossiblyOffensive */,
+                    BinaryDictionary.NOT_A_VALID_TIMESTAMP);
+            if (mCheckpoint != null) {
+                mCheckpoint.retainWord(word);
+            }
+            if (ngramContext.isValid() && mUseFirstLastBigrams) {
+                runGCIfRequiredLocked(true /* mindsBlockByGC */);
+                addNgramEntryLocked(ngramContext,
+                        word,
+                        ContactsDictionaryConstants.FREQUENCY_FOR_CONTACTS_BIGRAM,
+                        BinaryDictionary.NOT_A_VALID_TIMESTAMP);
+                if (mCheckpoint != null) {
+                    mCheckpoint.retainNgram(getNgramKey(ngramContext, word));
+                }
+            }
+            ngramContext = ngramContext.getNextNgramContext(
+                    new NgramContext.WordInfo(word));
+        }
+    }
+
+    private static String getNgramKey(final NgramContext ngramContext, final String word) {
+        return ngramContext.extractPrevWordsContext() + NgramContext.CONTEXT_SEPARATOR + word;
+    }
+
+    /**
+     * Removes the words and the n-grams of a name that no other name or account uses anymore.
+     * This walks the name as {@link #addNameLocked(String)} does.
+     */
+    private void removeNameLocked(final String name) {
+        NgramContext ngramContext = NgramContext.getEmptyPrevWordsContext(
+                BinaryDictionary.MAX_PREV_WORD_COUNT_FOR_N_GRAM);
+        for (final String word : getNameWords(name)) {
+            // The n-gram is removed while the words it refers to are still in the dictionary.
+            if (ngramContext.isValid() && mUseFirstLastBigrams
+                    && mCheckpoint.releaseNgram(getNgramKey(ngramContext, word))) {
+                if (DEBUG) {
+                    Log.d(TAG, "removeName " + name + ", " + word + ", " + ngramContext);
+                }
+                runGCIfRequiredLocked(true /* mindsBlockByGC */);
+                removeNgramEntryLocked(ngramContext, word);
+            }
+            if (mCheckpoint.releaseWord(word)) {
+                if (DEBUG) {
+                    Log.d(TAG, "removeName " + name + ", " + word);
+                }
+                runGCIfRequiredLocked(true /* mindsBlockByGC */);
+                removeUnigramLocked(word);
+            }
+            ngramContext = ngramContext.getNextNgramContext(
+                    new NgramContext.WordInfo(word));
+        }
+    }
+
+    private void addContactLocked(final long contactId, final String name) {
+        mCheckpoint.putContactName(contactId, name);
+        addNameLocked(name);
+    }
+
+    /**
+     * Applies the contacts that have been added, updated or deleted since the last
+     * synchronization, or schedules a full rebuild when this cannot be done incrementally.
+     */
+    private void updateContactsLocked() {
+        if (!PermissionsUtil.checkAllPermissionsGranted(
+                mContext, Manifest.permission.READ_CONTACTS)) {
+            Log.i(TAG, "No permission to read contacts. Not updating the Dictionary.");
+            return;
+        }
+        final File checkpointFile = ContactsDictionaryCheckpoint.getFile(getDictFile());
+        if (mCheckpoint == null) {
+            mCheckpoint = ContactsDictionaryCheckpoint.read(checkpointFile);
+        }
+        final ContactsDictionaryCheckpoint checkpoint = mCheckpoint;
+        final long startTime = System.currentTimeMillis();
+        final HashMap<Long, String> updatedContactNames;
+        final ArrayList<Long> deletedContactIds;
+        // The contacts provider forgets the deleted contacts after a while.
+        if (checkpoint != null && startTime - checkpoint.getLastSyncTimestamp()
+                < DeletedContacts.DAYS_KEPT_MILLISECONDS) {
+            updatedContactNames = mContactsManager.getUpdatedContactNames(
+                    checkpoint.getLastSyncTimestamp(), ContactsManager.MAX_CONTACT_NAMES);
+            deletedContactIds = mContactsManager.getDeletedContactIds(
+                    checkpoint.getLastSyncTimestamp(), ContactsManager.MAX_CONTACT_NAMES);
+        } else {
+            updatedContactNames = null;
+            deletedContactIds = null;
+        }
+        if (updatedContactNames == null || deletedContactIds == null) {
+            if (checkpoint != null && mContactsManager.getContactCount()
+                    > ContactsDictionaryConstants.MAX_CONTACTS_PROVIDER_QUERY_LIMIT) {
+                // As ContactsContentObserver does, don't rebuild the dictionary when there are
+                // too many contacts.
+                checkpoint.setLastSyncTimestamp(startTime);
+                checkpoint.write(checkpointFile);
+                return;
+            }
+            if (DEBUG) {
+                Log.d(TAG, "updateContacts: Cannot update incrementally. Recreating.");
+            }
+            setNeedsToRecreate();
+            return;
+        }
+        // The profile is not in the contacts that have changed, and there is at most a handful of
+        // profile names, so they are all compared with the ones in the dictionary.
+        final HashMap<Long, String> profileNames =
+                mContactsManager.getValidContactNames(Profile.CONTENT_URI);
+        for (final long contactId : checkpoint.getContactIdsFrom(Profile.MIN_ID)) {
+            if (!profileNames.containsKey(contactId)) {
+                deletedContactIds.add(contactId);
+            }
+        }
+        updatedContactNames.putAll(profileNames);
+        boolean hasUpdated = false;
+        for (final long contactId : deletedContactIds) {
+            final String name = checkpoint.removeContact(contactId);
+            if (name != null) {
+                removeNameLocked(name);
+                hasUpdated = true;
+            }
+        }
+        for (final Map.Entry<Long, String> contactName : updatedContactNames.entrySet()) {
+            final long contactId = contactName.getKey();
+            final String previousName = checkpoint.getContactName(contactId);
+            final String name = contactName.getValue();
+            if (TextUtils.equals(previousName, name)) {
+                continue;
+            }
+            if (previousName == null && contactId < Profile.MIN_ID
+                    && checkpoint.getContactCount() >= ContactsManager.MAX_CONTACT_NAMES) {
+                // A new contact has the lowest affinity, so it would not be among the names
+                // selected by a full rebuild either.
+                continue;
+            }
+            if (previousName != null) {
+                checkpoint.removeContact(contactId);
+                removeNameLocked(previousName);
+            }
+            if (name != null) {
+                addContactLocked(contactId, name);
+            }
+            hasUpdated = true;
+        }
+        if (DEBUG) {
+            Log.d(TAG, "updateContacts: " + updatedContactNames.size() + " updated, "
+                    + deletedContactIds.size() + " deleted in "
+                    + (System.currentTimeMillis() - startTime) + " ms");
+        }
+        checkpoint.setLastSyncTimestamp(startTime);
+        if (!hasUpdated || flushLocked()) {
+            checkpoint.write(checkpointFile);
+        }
     }
 
     @Override
     public void onContactsChange() {
-        setNeedsToRecreate();
+        if (!ContactsManager.supportsIncrementalUpdates()) {
+            setNeedsToRecreate();
+            return;
+        }
+        // Changes are often reported in bursts: one update reads all the changes made until it
+        // runs.
+        if (!mIsUpdatePending.compareAndSet(false /* expect */, true /* update */)) {
+            return;
+        }
+        // An update may read many contacts: reads use the snapshot in the meantime.
+        updateDictionaryWithWriteLock(true /* isLongTask */, new Runnable() {
+            @Override
+            public void run() {
+                mIsUpdatePending.set(false);
+                updateContactsLocked();
+            }
+        });
     }
 }
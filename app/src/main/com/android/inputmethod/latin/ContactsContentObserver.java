@@ -22,6 +22,7 @@ import android.content.Context;
 import android.database.ContentObserver;
 import android.os.SystemClock;
 import android.provider.ContactsContract.Contacts;
+import android.provider.ContactsContract.Profile;
 import android.util.Log;
 
 import com.android.inputmethod.latin.ContactsManager.ContactsChangedListener;
@@ -33,7 +34,8 @@ import java.util.ArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * A content observer that listens to updates to content provider {@link Contacts#CONTENT_URI}.
+ * A content observer that listens to updates to content provider {@link Contacts#CONTENT_URI},
+ * and to {@link Profile#CONTENT_URI} when the contacts dictionary is updated incrementally.
  */
 public class ContactsContentObserver implements Runnable {
     private static final String TAG = "ContactsContentObserver";
@@ -65,12 +67,18 @@ public class ContactsContentObserver implements Runnable {
         mContentObserver = new ContentObserver(null /* handler */) {
             @Override
             public void onChange(boolean self) {
-                ExecutorUtils.getBackgroundExecutor(ExecutorUtils.KEYBOARD)
-                        .execute(ContactsContentObserver.this);
+                ExecutorUtils.execute(ExecutorUtils.KEYBOARD, ExecutorUtils.LANE_BULK_RELOAD,
+                        ContactsContentObserver.this /* serializationKey */,
+                        ContactsContentObserver.this);
             }
         };
         final ContentResolver contentResolver = mContext.getContentResolver();
         contentResolver.registerContentObserver(Contacts.CONTENT_URI, true, mContentObserver);
+        if (ContactsManager.supportsIncrementalUpdates()) {
+            // The profile is not under Contacts.CONTENT_URI. Only the incremental update compares
+            // the profile names with the ones in the dictionary.
+            contentResolver.registerContentObserver(Profile.CONTENT_URI, true, mContentObserver);
+        }
     }
 
     @Override
@@ -88,7 +96,9 @@ public class ContactsContentObserver implements Runnable {
             }
             return;
         }
-        if (haveContentsChanged()) {
+        // When the contacts dictionary can find the changed contacts by itself, it is cheaper to
+        // let it do so than to read all the names here to detect a change.
+        if (ContactsManager.supportsIncrementalUpdates() || haveContentsChanged()) {
             if (DebugFlags.DEBUG_ENABLED) {
                 Log.d(TAG, "run() : Contacts have changed. Notifying listeners.");
             }
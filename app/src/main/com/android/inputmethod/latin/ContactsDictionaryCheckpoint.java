@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * The state of the contacts dictionary as of its last synchronization with the contacts provider.
+ *
+ * This records when the contacts were last read, the names of the contacts and of the profile
+ * that are in the dictionary, and how many of these names, and of the other sources of the
+ * dictionary, contain each word and each n-gram. This is what is needed to apply only the
+ * contacts that changed since then, and to remove a word or an n-gram only when no name uses it
+ * anymore. It is saved next to the dictionary file after
+ * the dictionary has been flushed, so that a new process can continue from it.
+ *
+ * This class is not thread safe. It is only accessed with the write lock of the dictionary held.
+ */
+public final class ContactsDictionaryCheckpoint {
+    private static final String TAG = ContactsDictionaryCheckpoint.class.getSimpleName();
+
+    private static final int MAGIC_NUMBER = 0x43444350;
+    private static final int FORMAT_VERSION = 2;
+    private static final String FILE_EXTENSION = ".sync";
+    private static final String TEMP_FILE_EXTENSION = ".tmp";
+
+    private long mLastSyncTimestamp;
+    // The names of the contacts in the dictionary, by contact id. The profile contacts are
+    // included, with their own range of ids.
+    private final HashMap<Long, String> mContactNames;
+    // The number of names and other sources that contain each word of the dictionary.
+    private final HashMap<String, Integer> mWordReferenceCounts;
+    // The number of names that contain each n-gram of the dictionary, by n-gram key.
+    private final HashMap<String, Integer> mNgramReferenceCounts;
+
+    /**
+     * @param lastSyncTimestamp the time at which the contacts provider started to be read, as the
+     * contacts provider timestamps.
+     */
+    public ContactsDictionaryCheckpoint(final long lastSyncTimestamp) {
+        this(lastSyncTimestamp, new HashMap<Long, String>(), new HashMap<String, Integer>(),
+                new HashMap<String, Integer>());
+    }
+
+    private ContactsDictionaryCheckpoint(final long lastSyncTimestamp,
+            final HashMap<Long, String> contactNames,
+            final HashMap<String, Integer> wordReferenceCounts,
+            final HashMap<String, Integer> ngramReferenceCounts) {
+        mLastSyncTimestamp = lastSyncTimestamp;
+        mContactNames = contactNames;
+        mWordReferenceCounts = wordReferenceCounts;
+        mNgramReferenceCounts = ngramReferenceCounts;
+    }
+
+    public static File getFile(@Nonnull final File dictFile) {
+        return new File(dictFile.getParentFile(), dictFile.getName() + FILE_EXTENSION);
+    }
+
+    public long getLastSyncTimestamp() {
+        return mLastSyncTimestamp;
+    }
+
+    public void setLastSyncTimestamp(final long lastSyncTimestamp) {
+        mLastSyncTimestamp = lastSyncTimestamp;
+    }
+
+    public int getContactCount() {
+        return mContactNames.size();
+    }
+
+    @Nullable
+    public String getContactName(final long contactId) {
+        return mContactNames.get(contactId);
+    }
+
+    /**
+     * Returns the ids of the contacts in the dictionary that are at or above the given id.
+     */
+    @Nonnull
+    public ArrayList<Long> getContactIdsFrom(final long minContactId) {
+        final ArrayList<Long> contactIds = new ArrayList<>();
+        for (final long contactId : mContactNames.keySet()) {
+            if (contactId >= minContactId) {
+                contactIds.add(contactId);
+            }
+        }
+        return contactIds;
+    }
+
+    /**
+     * Records the name of a contact. This does not update the word reference counts.
+     *
+     * @return the previous name of the contact, or null if it was not in the dictionary.
+     */
+    @Nullable
+    public String putContactName(final long contactId, @Nonnull final String name) {
+        return mContactNames.put(contactId, name);
+    }
+
+    /**
+     * Forgets a contact. This does not update the word reference counts.
+     *
+     * @return the name of the contact, or null if it was not in the dictionary.
+     */
+    @Nullable
+    public String removeContact(final long contactId) {
+        return mContactNames.remove(contactId);
+    }
+
+    /**
+     * Records one more use of a word.
+     */
+    public void retainWord(@Nonnull final String word) {
+        retain(mWordReferenceCounts, word);
+    }
+
+    /**
+     * Records one less use of a word.
+     *
+     * @return whether the word is not used anymore and can be removed from the dictionary.
+     */
+    public boolean releaseWord(@Nonnull final String word) {
+        return release(mWordReferenceCounts, word);
+    }
+
+    /**
+     * Records one more use of an n-gram.
+     *
+     * @param ngramKey a key that identifies the previous words and the word of the n-gram.
+     */
+    public void retainNgram(@Nonnull final String ngramKey) {
+        retain(mNgramReferenceCounts, ngramKey);
+    }
+
+    /**
+     * Records one less use of an n-gram.
+     *
+     * @return whether the n-gram is not used anymore and can be removed from the dictionary.
+     */
+    public boolean releaseNgram(@Nonnull final String ngramKey) {
+        return release(mNgramReferenceCounts, ngramKey);
+    }
+
+    private static void retain(final HashMap<String, Integer> referenceCounts, final String key) {
+        final Integer count = referenceCounts.get(key);
+        referenceCounts.put(key, (count == null) ? 1 : count + 1);
+    }
+
+    private static boolean release(final HashMap<String, Integer> referenceCounts,
+            final String key) {
+        final Integer count = referenceCounts.get(key);
+        if (count == null) {
+            // Not added by this checkpoint, so keep it.
+            return false;
+        }
+        if (count > 1) {
+            referenceCounts.put(key, count - 1);
+            return false;
+        }
+        referenceCounts.remove(key);
+        return true;
+    }
+
+    private static HashMap<String, Integer> readReferenceCounts(final DataInputStream in)
+            throws IOException {
+        final int count = in.readInt();
+        final HashMap<String, Integer> referenceCounts = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            referenceCounts.put(in.readUTF(), in.readInt());
+        }
+        return referenceCounts;
+    }
+
+    private static void writeReferenceCounts(final DataOutputStream out,
+            final HashMap<String, Integer> referenceCounts) throws IOException {
+        out.writeInt(referenceCounts.size());
+        for (final Map.Entry<String, Integer> entry : referenceCounts.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+    }
+
+    /**
+     * Reads a checkpoint.
+     *
+     * @return the checkpoint, or null if the file does not exist or cannot be read.
+     */
+    @Nullable
+    public static ContactsDictionaryCheckpoint read(@Nonnull final File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            final DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != MAGIC_NUMBER || in.readInt() != FORMAT_VERSION) {
+                    return null;
+                }
+                final long lastSyncTimestamp = in.readLong();
+                final int contactCount = in.readInt();
+                final HashMap<Long, String> contactNames = new HashMap<>();
+                for (int i = 0; i < contactCount; i++) {
+                    contactNames.put(in.readLong(), in.readUTF());
+                }
+                final HashMap<String, Integer> wordReferenceCounts = readReferenceCounts(in);
+                final HashMap<String, Integer> ngramReferenceCounts = readReferenceCounts(in);
+                return new ContactsDictionaryCheckpoint(lastSyncTimestamp, contactNames,
+                        wordReferenceCounts, ngramReferenceCounts);
+            } finally {
+                in.close();
+            }
+        } catch (final IOException e) {
+            Log.w(TAG, "Cannot read contacts dictionary checkpoint " + file, e);
+            delete(file);
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the checkpoint file. This must only be called once the dictionary contents this
+     * checkpoint describes have been flushed.
+     */
+    public void write(@Nonnull final File file) {
+        final File tempFile = new File(file.getParentFile(), file.getName() + TEMP_FILE_EXTENSION);
+        try {
+            final DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tempFile)));
+            try {
+                out.writeInt(MAGIC_NUMBER);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(mLastSyncTimestamp);
+                out.writeInt(mContactNames.size());
+                for (final Map.Entry<Long, String> entry : mContactNames.entrySet()) {
+                    out.writeLong(entry.getKey());
+                    out.writeUTF(entry.getValue());
+                }
+                writeReferenceCounts(out, mWordReferenceCounts);
+                writeReferenceCounts(out, mNgramReferenceCounts);
+            } finally {
+                out.close();
+            }
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Cannot rename " + tempFile + " to " + file);
+            }
+        } catch (final IOException e) {
+            Log.w(TAG, "Cannot write contacts dictionary checkpoint " + file, e);
+            delete(tempFile);
+            delete(file);
+        }
+    }
+
+    public static void delete(@Nonnull final File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Cannot delete " + file);
+        }
+    }
+}
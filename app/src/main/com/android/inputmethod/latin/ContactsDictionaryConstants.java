@@ -18,6 +18,7 @@ package com.android.inputmethod.latin;
 
 import android.provider.BaseColumns;
 import android.provider.ContactsContract.Contacts;
+import android.provider.ContactsContract.DeletedContacts;
 
 /**
  * Constants related to Contacts Content Provider.
@@ -29,6 +30,12 @@ public class ContactsDictionaryConstants {
     public static final String[] PROJECTION = { BaseColumns._ID, Contacts.DISPLAY_NAME,
             Contacts.TIMES_CONTACTED, Contacts.LAST_TIME_CONTACTED, Contacts.IN_VISIBLE_GROUP };
     public static final String[] PROJECTION_ID_ONLY = { BaseColumns._ID };
+    public static final String[] PROJECTION_ID_AND_NAME = { BaseColumns._ID,
+            Contacts.DISPLAY_NAME };
+    /**
+     * Projection for {@link DeletedContacts#CONTENT_URI}
+     */
+    public static final String[] PROJECTION_DELETED_CONTACT_ID = { DeletedContacts.CONTACT_ID };
 
     /**
      * Frequency for contacts information into the dictionary
@@ -41,6 +48,11 @@ public class ContactsDictionaryConstants {
      */
     public static final int MAX_CONTACTS_PROVIDER_QUERY_LIMIT = 10000;
 
+    /**
+     * Index of the column for the contact id in all the projections.
+     */
+    public static final int ID_INDEX = 0;
+
     /**
      * Index of the column for 'name' in content providers:
      * Contacts & ContactsContract.Profile.
@@ -20,15 +20,19 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteException;
 import android.net.Uri;
+import android.os.Build;
 import android.provider.ContactsContract.Contacts;
+import android.provider.ContactsContract.DeletedContacts;
 import android.text.TextUtils;
 import android.util.Log;
 
+import com.android.inputmethod.compat.BuildCompatUtils;
 import com.android.inputmethod.latin.common.Constants;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -48,6 +52,7 @@ public class ContactsManager {
     public static final int MAX_CONTACT_NAMES = 200;
 
     protected static class RankedContact {
+        public final long mId;
         public final String mName;
         public final long mLastContactedTime;
         public final int mTimesContacted;
@@ -56,6 +61,7 @@ public class ContactsManager {
         private float mAffinity = 0.0f;
 
         RankedContact(final Cursor cursor) {
+            mId = cursor.getLong(ContactsDictionaryConstants.ID_INDEX);
             mName = cursor.getString(
                     ContactsDictionaryConstants.NAME_INDEX);
             mTimesContacted = cursor.getInt(
@@ -149,6 +155,14 @@ public class ContactsManager {
      * contacts appearing first.
      */
     public ArrayList<String> getValidNames(final Uri uri) {
+        return new ArrayList<>(new HashSet<>(getValidContactNames(uri).values()));
+    }
+
+    /**
+     * Returns the names returned by {@link #getValidNames(Uri)} by contact id. The same name may
+     * belong to several contacts.
+     */
+    public HashMap<Long, String> getValidContactNames(final Uri uri) {
         // Check all contacts since it's not possible to find out which names have changed.
         // This is needed because it's possible to receive extraneous onChange events even when no
         // name has changed.
@@ -183,10 +197,97 @@ public class ContactsManager {
         }
         Collections.sort(contacts, new AffinityComparator());
         final HashSet<String> names = new HashSet<>();
-        for (int i = 0; i < contacts.size() && names.size() < MAX_CONTACT_NAMES; ++i) {
-            names.add(contacts.get(i).mName);
+        final HashMap<Long, String> contactNames = new HashMap<>();
+        for (int i = 0; i < contacts.size(); ++i) {
+            final RankedContact contact = contacts.get(i);
+            if (names.size() >= MAX_CONTACT_NAMES && !names.contains(contact.mName)) {
+                continue;
+            }
+            names.add(contact.mName);
+            contactNames.put(contact.mId, contact.mName);
+        }
+        return contactNames;
+    }
+
+    /**
+     * Returns whether the contacts provider records when contacts are updated and deleted, so
+     * that {@link #getUpdatedContactNames(long,int)} and {@link #getDeletedContactIds(long,int)}
+     * can be used.
+     */
+    public static boolean supportsIncrementalUpdates() {
+        return BuildCompatUtils.EFFECTIVE_SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+    }
+
+    /**
+     * Returns the names of the contacts that have been added or updated at or after the given
+     * time, by contact id. The contacts that do not have a valid name are mapped to null.
+     *
+     * @param sinceTimestamp the time in milliseconds, as the contacts provider timestamps.
+     * @param maxCount the maximum number of contacts to return.
+     * @return the names, or null if more than maxCount contacts have changed or if the contacts
+     * provider cannot be queried.
+     */
+    public HashMap<Long, String> getUpdatedContactNames(final long sinceTimestamp,
+            final int maxCount) {
+        Cursor cursor = null;
+        try {
+            cursor = mContext.getContentResolver().query(Contacts.CONTENT_URI,
+                    ContactsDictionaryConstants.PROJECTION_ID_AND_NAME,
+                    Contacts.CONTACT_LAST_UPDATED_TIMESTAMP + ">=?",
+                    new String[] { Long.toString(sinceTimestamp) }, null);
+            if (null == cursor || cursor.getCount() > maxCount) {
+                return null;
+            }
+            final HashMap<Long, String> contactNames = new HashMap<>();
+            while (cursor.moveToNext()) {
+                final String name = cursor.getString(ContactsDictionaryConstants.NAME_INDEX);
+                contactNames.put(cursor.getLong(ContactsDictionaryConstants.ID_INDEX),
+                        isValidName(name) ? name : null);
+            }
+            return contactNames;
+        } catch (final SQLiteException e) {
+            Log.e(TAG, "SQLiteException in the remote Contacts process.", e);
+            return null;
+        } finally {
+            if (null != cursor) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the ids of the contacts that have been deleted at or after the given time.
+     *
+     * @param sinceTimestamp the time in milliseconds, as the contacts provider timestamps. The
+     * contacts provider forgets the deletions older than
+     * {@link DeletedContacts#DAYS_KEPT_MILLISECONDS}.
+     * @param maxCount the maximum number of contacts to return.
+     * @return the ids, or null if more than maxCount contacts have been deleted or if the contacts
+     * provider cannot be queried.
+     */
+    public ArrayList<Long> getDeletedContactIds(final long sinceTimestamp, final int maxCount) {
+        Cursor cursor = null;
+        try {
+            cursor = mContext.getContentResolver().query(DeletedContacts.CONTENT_URI,
+                    ContactsDictionaryConstants.PROJECTION_DELETED_CONTACT_ID,
+                    DeletedContacts.CONTACT_DELETED_TIMESTAMP + ">=?",
+                    new String[] { Long.toString(sinceTimestamp) }, null);
+            if (null == cursor || cursor.getCount() > maxCount) {
+                return null;
+            }
+            final ArrayList<Long> contactIds = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                contactIds.add(cursor.getLong(ContactsDictionaryConstants.ID_INDEX));
+            }
+            return contactIds;
+        } catch (final SQLiteException e) {
+            Log.e(TAG, "SQLiteException in the remote Contacts process.", e);
+            return null;
+        } finally {
+            if (null != cursor) {
+                cursor.close();
+            }
         }
-        return new ArrayList<>(names);
     }
 
     /**
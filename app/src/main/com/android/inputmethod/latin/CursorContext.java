@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin;
+
+import com.android.inputmethod.latin.settings.SpacingAndPunctuations;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * The caps mode and the n-gram contexts at the cursor, as derived from the text before the
+ * cursor that {@link RichInputConnection} keeps.
+ *
+ * RichInputConnection tells this each time it edits the text before the cursor, and each edit
+ * starts a new version of the text. A value derived from a version of the text is kept until the
+ * next edit, so the caps mode and the n-gram context are only computed once per keystroke
+ * however many times they are asked for.
+ *
+ * Edits only happen on the UI thread. The values are immutable, so they can be read from any
+ * thread.
+ */
+final class CursorContext {
+    public static final int NOT_CACHED = -1;
+
+    // The n-gram contexts that are kept, by number of words to skip before the cursor.
+    private static final int MAX_CACHED_NTH_PREVIOUS_WORD = 2;
+
+    private static final class CapsMode {
+        public final int mVersion;
+        public final int mRequestedModes;
+        public final SpacingAndPunctuations mSpacingAndPunctuations;
+        public final boolean mHasSpaceBefore;
+        public final int mCapsMode;
+
+        public CapsMode(final int version, final int requestedModes,
+                final SpacingAndPunctuations spacingAndPunctuations, final boolean hasSpaceBefore,
+                final int capsMode) {
+            mVersion = version;
+            mRequestedModes = requestedModes;
+            mSpacingAndPunctuations = spacingAndPunctuations;
+            mHasSpaceBefore = hasSpaceBefore;
+            mCapsMode = capsMode;
+        }
+    }
+
+    private static final class PreviousWords {
+        public final int mVersion;
+        public final SpacingAndPunctuations mSpacingAndPunctuations;
+        public final NgramContext mNgramContext;
+
+        public PreviousWords(final int version,
+                final SpacingAndPunctuations spacingAndPunctuations,
+                final NgramContext ngramContext) {
+            mVersion = version;
+            mSpacingAndPunctuations = spacingAndPunctuations;
+            mNgramContext = ngramContext;
+        }
+    }
+
+    private volatile int mVersion;
+    private volatile CapsMode mCapsMode;
+    private final PreviousWords[] mPreviousWords =
+            new PreviousWords[MAX_CACHED_NTH_PREVIOUS_WORD + 1];
+
+    /**
+     * Starts a new version of the text before the cursor.
+     */
+    // Called on the UI thread by RichInputConnection.
+    public void onTextChanged() {
+        mVersion++;
+    }
+
+    public int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * @return the caps mode computed for this version of the text with these arguments, or
+     * {@link #NOT_CACHED} if there is none.
+     */
+    public int getCapsMode(final int version, final int requestedModes,
+            @Nonnull final SpacingAndPunctuations spacingAndPunctuations,
+            final boolean hasSpaceBefore) {
+        final CapsMode capsMode = mCapsMode;
+        if (capsMode == null || capsMode.mVersion != version
+                || capsMode.mRequestedModes != requestedModes
+                || capsMode.mSpacingAndPunctuations != spacingAndPunctuations
+                || capsMode.mHasSpaceBefore != hasSpaceBefore) {
+            return NOT_CACHED;
+        }
+        return capsMode.mCapsMode;
+    }
+
+    public void setCapsMode(final int version, final int requestedModes,
+            @Nonnull final SpacingAndPunctuations spacingAndPunctuations,
+            final boolean hasSpaceBefore, final int capsMode) {
+        mCapsMode = new CapsMode(version, requestedModes, spacingAndPunctuations, hasSpaceBefore,
+                capsMode);
+    }
+
+    /**
+     * @return the n-gram context computed for this version of the text with these arguments, or
+     * null if there is none.
+     */
+    @Nullable
+    public NgramContext getNgramContext(final int version,
+            @Nonnull final SpacingAndPunctuations spacingAndPunctuations, final int n) {
+        if (n < 0 || n > MAX_CACHED_NTH_PREVIOUS_WORD) {
+            return null;
+        }
+        final PreviousWords previousWords = mPreviousWords[n];
+        if (previousWords == null || previousWords.mVersion != version
+                || previousWords.mSpacingAndPunctuations != spacingAndPunctuations) {
+            return null;
+        }
+        return previousWords.mNgramContext;
+    }
+
+    public void setNgramContext(final int version,
+            @Nonnull final SpacingAndPunctuations spacingAndPunctuations, final int n,
+            @Nonnull final NgramContext ngramContext) {
+        if (n < 0 || n > MAX_CACHED_NTH_PREVIOUS_WORD) {
+            return;
+        }
+        mPreviousWords[n] = new PreviousWords(version, spacingAndPunctuations, ngramContext);
+    }
+}
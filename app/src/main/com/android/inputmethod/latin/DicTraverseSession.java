@@ -21,6 +21,7 @@ import com.android.inputmethod.latin.define.DecoderSpecificConstants;
 import com.android.inputmethod.latin.utils.JniUtils;
 
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public final class DicTraverseSession {
     static {
@@ -28,6 +29,8 @@ public final class DicTraverseSession {
     }
     // Must be equal to MAX_RESULTS in native/jni/src/defines.h
     private static final int MAX_RESULTS = 18;
+    // Must be a power of 2.
+    private static final int OUTPUT_WORD_CACHE_SIZE = 64;
     public final int[] mInputCodePoints =
             new int[DecoderSpecificConstants.DICTIONARY_MAX_WORD_LENGTH];
     public final int[][] mPrevWordCodePointArrays =
@@ -46,6 +49,14 @@ public final class DicTraverseSession {
 
     public final NativeSuggestOptions mNativeSuggestOptions = new NativeSuggestOptions();
 
+    // Words decoded from mOutputCodePoints by the previous lookups, indexed by the hash of their
+    // code points. Most candidates come back from one keystroke to the next.
+    private final String[] mOutputWordCache = new String[OUTPUT_WORD_CACHE_SIZE];
+
+    // How many output words all the sessions had to decode, and how many they reused.
+    private static final AtomicInteger sDecodedOutputWordCount = new AtomicInteger();
+    private static final AtomicInteger sReusedOutputWordCount = new AtomicInteger();
+
     private static native long setDicTraverseSessionNative(String locale, long dictSize);
     private static native void initDicTraverseSessionNative(long nativeDicTraverseSession,
             long dictionary, int[] previousWord, int previousWordLength);
@@ -72,6 +83,59 @@ public final class DicTraverseSession {
                 mNativeDicTraverseSession, dictionary, previousWord, previousWordLength);
     }
 
+    /**
+     * Returns the word at the given index of {@link #mOutputCodePoints}, or null if it is empty.
+     * A word that was returned by a previous lookup of this session is returned as the same
+     * String instance.
+     */
+    public String getOutputWord(final int index) {
+        final int start = index * DecoderSpecificConstants.DICTIONARY_MAX_WORD_LENGTH;
+        int length = 0;
+        int hash = 0;
+        while (length < DecoderSpecificConstants.DICTIONARY_MAX_WORD_LENGTH
+                && mOutputCodePoints[start + length] != 0) {
+            hash = 31 * hash + mOutputCodePoints[start + length];
+            ++length;
+        }
+        if (length == 0) {
+            return null;
+        }
+        final int cacheIndex = (hash ^ (hash >>> 16)) & (OUTPUT_WORD_CACHE_SIZE - 1);
+        final String cachedWord = mOutputWordCache[cacheIndex];
+        if (cachedWord != null && hasCodePoints(cachedWord, start, length)) {
+            sReusedOutputWordCount.incrementAndGet();
+            return cachedWord;
+        }
+        final String word = new String(mOutputCodePoints, start, length);
+        mOutputWordCache[cacheIndex] = word;
+        sDecodedOutputWordCount.incrementAndGet();
+        return word;
+    }
+
+    private boolean hasCodePoints(final String word, final int start, final int length) {
+        final int wordLength = word.length();
+        int charIndex = 0;
+        for (int i = 0; i < length; ++i) {
+            if (charIndex >= wordLength) {
+                return false;
+            }
+            final int codePoint = word.codePointAt(charIndex);
+            if (codePoint != mOutputCodePoints[start + i]) {
+                return false;
+            }
+            charIndex += Character.charCount(codePoint);
+        }
+        return charIndex == wordLength;
+    }
+
+    /**
+     * Returns how many output words have been decoded and reused by all the sessions.
+     */
+    public static String dumpOutputWordStats() {
+        return "Output words: decoded=" + sDecodedOutputWordCount.get()
+                + " reused=" + sReusedOutputWordCount.get();
+    }
+
     private static long createNativeDicTraverseSession(String locale, long dictSize) {
         return setDicTraverseSessionNative(locale, dictSize);
     }
@@ -103,6 +103,12 @@ public interface DictionaryFacilitator {
      */
     void onFinishInput(Context context);
 
+    /**
+     * Applies the updates that are deferred to batch dictionary writes. Called when the process
+     * may be killed soon, e.g. when the keyboard is hidden.
+     */
+    void flushPendingUpdates();
+
     boolean isActive();
 
     Locale getLocale();
@@ -162,6 +168,13 @@ public interface DictionaryFacilitator {
                                                     final SettingsValuesForSuggestion settingsValuesForSuggestion, final int sessionId,
                                                     final int inputStyle);
 
+    /**
+     * Returns a number that changes whenever the dictionaries or the contents of any dictionary,
+     * including the user history, may have changed. Results computed from the dictionaries must
+     * not be reused across different values.
+     */
+    int getContentsGeneration();
+
     boolean isValidSpellingWord(final String word);
 
     boolean isValidSuggestionWord(final String word);
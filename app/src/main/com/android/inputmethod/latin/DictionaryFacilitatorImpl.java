@@ -18,6 +18,7 @@ package com.android.inputmethod.latin;
 
 import android.Manifest;
 import android.content.Context;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 import android.util.LruCache;
@@ -29,6 +30,7 @@ import com.android.inputmethod.latin.SuggestedWords.SuggestedWordInfo;
 import com.android.inputmethod.latin.common.ComposedData;
 import com.android.inputmethod.latin.common.Constants;
 import com.android.inputmethod.latin.common.StringUtils;
+import com.android.inputmethod.latin.define.ProductionFlags;
 import com.android.inputmethod.latin.permissions.PermissionsUtil;
 import com.android.inputmethod.latin.personalization.UserHistoryDictionary;
 import com.android.inputmethod.latin.settings.SettingsValuesForSuggestion;
@@ -45,9 +47,15 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -68,10 +76,17 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
     // dictionary.
     private static final int CAPITALIZED_FORM_MAX_PROBABILITY_FOR_INSERT = 140;
 
+    // The time the dictionaries looked up in parallel have to return their suggestions. A
+    // dictionary that misses it (e.g. because it's being written to) is left out of the results.
+    private static final long PARALLEL_LOOKUP_DEADLINE_MS = 100;
+
     private DictionaryGroup mDictionaryGroup = new DictionaryGroup();
     private volatile CountDownLatch mLatchForWaitingLoadingMainDictionaries = new CountDownLatch(0);
     // To synchronize assigning mDictionaryGroup to ensure closing dictionaries.
     private final Object mLock = new Object();
+    // Renewed whenever mDictionaryGroup or its main dictionary is replaced.
+    private final AtomicInteger mDictionaryGroupGeneration =
+            new AtomicInteger(ExpandableBinaryDictionary.newContentsGeneration());
 
     public static final Map<String, Class<? extends ExpandableBinaryDictionary>>
             DICT_TYPE_TO_CLASS = new HashMap<>();
@@ -86,6 +101,13 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
     private static final Class<?>[] DICT_FACTORY_METHOD_ARG_TYPES =
             new Class[] { Context.class, Locale.class, File.class, String.class, String.class };
 
+    // Parallel lookups that may still be running, keyed by dictionary type and session id. A
+    // traverse session must not be used by two lookups at the same time.
+    private final ConcurrentHashMap<String, Future<ArrayList<SuggestedWordInfo>>>
+            mParallelLookups = new ConcurrentHashMap<>();
+    private final AtomicInteger mTimedOutParallelLookupCount = new AtomicInteger();
+    private final AtomicInteger mSkippedParallelLookupCount = new AtomicInteger();
+
     private LruCache<String, Boolean> mValidSpellingWordReadCache;
     private LruCache<String, Boolean> mValidSpellingWordWriteCache;
 
@@ -225,6 +247,16 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
 
     @Override
     public void onFinishInput(Context context) {
+        flushPendingUpdates();
+    }
+
+    @Override
+    public void flushPendingUpdates() {
+        final ExpandableBinaryDictionary userHistoryDictionary =
+                mDictionaryGroup.getSubDict(Dictionary.TYPE_USER_HISTORY);
+        if (userHistoryDictionary instanceof UserHistoryDictionary) {
+            ((UserHistoryDictionary)userHistoryDictionary).flushPendingUpdates();
+        }
     }
 
     @Override
@@ -354,6 +386,7 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
         synchronized (mLock) {
             oldDictionaryGroup = mDictionaryGroup;
             mDictionaryGroup = newDictionaryGroup;
+            mDictionaryGroupGeneration.set(ExpandableBinaryDictionary.newContentsGeneration());
             if (hasAtLeastOneUninitializedMainDictionary()) {
                 asyncReloadUninitializedMainDictionaries(context, newLocale, listener);
             }
@@ -382,13 +415,14 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
             final Locale locale, final DictionaryInitializationListener listener) {
         final CountDownLatch latchForWaitingLoadingMainDictionary = new CountDownLatch(1);
         mLatchForWaitingLoadingMainDictionaries = latchForWaitingLoadingMainDictionary;
-        ExecutorUtils.getBackgroundExecutor(ExecutorUtils.KEYBOARD).execute(new Runnable() {
-            @Override
-            public void run() {
-                doReloadUninitializedMainDictionaries(
-                        context, locale, listener, latchForWaitingLoadingMainDictionary);
-            }
-        });
+        ExecutorUtils.execute(ExecutorUtils.KEYBOARD, ExecutorUtils.LANE_BULK_RELOAD,
+                this /* serializationKey */, new Runnable() {
+                    @Override
+                    public void run() {
+                        doReloadUninitializedMainDictionaries(
+                                context, locale, listener, latchForWaitingLoadingMainDictionary);
+                    }
+                });
     }
 
     void doReloadUninitializedMainDictionaries(final Context context, final Locale locale,
@@ -406,6 +440,7 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
         synchronized (mLock) {
             if (locale.equals(dictionaryGroup.mLocale)) {
                 dictionaryGroup.setMainDict(mainDict);
+                mDictionaryGroupGeneration.set(ExpandableBinaryDictionary.newContentsGeneration());
             } else {
                 // Dictionary facilitator has been reset for another locale.
                 mainDict.close();
@@ -446,6 +481,7 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
             }
         }
         mDictionaryGroup = new DictionaryGroup(locale, mainDictionary, account, subDicts);
+        mDictionaryGroupGeneration.set(ExpandableBinaryDictionary.newContentsGeneration());
     }
 
     public void closeDictionaries() {
@@ -453,6 +489,7 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
         synchronized (mLock) {
             dictionaryGroupToClose = mDictionaryGroup;
             mDictionaryGroup = new DictionaryGroup();
+            mDictionaryGroupGeneration.set(ExpandableBinaryDictionary.newContentsGeneration());
         }
         for (final String dictType : ALL_DICTIONARY_TYPES) {
             dictionaryGroupToClose.closeDict(dictType);
@@ -623,25 +660,129 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
                 false /* firstSuggestionExceedsConfidenceThreshold */);
         final float[] weightOfLangModelVsSpatialModel =
                 new float[] { Dictionary.NOT_A_WEIGHT_OF_LANG_MODEL_VS_SPATIAL_MODEL };
+        final DictionaryGroup dictionaryGroup = mDictionaryGroup;
+        final float weightForLocale = composedData.mIsBatchMode
+                ? dictionaryGroup.mWeightForGesturingInLocale
+                : dictionaryGroup.mWeightForTypingInLocale;
+        if (ProductionFlags.ENABLE_PARALLEL_DICTIONARY_LOOKUP) {
+            getSuggestionsInParallel(dictionaryGroup, composedData, ngramContext,
+                    proximityInfoHandle, settingsValuesForSuggestion, sessionId, weightForLocale,
+                    weightOfLangModelVsSpatialModel, suggestionResults);
+            return suggestionResults;
+        }
         for (final String dictType : ALL_DICTIONARY_TYPES) {
-            final Dictionary dictionary = mDictionaryGroup.getDict(dictType);
+            final Dictionary dictionary = dictionaryGroup.getDict(dictType);
             if (null == dictionary) continue;
-            final float weightForLocale = composedData.mIsBatchMode
-                    ? mDictionaryGroup.mWeightForGesturingInLocale
-                    : mDictionaryGroup.mWeightForTypingInLocale;
             final ArrayList<SuggestedWordInfo> dictionarySuggestions =
                     dictionary.getSuggestions(composedData, ngramContext,
                             proximityInfoHandle, settingsValuesForSuggestion, sessionId,
                             weightForLocale, weightOfLangModelVsSpatialModel);
-            if (null == dictionarySuggestions) continue;
-            suggestionResults.addAll(dictionarySuggestions);
-            if (null != suggestionResults.mRawSuggestions) {
-                suggestionResults.mRawSuggestions.addAll(dictionarySuggestions);
-            }
+            addDictionarySuggestions(suggestionResults, dictionarySuggestions);
         }
         return suggestionResults;
     }
 
+    private static void addDictionarySuggestions(final SuggestionResults suggestionResults,
+            final ArrayList<SuggestedWordInfo> dictionarySuggestions) {
+        if (null == dictionarySuggestions) return;
+        suggestionResults.addAll(dictionarySuggestions);
+        if (null != suggestionResults.mRawSuggestions) {
+            suggestionResults.mRawSuggestions.addAll(dictionarySuggestions);
+        }
+    }
+
+    /**
+     * Looks up the first available dictionary on the calling thread and the remaining ones on
+     * the {@link ExecutorUtils#SUGGESTION_LOOKUP} executor.
+     *
+     * The first lookup computes the weight of the language model vs the spatial model that the
+     * following dictionaries reuse, so every dictionary gets the same weight as in a sequential
+     * lookup. Results are merged in the order of {@link #ALL_DICTIONARY_TYPES} to keep the output
+     * deterministic. A dictionary that misses {@link #PARALLEL_LOOKUP_DEADLINE_MS} is left out,
+     * and is skipped until its pending lookup is done, even when it would be looked up first.
+     * Results that leave out a dictionary are marked as incomplete so that they are not cached.
+     */
+    private void getSuggestionsInParallel(final DictionaryGroup dictionaryGroup,
+            final ComposedData composedData, final NgramContext ngramContext,
+            final long proximityInfoHandle,
+            final SettingsValuesForSuggestion settingsValuesForSuggestion, final int sessionId,
+            final float weightForLocale, final float[] weightOfLangModelVsSpatialModel,
+            final SuggestionResults suggestionResults) {
+        final ArrayList<Future<ArrayList<SuggestedWordInfo>>> lookups = new ArrayList<>();
+        boolean hasLookedUpFirstDictionary = false;
+        for (final String dictType : ALL_DICTIONARY_TYPES) {
+            final Dictionary dictionary = dictionaryGroup.getDict(dictType);
+            if (null == dictionary) continue;
+            final String lookupKey = dictType + ":" + sessionId;
+            final Future<ArrayList<SuggestedWordInfo>> pendingLookup =
+                    mParallelLookups.get(lookupKey);
+            if (pendingLookup != null && !pendingLookup.isDone()) {
+                // The traverse session of this dictionary is still used by a timed-out lookup.
+                mSkippedParallelLookupCount.incrementAndGet();
+                suggestionResults.setIncomplete();
+                continue;
+            }
+            if (!hasLookedUpFirstDictionary) {
+                addDictionarySuggestions(suggestionResults, dictionary.getSuggestions(
+                        composedData, ngramContext, proximityInfoHandle,
+                        settingsValuesForSuggestion, sessionId, weightForLocale,
+                        weightOfLangModelVsSpatialModel));
+                hasLookedUpFirstDictionary = true;
+                continue;
+            }
+            // Each lookup writes the weight back, so give each of them its own copy.
+            final float[] weightForLookup = new float[] { weightOfLangModelVsSpatialModel[0] };
+            final Future<ArrayList<SuggestedWordInfo>> lookup;
+            try {
+                lookup = ExecutorUtils.getBackgroundExecutor(ExecutorUtils.SUGGESTION_LOOKUP)
+                        .submit(new Callable<ArrayList<SuggestedWordInfo>>() {
+                            @Override
+                            public ArrayList<SuggestedWordInfo> call() {
+                                return dictionary.getSuggestions(composedData, ngramContext,
+                                        proximityInfoHandle, settingsValuesForSuggestion,
+                                        sessionId, weightForLocale, weightForLookup);
+                            }
+                        });
+            } catch (final RejectedExecutionException e) {
+                Log.w(TAG, "Cannot look up " + dictType + " in parallel", e);
+                suggestionResults.setIncomplete();
+                continue;
+            }
+            mParallelLookups.put(lookupKey, lookup);
+            lookups.add(lookup);
+        }
+        final long deadline = SystemClock.uptimeMillis() + PARALLEL_LOOKUP_DEADLINE_MS;
+        for (final Future<ArrayList<SuggestedWordInfo>> lookup : lookups) {
+            try {
+                addDictionarySuggestions(suggestionResults, lookup.get(
+                        Math.max(0, deadline - SystemClock.uptimeMillis()),
+                        TimeUnit.MILLISECONDS));
+            } catch (final TimeoutException e) {
+                mTimedOutParallelLookupCount.incrementAndGet();
+                suggestionResults.setIncomplete();
+            } catch (final ExecutionException e) {
+                Log.e(TAG, "Failed to get suggestions", e);
+                suggestionResults.setIncomplete();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                suggestionResults.setIncomplete();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public int getContentsGeneration() {
+        // Every change renews a generation with one that is greater than all the existing ones,
+        // so the greatest generation changes whenever anything does.
+        int generation = mDictionaryGroupGeneration.get();
+        for (final ExpandableBinaryDictionary dictionary
+                : mDictionaryGroup.mSubDictMap.values()) {
+            generation = Math.max(generation, dictionary.getContentsGeneration());
+        }
+        return generation;
+    }
+
     public boolean isValidSpellingWord(final String word) {
         if (mValidSpellingWordReadCache != null) {
             final Boolean cachedValue = mValidSpellingWordReadCache.get(word);
@@ -731,6 +872,20 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
 
     @Override
     public String dump(final Context context) {
-        return "";
+        final StringBuilder sb = new StringBuilder();
+        sb.append(DicTraverseSession.dumpOutputWordStats());
+        if (ProductionFlags.ENABLE_PARALLEL_DICTIONARY_LOOKUP) {
+            sb.append("\nParallel lookups: timed out=" + mTimedOutParallelLookupCount.get()
+                    + " skipped=" + mSkippedParallelLookupCount.get());
+        }
+        for (final String dictType : DYNAMIC_DICTIONARY_TYPES) {
+            final ExpandableBinaryDictionary dictionary = mDictionaryGroup.getSubDict(dictType);
+            if (dictionary == null) continue;
+            if (sb.length() > 0) {
+                sb.append("\n");
+            }
+            sb.append(dictionary.dumpReadStats());
+        }
+        return sb.toString();
     }
 }
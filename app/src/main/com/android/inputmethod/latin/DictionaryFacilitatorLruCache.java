@@ -19,59 +19,133 @@ package com.android.inputmethod.latin;
 import android.content.Context;
 import android.util.Log;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Cache for dictionary facilitators of multiple locales.
- * This class automatically creates and releases up to 3 facilitator instances using LRU policy.
+ *
+ * This class keeps one facilitator per locale and releases the least recently used ones when the
+ * total size of their main dictionaries goes over {@link #MAX_TOTAL_MAIN_DICTIONARY_SIZE}. The
+ * most recently used facilitator is always kept, whatever its size. The main dictionaries of a
+ * new locale are loaded in the background, and each {@link #get} waits for them for a limited
+ * time.
+ *
+ * Every facilitator returned by {@link #get} must be given back with {@link #release}. An evicted
+ * facilitator is only closed once it has been released by all its users.
  */
 public class DictionaryFacilitatorLruCache {
     private static final String TAG = "DictionaryFacilitatorLruCache";
     private static final int WAIT_FOR_LOADING_MAIN_DICT_IN_MILLISECONDS = 1000;
-    private static final int MAX_RETRY_COUNT_FOR_WAITING_FOR_LOADING_DICT = 5;
+    private static final long MAX_TOTAL_MAIN_DICTIONARY_SIZE = 32 * 1024 * 1024;
 
     private final Context mContext;
     private final String mDictionaryNamePrefix;
     private final Object mLock = new Object();
-    private final DictionaryFacilitator mDictionaryFacilitator;
+    // The facilitators by locale, from the least to the most recently used. Guarded by mLock.
+    private final LinkedHashMap<Locale, Entry> mEntries =
+            new LinkedHashMap<>(4 /* initialCapacity */, 0.75f /* loadFactor */,
+                    true /* accessOrder */);
+    private final HashMap<Locale, LocaleStats> mLocaleStats = new HashMap<>();
+    // The evicted facilitators that are still used, to close when they are released.
+    // Guarded by mLock.
+    private final ArrayList<Entry> mEvictedEntries = new ArrayList<>();
+    private long mTotalMainDictionarySize;
     private boolean mUseContactsDictionary;
-    private Locale mLocale;
+
+    private static final class Entry {
+        public final DictionaryFacilitator mDictionaryFacilitator;
+        public final long mMainDictionarySize;
+        // The number of get() calls that have not been released yet.
+        public int mUseCount;
+
+        public Entry(final DictionaryFacilitator dictionaryFacilitator,
+                final long mainDictionarySize) {
+            mDictionaryFacilitator = dictionaryFacilitator;
+            mMainDictionarySize = mainDictionarySize;
+        }
+    }
+
+    private static final class LocaleStats {
+        public int mHitCount;
+        public int mMissCount;
+        public int mEvictionCount;
+    }
 
     public DictionaryFacilitatorLruCache(final Context context, final String dictionaryNamePrefix) {
         mContext = context;
         mDictionaryNamePrefix = dictionaryNamePrefix;
-        mDictionaryFacilitator = DictionaryFacilitatorProvider.getDictionaryFacilitator(
-                true /* isNeededForSpellChecking */);
     }
 
     private static void waitForLoadingMainDictionary(
             final DictionaryFacilitator dictionaryFacilitator) {
-        for (int i = 0; i < MAX_RETRY_COUNT_FOR_WAITING_FOR_LOADING_DICT; i++) {
-            try {
-                dictionaryFacilitator.waitForLoadingMainDictionaries(
-                        WAIT_FOR_LOADING_MAIN_DICT_IN_MILLISECONDS, TimeUnit.MILLISECONDS);
-                return;
-            } catch (final InterruptedException e) {
-                Log.i(TAG, "Interrupted during waiting for loading main dictionary.", e);
-                if (i < MAX_RETRY_COUNT_FOR_WAITING_FOR_LOADING_DICT - 1) {
-                    Log.i(TAG, "Retry", e);
-                } else {
-                    Log.w(TAG, "Give up retrying. Retried "
-                            + MAX_RETRY_COUNT_FOR_WAITING_FOR_LOADING_DICT + " times.", e);
-                }
+        try {
+            dictionaryFacilitator.waitForLoadingMainDictionaries(
+                    WAIT_FOR_LOADING_MAIN_DICT_IN_MILLISECONDS, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            Log.i(TAG, "Interrupted during waiting for loading main dictionary.", e);
+        }
+    }
+
+    private void resetDictionariesLocked(final DictionaryFacilitator dictionaryFacilitator,
+            final Locale locale) {
+        // Note: Given that personalized dictionaries are not used here; we can pass null account.
+        dictionaryFacilitator.resetDictionaries(mContext, locale,
+                mUseContactsDictionary, false /* usePersonalizedDicts */,
+                false /* forceReloadMainDictionary */, null /* account */,
+                mDictionaryNamePrefix, null /* listener */);
+    }
+
+    private long getMainDictionarySize(final Locale locale) {
+        final ArrayList<AssetFileAddress> assetFileList = BinaryDictionaryGetter.getDictionaryFiles(
+                locale, mContext, false /* notifyDictionaryPackForUpdates */);
+        long size = 0;
+        if (assetFileList != null) {
+            for (final AssetFileAddress assetFileAddress : assetFileList) {
+                size += assetFileAddress.mLength;
             }
         }
+        return size;
+    }
+
+    private LocaleStats getLocaleStatsLocked(final Locale locale) {
+        LocaleStats localeStats = mLocaleStats.get(locale);
+        if (localeStats == null) {
+            localeStats = new LocaleStats();
+            mLocaleStats.put(locale, localeStats);
+        }
+        return localeStats;
     }
 
-    private void resetDictionariesForLocaleLocked() {
-        // Nothing to do if the locale is null.  This would be the case before any get() calls.
-        if (mLocale != null) {
-          // Note: Given that personalized dictionaries are not used here; we can pass null account.
-          mDictionaryFacilitator.resetDictionaries(mContext, mLocale,
-              mUseContactsDictionary, false /* usePersonalizedDicts */,
-              false /* forceReloadMainDictionary */, null /* account */,
-              mDictionaryNamePrefix, null /* listener */);
+    /**
+     * Closes the facilitator of an entry that is no longer cached, or defers it until the entry
+     * is released if it is still used.
+     */
+    private void closeOrDeferLocked(final Entry entry) {
+        if (entry.mUseCount > 0) {
+            mEvictedEntries.add(entry);
+        } else {
+            entry.mDictionaryFacilitator.closeDictionaries();
+        }
+    }
+
+    /**
+     * Evicts the least recently used facilitators until the total size of the main dictionaries
+     * fits in the budget, keeping at least the most recently used one.
+     */
+    private void evictLocked() {
+        final Iterator<Map.Entry<Locale, Entry>> iterator = mEntries.entrySet().iterator();
+        while (mTotalMainDictionarySize > MAX_TOTAL_MAIN_DICTIONARY_SIZE && mEntries.size() > 1) {
+            final Map.Entry<Locale, Entry> eldest = iterator.next();
+            iterator.remove();
+            mTotalMainDictionarySize -= eldest.getValue().mMainDictionarySize;
+            closeOrDeferLocked(eldest.getValue());
+            getLocaleStatsLocked(eldest.getKey()).mEvictionCount++;
         }
     }
 
@@ -82,25 +156,95 @@ public class DictionaryFacilitatorLruCache {
                 return;
             }
             mUseContactsDictionary = useContactsDictionary;
-            resetDictionariesForLocaleLocked();
-            waitForLoadingMainDictionary(mDictionaryFacilitator);
+            for (final Map.Entry<Locale, Entry> entry : mEntries.entrySet()) {
+                resetDictionariesLocked(entry.getValue().mDictionaryFacilitator, entry.getKey());
+            }
         }
     }
 
+    /**
+     * Returns the facilitator for a locale, waiting for a limited time for its main dictionaries
+     * to be loaded. The facilitator must be given back with {@link #release} after use.
+     */
     public DictionaryFacilitator get(final Locale locale) {
+        final Entry entry;
+        synchronized (mLock) {
+            final Entry cachedEntry = mEntries.get(locale);
+            if (cachedEntry != null) {
+                getLocaleStatsLocked(locale).mHitCount++;
+                entry = cachedEntry;
+            } else {
+                getLocaleStatsLocked(locale).mMissCount++;
+                final DictionaryFacilitator dictionaryFacilitator =
+                        DictionaryFacilitatorProvider.getDictionaryFacilitator(
+                                true /* isNeededForSpellChecking */);
+                // This starts loading the main dictionaries in the background.
+                resetDictionariesLocked(dictionaryFacilitator, locale);
+                entry = new Entry(dictionaryFacilitator, getMainDictionarySize(locale));
+                mEntries.put(locale, entry);
+                mTotalMainDictionarySize += entry.mMainDictionarySize;
+                evictLocked();
+            }
+            // Taken before waiting, so that the facilitator is not closed if evicted meanwhile.
+            entry.mUseCount++;
+        }
+        // Wait outside of the lock so that the other locales can still be served. This returns
+        // immediately once the main dictionaries have been loaded.
+        waitForLoadingMainDictionary(entry.mDictionaryFacilitator);
+        return entry.mDictionaryFacilitator;
+    }
+
+    /**
+     * Gives back a facilitator returned by {@link #get}, closing it if it has been evicted and
+     * this was its last user.
+     */
+    public void release(final DictionaryFacilitator dictionaryFacilitator) {
         synchronized (mLock) {
-            if (!mDictionaryFacilitator.isForLocale(locale)) {
-                mLocale = locale;
-                resetDictionariesForLocaleLocked();
+            for (final Entry entry : mEntries.values()) {
+                if (entry.mDictionaryFacilitator == dictionaryFacilitator) {
+                    entry.mUseCount--;
+                    return;
+                }
+            }
+            for (int i = 0; i < mEvictedEntries.size(); i++) {
+                final Entry entry = mEvictedEntries.get(i);
+                if (entry.mDictionaryFacilitator == dictionaryFacilitator) {
+                    entry.mUseCount--;
+                    if (entry.mUseCount == 0) {
+                        mEvictedEntries.remove(i);
+                        entry.mDictionaryFacilitator.closeDictionaries();
+                    }
+                    return;
+                }
             }
-            waitForLoadingMainDictionary(mDictionaryFacilitator);
-            return mDictionaryFacilitator;
+            Log.e(TAG, "Released an unknown dictionary facilitator.");
         }
     }
 
     public void closeDictionaries() {
         synchronized (mLock) {
-            mDictionaryFacilitator.closeDictionaries();
+            for (final Entry entry : mEntries.values()) {
+                closeOrDeferLocked(entry);
+            }
+            mEntries.clear();
+            mTotalMainDictionarySize = 0;
+        }
+    }
+
+    public String dump() {
+        final StringBuilder sb = new StringBuilder(TAG);
+        synchronized (mLock) {
+            sb.append(": mainDictionarySize=").append(mTotalMainDictionarySize)
+                    .append(" locales=").append(mEntries.keySet())
+                    .append(" evictedInUse=").append(mEvictedEntries.size());
+            for (final Map.Entry<Locale, LocaleStats> entry : mLocaleStats.entrySet()) {
+                final LocaleStats localeStats = entry.getValue();
+                sb.append("\n  ").append(entry.getKey())
+                        .append(": hits=").append(localeStats.mHitCount)
+                        .append(" misses=").append(localeStats.mMissCount)
+                        .append(" evictions=").append(localeStats.mEvictionCount);
+            }
         }
+        return sb.toString();
     }
 }
@@ -19,10 +19,12 @@ package com.android.inputmethod.latin;
 import android.content.ContentProviderClient;
 import android.content.Context;
 import android.content.res.AssetFileDescriptor;
+import android.os.SystemClock;
 import android.util.Log;
 
 import AOSP.KEYBOARD.R;
 import com.android.inputmethod.latin.utils.DictionaryInfoUtils;
+import com.android.inputmethod.latin.utils.StatsUtils;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -52,6 +54,7 @@ public final class DictionaryFactory {
                     createReadOnlyBinaryDictionary(context, locale));
         }
 
+        final long startTime = SystemClock.uptimeMillis();
         final LinkedList<Dictionary> dictList = new LinkedList<>();
         final ArrayList<AssetFileAddress> assetFileList =
                 BinaryDictionaryGetter.getDictionaryFiles(locale, context, true);
@@ -73,6 +76,7 @@ public final class DictionaryFactory {
         // If the list is empty, that means we should not use any dictionary (for example, the user
         // explicitly disabled the main dictionary), so the following is okay. dictList is never
         // null, but if for some reason it is, DictionaryCollection handles it gracefully.
+        StatsUtils.onDictionaryLoaded(Dictionary.TYPE_MAIN, SystemClock.uptimeMillis() - startTime);
         return new DictionaryCollection(Dictionary.TYPE_MAIN, locale, dictList);
     }
 
@@ -17,6 +17,7 @@
 package com.android.inputmethod.latin;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.android.inputmethod.annotations.UsedForTesting;
@@ -32,6 +33,7 @@ import com.android.inputmethod.latin.settings.SettingsValuesForSuggestion;
 import com.android.inputmethod.latin.utils.AsyncResultHolder;
 import com.android.inputmethod.latin.utils.CombinedFormatUtils;
 import com.android.inputmethod.latin.utils.ExecutorUtils;
+import com.android.inputmethod.latin.utils.StatsUtils;
 import com.android.inputmethod.latin.utils.WordInputEventForPersonalization;
 
 import java.io.File;
@@ -42,6 +44,7 @@ import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -104,8 +107,36 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
 
     private final ReentrantReadWriteLock mLock;
 
+    /**
+     * A read-only copy of the dictionary as of its last flush. Readers use it instead of waiting
+     * when a task holds the write lock. It is opened before the first long task, e.g. a reload or
+     * a GC, so dictionaries that only get short writes do not keep a second copy, and it is
+     * reopened after each flush. Guarded by {@link #mSnapshotLock}, which is only write-locked to
+     * replace the snapshot.
+     */
+    private BinaryDictionary mSnapshotBinaryDictionary;
+
+    private final ReentrantReadWriteLock mSnapshotLock;
+
+    private final AtomicInteger mUncontendedReadCount;
+    private final AtomicInteger mSnapshotReadCount;
+    private final AtomicInteger mReadWithoutSnapshotCount;
+    /** The contended reads during the running write task, if any. */
+    private final AtomicInteger mContendedReadCountOfWriteTask;
+    /**
+     * The contended reads during write tasks that held the lock for longer than
+     * {@link #TIMEOUT_FOR_READ_OPS_IN_MILLISECONDS}, which used to make reads give up.
+     */
+    private final AtomicInteger mReadsPastOldTimeoutCount;
+
     private Map<String, String> mAdditionalAttributeMap = null;
 
+    /** The last contents generation given to any dictionary. */
+    private static final AtomicInteger sContentsGeneration = new AtomicInteger();
+
+    /** Renewed after each task that holds the write lock of this dictionary. */
+    private volatile int mContentsGeneration;
+
     /* A extension for a binary dictionary file. */
     protected static final String DICT_FILE_EXTENSION = ".dict";
 
@@ -149,6 +180,14 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
         mIsReloading = new AtomicBoolean();
         mNeedsToRecreate = false;
         mLock = new ReentrantReadWriteLock();
+        mSnapshotBinaryDictionary = null;
+        mSnapshotLock = new ReentrantReadWriteLock();
+        mUncontendedReadCount = new AtomicInteger();
+        mSnapshotReadCount = new AtomicInteger();
+        mReadWithoutSnapshotCount = new AtomicInteger();
+        mContendedReadCountOfWriteTask = new AtomicInteger();
+        mReadsPastOldTimeoutCount = new AtomicInteger();
+        mContentsGeneration = newContentsGeneration();
     }
 
     public static File getDictFile(final Context context, final String dictName,
@@ -157,27 +196,178 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
                 : new File(context.getFilesDir(), dictName + DICT_FILE_EXTENSION);
     }
 
+    protected File getDictFile() {
+        return mDictFile;
+    }
+
     public static String getDictName(final String name, final Locale locale,
             final File dictFile) {
         return dictFile != null ? dictFile.getName() : name + "." + locale.toString();
     }
 
+    /**
+     * Returns a contents generation that is greater than all the ones given so far.
+     */
+    static int newContentsGeneration() {
+        return sContentsGeneration.incrementAndGet();
+    }
+
+    /**
+     * Returns a number that changes whenever the contents of this dictionary may have changed.
+     * Generations are never reused, and a new dictionary gets a greater generation than all the
+     * existing ones.
+     */
+    public int getContentsGeneration() {
+        return mContentsGeneration;
+    }
+
     private void asyncExecuteTaskWithWriteLock(final Runnable task) {
-        asyncExecuteTaskWithLock(mLock.writeLock(), task);
+        asyncExecuteTaskWithWriteLock(ExecutorUtils.LANE_DICTIONARY_WRITE,
+                false /* isLongTask */, task);
     }
 
-    private static void asyncExecuteTaskWithLock(final Lock lock, final Runnable task) {
-        ExecutorUtils.getBackgroundExecutor(ExecutorUtils.KEYBOARD).execute(new Runnable() {
-            @Override
-            public void run() {
-                lock.lock();
-                try {
-                    task.run();
-                } finally {
-                    lock.unlock();
-                }
+    /**
+     * Runs a task with the write lock held.
+     *
+     * @param isLongTask whether the task may hold the write lock for long, e.g. a reload or a
+     * GC. If so, the snapshot is opened before the write lock is taken, so that the reads in the
+     * meantime do not come back empty.
+     */
+    private void asyncExecuteTaskWithWriteLock(final int lane, final boolean isLongTask,
+            final Runnable task) {
+        ExecutorUtils.execute(ExecutorUtils.KEYBOARD, lane, mDictFile.getAbsolutePath(),
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isLongTask) {
+                            openSnapshotIfRequired();
+                        }
+                        mLock.writeLock().lock();
+                        final long startTime = SystemClock.uptimeMillis();
+                        mContendedReadCountOfWriteTask.set(0);
+                        try {
+                            task.run();
+                        } finally {
+                            mContentsGeneration = newContentsGeneration();
+                            if (SystemClock.uptimeMillis() - startTime
+                                    > TIMEOUT_FOR_READ_OPS_IN_MILLISECONDS) {
+                                mReadsPastOldTimeoutCount.addAndGet(
+                                        mContendedReadCountOfWriteTask.get());
+                            }
+                            mLock.writeLock().unlock();
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Acquires the read lock if no task holds the write lock. Reads never wait for the write
+     * lock: they use the snapshot instead.
+     *
+     * @return whether the read lock is held.
+     */
+    private boolean tryLockForRead() {
+        if (mLock.readLock().tryLock()) {
+            mUncontendedReadCount.incrementAndGet();
+            return true;
+        }
+        mContendedReadCountOfWriteTask.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Returns the snapshot with its read lock held, or null if there is no snapshot, in which
+     * case no lock is held. Used when a task holds the write lock for too long.
+     */
+    @Nullable
+    private BinaryDictionary acquireSnapshotBinaryDictionary() {
+        mSnapshotLock.readLock().lock();
+        if (mSnapshotBinaryDictionary == null) {
+            mSnapshotLock.readLock().unlock();
+            mReadWithoutSnapshotCount.incrementAndGet();
+            return null;
+        }
+        mSnapshotReadCount.incrementAndGet();
+        return mSnapshotBinaryDictionary;
+    }
+
+    private void releaseSnapshotBinaryDictionary() {
+        mSnapshotLock.readLock().unlock();
+    }
+
+    private void setSnapshotBinaryDictionary(@Nullable final BinaryDictionary snapshot) {
+        mSnapshotLock.writeLock().lock();
+        try {
+            if (mSnapshotBinaryDictionary != null) {
+                mSnapshotBinaryDictionary.close();
             }
-        });
+            mSnapshotBinaryDictionary = snapshot;
+        } finally {
+            mSnapshotLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Opens a read-only dictionary on the dictionary file.
+     *
+     * @return the snapshot, or null if there is no valid dictionary file.
+     */
+    @Nullable
+    private BinaryDictionary openSnapshot() {
+        if (!mDictFile.exists()) {
+            return null;
+        }
+        final BinaryDictionary snapshot = new BinaryDictionary(
+                mDictFile.getAbsolutePath(), 0 /* offset */, mDictFile.length(),
+                true /* useFullEditDistance */, mLocale, mDictType, false /* isUpdatable */);
+        if (!snapshot.isValidDictionary()) {
+            snapshot.close();
+            return null;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Opens the snapshot if there is none. Called by the tasks of this dictionary before they
+     * take the write lock: these tasks run one after another and only they write the dictionary
+     * file, so the file is not written in the meantime.
+     */
+    private void openSnapshotIfRequired() {
+        if (mSnapshotBinaryDictionary != null) {
+            return;
+        }
+        final BinaryDictionary snapshot = openSnapshot();
+        if (snapshot != null) {
+            setSnapshotBinaryDictionary(snapshot);
+        }
+    }
+
+    /**
+     * Reopens the snapshot, if any, on the dictionary file that has just been written.
+     */
+    private void refreshSnapshotLocked() {
+        if (mSnapshotBinaryDictionary != null) {
+            setSnapshotBinaryDictionary(openSnapshot());
+        }
+    }
+
+    /**
+     * Runs a task with the lock held on the keyboard executor. The tasks of a dictionary file run
+     * in the order they were submitted.
+     */
+    private void asyncExecuteTaskWithLock(final Lock lock, final int lane, final Runnable task) {
+        ExecutorUtils.execute(ExecutorUtils.KEYBOARD, lane, mDictFile.getAbsolutePath(),
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        lock.lock();
+                        try {
+                            task.run();
+                        } finally {
+                            lock.unlock();
+                        }
+                    }
+                });
     }
 
     @Nullable
@@ -201,6 +391,7 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
             @Override
             public void run() {
                 closeBinaryDictionary();
+                setSnapshotBinaryDictionary(null);
             }
         });
     }
@@ -222,6 +413,7 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
             @Override
             public void run() {
                 removeBinaryDictionaryLocked();
+                setSnapshotBinaryDictionary(null);
             }
         });
     }
@@ -251,6 +443,8 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
             public void run() {
                 removeBinaryDictionaryLocked();
                 createOnMemoryBinaryDictionaryLocked();
+                // The cleared words must not be read anymore.
+                setSnapshotBinaryDictionary(null);
             }
         });
     }
@@ -259,7 +453,7 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
      * Check whether GC is needed and run GC if required.
      */
     public void runGCIfRequired(final boolean mindsBlockByGC) {
-        asyncExecuteTaskWithWriteLock(new Runnable() {
+        final Runnable task = new Runnable() {
             @Override
             public void run() {
                 if (getBinaryDictionary() == null) {
@@ -267,16 +461,35 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
                 }
                 runGCIfRequiredLocked(mindsBlockByGC);
             }
-        });
+        };
+        asyncExecuteTaskWithWriteLock(ExecutorUtils.LANE_DICTIONARY_WRITE, true /* isLongTask */,
+                task);
     }
 
     protected void runGCIfRequiredLocked(final boolean mindsBlockByGC) {
+        // GC only drops entries that have decayed, so the snapshot is still good enough.
         if (mBinaryDictionary.needsToRunGC(mindsBlockByGC)) {
             mBinaryDictionary.flushWithGC();
         }
     }
 
-    private void updateDictionaryWithWriteLock(@Nonnull final Runnable updateTask) {
+    /**
+     * Runs a task that updates the dictionary with the write lock held, once the dictionary has
+     * been loaded.
+     */
+    protected void updateDictionaryWithWriteLock(@Nonnull final Runnable updateTask) {
+        updateDictionaryWithWriteLock(false /* isLongTask */, updateTask);
+    }
+
+    /**
+     * Runs a task that updates the dictionary with the write lock held, once the dictionary has
+     * been loaded.
+     *
+     * @param isLongTask whether the task may hold the write lock for long. If so, reads use the
+     * snapshot of the dictionary in the meantime.
+     */
+    protected void updateDictionaryWithWriteLock(final boolean isLongTask,
+            @Nonnull final Runnable updateTask) {
         reloadDictionaryIfRequired();
         final Runnable task = new Runnable() {
             @Override
@@ -288,7 +501,7 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
                 updateTask.run();
             }
         };
-        asyncExecuteTaskWithWriteLock(task);
+        asyncExecuteTaskWithWriteLock(ExecutorUtils.LANE_DICTIONARY_WRITE, isLongTask, task);
     }
 
     /**
@@ -312,6 +525,14 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
         }
     }
 
+    protected void removeUnigramLocked(final String word) {
+        if (!mBinaryDictionary.removeUnigramEntry(word)) {
+            if (DEBUG) {
+                Log.i(TAG, "Cannot remove unigram entry: " + word);
+            }
+        }
+    }
+
     /**
      * Dynamically remove the unigram entry from the dictionary.
      */
@@ -362,6 +583,16 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
         }
     }
 
+    protected void removeNgramEntryLocked(@Nonnull final NgramContext ngramContext,
+            final String word) {
+        if (!mBinaryDictionary.removeNgramEntry(ngramContext, word)) {
+            if (DEBUG) {
+                Log.i(TAG, "Cannot remove n-gram entry.");
+                Log.i(TAG, "  NgramContext: " + ngramContext + ", word: " + word);
+            }
+        }
+    }
+
     /**
      * Update dictionary for the word with the ngramContext.
      */
@@ -405,7 +636,7 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
             @Nonnull final ArrayList<WordInputEventForPersonalization> inputEvents,
             final UpdateEntriesForInputEventsCallback callback) {
         reloadDictionaryIfRequired();
-        asyncExecuteTaskWithWriteLock(new Runnable() {
+        final Runnable task = new Runnable() {
             @Override
             public void run() {
                 try {
@@ -413,6 +644,7 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
                     if (binaryDictionary == null) {
                         return;
                     }
+                    runGCIfRequiredLocked(true /* mindsBlockByGC */);
                     binaryDictionary.updateEntriesForInputEvents(
                             inputEvents.toArray(
                                     new WordInputEventForPersonalization[inputEvents.size()]));
@@ -422,7 +654,9 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
                     }
                 }
             }
-        });
+        };
+        asyncExecuteTaskWithWriteLock(ExecutorUtils.LANE_DICTIONARY_WRITE, true /* isLongTask */,
+                task);
     }
 
     @Override
@@ -431,11 +665,8 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
             final SettingsValuesForSuggestion settingsValuesForSuggestion, final int sessionId,
             final float weightForLocale, final float[] inOutWeightOfLangModelVsSpatialModel) {
         reloadDictionaryIfRequired();
-        boolean lockAcquired = false;
-        try {
-            lockAcquired = mLock.readLock().tryLock(
-                    TIMEOUT_FOR_READ_OPS_IN_MILLISECONDS, TimeUnit.MILLISECONDS);
-            if (lockAcquired) {
+        if (tryLockForRead()) {
+            try {
                 if (mBinaryDictionary == null) {
                     return null;
                 }
@@ -449,38 +680,45 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
                     removeBinaryDictionary();
                 }
                 return suggestions;
-            }
-        } catch (final InterruptedException e) {
-            Log.e(TAG, "Interrupted tryLock() in getSuggestionsWithSessionId().", e);
-        } finally {
-            if (lockAcquired) {
+            } finally {
                 mLock.readLock().unlock();
             }
         }
-        return null;
+        final BinaryDictionary snapshot = acquireSnapshotBinaryDictionary();
+        if (snapshot == null) {
+            return null;
+        }
+        try {
+            return snapshot.getSuggestions(composedData, ngramContext, proximityInfoHandle,
+                    settingsValuesForSuggestion, sessionId, weightForLocale,
+                    inOutWeightOfLangModelVsSpatialModel);
+        } finally {
+            releaseSnapshotBinaryDictionary();
+        }
     }
 
     @Override
     public boolean isInDictionary(final String word) {
         reloadDictionaryIfRequired();
-        boolean lockAcquired = false;
-        try {
-            lockAcquired = mLock.readLock().tryLock(
-                    TIMEOUT_FOR_READ_OPS_IN_MILLISECONDS, TimeUnit.MILLISECONDS);
-            if (lockAcquired) {
+        if (tryLockForRead()) {
+            try {
                 if (mBinaryDictionary == null) {
                     return false;
                 }
                 return isInDictionaryLocked(word);
-            }
-        } catch (final InterruptedException e) {
-            Log.e(TAG, "Interrupted tryLock() in isInDictionary().", e);
-        } finally {
-            if (lockAcquired) {
+            } finally {
                 mLock.readLock().unlock();
             }
         }
-        return false;
+        final BinaryDictionary snapshot = acquireSnapshotBinaryDictionary();
+        if (snapshot == null) {
+            return false;
+        }
+        try {
+            return snapshot.isInDictionary(word);
+        } finally {
+            releaseSnapshotBinaryDictionary();
+        }
     }
 
     protected boolean isInDictionaryLocked(final String word) {
@@ -491,24 +729,25 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
     @Override
     public int getMaxFrequencyOfExactMatches(final String word) {
         reloadDictionaryIfRequired();
-        boolean lockAcquired = false;
-        try {
-            lockAcquired = mLock.readLock().tryLock(
-                    TIMEOUT_FOR_READ_OPS_IN_MILLISECONDS, TimeUnit.MILLISECONDS);
-            if (lockAcquired) {
+        if (tryLockForRead()) {
+            try {
                 if (mBinaryDictionary == null) {
                     return NOT_A_PROBABILITY;
                 }
                 return mBinaryDictionary.getMaxFrequencyOfExactMatches(word);
-            }
-        } catch (final InterruptedException e) {
-            Log.e(TAG, "Interrupted tryLock() in getMaxFrequencyOfExactMatches().", e);
-        } finally {
-            if (lockAcquired) {
+            } finally {
                 mLock.readLock().unlock();
             }
         }
-        return NOT_A_PROBABILITY;
+        final BinaryDictionary snapshot = acquireSnapshotBinaryDictionary();
+        if (snapshot == null) {
+            return NOT_A_PROBABILITY;
+        }
+        try {
+            return snapshot.getMaxFrequencyOfExactMatches(word);
+        } finally {
+            releaseSnapshotBinaryDictionary();
+        }
     }
 
 
@@ -538,7 +777,11 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
             if (!mBinaryDictionary.migrateTo(DICTIONARY_FORMAT_VERSION)) {
                 Log.e(TAG, "Dictionary migration failed: " + mDictName);
                 removeBinaryDictionaryLocked();
+                setSnapshotBinaryDictionary(null);
+                return;
             }
+            // The migration has rewritten the file.
+            refreshSnapshotLocked();
         }
     }
 
@@ -551,6 +794,8 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
         loadInitialContentsLocked();
         // Run GC and flush to file when initial contents have been loaded.
         mBinaryDictionary.flushWithGCIfHasUpdated();
+        // Until now, reads have used the snapshot of the previous file, if any.
+        refreshSnapshotLocked();
     }
 
     /**
@@ -596,9 +841,10 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
             return;
         }
         final File dictFile = mDictFile;
-        asyncExecuteTaskWithWriteLock(new Runnable() {
+        final Runnable task = new Runnable() {
             @Override
             public void run() {
+                final long startTime = SystemClock.uptimeMillis();
                 try {
                     if (!dictFile.exists() || isNeededToRecreate()) {
                         // If the dictionary file does not exist or contents have been updated,
@@ -621,29 +867,52 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
                     clearNeedsToRecreate();
                 } finally {
                     isReloading.set(false);
+                    StatsUtils.onDictionaryLoaded(mDictType,
+                            SystemClock.uptimeMillis() - startTime);
                 }
             }
-        });
+        };
+        asyncExecuteTaskWithWriteLock(ExecutorUtils.LANE_BULK_RELOAD, true /* isLongTask */, task);
+    }
+
+    /**
+     * Flushes the binary dictionary to the dictionary file if it has been updated. Subclasses
+     * that save their own state next to the dictionary file do it after this has succeeded.
+     *
+     * @return whether the dictionary file is up to date.
+     */
+    protected boolean flushLocked() {
+        if (!mBinaryDictionary.flushWithGCIfHasUpdated()) {
+            return false;
+        }
+        refreshSnapshotLocked();
+        return true;
     }
 
     /**
      * Flush binary dictionary to dictionary file.
      */
     public void asyncFlushBinaryDictionary() {
-        asyncExecuteTaskWithWriteLock(new Runnable() {
+        final Runnable task = new Runnable() {
             @Override
             public void run() {
                 final BinaryDictionary binaryDictionary = getBinaryDictionary();
                 if (binaryDictionary == null) {
                     return;
                 }
+                final boolean flushed;
                 if (binaryDictionary.needsToRunGC(false /* mindsBlockByGC */)) {
-                    binaryDictionary.flushWithGC();
+                    flushed = binaryDictionary.flushWithGC();
                 } else {
-                    binaryDictionary.flush();
+                    flushed = binaryDictionary.flush();
+                }
+                if (flushed) {
+                    refreshSnapshotLocked();
                 }
             }
-        });
+        };
+        asyncExecuteTaskWithWriteLock(ExecutorUtils.LANE_DICTIONARY_WRITE, true /* isLongTask */,
+                task);
     }
 
     public DictionaryStats getDictionaryStats() {
@@ -652,7 +921,7 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
         final File dictFile = mDictFile;
         final AsyncResultHolder<DictionaryStats> result =
                 new AsyncResultHolder<>("DictionaryStats");
-        asyncExecuteTaskWithLock(mLock.readLock(), new Runnable() {
+        asyncExecuteTaskWithLock(mLock.readLock(), ExecutorUtils.LANE_INTERACTIVE, new Runnable() {
             @Override
             public void run() {
                 result.set(new DictionaryStats(mLocale, dictName, dictName, dictFile, 0));
@@ -661,16 +930,30 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
         return result.get(null /* defaultValue */, TIMEOUT_FOR_READ_OPS_IN_MILLISECONDS);
     }
 
+    /**
+     * Returns how reads have been served while a task held the write lock.
+     */
+    public String dumpReadStats() {
+        return mDictName + ": reads: uncontended=" + mUncontendedReadCount.get()
+                + " from snapshot=" + mSnapshotReadCount.get()
+                + " without snapshot=" + mReadWithoutSnapshotCount.get()
+                + " past the old " + TIMEOUT_FOR_READ_OPS_IN_MILLISECONDS + "ms timeout="
+                + mReadsPastOldTimeoutCount.get();
+    }
+
     @UsedForTesting
     public void waitAllTasksForTests() {
         final CountDownLatch countDownLatch = new CountDownLatch(1);
-        asyncExecuteTaskWithWriteLock(new Runnable() {
-            @Override
-            public void run() {
-                countDownLatch.countDown();
-            }
-        });
         try {
+            // The tasks of the other lanes and keys, e.g. a contacts change or a reload of the
+            // dictionary group, may queue tasks for this dictionary: let them run first.
+            ExecutorUtils.awaitSubmittedTasks(ExecutorUtils.KEYBOARD);
+            asyncExecuteTaskWithWriteLock(new Runnable() {
+                @Override
+                public void run() {
+                    countDownLatch.countDown();
+                }
+            });
             countDownLatch.await();
         } catch (InterruptedException e) {
             Log.e(TAG, "Interrupted while waiting for finishing dictionary operations.", e);
@@ -688,7 +971,7 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
         reloadDictionaryIfRequired();
         final String tag = TAG;
         final String dictName = mDictName;
-        asyncExecuteTaskWithLock(mLock.readLock(), new Runnable() {
+        asyncExecuteTaskWithLock(mLock.readLock(), ExecutorUtils.LANE_BULK_RELOAD, new Runnable() {
             @Override
             public void run() {
                 Log.d(tag, "Dump dictionary: " + dictName + " for " + mLocale);
@@ -727,7 +1010,7 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
         reloadDictionaryIfRequired();
         final AsyncResultHolder<WordProperty[]> result =
                 new AsyncResultHolder<>("WordPropertiesForSync");
-        asyncExecuteTaskWithLock(mLock.readLock(), new Runnable() {
+        asyncExecuteTaskWithLock(mLock.readLock(), ExecutorUtils.LANE_INTERACTIVE, new Runnable() {
             @Override
             public void run() {
                 final ArrayList<WordProperty> wordPropertyList = new ArrayList<>();
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin;
+
+import android.inputmethodservice.InputMethodService;
+import android.os.Handler;
+import android.text.Editable;
+import android.text.Selection;
+import android.text.SpannableStringBuilder;
+import android.view.KeyEvent;
+import android.view.View;
+import android.view.inputmethod.BaseInputConnection;
+import android.view.inputmethod.CompletionInfo;
+import android.view.inputmethod.CorrectionInfo;
+import android.view.inputmethod.ExtractedText;
+import android.view.inputmethod.ExtractedTextRequest;
+
+import javax.annotation.Nonnull;
+
+/**
+ * An editor that only lives in memory, to replay typing sessions without an app.
+ *
+ * It does what a simple text field does with the text and the selection, and tells the input
+ * method about the changes of the selection through {@link InputMethodService#onUpdateSelection}
+ * asynchronously, as the framework does. Key events only edit the text for delete and enter, and
+ * for keys that have a character.
+ */
+final class InMemoryInputConnection extends BaseInputConnection {
+    @Nonnull private final InputMethodService mInputMethodService;
+    @Nonnull private final Handler mHandler = new Handler();
+    @Nonnull private final SpannableStringBuilder mEditable;
+    private int mBatchEditNesting;
+    // The selection and composing span that the input method has been told about.
+    private int mReportedSelectionStart;
+    private int mReportedSelectionEnd;
+    private int mReportedComposingStart = -1;
+    private int mReportedComposingEnd = -1;
+
+    /**
+     * @param targetView a view of the input method, that key events are never sent to.
+     */
+    public InMemoryInputConnection(@Nonnull final InputMethodService inputMethodService,
+            @Nonnull final View targetView, @Nonnull final CharSequence text,
+            final int selectionStart, final int selectionEnd) {
+        super(targetView, true /* fullEditor */);
+        mInputMethodService = inputMethodService;
+        mEditable = new SpannableStringBuilder(text);
+        final int length = mEditable.length();
+        mReportedSelectionStart = Math.max(0, Math.min(selectionStart, length));
+        mReportedSelectionEnd = Math.max(0, Math.min(selectionEnd, length));
+        Selection.setSelection(mEditable, mReportedSelectionStart, mReportedSelectionEnd);
+    }
+
+    @Override
+    public Editable getEditable() {
+        return mEditable;
+    }
+
+    @Nonnull
+    public String getText() {
+        return mEditable.toString();
+    }
+
+    public int getSelectionStart() {
+        return Selection.getSelectionStart(mEditable);
+    }
+
+    public int getSelectionEnd() {
+        return Selection.getSelectionEnd(mEditable);
+    }
+
+    @Override
+    public boolean beginBatchEdit() {
+        mBatchEditNesting++;
+        return true;
+    }
+
+    @Override
+    public boolean endBatchEdit() {
+        if (mBatchEditNesting > 0) {
+            mBatchEditNesting--;
+        }
+        reportSelectionIfChanged();
+        return mBatchEditNesting > 0;
+    }
+
+    @Override
+    public boolean commitText(final CharSequence text, final int newCursorPosition) {
+        final boolean result = super.commitText(text, newCursorPosition);
+        reportSelectionIfChanged();
+        return result;
+    }
+
+    @Override
+    public boolean setComposingText(final CharSequence text, final int newCursorPosition) {
+        final boolean result = super.setComposingText(text, newCursorPosition);
+        reportSelectionIfChanged();
+        return result;
+    }
+
+    @Override
+    public boolean setComposingRegion(final int start, final int end) {
+        final boolean result = super.setComposingRegion(start, end);
+        reportSelectionIfChanged();
+        return result;
+    }
+
+    @Override
+    public boolean finishComposingText() {
+        final boolean result = super.finishComposingText();
+        reportSelectionIfChanged();
+        return result;
+    }
+
+    @Override
+    public boolean deleteSurroundingText(final int beforeLength, final int afterLength) {
+        final boolean result = super.deleteSurroundingText(beforeLength, afterLength);
+        reportSelectionIfChanged();
+        return result;
+    }
+
+    @Override
+    public boolean setSelection(final int start, final int end) {
+        final boolean result = super.setSelection(start, end);
+        reportSelectionIfChanged();
+        return result;
+    }
+
+    @Override
+    public boolean commitCompletion(final CompletionInfo text) {
+        return commitText(text.getText(), 1 /* newCursorPosition */);
+    }
+
+    @Override
+    public boolean commitCorrection(final CorrectionInfo correctionInfo) {
+        return true;
+    }
+
+    @Override
+    public boolean sendKeyEvent(final KeyEvent event) {
+        if (event.getAction() != KeyEvent.ACTION_DOWN) {
+            return true;
+        }
+        switch (event.getKeyCode()) {
+        case KeyEvent.KEYCODE_DEL:
+            deleteBeforeCursor();
+            break;
+        case KeyEvent.KEYCODE_ENTER:
+            commitText("\n", 1 /* newCursorPosition */);
+            break;
+        default:
+            final int codePoint = event.getUnicodeChar();
+            if (codePoint != 0) {
+                commitText(new String(Character.toChars(codePoint)), 1 /* newCursorPosition */);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public ExtractedText getExtractedText(final ExtractedTextRequest request, final int flags) {
+        final ExtractedText extractedText = new ExtractedText();
+        extractedText.text = getText();
+        extractedText.startOffset = 0;
+        extractedText.partialStartOffset = -1;
+        extractedText.partialEndOffset = -1;
+        extractedText.selectionStart = getSelectionStart();
+        extractedText.selectionEnd = getSelectionEnd();
+        return extractedText;
+    }
+
+    @Override
+    public boolean performEditorAction(final int actionCode) {
+        // There is no app to perform the action.
+        return true;
+    }
+
+    /**
+     * Deletes the selection, or the character before the cursor, as a text field does for the
+     * delete key.
+     */
+    private void deleteBeforeCursor() {
+        final int start = getSelectionStart();
+        final int end = getSelectionEnd();
+        if (start != end) {
+            mEditable.delete(Math.min(start, end), Math.max(start, end));
+        } else if (start > 0) {
+            mEditable.delete(Character.offsetByCodePoints(mEditable, start, -1), start);
+        }
+        reportSelectionIfChanged();
+    }
+
+    private void reportSelectionIfChanged() {
+        if (mBatchEditNesting > 0) {
+            return;
+        }
+        final int selectionStart = getSelectionStart();
+        final int selectionEnd = getSelectionEnd();
+        final int composingStart = getComposingSpanStart(mEditable);
+        final int composingEnd = getComposingSpanEnd(mEditable);
+        if (selectionStart == mReportedSelectionStart && selectionEnd == mReportedSelectionEnd
+                && composingStart == mReportedComposingStart
+                && composingEnd == mReportedComposingEnd) {
+            return;
+        }
+        final int oldSelectionStart = mReportedSelectionStart;
+        final int oldSelectionEnd = mReportedSelectionEnd;
+        mReportedSelectionStart = selectionStart;
+        mReportedSelectionEnd = selectionEnd;
+        mReportedComposingStart = composingStart;
+        mReportedComposingEnd = composingEnd;
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mInputMethodService.onUpdateSelection(oldSelectionStart, oldSelectionEnd,
+                        selectionStart, selectionEnd, composingStart, composingEnd);
+            }
+        });
+    }
+}
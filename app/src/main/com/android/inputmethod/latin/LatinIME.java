@@ -65,6 +65,7 @@ import com.android.inputmethod.event.InputTransaction;
 import com.android.inputmethod.keyboard.Keyboard;
 import com.android.inputmethod.keyboard.KeyboardActionListener;
 import com.android.inputmethod.keyboard.KeyboardId;
+import com.android.inputmethod.keyboard.KeyboardLayoutSet;
 import com.android.inputmethod.keyboard.KeyboardSwitcher;
 import com.android.inputmethod.keyboard.MainKeyboardView;
 import com.android.inputmethod.latin.Suggest.OnGetSuggestedWordsCallback;
@@ -85,6 +86,7 @@ import com.android.inputmethod.latin.suggestions.SuggestionStripViewAccessor;
 import com.android.inputmethod.latin.touchinputconsumer.GestureConsumer;
 import com.android.inputmethod.latin.utils.ApplicationUtils;
 import com.android.inputmethod.latin.utils.DialogUtils;
+import com.android.inputmethod.latin.utils.ExecutorUtils;
 import com.android.inputmethod.latin.utils.ImportantNoticeUtils;
 import com.android.inputmethod.latin.utils.IntentUtils;
 import com.android.inputmethod.latin.utils.JniUtils;
@@ -94,14 +96,17 @@ import com.android.inputmethod.latin.utils.StatsUtilsManager;
 import com.android.inputmethod.latin.utils.SubtypeLocaleUtils;
 import com.android.inputmethod.latin.utils.ViewLayoutUtils;
 
+import java.io.File;
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import static com.android.inputmethod.latin.common.Constants.ImeOption.FORCE_ASCII;
 import static com.android.inputmethod.latin.common.Constants.ImeOption.NO_MICROPHONE;
@@ -129,12 +134,26 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
      */
     private static final String SCHEME_PACKAGE = "package";
 
+    // Pass this argument to dumpsys to write the latency histograms to LATENCIES_FILE_NAME in the
+    // files directory.
+    private static final String DUMP_ARG_EXPORT_LATENCIES = "--export-latencies";
+    private static final String LATENCIES_FILE_NAME = "latencies.txt";
+    // Pass these arguments to dumpsys to record the input to TYPING_SESSION_FILE_NAME in the files
+    // directory, and to replay it and write the report to TYPING_SESSION_REPORT_FILE_NAME.
+    private static final String DUMP_ARG_START_TYPING_SESSION = "--start-typing-session";
+    private static final String DUMP_ARG_STOP_TYPING_SESSION = "--stop-typing-session";
+    private static final String DUMP_ARG_REPLAY_TYPING_SESSION = "--replay-typing-session";
+    private static final String TYPING_SESSION_FILE_NAME = "typing_session.bin";
+    private static final String TYPING_SESSION_REPORT_FILE_NAME = "typing_session_report.txt";
+
     final Settings mSettings;
     private final DictionaryFacilitator mDictionaryFacilitator =
             DictionaryFacilitatorProvider.getDictionaryFacilitator(
                     false /* isNeededForSpellChecking */);
     final InputLogic mInputLogic = new InputLogic(this /* LatinIME */,
             this /* SuggestionStripViewAccessor */, mDictionaryFacilitator);
+    @Nullable private TypingSessionRecorder mTypingSessionRecorder;
+    @Nullable private TypingSessionReplayer mTypingSessionReplayer;
     // We expect to have only one decoder in almost all cases, hence the default capacity of 1.
     // If it turns out we need several, it will get grown seamlessly.
     final SparseArray<HardwareEventDecoder> mHardwareEventDecoders = new SparseArray<>(1);
@@ -152,6 +171,10 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
     // Working variable for {@link #startShowingInputView()} and
     // {@link #onEvaluateInputViewShown()}.
     private boolean mIsExecutingStartShowingInputView;
+    // The System.nanoTime() of the first input event whose suggestions have not been shown yet.
+    // Only meaningful when mHasPendingInputEvent is true.
+    private boolean mHasPendingInputEvent;
+    private long mPendingInputEventTime;
 
     // Object for reacting to adding/removing a dictionary pack.
     private final BroadcastReceiver mDictionaryPackInstallReceiver =
@@ -181,8 +204,9 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
         private static final int MSG_DEALLOCATE_MEMORY = 9;
         private static final int MSG_RESUME_SUGGESTIONS_FOR_START_INPUT = 10;
         private static final int MSG_SWITCH_LANGUAGE_AUTOMATICALLY = 11;
+        private static final int MSG_SUGGESTED_WORDS_READY = 12;
         // Update this when adding new messages
-        private static final int MSG_LAST = MSG_SWITCH_LANGUAGE_AUTOMATICALLY;
+        private static final int MSG_LAST = MSG_SUGGESTED_WORDS_READY;
 
         private static final int ARG1_NOT_GESTURE_INPUT = 0;
         private static final int ARG1_DISMISS_GESTURE_FLOATING_PREVIEW_TEXT = 1;
@@ -219,9 +243,13 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
             switch (msg.what) {
             case MSG_UPDATE_SUGGESTION_STRIP:
                 cancelUpdateSuggestionStrip();
-                latinIme.mInputLogic.performUpdateSuggestionStripSync(
+                latinIme.mInputLogic.performUpdateSuggestionStrip(
                         latinIme.mSettings.getCurrent(), msg.arg1 /* inputStyle */);
                 break;
+            case MSG_SUGGESTED_WORDS_READY:
+                latinIme.mInputLogic.onSuggestedWordsReady(msg.arg1 /* sequenceNumber */,
+                        this /* handler */);
+                break;
             case MSG_UPDATE_SHIFT_STATE:
                 switcher.requestUpdatingShiftState(latinIme.getCurrentAutoCapsState(),
                         latinIme.getCurrentRecapitalizeState());
@@ -347,6 +375,11 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
             return hasMessages(MSG_UPDATE_SUGGESTION_STRIP);
         }
 
+        public void postSuggestedWordsReady(final int sequenceNumber) {
+            obtainMessage(MSG_SUGGESTED_WORDS_READY, sequenceNumber,
+                    0 /* ignored */).sendToTarget();
+        }
+
         public boolean hasPendingReopenDictionaries() {
             return hasMessages(MSG_REOPEN_DICTIONARIES);
         }
@@ -706,6 +739,13 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
         super.onDestroy();
     }
 
+    @Override
+    public void onTrimMemory(final int level) {
+        super.onTrimMemory(level);
+        KeyboardLayoutSet.onTrimMemory(level);
+        mDictionaryFacilitator.flushPendingUpdates();
+    }
+
     @UsedForTesting
     public void recycle() {
         unregisterReceiver(mDictionaryPackInstallReceiver);
@@ -806,6 +846,11 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
     }
 
     void onStartInputInternal(final EditorInfo editorInfo, final boolean restarting) {
+        // A restarted editor may have become a password field, whose text must not be recorded.
+        if (mTypingSessionRecorder != null && !TypingSessionRecorder.canRecord(editorInfo)) {
+            discardTypingSessionRecording();
+        }
+        cancelTypingSessionReplay();
         super.onStartInput(editorInfo, restarting);
 
         // If the primary hint language does not match the current subtype language, then try
@@ -1010,6 +1055,11 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
     }
 
     void onFinishInputInternal() {
+        // A typing session is only recorded in a single editor.
+        stopTypingSessionRecording();
+        cancelTypingSessionReplay();
+        // The suggestions of an event in the previous editor are never going to be shown.
+        mHasPendingInputEvent = false;
         super.onFinishInput();
 
         mDictionaryFacilitator.onFinishInput(this);
@@ -1020,8 +1070,12 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
     }
 
     void onFinishInputViewInternal(final boolean finishingInput) {
+        // The replay needs the input view.
+        cancelTypingSessionReplay();
         super.onFinishInputView(finishingInput);
         cleanupInternalStateForFinishInput();
+        // The process may be killed while the keyboard is hidden.
+        mDictionaryFacilitator.flushPendingUpdates();
     }
 
     private void cleanupInternalStateForFinishInput() {
@@ -1055,6 +1109,9 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
         if (isInputViewShown()
                 && mInputLogic.onUpdateSelection(oldSelStart, oldSelEnd, newSelStart, newSelEnd,
                         settingsValues)) {
+            if (mTypingSessionRecorder != null) {
+                mTypingSessionRecorder.onCursorMove(newSelStart, newSelEnd);
+            }
             mKeyboardSwitcher.requestUpdatingShiftState(getCurrentAutoCapsState(),
                     getCurrentRecapitalizeState());
         }
@@ -1375,13 +1432,23 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
     // This method is public for testability of LatinIME, but also in the future it should
     // completely replace #onCodeInput.
     public void onEvent(@Nonnull final Event event) {
+        final long eventTime = System.nanoTime();
         if (Constants.CODE_SHORTCUT == event.mKeyCode) {
             mRichImm.switchToShortcutIme(this);
         }
+        if (mTypingSessionRecorder != null) {
+            mTypingSessionRecorder.onKeypress(event);
+        }
         final InputTransaction completeInputTransaction =
                 mInputLogic.onCodeInput(mSettings.getCurrent(), event,
                         mKeyboardSwitcher.getKeyboardShiftMode(),
                         mKeyboardSwitcher.getCurrentKeyboardScriptId(), mHandler);
+        // Only events that update the suggestion strip are timed, so that the time of an event
+        // that does not is not charged to the next one that does.
+        if (completeInputTransaction.requiresUpdateSuggestions() && !mHasPendingInputEvent) {
+            mHasPendingInputEvent = true;
+            mPendingInputEventTime = eventTime;
+        }
         updateStateAfterInputTransaction(completeInputTransaction);
         mKeyboardSwitcher.onEvent(event, getCurrentAutoCapsState(), getCurrentRecapitalizeState());
     }
@@ -1409,6 +1476,9 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
     public void onTextInput(final String rawText) {
         // TODO: have the keyboard pass the correct key code when we need it.
         final Event event = Event.createSoftwareTextEvent(rawText, Constants.CODE_OUTPUT_TEXT);
+        if (mTypingSessionRecorder != null) {
+            mTypingSessionRecorder.onTextInput(rawText);
+        }
         final InputTransaction completeInputTransaction =
                 mInputLogic.onTextInput(mSettings.getCurrent(), event,
                         mKeyboardSwitcher.getKeyboardShiftMode(), mHandler);
@@ -1418,6 +1488,9 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
 
     @Override
     public void onStartBatchInput() {
+        if (mTypingSessionRecorder != null) {
+            mTypingSessionRecorder.onStartBatchInput();
+        }
         mInputLogic.onStartBatchInput(mSettings.getCurrent(), mKeyboardSwitcher, mHandler);
         mGestureConsumer.onGestureStarted(
                 mRichImm.getCurrentSubtypeLocale(),
@@ -1426,17 +1499,26 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
 
     @Override
     public void onUpdateBatchInput(final InputPointers batchPointers) {
+        if (mTypingSessionRecorder != null) {
+            mTypingSessionRecorder.onUpdateBatchInput(batchPointers);
+        }
         mInputLogic.onUpdateBatchInput(batchPointers);
     }
 
     @Override
     public void onEndBatchInput(final InputPointers batchPointers) {
+        if (mTypingSessionRecorder != null) {
+            mTypingSessionRecorder.onEndBatchInput(batchPointers);
+        }
         mInputLogic.onEndBatchInput(batchPointers);
         mGestureConsumer.onGestureCompleted(batchPointers);
     }
 
     @Override
     public void onCancelBatchInput() {
+        if (mTypingSessionRecorder != null) {
+            mTypingSessionRecorder.onCancelBatchInput();
+        }
         mInputLogic.onCancelBatchInput(mHandler);
         mGestureConsumer.onGestureCanceled();
     }
@@ -1534,6 +1616,19 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
         }
     }
 
+    // TODO[IL]: Move this out of LatinIME.
+    // Called on the UI thread.
+    public void requestSuggestedWords(final int inputStyle, final int sequenceNumber,
+            final OnGetSuggestedWordsCallback callback) {
+        final Keyboard keyboard = mKeyboardSwitcher.getKeyboard();
+        if (keyboard == null) {
+            callback.onGetSuggestedWords(SuggestedWords.getEmptyInstance());
+            return;
+        }
+        mInputLogic.requestSuggestedWords(mSettings.getCurrent(), keyboard,
+                mKeyboardSwitcher.getKeyboardShiftMode(), inputStyle, sequenceNumber, callback);
+    }
+
     // TODO[IL]: Move this out of LatinIME.
     public void getSuggestedWords(final int inputStyle, final int sequenceNumber,
             final OnGetSuggestedWordsCallback callback) {
@@ -1548,6 +1643,11 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
 
     @Override
     public void showSuggestionStrip(final SuggestedWords suggestedWords) {
+        if (mHasPendingInputEvent) {
+            StatsUtils.onSuggestionStripShown(TimeUnit.NANOSECONDS.toMillis(
+                    System.nanoTime() - mPendingInputEventTime));
+            mHasPendingInputEvent = false;
+        }
         if (suggestedWords.isEmpty()) {
             setNeutralSuggestionStrip();
         } else {
@@ -1562,6 +1662,9 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
     // interface
     @Override
     public void pickSuggestionManually(final SuggestedWordInfo suggestionInfo) {
+        if (mTypingSessionRecorder != null) {
+            mTypingSessionRecorder.onPickSuggestion(suggestionInfo.mWord);
+        }
         final InputTransaction completeInputTransaction = mInputLogic.onPickSuggestionManually(
                 mSettings.getCurrent(), suggestionInfo,
                 mKeyboardSwitcher.getKeyboardShiftMode(),
@@ -1879,12 +1982,128 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
         final Keyboard keyboard = mKeyboardSwitcher.getKeyboard();
         final int keyboardMode = keyboard != null ? keyboard.mId.mMode : -1;
         p.println("  Keyboard mode = " + keyboardMode);
+        p.println("  " + KeyboardLayoutSet.dump());
         final SettingsValues settingsValues = mSettings.getCurrent();
         p.println(settingsValues.dump());
         p.println(mDictionaryFacilitator.dump(this /* context */));
+        p.println("  " + mInputLogic.mSuggest.dumpSuggestionResultsCache());
+        p.println("  " + mInputLogic.dumpInputLogicHandler());
+        p.println(ExecutorUtils.dump());
+        p.println(StatsUtils.dump());
+        if (args != null && Arrays.asList(args).contains(DUMP_ARG_EXPORT_LATENCIES)) {
+            final File file = new File(getFilesDir(), LATENCIES_FILE_NAME);
+            if (StatsUtils.exportToFile(file)) {
+                p.println("Latencies exported to " + file);
+            }
+        }
+        if (args != null && DebugFlags.DEBUG_ENABLED) {
+            dumpTypingSessionCommands(p, Arrays.asList(args));
+        }
         // TODO: Dump all settings values
     }
 
+    // Called on a binder thread by {@link #dump}.
+    private void dumpTypingSessionCommands(final Printer p, final List<String> args) {
+        final File sessionFile = new File(getFilesDir(), TYPING_SESSION_FILE_NAME);
+        final File reportFile = new File(getFilesDir(), TYPING_SESSION_REPORT_FILE_NAME);
+        if (args.contains(DUMP_ARG_START_TYPING_SESSION)) {
+            p.println("Recording the typing session to " + sessionFile);
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    startTypingSessionRecording(sessionFile);
+                }
+            });
+        } else if (args.contains(DUMP_ARG_STOP_TYPING_SESSION)) {
+            p.println("Stopping the typing session recording to " + sessionFile);
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    stopTypingSessionRecording();
+                }
+            });
+        } else if (args.contains(DUMP_ARG_REPLAY_TYPING_SESSION)) {
+            p.println("Replaying " + sessionFile + ", the report will be written to "
+                    + reportFile);
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    replayTypingSession(sessionFile, reportFile);
+                }
+            });
+        }
+    }
+
+    private void startTypingSessionRecording(final File file) {
+        if (mTypingSessionRecorder != null || isReplayingTypingSession()) {
+            Log.w(TAG, "Cannot record a typing session while another is recorded or replayed");
+            return;
+        }
+        if (!TypingSessionRecorder.canRecord(getCurrentInputEditorInfo())) {
+            Log.w(TAG, "Cannot record a typing session in a password or no learning field");
+            return;
+        }
+        mTypingSessionRecorder = TypingSessionRecorder.start(file, getCurrentInputConnection());
+    }
+
+    private void stopTypingSessionRecording() {
+        final TypingSessionRecorder recorder = mTypingSessionRecorder;
+        if (recorder == null) {
+            return;
+        }
+        mTypingSessionRecorder = null;
+        recorder.stop(getCurrentInputConnection());
+    }
+
+    private void discardTypingSessionRecording() {
+        final TypingSessionRecorder recorder = mTypingSessionRecorder;
+        if (recorder == null) {
+            return;
+        }
+        mTypingSessionRecorder = null;
+        recorder.discard();
+        Log.i(TAG, "Typing session recording discarded: the field cannot be recorded");
+    }
+
+    private void cancelTypingSessionReplay() {
+        final TypingSessionReplayer replayer = mTypingSessionReplayer;
+        if (replayer == null) {
+            return;
+        }
+        mTypingSessionReplayer = null;
+        replayer.cancel();
+    }
+
+    private void replayTypingSession(final File sessionFile, final File reportFile) {
+        if (mTypingSessionRecorder != null || isReplayingTypingSession()) {
+            Log.w(TAG, "Cannot replay a typing session while another is recorded or replayed");
+            return;
+        }
+        final TypingSessionLog log = TypingSessionLog.read(sessionFile);
+        if (log == null) {
+            return;
+        }
+        mTypingSessionReplayer = new TypingSessionReplayer(this, log, reportFile);
+        mTypingSessionReplayer.start();
+    }
+
+    private boolean isReplayingTypingSession() {
+        return mTypingSessionReplayer != null && !mTypingSessionReplayer.isFinished();
+    }
+
+    // DO NOT USE THIS for any other purpose than replaying typing sessions. Without the
+    // personalized dictionaries, the replay does not learn from the session.
+    @UsedForTesting
+    void resetDictionariesForReplay(final boolean usePersonalizedDicts) {
+        final SettingsValues settingsValues = mSettings.getCurrent();
+        mDictionaryFacilitator.resetDictionaries(this /* context */,
+                mDictionaryFacilitator.getLocale(),
+                usePersonalizedDicts && settingsValues.mUseContactsDict,
+                usePersonalizedDicts && settingsValues.mUsePersonalizedDicts,
+                false /* forceReloadMainDictionary */, settingsValues.mAccount,
+                "" /* dictNamePrefix */, this /* DictionaryInitializationListener */);
+    }
+
     public boolean shouldSwitchToOtherInputMethods() {
         // TODO: Revisit here to reorganize the settings. Probably we can/should use different
         // strategy once the implementation of
@@ -16,10 +16,18 @@
 
 package com.android.inputmethod.latin;
 
+import android.util.Log;
+
 import com.android.inputmethod.latin.SuggestedWords.SuggestedWordInfo;
 import com.android.inputmethod.latin.common.ComposedData;
+import com.android.inputmethod.latin.define.DebugFlags;
+import com.android.inputmethod.latin.define.ProductionFlags;
+import com.android.inputmethod.latin.makedict.MappedVer2Dictionary;
+import com.android.inputmethod.latin.makedict.UnsupportedFormatException;
 import com.android.inputmethod.latin.settings.SettingsValuesForSuggestion;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Locale;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -28,8 +36,14 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * This class provides binary dictionary reading operations with locking. An instance of this class
  * can be used by multiple threads. Note that different session IDs must be used when multiple
  * threads get suggestions using this class.
+ *
+ * Word lookups in version 2 dictionaries are done by a {@link MappedVer2Dictionary} when
+ * {@link ProductionFlags#ENABLE_JAVA_DICTIONARY_READER} is set. When debugging is enabled, each
+ * of its results is checked against the native dictionary.
  */
 public final class ReadOnlyBinaryDictionary extends Dictionary {
+    private static final String TAG = ReadOnlyBinaryDictionary.class.getSimpleName();
+
     /**
      * A lock for accessing binary dictionary. Only closing binary dictionary is the operation
      * that change the state of dictionary.
@@ -38,11 +52,54 @@ public final class ReadOnlyBinaryDictionary extends Dictionary {
 
     private final BinaryDictionary mBinaryDictionary;
 
+    // Null if the dictionary is not a version 2 dictionary, or once it has been closed.
+    private volatile MappedVer2Dictionary mMappedDictionary;
+
     public ReadOnlyBinaryDictionary(final String filename, final long offset, final long length,
             final boolean useFullEditDistance, final Locale locale, final String dictType) {
         super(dictType, locale);
         mBinaryDictionary = new BinaryDictionary(filename, offset, length, useFullEditDistance,
                 locale, dictType, false /* isUpdatable */);
+        if (ProductionFlags.ENABLE_JAVA_DICTIONARY_READER
+                && mBinaryDictionary.isValidDictionary()) {
+            mMappedDictionary = openMappedDictionary(filename, offset, length, locale, dictType);
+        }
+    }
+
+    private static MappedVer2Dictionary openMappedDictionary(final String filename,
+            final long offset, final long length, final Locale locale, final String dictType) {
+        try {
+            return new MappedVer2Dictionary(new File(filename), offset, length, locale,
+                    dictType);
+        } catch (final UnsupportedFormatException e) {
+            // Other versions are only read by the native dictionary.
+            return null;
+        } catch (final IOException e) {
+            Log.e(TAG, "Cannot map " + filename, e);
+            return null;
+        }
+    }
+
+    /**
+     * Logs the lookups for which the mapped dictionary and the native dictionary disagree.
+     */
+    private void checkSameAsBinaryDictionary(final String word, final boolean isExactMatch,
+            final int probability) {
+        if (!mLock.readLock().tryLock()) {
+            return;
+        }
+        try {
+            final int nativeProbability = isExactMatch
+                    ? mBinaryDictionary.getMaxFrequencyOfExactMatches(word)
+                    : mBinaryDictionary.getFrequency(word);
+            if (probability != nativeProbability) {
+                Log.e(TAG, "Mapped dictionary mismatch for " + word + ": exact match="
+                        + isExactMatch + " mapped=" + probability + " native="
+                        + nativeProbability);
+            }
+        } finally {
+            mLock.readLock().unlock();
+        }
     }
 
     public boolean isValidDictionary() {
@@ -69,6 +126,9 @@ public final class ReadOnlyBinaryDictionary extends Dictionary {
 
     @Override
     public boolean isInDictionary(final String word) {
+        if (mMappedDictionary != null) {
+            return getFrequency(word) != NOT_A_PROBABILITY;
+        }
         if (mLock.readLock().tryLock()) {
             try {
                 return mBinaryDictionary.isInDictionary(word);
@@ -93,6 +153,14 @@ public final class ReadOnlyBinaryDictionary extends Dictionary {
 
     @Override
     public int getFrequency(final String word) {
+        final MappedVer2Dictionary mappedDictionary = mMappedDictionary;
+        if (mappedDictionary != null) {
+            final int probability = mappedDictionary.getFrequency(word);
+            if (DebugFlags.DEBUG_ENABLED) {
+                checkSameAsBinaryDictionary(word, false /* isExactMatch */, probability);
+            }
+            return probability;
+        }
         if (mLock.readLock().tryLock()) {
             try {
                 return mBinaryDictionary.getFrequency(word);
@@ -105,6 +173,14 @@ public final class ReadOnlyBinaryDictionary extends Dictionary {
 
     @Override
     public int getMaxFrequencyOfExactMatches(final String word) {
+        final MappedVer2Dictionary mappedDictionary = mMappedDictionary;
+        if (mappedDictionary != null) {
+            final int probability = mappedDictionary.getMaxFrequencyOfExactMatches(word);
+            if (DebugFlags.DEBUG_ENABLED) {
+                checkSameAsBinaryDictionary(word, true /* isExactMatch */, probability);
+            }
+            return probability;
+        }
         if (mLock.readLock().tryLock()) {
             try {
                 return mBinaryDictionary.getMaxFrequencyOfExactMatches(word);
@@ -117,6 +193,8 @@ public final class ReadOnlyBinaryDictionary extends Dictionary {
 
     @Override
     public void close() {
+        // The mapping is released by the garbage collector once no lookup uses it any more.
+        mMappedDictionary = null;
         mLock.writeLock().lock();
         try {
             mBinaryDictionary.close();
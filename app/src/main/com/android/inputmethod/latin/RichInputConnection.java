@@ -19,6 +19,7 @@ package com.android.inputmethod.latin;
 import android.inputmethodservice.InputMethodService;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Looper;
 import android.os.SystemClock;
 import android.text.SpannableStringBuilder;
 import android.text.TextUtils;
@@ -32,6 +33,7 @@ import android.view.inputmethod.ExtractedTextRequest;
 import android.view.inputmethod.InputConnection;
 import android.view.inputmethod.InputMethodManager;
 
+import com.android.inputmethod.annotations.UsedForTesting;
 import com.android.inputmethod.compat.InputConnectionCompatUtils;
 import com.android.inputmethod.latin.common.Constants;
 import com.android.inputmethod.latin.common.StringUtils;
@@ -118,6 +120,11 @@ public final class RichInputConnection implements PrivateCommandPerformer {
      * This contains the currently composing text, as LatinIME thinks the TextView is seeing it.
      */
     private final StringBuilder mComposingText = new StringBuilder();
+    /**
+     * The caps mode and n-gram contexts derived from the two buffers above. This must be told
+     * whenever they, or the expected selection, change.
+     */
+    private final CursorContext mCursorContext = new CursorContext();
 
     /**
      * This variable is a temporary object used in {@link #commitText(CharSequence,int)}
@@ -128,6 +135,8 @@ public final class RichInputConnection implements PrivateCommandPerformer {
     private final InputMethodService mParent;
     private InputConnection mIC;
     private int mNestLevel;
+    // The connection that replaces the one of the editor while a typing session is replayed.
+    @Nullable private InputConnection mReplayInputConnection;
 
     /**
      * The timestamp of the last slow InputConnection operation
@@ -144,6 +153,22 @@ public final class RichInputConnection implements PrivateCommandPerformer {
         return mIC != null;
     }
 
+    private InputConnection getParentInputConnection() {
+        final InputConnection replayInputConnection = mReplayInputConnection;
+        return (replayInputConnection != null) ? replayInputConnection
+                : mParent.getCurrentInputConnection();
+    }
+
+    /**
+     * Makes this connection edit the given input connection instead of the editor, to replay a
+     * typing session, or the editor again if it is null. The input must be restarted afterwards.
+     */
+    @UsedForTesting
+    public void setReplayInputConnection(@Nullable final InputConnection inputConnection) {
+        mReplayInputConnection = inputConnection;
+        mIC = getParentInputConnection();
+    }
+
     /**
      * Returns whether or not the underlying InputConnection is slow. When true, we want to avoid
      * calling InputConnection methods that trigger an IPC round-trip (e.g., getTextAfterCursor).
@@ -155,6 +180,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
 
     public void onStartInput() {
         mLastSlowInputConnectionTime = -SLOW_INPUTCONNECTION_PERSIST_MS;
+        mCursorContext.onTextChanged();
     }
 
     private void checkConsistencyForDebug() {
@@ -191,7 +217,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
 
     public void beginBatchEdit() {
         if (++mNestLevel == 1) {
-            mIC = mParent.getCurrentInputConnection();
+            mIC = getParentInputConnection();
             if (isConnected()) {
                 mIC.beginBatchEdit();
             }
@@ -234,6 +260,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
         mExpectedSelStart = newSelStart;
         mExpectedSelEnd = newSelEnd;
         mComposingText.setLength(0);
+        mCursorContext.onTextChanged();
         final boolean didReloadTextSuccessfully = reloadTextCache();
         if (!didReloadTextSuccessfully) {
             Log.d(TAG, "Will try to retrieve text later.");
@@ -252,7 +279,8 @@ public final class RichInputConnection implements PrivateCommandPerformer {
      */
     private boolean reloadTextCache() {
         mCommittedTextBeforeComposingText.setLength(0);
-        mIC = mParent.getCurrentInputConnection();
+        mCursorContext.onTextChanged();
+        mIC = getParentInputConnection();
         // Call upon the inputconnection directly since our own method is using the cache, and
         // we want to refresh it.
         final CharSequence textBeforeCursor = getTextBeforeCursorAndDetectLaggyConnection(
@@ -269,6 +297,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
             return false;
         }
         mCommittedTextBeforeComposingText.append(textBeforeCursor);
+        mCursorContext.onTextChanged();
         return true;
     }
 
@@ -288,6 +317,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
         // it works, but it's wrong and should be fixed.
         mCommittedTextBeforeComposingText.append(mComposingText);
         mComposingText.setLength(0);
+        mCursorContext.onTextChanged();
         if (isConnected()) {
             mIC.finishComposingText();
         }
@@ -309,6 +339,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
         mExpectedSelStart += text.length() - mComposingText.length();
         mExpectedSelEnd = mExpectedSelStart;
         mComposingText.setLength(0);
+        mCursorContext.onTextChanged();
         if (isConnected()) {
             mTempObjectForCommitText.clear();
             mTempObjectForCommitText.append(text);
@@ -361,7 +392,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
      */
     public int getCursorCapsMode(final int inputType,
             final SpacingAndPunctuations spacingAndPunctuations, final boolean hasSpaceBefore) {
-        mIC = mParent.getCurrentInputConnection();
+        mIC = getParentInputConnection();
         if (!isConnected()) {
             return Constants.TextUtils.CAP_MODE_OFF;
         }
@@ -385,12 +416,27 @@ public final class RichInputConnection implements PrivateCommandPerformer {
                         + "Setting caps mode without knowing text.");
             }
         }
+        final int version = mCursorContext.getVersion();
+        final int cachedCapsMode = mCursorContext.getCapsMode(version, inputType,
+                spacingAndPunctuations, hasSpaceBefore);
+        if (CursorContext.NOT_CACHED != cachedCapsMode) {
+            return cachedCapsMode;
+        }
+        // The text is only edited on the UI thread, so it can be read in place there. Other
+        // threads read a copy, as it may change under them.
+        final CharSequence textBeforeCursor = isOnUiThread() ? mCommittedTextBeforeComposingText
+                : mCommittedTextBeforeComposingText.toString();
         // This never calls InputConnection#getCapsMode - in fact, it's a static method that
         // never blocks or initiates IPC.
-        // TODO: don't call #toString() here. Instead, all accesses to
-        // mCommittedTextBeforeComposingText should be done on the main thread.
-        return CapsModeUtils.getCapsMode(mCommittedTextBeforeComposingText.toString(), inputType,
+        final int capsMode = CapsModeUtils.getCapsMode(textBeforeCursor, inputType,
                 spacingAndPunctuations, hasSpaceBefore);
+        mCursorContext.setCapsMode(version, inputType, spacingAndPunctuations, hasSpaceBefore,
+                capsMode);
+        return capsMode;
+    }
+
+    private boolean isOnUiThread() {
+        return Looper.myLooper() == mParent.getMainLooper();
     }
 
     public int getCodePointBeforeCursor() {
@@ -409,7 +455,6 @@ public final class RichInputConnection implements PrivateCommandPerformer {
         // test for this explicitly)
         if (INVALID_CURSOR_POSITION != mExpectedSelStart
                 && (cachedLength >= n || cachedLength >= mExpectedSelStart)) {
-            final StringBuilder s = new StringBuilder(mCommittedTextBeforeComposingText);
             // We call #toString() here to create a temporary object.
             // In some situations, this method is called on a worker thread, and it's possible
             // the main thread touches the contents of mComposingText while this worker thread
@@ -417,7 +462,15 @@ public final class RichInputConnection implements PrivateCommandPerformer {
             // so we call #toString() on it. That will result in the return value being strictly
             // speaking wrong, but since this is used for basing bigram probability off, and
             // it's only going to matter for one getSuggestions call, it's fine in the practice.
-            s.append(mComposingText.toString());
+            final String composingText = mComposingText.toString();
+            // Only copy the end of the committed text that is returned.
+            final int committedLength = mCommittedTextBeforeComposingText.length();
+            final int committedStart =
+                    Math.max(committedLength - Math.max(n - composingText.length(), 0), 0);
+            final StringBuilder s = new StringBuilder(
+                    committedLength - committedStart + composingText.length());
+            s.append(mCommittedTextBeforeComposingText, committedStart, committedLength);
+            s.append(composingText);
             if (s.length() > n) {
                 s.delete(0, s.length() - n);
             }
@@ -431,7 +484,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
 
     private CharSequence getTextBeforeCursorAndDetectLaggyConnection(
             final int operation, final long timeout, final int n, final int flags) {
-        mIC = mParent.getCurrentInputConnection();
+        mIC = getParentInputConnection();
         if (!isConnected()) {
             return null;
         }
@@ -450,7 +503,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
 
     private CharSequence getTextAfterCursorAndDetectLaggyConnection(
             final int operation, final long timeout, final int n, final int flags) {
-        mIC = mParent.getCurrentInputConnection();
+        mIC = getParentInputConnection();
         if (!isConnected()) {
             return null;
         }
@@ -462,6 +515,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
 
     private void detectLaggyConnection(final int operation, final long timeout, final long startTime) {
         final long duration = SystemClock.uptimeMillis() - startTime;
+        StatsUtils.onInputConnectionOperation(operation, duration);
         if (duration >= timeout) {
             final String operationName = OPERATION_NAMES[operation];
             Log.w(TAG, "Slow InputConnection: " + operationName + " took " + duration + " ms.");
@@ -494,6 +548,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
             mExpectedSelEnd -= mExpectedSelStart;
             mExpectedSelStart = 0;
         }
+        mCursorContext.onTextChanged();
         if (isConnected()) {
             mIC.deleteSurroundingText(beforeLength, 0);
         }
@@ -501,7 +556,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
     }
 
     public void performEditorAction(final int actionId) {
-        mIC = mParent.getCurrentInputConnection();
+        mIC = getParentInputConnection();
         if (isConnected()) {
             mIC.performEditorAction(actionId);
         }
@@ -553,6 +608,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
                 mExpectedSelEnd = mExpectedSelStart;
                 break;
             }
+            mCursorContext.onTextChanged();
         }
         if (isConnected()) {
             mIC.sendKeyEvent(keyEvent);
@@ -577,6 +633,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
             mCommittedTextBeforeComposingText.append(
                     textBeforeCursor.subSequence(0, indexOfStartOfComposingText));
         }
+        mCursorContext.onTextChanged();
         if (isConnected()) {
             mIC.setComposingRegion(start, end);
         }
@@ -589,6 +646,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
         mExpectedSelEnd = mExpectedSelStart;
         mComposingText.setLength(0);
         mComposingText.append(text);
+        mCursorContext.onTextChanged();
         // TODO: support values of newCursorPosition != 1. At this time, this is never called with
         // newCursorPosition != 1.
         if (isConnected()) {
@@ -616,6 +674,9 @@ public final class RichInputConnection implements PrivateCommandPerformer {
         }
         mExpectedSelStart = start;
         mExpectedSelEnd = end;
+        // The cursor has moved even if the editor then fails to set the selection, so whatever
+        // was cached for the old position must not be used at the new one.
+        mCursorContext.onTextChanged();
         if (isConnected()) {
             final boolean isIcValid = mIC.setSelection(start, end);
             if (!isIcValid) {
@@ -646,6 +707,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
         mExpectedSelStart += text.length() - mComposingText.length();
         mExpectedSelEnd = mExpectedSelStart;
         mComposingText.setLength(0);
+        mCursorContext.onTextChanged();
         if (isConnected()) {
             mIC.commitCompletion(completionInfo);
         }
@@ -656,10 +718,16 @@ public final class RichInputConnection implements PrivateCommandPerformer {
     @Nonnull
     public NgramContext getNgramContextFromNthPreviousWord(
             final SpacingAndPunctuations spacingAndPunctuations, final int n) {
-        mIC = mParent.getCurrentInputConnection();
+        mIC = getParentInputConnection();
         if (!isConnected()) {
             return NgramContext.EMPTY_PREV_WORDS_INFO;
         }
+        final int version = mCursorContext.getVersion();
+        final NgramContext cachedNgramContext =
+                mCursorContext.getNgramContext(version, spacingAndPunctuations, n);
+        if (null != cachedNgramContext) {
+            return cachedNgramContext;
+        }
         final CharSequence prev = getTextBeforeCursor(NUM_CHARS_TO_GET_BEFORE_CURSOR, 0);
         if (DEBUG_PREVIOUS_TEXT && null != prev) {
             final int checkLength = NUM_CHARS_TO_GET_BEFORE_CURSOR - 1;
@@ -679,8 +747,12 @@ public final class RichInputConnection implements PrivateCommandPerformer {
                 }
             }
         }
-        return NgramContextUtils.getNgramContextFromNthPreviousWord(
+        final NgramContext ngramContext = NgramContextUtils.getNgramContextFromNthPreviousWord(
                 prev, spacingAndPunctuations, n);
+        if (null != prev) {
+            mCursorContext.setNgramContext(version, spacingAndPunctuations, n, ngramContext);
+        }
+        return ngramContext;
     }
 
     private static boolean isPartOfCompositionForScript(final int codePoint,
@@ -701,7 +773,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
      */
     public TextRange getWordRangeAtCursor(final SpacingAndPunctuations spacingAndPunctuations,
             final int scriptId) {
-        mIC = mParent.getCurrentInputConnection();
+        mIC = getParentInputConnection();
         if (!isConnected()) {
             return null;
         }
@@ -922,7 +994,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
      * than it really is.
      */
     public void tryFixLyingCursorPosition() {
-        mIC = mParent.getCurrentInputConnection();
+        mIC = getParentInputConnection();
         final CharSequence textBeforeCursor = getTextBeforeCursor(
                 Constants.EDITOR_CONTENTS_CACHE_SIZE, 0);
         final CharSequence selectedText = isConnected() ? mIC.getSelectedText(0 /* flags */) : null;
@@ -959,11 +1031,12 @@ public final class RichInputConnection implements PrivateCommandPerformer {
                 }
             }
         }
+        mCursorContext.onTextChanged();
     }
 
     @Override
     public boolean performPrivateCommand(final String action, final Bundle data) {
-        mIC = mParent.getCurrentInputConnection();
+        mIC = getParentInputConnection();
         if (!isConnected()) {
             return false;
         }
@@ -1023,7 +1096,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
      */
     public boolean requestCursorUpdates(final boolean enableMonitor,
             final boolean requestImmediateCallback) {
-        mIC = mParent.getCurrentInputConnection();
+        mIC = getParentInputConnection();
         if (!isConnected()) {
             return false;
         }
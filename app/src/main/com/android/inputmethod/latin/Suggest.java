@@ -20,6 +20,7 @@ import android.text.TextUtils;
 
 import com.android.inputmethod.keyboard.Keyboard;
 import com.android.inputmethod.latin.SuggestedWords.SuggestedWordInfo;
+import com.android.inputmethod.latin.common.ComposedData;
 import com.android.inputmethod.latin.common.Constants;
 import com.android.inputmethod.latin.common.StringUtils;
 import com.android.inputmethod.latin.define.DebugFlags;
@@ -27,6 +28,7 @@ import com.android.inputmethod.latin.settings.SettingsValuesForSuggestion;
 import com.android.inputmethod.latin.utils.AutoCorrectionUtils;
 import com.android.inputmethod.latin.utils.BinaryDictionaryUtils;
 import com.android.inputmethod.latin.utils.SuggestionResults;
+import com.android.inputmethod.latin.utils.SuggestionResultsCache;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -55,6 +57,7 @@ public final class Suggest {
 
     private static final boolean DBG = DebugFlags.DEBUG_ENABLED;
     private final DictionaryFacilitator mDictionaryFacilitator;
+    private final SuggestionResultsCache mSuggestionResultsCache = new SuggestionResultsCache();
 
     private static final int MAXIMUM_AUTO_CORRECT_LENGTH_FOR_GERMAN = 12;
     private static final HashMap<String, Integer> sLanguageToMaximumAutoCorrectionWithSpaceLength =
@@ -91,6 +94,17 @@ public final class Suggest {
         mPlausibilityThreshold = threshold;
     }
 
+    /**
+     * Drops the cached suggestion results. Call this when a new input session starts.
+     */
+    public void clearSuggestionResultsCache() {
+        mSuggestionResultsCache.clear();
+    }
+
+    public String dumpSuggestionResultsCache() {
+        return mSuggestionResultsCache.dump();
+    }
+
     public interface OnGetSuggestedWordsCallback {
         public void onGetSuggestedWords(final SuggestedWords suggestedWords);
     }
@@ -161,9 +175,20 @@ public final class Suggest {
                 ? typedWordString.substring(0, typedWordString.length() - trailingSingleQuotesCount)
                 : typedWordString;
 
-        final SuggestionResults suggestionResults = mDictionaryFacilitator.getSuggestionResults(
-                wordComposer.getComposedDataSnapshot(), ngramContext, keyboard,
-                settingsValuesForSuggestion, SESSION_ID_TYPING, inputStyleIfNotPrediction);
+        final ComposedData composedData = wordComposer.getComposedDataSnapshot();
+        final int dictionaryContentsGeneration = mDictionaryFacilitator.getContentsGeneration();
+        final boolean blockPotentiallyOffensive =
+                settingsValuesForSuggestion.mBlockPotentiallyOffensive;
+        SuggestionResults suggestionResults = mSuggestionResultsCache.get(ngramContext,
+                composedData, keyboard.mId, blockPotentiallyOffensive,
+                dictionaryContentsGeneration);
+        if (suggestionResults == null) {
+            suggestionResults = mDictionaryFacilitator.getSuggestionResults(composedData,
+                    ngramContext, keyboard, settingsValuesForSuggestion, SESSION_ID_TYPING,
+                    inputStyleIfNotPrediction);
+            mSuggestionResultsCache.put(ngramContext, composedData, keyboard.mId,
+                    blockPotentiallyOffensive, dictionaryContentsGeneration, suggestionResults);
+        }
         final Locale locale = mDictionaryFacilitator.getLocale();
         final ArrayList<SuggestedWordInfo> suggestionsContainer =
                 getTransformedSuggestedWordInfoList(wordComposer, suggestionResults,
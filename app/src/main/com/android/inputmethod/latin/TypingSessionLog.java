@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin;
+
+import android.util.Log;
+
+import com.android.inputmethod.latin.common.InputPointers;
+
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.zip.GZIPInputStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A typing session as recorded by {@link TypingSessionRecorder}: the text of the editor when the
+ * recording started, the input that was given to LatinIME with the time it came at, and the text
+ * of the editor when the recording stopped.
+ *
+ * The file is a gzipped stream of big-endian values. The header holds the initial text and
+ * selection, and each entry starts with its type and its time in milliseconds since the start of
+ * the recording. The pointers of a gesture only hold the points that were added since the
+ * previous batch of the same gesture. The last entry is {@link #TYPE_END}, which holds the final
+ * text.
+ */
+public final class TypingSessionLog {
+    private static final String TAG = TypingSessionLog.class.getSimpleName();
+
+    static final int MAGIC_NUMBER = 0x54534C47;
+    static final int FORMAT_VERSION = 1;
+
+    public static final int TYPE_KEYPRESS = 1;
+    public static final int TYPE_TEXT = 2;
+    public static final int TYPE_START_BATCH = 3;
+    public static final int TYPE_UPDATE_BATCH = 4;
+    public static final int TYPE_END_BATCH = 5;
+    public static final int TYPE_CANCEL_BATCH = 6;
+    public static final int TYPE_PICK_SUGGESTION = 7;
+    public static final int TYPE_CURSOR_MOVE = 8;
+    public static final int TYPE_END = 9;
+    static final String[] TYPE_NAMES = {
+        null, "keypress", "text", "startBatch", "updateBatch", "endBatch", "cancelBatch",
+        "pickSuggestion", "cursorMove", "end",
+    };
+
+    public static final class Entry {
+        public final int mType;
+        // The time of the entry, in milliseconds since the start of the recording.
+        public final int mTime;
+        // The code point, key code, x and y of a keypress, or the selection of a cursor move.
+        public final int mCodePoint;
+        public final int mKeyCode;
+        public final int mX;
+        public final int mY;
+        public final boolean mIsKeyRepeat;
+        // The text input, or the picked suggestion.
+        @Nullable public final String mText;
+        // All the pointers of the gesture so far, for batch updates.
+        @Nullable public final InputPointers mBatchPointers;
+
+        Entry(final int type, final int time, final int codePoint, final int keyCode, final int x,
+                final int y, final boolean isKeyRepeat, @Nullable final String text,
+                @Nullable final InputPointers batchPointers) {
+            mType = type;
+            mTime = time;
+            mCodePoint = codePoint;
+            mKeyCode = keyCode;
+            mX = x;
+            mY = y;
+            mIsKeyRepeat = isKeyRepeat;
+            mText = text;
+            mBatchPointers = batchPointers;
+        }
+    }
+
+    @Nonnull public final String mInitialText;
+    public final int mInitialSelectionStart;
+    public final int mInitialSelectionEnd;
+    @Nonnull public final ArrayList<Entry> mEntries;
+    @Nonnull public final String mFinalText;
+
+    private TypingSessionLog(@Nonnull final String initialText, final int initialSelectionStart,
+            final int initialSelectionEnd, @Nonnull final ArrayList<Entry> entries,
+            @Nonnull final String finalText) {
+        mInitialText = initialText;
+        mInitialSelectionStart = initialSelectionStart;
+        mInitialSelectionEnd = initialSelectionEnd;
+        mEntries = entries;
+        mFinalText = finalText;
+    }
+
+    static void writeText(@Nonnull final DataOutput out, @Nonnull final CharSequence text)
+            throws IOException {
+        out.writeInt(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            out.writeChar(text.charAt(i));
+        }
+    }
+
+    private static String readText(@Nonnull final DataInput in) throws IOException {
+        final int length = in.readInt();
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = in.readChar();
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Reads a typing session.
+     *
+     * @return the session, or null if the file cannot be read or the recording was not stopped.
+     */
+    @Nullable
+    public static TypingSessionLog read(@Nonnull final File file) {
+        try {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new GZIPInputStream(new FileInputStream(file))));
+            try {
+                if (in.readInt() != MAGIC_NUMBER || in.readInt() != FORMAT_VERSION) {
+                    Log.w(TAG, "Unknown typing session format " + file);
+                    return null;
+                }
+                final String initialText = readText(in);
+                final int initialSelectionStart = in.readInt();
+                final int initialSelectionEnd = in.readInt();
+                final ArrayList<Entry> entries = new ArrayList<>();
+                InputPointers batchPointers = null;
+                while (true) {
+                    final int type = in.readByte();
+                    final int time = in.readInt();
+                    switch (type) {
+                    case TYPE_KEYPRESS:
+                        entries.add(new Entry(type, time, in.readInt(), in.readInt(),
+                                in.readInt(), in.readInt(), in.readBoolean(), null, null));
+                        break;
+                    case TYPE_TEXT:
+                    case TYPE_PICK_SUGGESTION:
+                        entries.add(new Entry(type, time, 0, 0, 0, 0, false, readText(in), null));
+                        break;
+                    case TYPE_START_BATCH:
+                    case TYPE_CANCEL_BATCH:
+                        batchPointers = null;
+                        entries.add(new Entry(type, time, 0, 0, 0, 0, false, null, null));
+                        break;
+                    case TYPE_UPDATE_BATCH:
+                    case TYPE_END_BATCH:
+                        batchPointers = readBatchPointers(in, batchPointers);
+                        entries.add(new Entry(type, time, 0, 0, 0, 0, false, null,
+                                batchPointers));
+                        break;
+                    case TYPE_CURSOR_MOVE:
+                        entries.add(new Entry(type, time, 0, 0, in.readInt(), in.readInt(),
+                                false, null, null));
+                        break;
+                    case TYPE_END:
+                        return new TypingSessionLog(initialText, initialSelectionStart,
+                                initialSelectionEnd, entries, readText(in));
+                    default:
+                        Log.w(TAG, "Unknown typing session entry " + type + " in " + file);
+                        return null;
+                    }
+                }
+            } finally {
+                in.close();
+            }
+        } catch (final EOFException e) {
+            Log.w(TAG, "Typing session " + file + " has not been stopped");
+            return null;
+        } catch (final IOException e) {
+            Log.w(TAG, "Cannot read typing session " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads the pointers of a batch, which start with the pointers of the previous batch.
+     */
+    private static InputPointers readBatchPointers(@Nonnull final DataInput in,
+            @Nullable final InputPointers previousPointers) throws IOException {
+        final int sharedCount = in.readInt();
+        final int addedCount = in.readInt();
+        if (sharedCount > 0 && (previousPointers == null
+                || sharedCount > previousPointers.getPointerSize())) {
+            throw new IOException("Batch shares " + sharedCount + " pointers with a shorter batch");
+        }
+        final InputPointers pointers = new InputPointers(sharedCount + addedCount);
+        for (int i = 0; i < sharedCount; i++) {
+            pointers.addPointer(previousPointers.getXCoordinates()[i],
+                    previousPointers.getYCoordinates()[i], previousPointers.getPointerIds()[i],
+                    previousPointers.getTimes()[i]);
+        }
+        for (int i = 0; i < addedCount; i++) {
+            pointers.addPointer(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+        }
+        return pointers;
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin;
+
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.inputmethod.EditorInfo;
+import android.view.inputmethod.ExtractedText;
+import android.view.inputmethod.ExtractedTextRequest;
+import android.view.inputmethod.InputConnection;
+
+import com.android.inputmethod.event.Event;
+import com.android.inputmethod.latin.common.Constants;
+import com.android.inputmethod.latin.common.InputPointers;
+import com.android.inputmethod.latin.utils.InputTypeUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Records the input that LatinIME gets to a {@link TypingSessionLog} file, so that the session
+ * can be replayed by {@link TypingSessionReplayer}.
+ *
+ * Keypresses from the software keyboard, text input, gestures, picked suggestions and cursor
+ * moves by the user are recorded. Hardware keys are not. The entries are written as they come,
+ * and the file can only be read once the recording has been stopped. Nothing is recorded in
+ * password fields, nor in the fields that ask not to learn from what is typed in them: see
+ * {@link #canRecord(EditorInfo)}.
+ *
+ * This class is only used on the UI thread.
+ */
+final class TypingSessionRecorder {
+    private static final String TAG = TypingSessionRecorder.class.getSimpleName();
+
+    // The maximum length of the text before and after the cursor that is recorded.
+    private static final int MAX_TEXT_LENGTH = 64 * 1024;
+
+    @Nonnull private final File mFile;
+    @Nullable private DataOutputStream mOut;
+    private final long mStartTime;
+    // The pointers of the last batch of the current gesture.
+    private final InputPointers mLastBatchPointers = new InputPointers(
+            Constants.DEFAULT_GESTURE_POINTS_CAPACITY);
+
+    private TypingSessionRecorder(@Nonnull final File file, @Nonnull final DataOutputStream out) {
+        mFile = file;
+        mOut = out;
+        mStartTime = SystemClock.uptimeMillis();
+    }
+
+    /**
+     * Returns whether what is typed in an editor can be written to a file.
+     */
+    public static boolean canRecord(@Nullable final EditorInfo editorInfo) {
+        if (editorInfo == null) {
+            return false;
+        }
+        final int inputType = editorInfo.inputType;
+        return !InputTypeUtils.isPasswordInputType(inputType)
+                && !InputTypeUtils.isVisiblePasswordInputType(inputType)
+                && (editorInfo.imeOptions & EditorInfo.IME_FLAG_NO_PERSONALIZED_LEARNING) == 0;
+    }
+
+    /**
+     * Starts recording a session in an editor, replacing the file. The caller must have checked
+     * that the editor can be recorded with {@link #canRecord(EditorInfo)}.
+     *
+     * @return the recorder, or null if the file cannot be written.
+     */
+    @Nullable
+    public static TypingSessionRecorder start(@Nonnull final File file,
+            @Nullable final InputConnection inputConnection) {
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(new FileOutputStream(file))));
+            out.writeInt(TypingSessionLog.MAGIC_NUMBER);
+            out.writeInt(TypingSessionLog.FORMAT_VERSION);
+            final ExtractedText extractedText = getText(inputConnection);
+            TypingSessionLog.writeText(out, extractedText.text);
+            out.writeInt(extractedText.selectionStart);
+            out.writeInt(extractedText.selectionEnd);
+            return new TypingSessionRecorder(file, out);
+        } catch (final IOException e) {
+            Log.w(TAG, "Cannot record a typing session to " + file, e);
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (final IOException closeException) {
+                    // Nothing we can do.
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Returns the text of the editor, or as much as fits in twice {@link #MAX_TEXT_LENGTH}
+     * around the cursor.
+     */
+    @Nonnull
+    static ExtractedText getText(@Nullable final InputConnection inputConnection) {
+        ExtractedText extractedText = null;
+        if (inputConnection != null) {
+            final ExtractedTextRequest request = new ExtractedTextRequest();
+            request.hintMaxChars = MAX_TEXT_LENGTH * 2;
+            extractedText = inputConnection.getExtractedText(request, 0 /* flags */);
+        }
+        if (extractedText != null && extractedText.text != null && extractedText.startOffset == 0
+                && extractedText.partialStartOffset < 0) {
+            return extractedText;
+        }
+        final CharSequence before = (inputConnection == null) ? null
+                : inputConnection.getTextBeforeCursor(MAX_TEXT_LENGTH, 0 /* flags */);
+        final CharSequence after = (inputConnection == null) ? null
+                : inputConnection.getTextAfterCursor(MAX_TEXT_LENGTH, 0 /* flags */);
+        final StringBuilder text = new StringBuilder();
+        if (before != null) {
+            text.append(before);
+        }
+        final int cursor = text.length();
+        if (after != null) {
+            text.append(after);
+        }
+        extractedText = new ExtractedText();
+        extractedText.text = text;
+        extractedText.selectionStart = cursor;
+        extractedText.selectionEnd = cursor;
+        return extractedText;
+    }
+
+    public void onKeypress(@Nonnull final Event event) {
+        final DataOutputStream out = startEntry(TypingSessionLog.TYPE_KEYPRESS);
+        if (out == null) {
+            return;
+        }
+        try {
+            out.writeInt(event.mCodePoint);
+            out.writeInt(event.mKeyCode);
+            out.writeInt(event.mX);
+            out.writeInt(event.mY);
+            out.writeBoolean(event.isKeyRepeat());
+        } catch (final IOException e) {
+            onWriteError(e);
+        }
+    }
+
+    public void onTextInput(@Nonnull final String text) {
+        writeTextEntry(TypingSessionLog.TYPE_TEXT, text);
+    }
+
+    public void onStartBatchInput() {
+        mLastBatchPointers.reset();
+        startEntry(TypingSessionLog.TYPE_START_BATCH);
+    }
+
+    public void onUpdateBatchInput(@Nonnull final InputPointers batchPointers) {
+        writeBatchEntry(TypingSessionLog.TYPE_UPDATE_BATCH, batchPointers);
+    }
+
+    public void onEndBatchInput(@Nonnull final InputPointers batchPointers) {
+        writeBatchEntry(TypingSessionLog.TYPE_END_BATCH, batchPointers);
+    }
+
+    public void onCancelBatchInput() {
+        mLastBatchPointers.reset();
+        startEntry(TypingSessionLog.TYPE_CANCEL_BATCH);
+    }
+
+    public void onPickSuggestion(@Nonnull final String word) {
+        writeTextEntry(TypingSessionLog.TYPE_PICK_SUGGESTION, word);
+    }
+
+    public void onCursorMove(final int selectionStart, final int selectionEnd) {
+        final DataOutputStream out = startEntry(TypingSessionLog.TYPE_CURSOR_MOVE);
+        if (out == null) {
+            return;
+        }
+        try {
+            out.writeInt(selectionStart);
+            out.writeInt(selectionEnd);
+        } catch (final IOException e) {
+            onWriteError(e);
+        }
+    }
+
+    /**
+     * Stops the recording with the final text of the editor.
+     *
+     * @return whether the session has been recorded.
+     */
+    public boolean stop(@Nullable final InputConnection inputConnection) {
+        final DataOutputStream out = startEntry(TypingSessionLog.TYPE_END);
+        if (out == null) {
+            return false;
+        }
+        try {
+            TypingSessionLog.writeText(out, getText(inputConnection).text);
+            out.close();
+            mOut = null;
+            return true;
+        } catch (final IOException e) {
+            onWriteError(e);
+            return false;
+        }
+    }
+
+    /**
+     * Stops the recording and deletes what has been recorded, without reading the editor.
+     */
+    public void discard() {
+        final DataOutputStream out = mOut;
+        mOut = null;
+        if (out != null) {
+            try {
+                out.close();
+            } catch (final IOException e) {
+                // Nothing we can do.
+            }
+        }
+        if (mFile.exists() && !mFile.delete()) {
+            Log.w(TAG, "Cannot delete " + mFile);
+        }
+    }
+
+    @Nullable
+    private DataOutputStream startEntry(final int type) {
+        final DataOutputStream out = mOut;
+        if (out == null) {
+            return null;
+        }
+        try {
+            out.writeByte(type);
+            out.writeInt((int)(SystemClock.uptimeMillis() - mStartTime));
+            return out;
+        } catch (final IOException e) {
+            onWriteError(e);
+            return null;
+        }
+    }
+
+    private void writeTextEntry(final int type, @Nonnull final String text) {
+        final DataOutputStream out = startEntry(type);
+        if (out == null) {
+            return;
+        }
+        try {
+            TypingSessionLog.writeText(out, text);
+        } catch (final IOException e) {
+            onWriteError(e);
+        }
+    }
+
+    private void writeBatchEntry(final int type, @Nonnull final InputPointers batchPointers) {
+        final DataOutputStream out = startEntry(type);
+        if (out == null) {
+            return;
+        }
+        final int size = batchPointers.getPointerSize();
+        final int[] xCoordinates = batchPointers.getXCoordinates();
+        final int[] yCoordinates = batchPointers.getYCoordinates();
+        final int[] pointerIds = batchPointers.getPointerIds();
+        final int[] times = batchPointers.getTimes();
+        // Only write the pointers that were not in the previous batch.
+        final int lastSize = mLastBatchPointers.getPointerSize();
+        final int[] lastXCoordinates = mLastBatchPointers.getXCoordinates();
+        final int[] lastYCoordinates = mLastBatchPointers.getYCoordinates();
+        final int[] lastPointerIds = mLastBatchPointers.getPointerIds();
+        final int[] lastTimes = mLastBatchPointers.getTimes();
+        int sharedCount = 0;
+        while (sharedCount < size && sharedCount < lastSize
+                && xCoordinates[sharedCount] == lastXCoordinates[sharedCount]
+                && yCoordinates[sharedCount] == lastYCoordinates[sharedCount]
+                && pointerIds[sharedCount] == lastPointerIds[sharedCount]
+                && times[sharedCount] == lastTimes[sharedCount]) {
+            sharedCount++;
+        }
+        try {
+            out.writeInt(sharedCount);
+            out.writeInt(size - sharedCount);
+            for (int i = sharedCount; i < size; i++) {
+                out.writeInt(xCoordinates[i]);
+                out.writeInt(yCoordinates[i]);
+                out.writeInt(pointerIds[i]);
+                out.writeInt(times[i]);
+            }
+        } catch (final IOException e) {
+            onWriteError(e);
+        }
+        mLastBatchPointers.copy(batchPointers);
+    }
+
+    private void onWriteError(@Nonnull final IOException e) {
+        Log.w(TAG, "Cannot record a typing session to " + mFile, e);
+        final DataOutputStream out = mOut;
+        mOut = null;
+        try {
+            out.close();
+        } catch (final IOException closeException) {
+            // Nothing we can do.
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin;
+
+import android.os.Debug;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.android.inputmethod.event.Event;
+import com.android.inputmethod.keyboard.KeyboardActionListener;
+import com.android.inputmethod.latin.SuggestedWords.SuggestedWordInfo;
+import com.android.inputmethod.latin.TypingSessionLog.Entry;
+import com.android.inputmethod.latin.inputlogic.InputLogic;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Replays a {@link TypingSessionLog} through the {@link InputLogic} of LatinIME, and reports how
+ * long the UI thread took to handle each entry.
+ *
+ * During the replay, the input logic edits an {@link InMemoryInputConnection} instead of the
+ * editor of the app, and the dictionaries are reset without the personalized ones so that the
+ * replay does not learn from the session. The keyboard is ignored, so that the user does not type
+ * into the replay. The entries are replayed at the times they were recorded, so that the
+ * asynchronous work that follows each of them happens as it did when recording. The report has
+ * the percentiles of the latencies for each type of entry, the allocations of the UI thread per
+ * keypress, and whether the final text is the same as when recording. It does not contain the
+ * text.
+ *
+ * LatinIME cancels the replay with {@link #cancel()} when the editor changes or its input view is
+ * hidden. This class is only used on the UI thread.
+ */
+final class TypingSessionReplayer {
+    private static final String TAG = TypingSessionReplayer.class.getSimpleName();
+
+    // The time to let the last entry finish its asynchronous work before the text is compared.
+    private static final long FINISH_DELAY_MS = 1000;
+    private static final int[] PERCENTILES = { 50, 90, 99 };
+
+    @Nonnull private final LatinIME mLatinIme;
+    @Nonnull private final TypingSessionLog mLog;
+    @Nonnull private final File mReportFile;
+    private final Handler mHandler = new Handler();
+
+    private InMemoryInputConnection mInputConnection;
+    private long mStartTime;
+    private int mNextEntryIndex;
+    // The time the UI thread took to handle each entry, in microseconds.
+    private final int[] mLatencies;
+    private long mKeypressAllocationCount;
+    private int mKeypressCount;
+    private int mMissingSuggestionCount;
+    private boolean mIsFinished;
+
+    public TypingSessionReplayer(@Nonnull final LatinIME latinIme,
+            @Nonnull final TypingSessionLog log, @Nonnull final File reportFile) {
+        mLatinIme = latinIme;
+        mLog = log;
+        mReportFile = reportFile;
+        mLatencies = new int[log.mEntries.size()];
+    }
+
+    public boolean isFinished() {
+        return mIsFinished;
+    }
+
+    /**
+     * Starts the replay on the next message of the UI thread.
+     */
+    public void start() {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                startReplay();
+            }
+        });
+    }
+
+    private void restartInput() {
+        mLatinIme.mInputLogic.finishInput();
+        mLatinIme.mInputLogic.startInput(
+                RichInputMethodManager.getInstance().getCombiningRulesExtraValueOfCurrentSubtype(),
+                mLatinIme.mSettings.getCurrent());
+    }
+
+    @SuppressWarnings("deprecation")
+    private void startReplay() {
+        mInputConnection = new InMemoryInputConnection(mLatinIme,
+                mLatinIme.getWindow().getWindow().getDecorView(), mLog.mInitialText,
+                mLog.mInitialSelectionStart, mLog.mInitialSelectionEnd);
+        mLatinIme.mKeyboardSwitcher.setKeyboardActionListener(
+                KeyboardActionListener.EMPTY_LISTENER);
+        mLatinIme.resetDictionariesForReplay(false /* usePersonalizedDicts */);
+        mLatinIme.mInputLogic.mConnection.setReplayInputConnection(mInputConnection);
+        restartInput();
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        mStartTime = SystemClock.uptimeMillis();
+        scheduleNextEntry();
+    }
+
+    private void scheduleNextEntry() {
+        if (mNextEntryIndex >= mLog.mEntries.size()) {
+            mHandler.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    finishReplay();
+                }
+            }, FINISH_DELAY_MS);
+            return;
+        }
+        mHandler.postAtTime(new Runnable() {
+            @Override
+            public void run() {
+                replayNextEntry();
+                scheduleNextEntry();
+            }
+        }, mStartTime + mLog.mEntries.get(mNextEntryIndex).mTime);
+    }
+
+    @SuppressWarnings("deprecation")
+    private void replayNextEntry() {
+        final int index = mNextEntryIndex++;
+        final Entry entry = mLog.mEntries.get(index);
+        final long allocationCount = Debug.getThreadAllocCount();
+        final long startTime = System.nanoTime();
+        replayEntry(entry);
+        mLatencies[index] = (int)((System.nanoTime() - startTime) / 1000);
+        if (entry.mType == TypingSessionLog.TYPE_KEYPRESS) {
+            mKeypressAllocationCount += Debug.getThreadAllocCount() - allocationCount;
+            mKeypressCount++;
+        }
+    }
+
+    private void replayEntry(@Nonnull final Entry entry) {
+        switch (entry.mType) {
+        case TypingSessionLog.TYPE_KEYPRESS:
+            mLatinIme.onEvent(Event.createSoftwareKeypressEvent(entry.mCodePoint, entry.mKeyCode,
+                    entry.mX, entry.mY, entry.mIsKeyRepeat));
+            break;
+        case TypingSessionLog.TYPE_TEXT:
+            mLatinIme.onTextInput(entry.mText);
+            break;
+        case TypingSessionLog.TYPE_START_BATCH:
+            mLatinIme.onStartBatchInput();
+            break;
+        case TypingSessionLog.TYPE_UPDATE_BATCH:
+            mLatinIme.onUpdateBatchInput(entry.mBatchPointers);
+            break;
+        case TypingSessionLog.TYPE_END_BATCH:
+            mLatinIme.onEndBatchInput(entry.mBatchPointers);
+            break;
+        case TypingSessionLog.TYPE_CANCEL_BATCH:
+            mLatinIme.onCancelBatchInput();
+            break;
+        case TypingSessionLog.TYPE_PICK_SUGGESTION:
+            final SuggestedWordInfo suggestion = findSuggestion(entry.mText);
+            if (suggestion == null) {
+                // The replay diverged from the recording.
+                mMissingSuggestionCount++;
+                break;
+            }
+            mLatinIme.pickSuggestionManually(suggestion);
+            break;
+        case TypingSessionLog.TYPE_CURSOR_MOVE:
+            mInputConnection.setSelection(entry.mX, entry.mY);
+            break;
+        }
+    }
+
+    @Nullable
+    private SuggestedWordInfo findSuggestion(@Nonnull final String word) {
+        final SuggestedWords suggestedWords = mLatinIme.mInputLogic.mSuggestedWords;
+        for (int i = 0; i < suggestedWords.size(); i++) {
+            final SuggestedWordInfo info = suggestedWords.getInfo(i);
+            if (word.equals(info.mWord)) {
+                return info;
+            }
+        }
+        return null;
+    }
+
+    private void finishReplay() {
+        final String finalText = mInputConnection.getText();
+        release();
+        final String report = getReport(finalText);
+        Log.i(TAG, "Typing session replay finished: textMatches="
+                + finalText.equals(mLog.mFinalText) + ", report in " + mReportFile);
+        writeReport(report);
+    }
+
+    /**
+     * Stops the replay without writing a report. This does nothing if the replay has finished.
+     */
+    public void cancel() {
+        if (mIsFinished) {
+            return;
+        }
+        Log.i(TAG, "Typing session replay canceled after " + mNextEntryIndex + " of "
+                + mLog.mEntries.size() + " entries");
+        release();
+    }
+
+    /**
+     * Gives the input logic back to the editor, with the personalized dictionaries.
+     */
+    @SuppressWarnings("deprecation")
+    private void release() {
+        mIsFinished = true;
+        mHandler.removeCallbacksAndMessages(null);
+        if (mInputConnection == null) {
+            // The replay has not started.
+            return;
+        }
+        Debug.stopAllocCounting();
+        mLatinIme.mInputLogic.mConnection.setReplayInputConnection(null);
+        restartInput();
+        mLatinIme.resetDictionariesForReplay(true /* usePersonalizedDicts */);
+        mLatinIme.mKeyboardSwitcher.setKeyboardActionListener(mLatinIme);
+        mLatinIme.setNeutralSuggestionStrip();
+    }
+
+    @Nonnull
+    private String getReport(@Nonnull final String finalText) {
+        // The text is left out: only whether it matches and its length are reported.
+        final StringBuilder sb = new StringBuilder("Typing session replay: entries=")
+                .append(mLog.mEntries.size())
+                .append(" textMatches=").append(finalText.equals(mLog.mFinalText))
+                .append(" expectedLength=").append(mLog.mFinalText.length())
+                .append(" actualLength=").append(finalText.length())
+                .append(" missingSuggestions=").append(mMissingSuggestionCount)
+                .append('\n')
+                .append("  allocationsPerKeypress=")
+                .append(mKeypressCount == 0 ? 0 : mKeypressAllocationCount / mKeypressCount)
+                .append(" (from Debug.getThreadAllocCount(), which is deprecated: on ART it may")
+                .append(" not count every allocation, so only compare runs on the same device)")
+                .append('\n');
+        for (int type = 1; type < TypingSessionLog.TYPE_NAMES.length; type++) {
+            int count = 0;
+            for (final Entry entry : mLog.mEntries) {
+                if (entry.mType == type) {
+                    count++;
+                }
+            }
+            if (count == 0) {
+                continue;
+            }
+            final int[] latencies = new int[count];
+            count = 0;
+            for (int i = 0; i < mLatencies.length; i++) {
+                if (mLog.mEntries.get(i).mType == type) {
+                    latencies[count++] = mLatencies[i];
+                }
+            }
+            Arrays.sort(latencies);
+            sb.append("  ").append(TypingSessionLog.TYPE_NAMES[type]).append(" (us): count=")
+                    .append(count);
+            for (final int percentile : PERCENTILES) {
+                final int rank = (count * percentile + 99) / 100;
+                sb.append(" p").append(percentile).append('=')
+                        .append(latencies[Math.max(rank, 1) - 1]);
+            }
+            sb.append(" max=").append(latencies[count - 1]).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private void writeReport(@Nonnull final String report) {
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(mReportFile), "UTF-8");
+            writer.write(report);
+        } catch (final IOException e) {
+            Log.e(TAG, "Cannot write the replay report to " + mReportFile, e);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (final IOException e) {
+                    // Nothing we can do.
+                }
+            }
+        }
+    }
+}
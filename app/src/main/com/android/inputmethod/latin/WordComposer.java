@@ -97,6 +97,29 @@ public final class WordComposer {
         return new ComposedData(getInputPointers(), isBatchMode(), mTypedWordCache.toString());
     }
 
+    /**
+     * Returns a copy of the state that suggestions are computed from, so that they can be computed
+     * on another thread while this composer goes on changing. The copy does not have the events
+     * that composed the word, so it is not meant to be edited.
+     */
+    public WordComposer getSnapshotForSuggestions() {
+        final WordComposer snapshot = new WordComposer();
+        snapshot.mCombinerChain = new CombinerChain(getTypedWord());
+        snapshot.mCombiningSpec = mCombiningSpec;
+        snapshot.refreshTypedWordCache();
+        snapshot.mInputPointers.copy(mInputPointers);
+        snapshot.mAutoCorrection = mAutoCorrection;
+        snapshot.mIsResumed = mIsResumed;
+        snapshot.mIsBatchMode = mIsBatchMode;
+        snapshot.mRejectedBatchModeSuggestion = mRejectedBatchModeSuggestion;
+        snapshot.mCapsCount = mCapsCount;
+        snapshot.mDigitsCount = mDigitsCount;
+        snapshot.mCapitalizedMode = mCapitalizedMode;
+        snapshot.mCursorPositionWithinWord = mCursorPositionWithinWord;
+        snapshot.mIsOnlyFirstCharCapitalized = mIsOnlyFirstCharCapitalized;
+        return snapshot;
+    }
+
     /**
      * Restart the combiners, possibly with a new spec.
      * @param combiningSpec The spec string for combining. This is found in the extra value.
@@ -53,8 +53,8 @@ import com.android.inputmethod.latin.settings.SettingsValues;
 import com.android.inputmethod.latin.settings.SettingsValuesForSuggestion;
 import com.android.inputmethod.latin.settings.SpacingAndPunctuations;
 import com.android.inputmethod.latin.suggestions.SuggestionStripViewAccessor;
-import com.android.inputmethod.latin.utils.AsyncResultHolder;
 import com.android.inputmethod.latin.utils.InputTypeUtils;
+import com.android.inputmethod.latin.utils.LatestResultHolder;
 import com.android.inputmethod.latin.utils.RecapitalizeStatus;
 import com.android.inputmethod.latin.utils.StatsUtils;
 import com.android.inputmethod.latin.utils.TextRange;
@@ -78,6 +78,16 @@ public final class InputLogic {
 
     // Never null.
     private InputLogicHandler mInputLogicHandler = InputLogicHandler.NULL_HANDLER;
+    // The sequence number of the last update of the suggestion strip that was requested, and of
+    // the last one that was shown or given up. Only accessed on the UI thread.
+    private int mLastSuggestionsRequestSequenceNumber;
+    private int mLastShownSuggestionsSequenceNumber;
+    // The typed word when the last update of the suggestion strip was requested.
+    private String mLastSuggestionsRequestTypedWord = "";
+    private int mStaleSuggestionsCount;
+    // The suggestions computed on the non-UI thread for the latest update of the suggestion strip.
+    private final LatestResultHolder<SuggestedWords> mSuggestionsResultHolder =
+            new LatestResultHolder<>("Suggest");
 
     // TODO : make all these fields private as soon as possible.
     // Current space state of the input method. This can be any of the above constants.
@@ -149,6 +159,7 @@ public final class InputLogic {
         }
         mWordComposer.restartCombining(combiningSpec);
         resetComposingState(true /* alsoResetLastComposedWord */);
+        mSuggest.clearSuggestionResultsCache();
         mDeleteCount = 0;
         mSpaceState = SpaceState.NONE;
         mRecapitalizeStatus.disable(); // Do not perform recapitalize until the cursor is moved once
@@ -221,6 +232,10 @@ public final class InputLogic {
         mDictionaryFacilitator.closeDictionaries();
     }
 
+    public String dumpInputLogicHandler() {
+        return mInputLogicHandler.dump() + " staleSuggestions=" + mStaleSuggestionsCount;
+    }
+
     /**
      * React to a string input.
      *
@@ -1443,62 +1458,162 @@ public final class InputLogic {
                 ngramContext, timeStampInSeconds, settingsValues.mBlockPotentiallyOffensive);
     }
 
-    public void performUpdateSuggestionStripSync(final SettingsValues settingsValues,
+    /**
+     * Request an update of the suggestion strip for the current input.
+     *
+     * The suggestions are computed on the non-UI thread and shown when they are ready, unless
+     * the input has changed since then. This does not wait for them.
+     */
+    // Called on the UI thread.
+    public void performUpdateSuggestionStrip(final SettingsValues settingsValues,
             final int inputStyle) {
-        long startTimeMillis = 0;
         if (DebugFlags.DEBUG_ENABLED) {
-            startTimeMillis = System.currentTimeMillis();
-            Log.d(TAG, "performUpdateSuggestionStripSync()");
+            Log.d(TAG, "performUpdateSuggestionStrip()");
         }
+        // Any update that is still being computed is superseded by this one.
+        final int sequenceNumber = ++mLastSuggestionsRequestSequenceNumber;
         // Check if we have a suggestion engine attached.
         if (!settingsValues.needsToLookupSuggestions()) {
             if (mWordComposer.isComposingWord()) {
                 Log.w(TAG, "Called updateSuggestionsOrPredictions but suggestions were not "
                         + "requested!");
             }
+            mLastShownSuggestionsSequenceNumber = sequenceNumber;
             // Clear the suggestions strip.
             mSuggestionStripViewAccessor.showSuggestionStrip(SuggestedWords.getEmptyInstance());
             return;
         }
 
         if (!mWordComposer.isComposingWord() && !settingsValues.mBigramPredictionEnabled) {
+            mLastShownSuggestionsSequenceNumber = sequenceNumber;
             mSuggestionStripViewAccessor.setNeutralSuggestionStrip();
             return;
         }
 
-        final AsyncResultHolder<SuggestedWords> holder = new AsyncResultHolder<>("Suggest");
-        mInputLogicHandler.getSuggestedWords(inputStyle, SuggestedWords.NOT_A_SEQUENCE_NUMBER,
+        mLastSuggestionsRequestTypedWord = mWordComposer.getTypedWord();
+        mLatinIME.requestSuggestedWords(inputStyle, sequenceNumber,
                 new OnGetSuggestedWordsCallback() {
                     @Override
                     public void onGetSuggestedWords(final SuggestedWords suggestedWords) {
-                        final String typedWordString = mWordComposer.getTypedWord();
-                        final SuggestedWordInfo typedWordInfo = new SuggestedWordInfo(
-                                typedWordString, "" /* prevWordsContext */,
-                                SuggestedWordInfo.MAX_SCORE,
-                                SuggestedWordInfo.KIND_TYPED, Dictionary.DICTIONARY_USER_TYPED,
-                                SuggestedWordInfo.NOT_AN_INDEX /* indexOfTouchPointOfSecondWord */,
-                                SuggestedWordInfo.NOT_A_CONFIDENCE);
-                        // Show new suggestions if we have at least one. Otherwise keep the old
-                        // suggestions with the new typed word. Exception: if the length of the
-                        // typed word is <= 1 (after a deletion typically) we clear old suggestions.
-                        if (suggestedWords.size() > 1 || typedWordString.length() <= 1) {
-                            holder.set(suggestedWords);
-                        } else {
-                            holder.set(retrieveOlderSuggestions(typedWordInfo, mSuggestedWords));
-                        }
+                        // This may be called on the non-UI thread.
+                        mSuggestionsResultHolder.set(sequenceNumber, suggestedWords);
+                        mLatinIME.mHandler.postSuggestedWordsReady(sequenceNumber);
                     }
                 }
         );
+    }
 
-        // This line may cause the current thread to wait.
-        final SuggestedWords suggestedWords = holder.get(null,
-                Constants.GET_SUGGESTED_WORDS_TIMEOUT);
+    /**
+     * Prepare a request for suggestions on the UI thread, and run it on the non-UI thread.
+     *
+     * The request works on copies of the word composer and of the context, so that the UI thread
+     * can go on processing input while it runs.
+     */
+    // Called on the UI thread.
+    public void requestSuggestedWords(final SettingsValues settingsValues,
+            final Keyboard keyboard, final int keyboardShiftMode, final int inputStyle,
+            final int sequenceNumber, final OnGetSuggestedWordsCallback callback) {
+        mWordComposer.adviseCapitalizedModeBeforeFetchingSuggestions(
+                getActualCapsMode(settingsValues, keyboardShiftMode));
+        final WordComposer wordComposer = mWordComposer.getSnapshotForSuggestions();
+        final NgramContext ngramContext = getNgramContextFromNthPreviousWordForSuggestion(
+                settingsValues.mSpacingAndPunctuations,
+                // See getSuggestedWords for the number of words to skip.
+                mWordComposer.isComposingWord() ? 2 : 1);
+        final SettingsValuesForSuggestion settingsValuesForSuggestion =
+                new SettingsValuesForSuggestion(settingsValues.mBlockPotentiallyOffensive);
+        final boolean isCorrectionEnabled = settingsValues.mAutoCorrectionEnabledPerUserSettings;
+        mInputLogicHandler.runSuggestionsRequest(new Runnable() {
+            @Override
+            public void run() {
+                mSuggest.getSuggestedWords(wordComposer, ngramContext, keyboard,
+                        settingsValuesForSuggestion, isCorrectionEnabled, inputStyle,
+                        sequenceNumber, callback);
+            }
+        });
+    }
+
+    /**
+     * Show the suggestions computed for an update of the suggestion strip, unless they are stale.
+     *
+     * @param sequenceNumber the sequence number of the update.
+     * @param handler the UI handler, to know whether a newer update is pending.
+     */
+    // Called on the UI thread.
+    public void onSuggestedWordsReady(final int sequenceNumber,
+            final LatinIME.UIHandler handler) {
+        if (sequenceNumber <= mLastShownSuggestionsSequenceNumber) {
+            // Already shown by awaitLatestSuggestedWords.
+            return;
+        }
+        if (sequenceNumber != mLastSuggestionsRequestSequenceNumber
+                || handler.hasPendingUpdateSuggestions()) {
+            // The input has changed since, and newer suggestions are on their way.
+            mStaleSuggestionsCount++;
+            return;
+        }
+        final SuggestedWords suggestedWords = mSuggestionsResultHolder.get(sequenceNumber);
         if (suggestedWords != null) {
-            mSuggestionStripViewAccessor.showSuggestionStrip(suggestedWords);
+            showRequestedSuggestedWords(sequenceNumber, suggestedWords);
+        }
+    }
+
+    /**
+     * Wait for the suggestions of the last update of the suggestion strip, if they have not been
+     * shown yet, and show them.
+     *
+     * This is for the callers that need the auto-correction to match the current input.
+     */
+    // Called on the UI thread.
+    private void awaitLatestSuggestedWords() {
+        final int sequenceNumber = mLastSuggestionsRequestSequenceNumber;
+        if (sequenceNumber <= mLastShownSuggestionsSequenceNumber) {
+            return;
         }
+        long startTimeMillis = 0;
+        if (DebugFlags.DEBUG_ENABLED) {
+            startTimeMillis = System.currentTimeMillis();
+        }
+        // This line may cause the current thread to wait.
+        final SuggestedWords suggestedWords = mSuggestionsResultHolder.await(sequenceNumber,
+                Constants.GET_SUGGESTED_WORDS_TIMEOUT);
         if (DebugFlags.DEBUG_ENABLED) {
             long runTimeMillis = System.currentTimeMillis() - startTimeMillis;
-            Log.d(TAG, "performUpdateSuggestionStripSync() : " + runTimeMillis + " ms to finish");
+            Log.d(TAG, "awaitLatestSuggestedWords() : " + runTimeMillis + " ms to finish");
+        }
+        if (suggestedWords == null) {
+            Log.w(TAG, "Suggestions #" + sequenceNumber + " did not arrive in time");
+            // Don't show them if they arrive later, as they would be for a word that is gone.
+            mLastShownSuggestionsSequenceNumber = sequenceNumber;
+            return;
+        }
+        showRequestedSuggestedWords(sequenceNumber, suggestedWords);
+    }
+
+    private void showRequestedSuggestedWords(final int sequenceNumber,
+            final SuggestedWords suggestedWords) {
+        mLastShownSuggestionsSequenceNumber = sequenceNumber;
+        final String typedWordString = mWordComposer.getTypedWord();
+        if (!typedWordString.equals(mLastSuggestionsRequestTypedWord)) {
+            // The word has changed without a new update, for example because a suggestion has
+            // been picked.
+            mStaleSuggestionsCount++;
+            return;
+        }
+        final SuggestedWordInfo typedWordInfo = new SuggestedWordInfo(
+                typedWordString, "" /* prevWordsContext */,
+                SuggestedWordInfo.MAX_SCORE,
+                SuggestedWordInfo.KIND_TYPED, Dictionary.DICTIONARY_USER_TYPED,
+                SuggestedWordInfo.NOT_AN_INDEX /* indexOfTouchPointOfSecondWord */,
+                SuggestedWordInfo.NOT_A_CONFIDENCE);
+        // Show new suggestions if we have at least one. Otherwise keep the old
+        // suggestions with the new typed word. Exception: if the length of the
+        // typed word is <= 1 (after a deletion typically) we clear old suggestions.
+        if (suggestedWords.size() > 1 || typedWordString.length() <= 1) {
+            mSuggestionStripViewAccessor.showSuggestionStrip(suggestedWords);
+        } else {
+            mSuggestionStripViewAccessor.showSuggestionStrip(
+                    retrieveOlderSuggestions(typedWordInfo, mSuggestedWords));
         }
     }
 
@@ -2104,8 +2219,11 @@ public final class InputLogic {
             // for application-specified completions. As for recorrections, we never auto-correct,
             // so we don't come here either. Hence, the input style is necessarily
             // INPUT_STYLE_TYPING.
-            performUpdateSuggestionStripSync(settingsValues, SuggestedWords.INPUT_STYLE_TYPING);
+            performUpdateSuggestionStrip(settingsValues, SuggestedWords.INPUT_STYLE_TYPING);
         }
+        // The auto-correction must be the one for the word as it is now, so wait for the
+        // suggestions of the last update if they are still being computed.
+        awaitLatestSuggestedWords();
         final SuggestedWordInfo autoCorrectionOrNull = mWordComposer.getAutoCorrectionOrNull();
         final String typedWord = mWordComposer.getTypedWord();
         final String stringToCommit = (autoCorrectionOrNull != null)
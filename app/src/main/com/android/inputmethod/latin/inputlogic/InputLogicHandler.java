@@ -36,8 +36,18 @@ class InputLogicHandler implements Handler.Callback {
     final InputLogic mInputLogic;
     private final Object mLock = new Object();
     private boolean mInBatchInput; // synchronized using {@link #mLock}.
+    // The batch input decode waiting to be run on the non-UI thread, if any. Only one is ever
+    // queued: a newer update replaces it, as it would decode the latest pointers anyway. All
+    // synchronized using {@link #mLock}.
+    private OnGetSuggestedWordsCallback mPendingBatchCallback;
+    private int mPendingBatchInputStyle;
+    private int mPendingBatchSequenceNumber;
+    private int mBatchDecodeCount;
+    private int mSkippedBatchDecodeCount;
 
     private static final int MSG_GET_SUGGESTED_WORDS = 1;
+    private static final int MSG_GET_BATCH_SUGGESTED_WORDS = 2;
+    private static final int MSG_RUN_SUGGESTIONS_REQUEST = 3;
 
     // A handler that never does anything. This is used for cases where events come before anything
     // is initialized, though probably only the monkey can actually do this.
@@ -59,6 +69,10 @@ class InputLogicHandler implements Handler.Callback {
         @Override
         public void getSuggestedWords(final int sessionId, final int sequenceNumber,
                 final OnGetSuggestedWordsCallback callback) {}
+        @Override
+        public void runSuggestionsRequest(final Runnable request) {}
+        @Override
+        public String dump() { return ""; }
     };
 
     InputLogicHandler() {
@@ -77,7 +91,10 @@ class InputLogicHandler implements Handler.Callback {
     }
 
     public void reset() {
-        mNonUIThreadHandler.removeCallbacksAndMessages(null);
+        synchronized (mLock) {
+            mNonUIThreadHandler.removeCallbacksAndMessages(null);
+            mPendingBatchCallback = null;
+        }
     }
 
     // In unit tests, we create several instances of LatinIME, which results in several instances
@@ -98,6 +115,26 @@ class InputLogicHandler implements Handler.Callback {
                 mLatinIME.getSuggestedWords(msg.arg1 /* inputStyle */,
                         msg.arg2 /* sequenceNumber */, (OnGetSuggestedWordsCallback) msg.obj);
                 break;
+            case MSG_GET_BATCH_SUGGESTED_WORDS:
+                final OnGetSuggestedWordsCallback callback;
+                final int inputStyle;
+                final int sequenceNumber;
+                synchronized (mLock) {
+                    callback = mPendingBatchCallback;
+                    inputStyle = mPendingBatchInputStyle;
+                    sequenceNumber = mPendingBatchSequenceNumber;
+                    mPendingBatchCallback = null;
+                    if (callback != null) {
+                        mBatchDecodeCount++;
+                    }
+                }
+                if (callback != null) {
+                    mLatinIME.getSuggestedWords(inputStyle, sequenceNumber, callback);
+                }
+                break;
+            case MSG_RUN_SUGGESTIONS_REQUEST:
+                ((Runnable) msg.obj).run();
+                break;
         }
         return true;
     }
@@ -139,8 +176,38 @@ class InputLogicHandler implements Handler.Callback {
                     showGestureSuggestionsWithPreviewVisuals(suggestedWords, isTailBatchInput);
                 }
             };
-            getSuggestedWords(isTailBatchInput ? SuggestedWords.INPUT_STYLE_TAIL_BATCH
-                    : SuggestedWords.INPUT_STYLE_UPDATE_BATCH, sequenceNumber, callback);
+            getBatchSuggestedWordsLocked(isTailBatchInput, sequenceNumber, callback);
+        }
+    }
+
+    /**
+     * Schedule the decoding of the batch input on the non-UI thread, replacing the pending one.
+     *
+     * The batch pointers are in the word composer, so any pending decode would only compute
+     * suggestions for pointers that have since been superseded. A tail batch input is moved to
+     * the front of the queue so that the end of the gesture is not delayed by other tasks.
+     */
+    private void getBatchSuggestedWordsLocked(final boolean isTailBatchInput,
+            final int sequenceNumber, final OnGetSuggestedWordsCallback callback) {
+        final boolean hasPendingDecode = (null != mPendingBatchCallback);
+        if (hasPendingDecode) {
+            mSkippedBatchDecodeCount++;
+            if (SuggestedWords.INPUT_STYLE_TAIL_BATCH == mPendingBatchInputStyle
+                    && !isTailBatchInput) {
+                // Never replace the end of a gesture with an intermediate update.
+                return;
+            }
+        }
+        mPendingBatchCallback = callback;
+        mPendingBatchInputStyle = isTailBatchInput ? SuggestedWords.INPUT_STYLE_TAIL_BATCH
+                : SuggestedWords.INPUT_STYLE_UPDATE_BATCH;
+        mPendingBatchSequenceNumber = sequenceNumber;
+        if (isTailBatchInput) {
+            mNonUIThreadHandler.removeMessages(MSG_GET_BATCH_SUGGESTED_WORDS);
+            mNonUIThreadHandler.sendMessageAtFrontOfQueue(
+                    mNonUIThreadHandler.obtainMessage(MSG_GET_BATCH_SUGGESTED_WORDS));
+        } else if (!hasPendingDecode) {
+            mNonUIThreadHandler.sendEmptyMessage(MSG_GET_BATCH_SUGGESTED_WORDS);
         }
     }
 
@@ -218,4 +285,25 @@ class InputLogicHandler implements Handler.Callback {
         mNonUIThreadHandler.obtainMessage(
                 MSG_GET_SUGGESTED_WORDS, inputStyle, sequenceNumber, callback).sendToTarget();
     }
+
+    /**
+     * Run a request for suggestions on the non-UI thread.
+     *
+     * As opposed to {@link #getSuggestedWords(int, int, OnGetSuggestedWordsCallback)}, the
+     * request has been prepared on the UI thread and only reads copies of the input state, so
+     * the UI thread does not have to wait for it.
+     *
+     * @param request the request, which delivers its results itself.
+     */
+    // Called on the UI thread by InputLogic.
+    public void runSuggestionsRequest(final Runnable request) {
+        mNonUIThreadHandler.obtainMessage(MSG_RUN_SUGGESTIONS_REQUEST, request).sendToTarget();
+    }
+
+    public String dump() {
+        synchronized (mLock) {
+            return "InputLogicHandler: batchDecodes=" + mBatchDecodeCount
+                    + " skippedBatchDecodes=" + mSkippedBatchDecodeCount;
+        }
+    }
 }
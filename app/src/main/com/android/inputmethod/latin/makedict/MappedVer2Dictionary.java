@@ -0,0 +1,583 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.makedict;
+
+import com.android.inputmethod.latin.Dictionary;
+import com.android.inputmethod.latin.NgramContext;
+import com.android.inputmethod.latin.SuggestedWords.SuggestedWordInfo;
+import com.android.inputmethod.latin.common.ComposedData;
+import com.android.inputmethod.latin.common.Constants;
+import com.android.inputmethod.latin.common.StringUtils;
+import com.android.inputmethod.latin.makedict.FormatSpec.DictionaryOptions;
+import com.android.inputmethod.latin.makedict.FormatSpec.FormatOptions;
+import com.android.inputmethod.latin.settings.SettingsValuesForSuggestion;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * A read-only dictionary for version 2 binary dictionary files, written in Java.
+ *
+ * The file is memory-mapped and PtNodes are decoded from the mapping only when a lookup goes
+ * through them, so opening a dictionary neither loads it onto the heap nor needs the native
+ * library. This supports word lookups and frequencies; it does not decode touch input, so
+ * {@link #getSuggestions} always returns null. Characters and case are compared like the native
+ * dictionary does, and the one-byte characters of version 202 dictionaries are decoded through
+ * the code point table of their header.
+ *
+ * {@link com.android.inputmethod.latin.ReadOnlyBinaryDictionary} uses it for the word lookups
+ * of version 2 dictionaries, so that they neither cross JNI nor wait for the dictionary lock.
+ */
+public final class MappedVer2Dictionary extends Dictionary {
+    private static final int HEADER_VERSION_POSITION = 4;
+    private static final int HEADER_SIZE_POSITION = 8;
+    private static final int HEADER_ATTRIBUTES_POSITION = 12;
+
+    private static final int NOT_A_DICT_POS = -1;
+
+    // Same as HeaderPolicy::REQUIRES_GERMAN_UMLAUT_PROCESSING_KEY in native code.
+    private static final String REQUIRES_GERMAN_UMLAUT_PROCESSING_KEY =
+            "REQUIRES_GERMAN_UMLAUT_PROCESSING";
+
+    private final ByteBuffer mBuffer;
+    private final DictionaryHeader mHeader;
+    // The code points of the one-byte characters, from the header, or null if they are stored
+    // as they are.
+    private final int[] mCodePointTable;
+    private final boolean mRequiresGermanUmlautProcessing;
+
+    /**
+     * Opens a dictionary file.
+     *
+     * @param file the file containing the dictionary.
+     * @param offset the offset of the dictionary data within the file.
+     * @param length the length of the dictionary data.
+     * @param locale the locale of the dictionary.
+     * @param dictType the dictionary type, as a human-readable string.
+     */
+    public MappedVer2Dictionary(final File file, final long offset, final long length,
+            final Locale locale, final String dictType)
+            throws IOException, UnsupportedFormatException {
+        super(dictType, locale);
+        mBuffer = mapFile(file, offset, length);
+        mHeader = readHeader(mBuffer);
+        final String codePointTable = mHeader.mDictionaryOptions.mAttributes.get(
+                DictionaryHeader.CODE_POINT_TABLE_KEY);
+        mCodePointTable = codePointTable == null
+                ? null : StringUtils.toCodePointArray(codePointTable);
+        mRequiresGermanUmlautProcessing = readIntAttribute(mHeader,
+                REQUIRES_GERMAN_UMLAUT_PROCESSING_KEY, 0 /* defaultValue */) != 0;
+    }
+
+    // Same as HeaderReadWriteUtils::readIntAttributeValue in native code.
+    private static int readIntAttribute(final DictionaryHeader header, final String key,
+            final int defaultValue) {
+        final String value = header.mDictionaryOptions.mAttributes.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (final NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Reads the header of a version 2 dictionary without decoding the rest of the file.
+     */
+    public static DictionaryHeader readHeader(final File file, final long offset,
+            final long length) throws IOException, UnsupportedFormatException {
+        return readHeader(mapFile(file, offset, length));
+    }
+
+    public DictionaryHeader getHeader() {
+        return mHeader;
+    }
+
+    private static ByteBuffer mapFile(final File file, final long offset, final long length)
+            throws IOException {
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            // The mapping stays valid after the file is closed.
+            return randomAccessFile.getChannel().map(
+                    FileChannel.MapMode.READ_ONLY, offset, length);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private static DictionaryHeader readHeader(final ByteBuffer buffer)
+            throws UnsupportedFormatException {
+        if (buffer.capacity() < HEADER_ATTRIBUTES_POSITION
+                || buffer.getInt(0) != FormatSpec.MAGIC_NUMBER) {
+            throw new UnsupportedFormatException("Wrong magic number");
+        }
+        final int version = readUint16(buffer, HEADER_VERSION_POSITION);
+        if (version != FormatSpec.VERSION2 && version != FormatSpec.VERSION201
+                && version != FormatSpec.VERSION202) {
+            throw new UnsupportedFormatException("Unsupported version: " + version);
+        }
+        final int headerSize = buffer.getInt(HEADER_SIZE_POSITION);
+        if (headerSize < HEADER_ATTRIBUTES_POSITION || headerSize > buffer.capacity()) {
+            throw new UnsupportedFormatException("Invalid header size: " + headerSize);
+        }
+        final HashMap<String, String> attributes = new HashMap<>();
+        final StringBuilder builder = new StringBuilder();
+        int pos = HEADER_ATTRIBUTES_POSITION;
+        while (pos < headerSize) {
+            // The header strings are not encoded with the code point table.
+            pos = readString(buffer, null /* codePointTable */, pos, builder);
+            final String key = builder.toString();
+            pos = readString(buffer, null /* codePointTable */, pos, builder);
+            attributes.put(key, builder.toString());
+        }
+        final boolean hasHistoricalInfo = DictionaryHeader.ATTRIBUTE_VALUE_TRUE.equals(
+                attributes.get(DictionaryHeader.HAS_HISTORICAL_INFO_KEY));
+        return new DictionaryHeader(headerSize, new DictionaryOptions(attributes),
+                new FormatOptions(version, hasHistoricalInfo));
+    }
+
+    private static int readUint8(final ByteBuffer buffer, final int pos) {
+        return buffer.get(pos) & 0xFF;
+    }
+
+    private static int readUint16(final ByteBuffer buffer, final int pos) {
+        return (readUint8(buffer, pos) << 8) | readUint8(buffer, pos + 1);
+    }
+
+    private static int readUint24(final ByteBuffer buffer, final int pos) {
+        return (readUint8(buffer, pos) << 16) | readUint16(buffer, pos + 1);
+    }
+
+    /**
+     * Returns the code point at the position, or {@link FormatSpec#INVALID_CHARACTER} for the
+     * string terminator. See the char format in {@link FormatSpec}. A one-byte character is an
+     * index in the code point table when there is one, like in
+     * ByteArrayUtils::readCodePointAndAdvancePosition in native code.
+     */
+    private static int readCodePoint(final ByteBuffer buffer, final int[] codePointTable,
+            final int pos) {
+        final int firstByte = readUint8(buffer, pos);
+        if (firstByte < FormatSpec.MINIMAL_ONE_BYTE_CHARACTER_VALUE) {
+            if (firstByte == FormatSpec.PTNODE_CHARACTERS_TERMINATOR) {
+                return FormatSpec.INVALID_CHARACTER;
+            }
+            return readUint24(buffer, pos);
+        }
+        if (codePointTable != null) {
+            final int index = firstByte - FormatSpec.MINIMAL_ONE_BYTE_CHARACTER_VALUE;
+            return index < codePointTable.length ? codePointTable[index] : firstByte;
+        }
+        return firstByte;
+    }
+
+    private int readCodePoint(final int pos) {
+        return readCodePoint(mBuffer, mCodePointTable, pos);
+    }
+
+    private static int getCodePointSize(final ByteBuffer buffer, final int pos) {
+        final int firstByte = readUint8(buffer, pos);
+        return (firstByte < FormatSpec.MINIMAL_ONE_BYTE_CHARACTER_VALUE
+                && firstByte != FormatSpec.PTNODE_CHARACTERS_TERMINATOR) ? 3 : 1;
+    }
+
+    // Reads a terminated string into the builder and returns the position after it.
+    private static int readString(final ByteBuffer buffer, final int[] codePointTable,
+            final int pos, final StringBuilder outString) {
+        outString.setLength(0);
+        int readingPos = pos;
+        while (readingPos < buffer.capacity()) {
+            final int codePoint = readCodePoint(buffer, codePointTable, readingPos);
+            readingPos += getCodePointSize(buffer, readingPos);
+            if (codePoint == FormatSpec.INVALID_CHARACTER) {
+                break;
+            }
+            outString.appendCodePoint(codePoint);
+        }
+        return readingPos;
+    }
+
+    /**
+     * The decoded fields of a PtNode. See the PtNode layout in {@link FormatSpec}. The code
+     * points are not copied: they are read from the mapping between {@link #mCharsPos} and
+     * {@link #mCharsEndPos}.
+     */
+    private static final class PtNode {
+        public int mFlags;
+        public int mCharsPos;
+        public int mCharsEndPos;
+        public int mProbability;
+        public int mChildrenPos;
+        public int mSiblingPos;
+
+        public boolean isTerminal() {
+            return (mFlags & FormatSpec.FLAG_IS_TERMINAL) != 0;
+        }
+
+        public boolean isNotAWord() {
+            return (mFlags & FormatSpec.FLAG_IS_NOT_A_WORD) != 0;
+        }
+    }
+
+    private void readPtNode(final int pos, final PtNode outNode) {
+        int readingPos = pos;
+        final int flags = readUint8(mBuffer, readingPos++);
+        outNode.mFlags = flags;
+        outNode.mCharsPos = readingPos;
+        if ((flags & FormatSpec.FLAG_HAS_MULTIPLE_CHARS) != 0) {
+            while (readCodePoint(readingPos) != FormatSpec.INVALID_CHARACTER) {
+                readingPos += getCodePointSize(mBuffer, readingPos);
+            }
+            outNode.mCharsEndPos = readingPos;
+            // Skip the terminator.
+            readingPos += 1;
+        } else {
+            readingPos += getCodePointSize(mBuffer, readingPos);
+            outNode.mCharsEndPos = readingPos;
+        }
+        outNode.mProbability = outNode.isTerminal()
+                ? readUint8(mBuffer, readingPos++) : NOT_A_PROBABILITY;
+        // The children address is relative to the position of the address field.
+        switch (flags & FormatSpec.MASK_CHILDREN_ADDRESS_TYPE) {
+            case FormatSpec.FLAG_CHILDREN_ADDRESS_TYPE_ONEBYTE:
+                outNode.mChildrenPos = readingPos + readUint8(mBuffer, readingPos);
+                readingPos += 1;
+                break;
+            case FormatSpec.FLAG_CHILDREN_ADDRESS_TYPE_TWOBYTES:
+                outNode.mChildrenPos = readingPos + readUint16(mBuffer, readingPos);
+                readingPos += 2;
+                break;
+            case FormatSpec.FLAG_CHILDREN_ADDRESS_TYPE_THREEBYTES:
+                outNode.mChildrenPos = readingPos + readUint24(mBuffer, readingPos);
+                readingPos += 3;
+                break;
+            default:
+                outNode.mChildrenPos = NOT_A_DICT_POS;
+                break;
+        }
+        if ((flags & FormatSpec.FLAG_HAS_SHORTCUT_TARGETS) != 0) {
+            // The size of the shortcut list includes the size field itself.
+            readingPos += readUint16(mBuffer, readingPos);
+        }
+        if ((flags & FormatSpec.FLAG_HAS_BIGRAMS) != 0) {
+            int bigramFlags;
+            do {
+                bigramFlags = readUint8(mBuffer, readingPos++);
+                readingPos += getBigramAddressSize(bigramFlags);
+            } while ((bigramFlags & FormatSpec.FLAG_BIGRAM_SHORTCUT_ATTR_HAS_NEXT) != 0);
+        }
+        outNode.mSiblingPos = readingPos;
+    }
+
+    private static int getBigramAddressSize(final int bigramFlags) {
+        switch (bigramFlags & FormatSpec.MASK_BIGRAM_ATTR_ADDRESS_TYPE) {
+            case FormatSpec.FLAG_BIGRAM_ATTR_ADDRESS_TYPE_ONEBYTE:
+                return 1;
+            case FormatSpec.FLAG_BIGRAM_ATTR_ADDRESS_TYPE_TWOBYTES:
+                return 2;
+            case FormatSpec.FLAG_BIGRAM_ATTR_ADDRESS_TYPE_THREEBYTES:
+                return 3;
+            default:
+                return 0;
+        }
+    }
+
+    private int getPtNodeArraySize(final int pos) {
+        final int firstByte = readUint8(mBuffer, pos);
+        if (firstByte < FormatSpec.MSB8) {
+            return firstByte;
+        }
+        return ((firstByte & 0x7F) << 8) | readUint8(mBuffer, pos + 1);
+    }
+
+    private static int getPtNodeArraySizeFieldSize(final int ptNodeArraySize) {
+        return ptNodeArraySize > FormatSpec.MAX_PTNODES_FOR_ONE_BYTE_PTNODE_COUNT ? 2 : 1;
+    }
+
+    /**
+     * Returns the position of the terminal PtNode of the word, or {@link #NOT_A_DICT_POS}.
+     */
+    private int getTerminalPtNodePosition(final int[] searchCodePoints) {
+        final int length = searchCodePoints.length;
+        if (length == 0) {
+            return NOT_A_DICT_POS;
+        }
+        final PtNode ptNode = new PtNode();
+        int ptNodeArrayPos = mHeader.mBodyOffset;
+        int matchedCount = 0;
+        while (true) {
+            final int ptNodeCount = getPtNodeArraySize(ptNodeArrayPos);
+            int ptNodePos = ptNodeArrayPos + getPtNodeArraySizeFieldSize(ptNodeCount);
+            boolean foundPtNode = false;
+            for (int i = 0; i < ptNodeCount; ++i) {
+                readPtNode(ptNodePos, ptNode);
+                if (readCodePoint(ptNode.mCharsPos) == searchCodePoints[matchedCount]) {
+                    foundPtNode = true;
+                    break;
+                }
+                ptNodePos = ptNode.mSiblingPos;
+            }
+            if (!foundPtNode) {
+                return NOT_A_DICT_POS;
+            }
+            // Siblings start with different code points, so a mismatch here means no match.
+            for (int charPos = ptNode.mCharsPos; charPos < ptNode.mCharsEndPos;
+                    charPos += getCodePointSize(mBuffer, charPos)) {
+                if (matchedCount >= length
+                        || readCodePoint(charPos) != searchCodePoints[matchedCount]) {
+                    return NOT_A_DICT_POS;
+                }
+                ++matchedCount;
+            }
+            if (matchedCount == length) {
+                return ptNode.isTerminal() ? ptNodePos : NOT_A_DICT_POS;
+            }
+            if (ptNode.mChildrenPos == NOT_A_DICT_POS) {
+                return NOT_A_DICT_POS;
+            }
+            ptNodeArrayPos = ptNode.mChildrenPos;
+        }
+    }
+
+    private int getTerminalPtNodePosition(final String word) {
+        if (word == null || word.isEmpty()) {
+            return NOT_A_DICT_POS;
+        }
+        return getTerminalPtNodePosition(StringUtils.toCodePointArray(word));
+    }
+
+    @Override
+    public ArrayList<SuggestedWordInfo> getSuggestions(final ComposedData composedData,
+            final NgramContext ngramContext, final long proximityInfoHandle,
+            final SettingsValuesForSuggestion settingsValuesForSuggestion,
+            final int sessionId, final float weightForLocale,
+            final float[] inOutWeightOfLangModelVsSpatialModel) {
+        // Decoding touch input needs the native library.
+        return null;
+    }
+
+    @Override
+    public boolean isInDictionary(final String word) {
+        return getFrequency(word) != NOT_A_PROBABILITY;
+    }
+
+    @Override
+    public int getFrequency(final String word) {
+        final int ptNodePos = getTerminalPtNodePosition(word);
+        if (ptNodePos == NOT_A_DICT_POS) {
+            return NOT_A_PROBABILITY;
+        }
+        final PtNode ptNode = new PtNode();
+        readPtNode(ptNodePos, ptNode);
+        // Words that are not words are only there for their shortcuts.
+        return ptNode.isNotAWord() ? NOT_A_PROBABILITY : ptNode.mProbability;
+    }
+
+    /**
+     * Returns the highest probability of the words that match the given word, ignoring case
+     * and accents, allowing omitted apostrophes and hyphens and, in German, umlauts typed as
+     * two letters. This follows DictionaryUtils::getMaxProbabilityOfExactMatches in native code
+     * step by step, so that both give the same results.
+     */
+    @Override
+    public int getMaxFrequencyOfExactMatches(final String word) {
+        if (word == null || word.isEmpty()) {
+            return NOT_A_PROBABILITY;
+        }
+        ArrayList<MatchNode> current = new ArrayList<>();
+        ArrayList<MatchNode> next = new ArrayList<>();
+        current.add(MatchNode.newRoot(mHeader.mBodyOffset));
+        final ArrayList<MatchNode> children = new ArrayList<>();
+        final int length = word.length();
+        for (int i = 0; i < length; i = word.offsetByCodePoints(i, 1)) {
+            final int baseLowerCodePoint = NativeCharUtils.toBaseLowerCase(word.codePointAt(i));
+            for (final MatchNode matchNode : current) {
+                if (matchNode.mDigraphIndex != NOT_A_DIGRAPH_INDEX
+                        && getNodeCodePoint(matchNode) == baseLowerCodePoint) {
+                    next.add(matchNode.advanceDigraphIndex());
+                    continue;
+                }
+                addMatchingChildren(baseLowerCodePoint, matchNode, children, next);
+            }
+            final ArrayList<MatchNode> matched = next;
+            next = current;
+            next.clear();
+            current = matched;
+        }
+        int maxProbability = NOT_A_PROBABILITY;
+        for (final MatchNode matchNode : current) {
+            if (isTerminal(matchNode)) {
+                maxProbability = Math.max(maxProbability, matchNode.mProbability);
+            }
+        }
+        return maxProbability;
+    }
+
+    // Same as the DigraphCodePointIndex values in native code.
+    private static final int NOT_A_DIGRAPH_INDEX = 0;
+    private static final int FIRST_DIGRAPH_CODE_POINT = 1;
+    private static final int SECOND_DIGRAPH_CODE_POINT = 2;
+    // Same as DigraphUtils::GERMAN_UMLAUT_DIGRAPHS in native code: the two letters that may be
+    // typed instead of each umlaut, and the umlaut.
+    private static final int[][] GERMAN_UMLAUT_DIGRAPHS = {
+        { 'a', 'e', 0x00E4 }, // U+00E4 : LATIN SMALL LETTER A WITH DIAERESIS
+        { 'o', 'e', 0x00F6 }, // U+00F6 : LATIN SMALL LETTER O WITH DIAERESIS
+        { 'u', 'e', 0x00FC }, // U+00FC : LATIN SMALL LETTER U WITH DIAERESIS
+    };
+    // Same as MAX_WORD_LENGTH - 3 in DicNode::isTotalInputSizeExceedingLimit in native code.
+    private static final int MAX_MATCH_NODE_DEPTH = FormatSpec.MAX_WORD_LENGTH - 3;
+
+    /**
+     * A code point of a PtNode reached by the input, like a DicNode in native code.
+     */
+    private static final class MatchNode {
+        // The position of the code point, or NOT_A_DICT_POS for the root.
+        public final int mCharPos;
+        public final int mCharsEndPos;
+        public final int mChildrenPos;
+        public final boolean mIsTerminal;
+        public final int mProbability;
+        // The number of code points from the root to this one.
+        public final int mDepth;
+        public final int mDigraphIndex;
+
+        public MatchNode(final int charPos, final int charsEndPos, final int childrenPos,
+                final boolean isTerminal, final int probability, final int depth,
+                final int digraphIndex) {
+            mCharPos = charPos;
+            mCharsEndPos = charsEndPos;
+            mChildrenPos = childrenPos;
+            mIsTerminal = isTerminal;
+            mProbability = probability;
+            mDepth = depth;
+            mDigraphIndex = digraphIndex;
+        }
+
+        public static MatchNode newRoot(final int rootPos) {
+            return new MatchNode(NOT_A_DICT_POS, NOT_A_DICT_POS, rootPos, false /* isTerminal */,
+                    NOT_A_PROBABILITY, 0 /* depth */, NOT_A_DIGRAPH_INDEX);
+        }
+
+        public MatchNode advanceDigraphIndex() {
+            return new MatchNode(mCharPos, mCharsEndPos, mChildrenPos, mIsTerminal,
+                    mProbability, mDepth, (mDigraphIndex + 1) % (SECOND_DIGRAPH_CODE_POINT + 1));
+        }
+
+    }
+
+    // Same as DicNode::isTerminalDicNode in native code.
+    private boolean isTerminal(final MatchNode matchNode) {
+        return matchNode.mIsTerminal && matchNode.mCharPos != NOT_A_DICT_POS
+                && matchNode.mCharPos + getCodePointSize(mBuffer, matchNode.mCharPos)
+                        == matchNode.mCharsEndPos;
+    }
+
+    // Same as DicNode::getNodeCodePoint in native code.
+    private int getNodeCodePoint(final MatchNode matchNode) {
+        final int codePoint = readCodePoint(matchNode.mCharPos);
+        if (matchNode.mDigraphIndex == NOT_A_DIGRAPH_INDEX) {
+            return codePoint;
+        }
+        final int[] digraph = getGermanUmlautDigraph(codePoint);
+        return digraph == null ? Constants.NOT_A_CODE : digraph[matchNode.mDigraphIndex - 1];
+    }
+
+    // Same as DigraphUtils::getDigraphForCodePoint in native code.
+    private static int[] getGermanUmlautDigraph(final int codePoint) {
+        final int lowerCodePoint = NativeCharUtils.toLowerCase(codePoint);
+        for (final int[] digraph : GERMAN_UMLAUT_DIGRAPHS) {
+            if (digraph[2] == lowerCodePoint) {
+                return digraph;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds the nodes that follow the parent and match the input to the output, like
+     * DictionaryUtils::processChildDicNodes in native code.
+     */
+    private void addMatchingChildren(final int baseLowerCodePoint, final MatchNode parent,
+            final ArrayList<MatchNode> children, final ArrayList<MatchNode> outMatchNodes) {
+        children.clear();
+        addChildren(parent, children);
+        // The recursion below reuses the list.
+        final MatchNode[] childArray = children.toArray(new MatchNode[children.size()]);
+        for (final MatchNode child : childArray) {
+            final int nodeCodePoint = getNodeCodePoint(child);
+            final int codePoint = NativeCharUtils.toBaseLowerCase(nodeCodePoint);
+            if (baseLowerCodePoint == codePoint) {
+                outMatchNodes.add(child);
+            }
+            if (isIntentionalOmissionCodePoint(nodeCodePoint)) {
+                addMatchingChildren(baseLowerCodePoint, child, children, outMatchNodes);
+            }
+            if (mRequiresGermanUmlautProcessing
+                    && getGermanUmlautDigraph(nodeCodePoint) != null) {
+                final MatchNode firstDigraphNode = child.advanceDigraphIndex();
+                if (getNodeCodePoint(firstDigraphNode) == codePoint) {
+                    outMatchNodes.add(firstDigraphNode.advanceDigraphIndex());
+                }
+            }
+        }
+    }
+
+    // Same as DicNodeUtils::getAllChildDicNodes in native code.
+    private void addChildren(final MatchNode parent, final ArrayList<MatchNode> outChildren) {
+        if (parent.mDepth > MAX_MATCH_NODE_DEPTH) {
+            return;
+        }
+        if (parent.mCharPos != NOT_A_DICT_POS) {
+            final int nextCharPos = parent.mCharPos + getCodePointSize(mBuffer, parent.mCharPos);
+            if (nextCharPos < parent.mCharsEndPos) {
+                outChildren.add(new MatchNode(nextCharPos, parent.mCharsEndPos,
+                        parent.mChildrenPos, parent.mIsTerminal, parent.mProbability,
+                        parent.mDepth + 1, parent.mDigraphIndex));
+                return;
+            }
+        }
+        if (parent.mChildrenPos == NOT_A_DICT_POS) {
+            return;
+        }
+        final PtNode ptNode = new PtNode();
+        final int ptNodeCount = getPtNodeArraySize(parent.mChildrenPos);
+        int ptNodePos = parent.mChildrenPos + getPtNodeArraySizeFieldSize(ptNodeCount);
+        for (int i = 0; i < ptNodeCount; ++i) {
+            readPtNode(ptNodePos, ptNode);
+            // PtNodes that do not start with a Unicode code point are not words.
+            final int firstCodePoint = readCodePoint(ptNode.mCharsPos);
+            if (firstCodePoint >= 0 && firstCodePoint <= Character.MAX_CODE_POINT) {
+                outChildren.add(new MatchNode(ptNode.mCharsPos, ptNode.mCharsEndPos,
+                        ptNode.mChildrenPos, ptNode.isTerminal(), ptNode.mProbability,
+                        parent.mDepth + 1, parent.mDigraphIndex));
+            }
+            ptNodePos = ptNode.mSiblingPos;
+        }
+    }
+
+    // Same as CharUtils::isIntentionalOmissionCodePoint in native code.
+    private static boolean isIntentionalOmissionCodePoint(final int codePoint) {
+        return codePoint == '\'' || codePoint == '-';
+    }
+}
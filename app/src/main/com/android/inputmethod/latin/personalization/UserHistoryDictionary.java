@@ -26,10 +26,17 @@ import com.android.inputmethod.latin.ExpandableBinaryDictionary;
 import com.android.inputmethod.latin.NgramContext;
 import com.android.inputmethod.latin.define.ProductionFlags;
 import com.android.inputmethod.latin.makedict.DictionaryHeader;
+import com.android.inputmethod.latin.utils.ExecutorUtils;
+import com.android.inputmethod.latin.utils.WordInputEventForPersonalization;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -42,6 +49,50 @@ import javax.annotation.Nullable;
 public class UserHistoryDictionary extends ExpandableBinaryDictionary {
     static final String NAME = UserHistoryDictionary.class.getSimpleName();
 
+    // Pending updates are applied when there are this many of them, or after this delay.
+    private static final int MAX_PENDING_UPDATE_COUNT = 32;
+    private static final long PENDING_UPDATES_FLUSH_DELAY_IN_MILLISECONDS =
+            TimeUnit.SECONDS.toMillis(5);
+
+    /**
+     * The updates that have not been applied to the dictionary yet, coalesced by n-gram context
+     * and word, in the order they were first made. Guarded by itself.
+     */
+    private final LinkedHashMap<PendingUpdateKey, PendingUpdate> mPendingUpdates =
+            new LinkedHashMap<>();
+
+    /** The scheduled flush of the pending updates. Guarded by {@link #mPendingUpdates}. */
+    private ScheduledFuture<?> mPendingUpdatesFlushFuture;
+
+    private static final class PendingUpdateKey {
+        public final NgramContext mNgramContext;
+        public final String mWord;
+
+        public PendingUpdateKey(final NgramContext ngramContext, final String word) {
+            mNgramContext = ngramContext;
+            mWord = word;
+        }
+
+        @Override
+        public int hashCode() {
+            return mNgramContext.hashCode() * 31 + mWord.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof PendingUpdateKey)) return false;
+            final PendingUpdateKey other = (PendingUpdateKey)o;
+            return mWord.equals(other.mWord) && mNgramContext.equals(other.mNgramContext);
+        }
+    }
+
+    private static final class PendingUpdate {
+        public boolean mIsValid;
+        public int mCount;
+        public int mTimestamp;
+    }
+
     // TODO: Make this constructor private
     UserHistoryDictionary(final Context context, final Locale locale,
             @Nullable final String account) {
@@ -101,10 +152,112 @@ public class UserHistoryDictionary extends ExpandableBinaryDictionary {
         if (word.length() > BinaryDictionary.DICTIONARY_MAX_WORD_LENGTH) {
             return;
         }
+        if (userHistoryDictionary instanceof UserHistoryDictionary) {
+            ((UserHistoryDictionary)userHistoryDictionary).addPendingUpdate(ngramContext, word,
+                    isValid, timestamp);
+            return;
+        }
         userHistoryDictionary.updateEntriesForWord(ngramContext, word,
                 isValid, 1 /* count */, timestamp);
     }
 
+    private void addPendingUpdate(@Nonnull final NgramContext ngramContext, final String word,
+            final boolean isValid, final int timestamp) {
+        final boolean needsToFlush;
+        synchronized (mPendingUpdates) {
+            final PendingUpdateKey key = new PendingUpdateKey(ngramContext, word);
+            PendingUpdate pendingUpdate = mPendingUpdates.get(key);
+            if (pendingUpdate == null) {
+                pendingUpdate = new PendingUpdate();
+                mPendingUpdates.put(key, pendingUpdate);
+            }
+            pendingUpdate.mIsValid = isValid;
+            pendingUpdate.mCount++;
+            pendingUpdate.mTimestamp = timestamp;
+            needsToFlush = mPendingUpdates.size() >= MAX_PENDING_UPDATE_COUNT;
+            if (!needsToFlush && mPendingUpdatesFlushFuture == null) {
+                mPendingUpdatesFlushFuture = ExecutorUtils.getBackgroundExecutor(
+                        ExecutorUtils.KEYBOARD).schedule(new Runnable() {
+                            @Override
+                            public void run() {
+                                flushPendingUpdates();
+                            }
+                        }, PENDING_UPDATES_FLUSH_DELAY_IN_MILLISECONDS, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (needsToFlush) {
+            flushPendingUpdates();
+        }
+    }
+
+    /**
+     * Applies the pending updates to the dictionary in a single batch.
+     */
+    public void flushPendingUpdates() {
+        final ArrayList<WordInputEventForPersonalization> inputEvents;
+        synchronized (mPendingUpdates) {
+            if (mPendingUpdatesFlushFuture != null) {
+                mPendingUpdatesFlushFuture.cancel(false /* mayInterruptIfRunning */);
+                mPendingUpdatesFlushFuture = null;
+            }
+            if (mPendingUpdates.isEmpty()) {
+                return;
+            }
+            inputEvents = new ArrayList<>(mPendingUpdates.size());
+            for (final Map.Entry<PendingUpdateKey, PendingUpdate> entry
+                    : mPendingUpdates.entrySet()) {
+                final PendingUpdateKey key = entry.getKey();
+                final PendingUpdate pendingUpdate = entry.getValue();
+                final WordInputEventForPersonalization inputEvent =
+                        new WordInputEventForPersonalization(key.mWord, key.mNgramContext,
+                                pendingUpdate.mIsValid, pendingUpdate.mTimestamp);
+                // The native code counts each event as a single input of the word, so an update
+                // that has been coalesced is replayed as many times as the word was input.
+                for (int i = 0; i < pendingUpdate.mCount; ++i) {
+                    inputEvents.add(inputEvent);
+                }
+            }
+            mPendingUpdates.clear();
+        }
+        updateEntriesForInputEvents(inputEvents, null /* callback */);
+    }
+
+    private void clearPendingUpdates() {
+        synchronized (mPendingUpdates) {
+            if (mPendingUpdatesFlushFuture != null) {
+                mPendingUpdatesFlushFuture.cancel(false /* mayInterruptIfRunning */);
+                mPendingUpdatesFlushFuture = null;
+            }
+            mPendingUpdates.clear();
+        }
+    }
+
+    @Override
+    public void removeUnigramEntryDynamically(final String word) {
+        // Drop the pending updates of the word, which would otherwise add it back.
+        synchronized (mPendingUpdates) {
+            final Iterator<PendingUpdateKey> iterator = mPendingUpdates.keySet().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().mWord.equals(word)) {
+                    iterator.remove();
+                }
+            }
+        }
+        super.removeUnigramEntryDynamically(word);
+    }
+
+    @Override
+    public void clear() {
+        clearPendingUpdates();
+        super.clear();
+    }
+
+    @Override
+    public void asyncFlushBinaryDictionary() {
+        flushPendingUpdates();
+        super.asyncFlushBinaryDictionary();
+    }
+
     @Override
     public void close() {
         // Flush pending writes.
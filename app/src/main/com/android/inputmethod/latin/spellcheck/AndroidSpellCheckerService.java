@@ -16,9 +16,14 @@
 
 package com.android.inputmethod.latin.spellcheck;
 
+import android.Manifest;
+import android.content.ContentResolver;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.database.ContentObserver;
 import android.preference.PreferenceManager;
+import android.provider.ContactsContract.Contacts;
+import android.provider.UserDictionary.Words;
 import android.service.textservice.SpellCheckerService;
 import android.text.InputType;
 import android.view.inputmethod.EditorInfo;
@@ -35,15 +40,19 @@ import com.android.inputmethod.latin.NgramContext;
 import com.android.inputmethod.latin.RichInputMethodSubtype;
 import com.android.inputmethod.latin.SuggestedWords;
 import com.android.inputmethod.latin.common.ComposedData;
+import com.android.inputmethod.latin.permissions.PermissionsUtil;
 import com.android.inputmethod.latin.settings.SettingsValuesForSuggestion;
 import com.android.inputmethod.latin.utils.AdditionalSubtypeUtils;
+import com.android.inputmethod.latin.utils.ExecutorUtils;
 import com.android.inputmethod.latin.utils.ScriptUtils;
 import com.android.inputmethod.latin.utils.SuggestionResults;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.Locale;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.annotation.Nonnull;
 
@@ -64,15 +73,27 @@ public final class AndroidSpellCheckerService extends SpellCheckerService
 
     private static final String[] EMPTY_STRING_ARRAY = new String[0];
 
-    private final int MAX_NUM_OF_THREADS_READ_DICTIONARY = 2;
-    private final Semaphore mSemaphore = new Semaphore(MAX_NUM_OF_THREADS_READ_DICTIONARY,
-            true /* fair */);
+    // The words of a request are looked up on the spell check lookup threads and on the calling
+    // thread, and each lookup needs its own traverse session.
+    private static final int MAX_NUM_OF_THREADS_READ_DICTIONARY =
+            ExecutorUtils.SPELL_CHECK_LOOKUP_THREAD_COUNT + 1;
+    // Held for reading while the dictionaries are used, and for writing to close them.
+    private final ReentrantReadWriteLock mDictionaryLock = new ReentrantReadWriteLock();
+    // The ids of the traverse sessions that are not in use. Taking one is what limits the number
+    // of concurrent lookups.
     // TODO: Make each spell checker session has its own session id.
-    private final ConcurrentLinkedQueue<Integer> mSessionIdPool = new ConcurrentLinkedQueue<>();
+    private final LinkedBlockingQueue<Integer> mSessionIdPool = new LinkedBlockingQueue<>();
 
     private final DictionaryFacilitatorLruCache mDictionaryFacilitatorCache =
             new DictionaryFacilitatorLruCache(this /* context */, DICTIONARY_NAME_PREFIX);
     private final ConcurrentHashMap<Locale, Keyboard> mKeyboardCache = new ConcurrentHashMap<>();
+    private final SpellCheckResultCache mResultCache = new SpellCheckResultCache();
+    private final ContentObserver mUserDictionaryObserver = new DictionaryContentObserver();
+    // Only registered while the contacts dictionary is used, which needs both the setting and
+    // the permission. Guarded by itself.
+    private final ContentObserver mContactsObserver = new DictionaryContentObserver();
+    private boolean mUseContactsDictionary;
+    private boolean mIsContactsObserverRegistered;
 
     // The threshold for a suggestion to be considered "recommended".
     private float mRecommendedThreshold;
@@ -83,6 +104,20 @@ public final class AndroidSpellCheckerService extends SpellCheckerService
     public static final String SINGLE_QUOTE = "\u0027";
     public static final String APOSTROPHE = "\u2019";
 
+    /**
+     * Drops the cached results when the source of a dictionary changes.
+     */
+    private final class DictionaryContentObserver extends ContentObserver {
+        public DictionaryContentObserver() {
+            super(null /* handler */);
+        }
+
+        @Override
+        public void onChange(final boolean self) {
+            mResultCache.onDictionaryChanged();
+        }
+    }
+
     public AndroidSpellCheckerService() {
         super();
         for (int i = 0; i < MAX_NUM_OF_THREADS_READ_DICTIONARY; i++) {
@@ -98,6 +133,47 @@ public final class AndroidSpellCheckerService extends SpellCheckerService
         final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
         prefs.registerOnSharedPreferenceChangeListener(this);
         onSharedPreferenceChanged(prefs, PREF_USE_CONTACTS_KEY);
+        getContentResolver().registerContentObserver(Words.CONTENT_URI, true,
+                mUserDictionaryObserver);
+    }
+
+    @Override
+    public void onDestroy() {
+        getContentResolver().unregisterContentObserver(mUserDictionaryObserver);
+        synchronized (mContactsObserver) {
+            mUseContactsDictionary = false;
+            updateContactsObserverLocked();
+        }
+        super.onDestroy();
+    }
+
+    /**
+     * Registers the contacts observer if the contacts are used and can be read, and unregisters
+     * it otherwise. There is no broadcast when READ_CONTACTS is granted, so this is also called
+     * whenever a session is created.
+     */
+    private void updateContactsObserver() {
+        synchronized (mContactsObserver) {
+            updateContactsObserverLocked();
+        }
+    }
+
+    private void updateContactsObserverLocked() {
+        final boolean shouldObserveContacts = mUseContactsDictionary
+                && PermissionsUtil.checkAllPermissionsGranted(
+                        this /* context */, Manifest.permission.READ_CONTACTS);
+        if (shouldObserveContacts == mIsContactsObserverRegistered) {
+            return;
+        }
+        final ContentResolver contentResolver = getContentResolver();
+        if (shouldObserveContacts) {
+            contentResolver.registerContentObserver(Contacts.CONTENT_URI, true, mContactsObserver);
+            // The contacts may have changed while they were not observed.
+            mResultCache.onDictionaryChanged();
+        } else {
+            contentResolver.unregisterContentObserver(mContactsObserver);
+        }
+        mIsContactsObserverRegistered = shouldObserveContacts;
     }
 
     public float getRecommendedThreshold() {
@@ -129,10 +205,16 @@ public final class AndroidSpellCheckerService extends SpellCheckerService
         if (!PREF_USE_CONTACTS_KEY.equals(key)) return;
         final boolean useContactsDictionary = prefs.getBoolean(PREF_USE_CONTACTS_KEY, true);
         mDictionaryFacilitatorCache.setUseContactsDictionary(useContactsDictionary);
+        mResultCache.onDictionaryChanged();
+        synchronized (mContactsObserver) {
+            mUseContactsDictionary = useContactsDictionary;
+            updateContactsObserverLocked();
+        }
     }
 
     @Override
     public Session createSession() {
+        updateContactsObserver();
         // Should not refer to AndroidSpellCheckerSession directly considering
         // that AndroidSpellCheckerSession may be overlaid.
         return AndroidSpellCheckerSessionFactory.newInstance(this);
@@ -158,68 +240,123 @@ public final class AndroidSpellCheckerService extends SpellCheckerService
     }
 
     public boolean isValidWord(final Locale locale, final String word) {
-        mSemaphore.acquireUninterruptibly();
+        // This does not use a traverse session, so it does not need to wait for one.
+        mDictionaryLock.readLock().lock();
         try {
-            DictionaryFacilitator dictionaryFacilitatorForLocale =
+            final DictionaryFacilitator dictionaryFacilitatorForLocale =
                     mDictionaryFacilitatorCache.get(locale);
-            return dictionaryFacilitatorForLocale.isValidSpellingWord(word);
+            try {
+                return dictionaryFacilitatorForLocale.isValidSpellingWord(word);
+            } finally {
+                mDictionaryFacilitatorCache.release(dictionaryFacilitatorForLocale);
+            }
         } finally {
-            mSemaphore.release();
+            mDictionaryLock.readLock().unlock();
         }
     }
 
     public SuggestionResults getSuggestionResults(final Locale locale,
             final ComposedData composedData, final NgramContext ngramContext,
             @Nonnull final Keyboard keyboard) {
-        Integer sessionId = null;
-        mSemaphore.acquireUninterruptibly();
+        mDictionaryLock.readLock().lock();
         try {
-            sessionId = mSessionIdPool.poll();
-            DictionaryFacilitator dictionaryFacilitatorForLocale =
-                    mDictionaryFacilitatorCache.get(locale);
-            return dictionaryFacilitatorForLocale.getSuggestionResults(composedData, ngramContext,
-                    keyboard, mSettingsValuesForSuggestion,
-                    sessionId, SuggestedWords.INPUT_STYLE_TYPING);
-        } finally {
-            if (sessionId != null) {
+            final int sessionId = takeSessionId();
+            try {
+                final DictionaryFacilitator dictionaryFacilitatorForLocale =
+                        mDictionaryFacilitatorCache.get(locale);
+                try {
+                    return dictionaryFacilitatorForLocale.getSuggestionResults(composedData,
+                            ngramContext, keyboard, mSettingsValuesForSuggestion,
+                            sessionId, SuggestedWords.INPUT_STYLE_TYPING);
+                } finally {
+                    mDictionaryFacilitatorCache.release(dictionaryFacilitatorForLocale);
+                }
+            } finally {
                 mSessionIdPool.add(sessionId);
             }
-            mSemaphore.release();
+        } finally {
+            mDictionaryLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Takes the id of a traverse session that no other thread uses, waiting for one if needed.
+     */
+    private int takeSessionId() {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return mSessionIdPool.take();
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
         }
     }
 
     public boolean hasMainDictionaryForLocale(final Locale locale) {
-        mSemaphore.acquireUninterruptibly();
+        mDictionaryLock.readLock().lock();
         try {
             final DictionaryFacilitator dictionaryFacilitator =
                     mDictionaryFacilitatorCache.get(locale);
-            return dictionaryFacilitator.hasAtLeastOneInitializedMainDictionary();
+            try {
+                return dictionaryFacilitator.hasAtLeastOneInitializedMainDictionary();
+            } finally {
+                mDictionaryFacilitatorCache.release(dictionaryFacilitator);
+            }
         } finally {
-            mSemaphore.release();
+            mDictionaryLock.readLock().unlock();
         }
     }
 
     @Override
     public boolean onUnbind(final Intent intent) {
-        mSemaphore.acquireUninterruptibly(MAX_NUM_OF_THREADS_READ_DICTIONARY);
+        mDictionaryLock.writeLock().lock();
         try {
             mDictionaryFacilitatorCache.closeDictionaries();
         } finally {
-            mSemaphore.release(MAX_NUM_OF_THREADS_READ_DICTIONARY);
+            mDictionaryLock.writeLock().unlock();
         }
         mKeyboardCache.clear();
+        mResultCache.clear();
         return false;
     }
 
+    @Override
+    protected void dump(final FileDescriptor fd, final PrintWriter fout, final String[] args) {
+        fout.println(mDictionaryFacilitatorCache.dump());
+        fout.println(mResultCache.dump());
+    }
+
+    /**
+     * Returns the suggestions for misspelled words, shared by all the sessions.
+     */
+    SpellCheckResultCache getResultCache() {
+        return mResultCache;
+    }
+
     public Keyboard getKeyboardForLocale(final Locale locale) {
-        Keyboard keyboard = mKeyboardCache.get(locale);
-        if (keyboard == null) {
-            keyboard = createKeyboardForLocale(locale);
-            if (keyboard != null) {
-                mKeyboardCache.put(locale, keyboard);
+        final Keyboard cachedKeyboard = mKeyboardCache.get(locale);
+        if (cachedKeyboard != null) {
+            return cachedKeyboard;
+        }
+        // The words of a request are looked up on several threads, and building a keyboard
+        // updates static caches that are not thread safe, so keyboards are built one at a time.
+        synchronized (mKeyboardCache) {
+            Keyboard keyboard = mKeyboardCache.get(locale);
+            if (keyboard == null) {
+                keyboard = createKeyboardForLocale(locale);
+                if (keyboard != null) {
+                    mKeyboardCache.put(locale, keyboard);
+                }
             }
+            return keyboard;
         }
-        return keyboard;
     }
 
     private Keyboard createKeyboardForLocale(final Locale locale) {
@@ -28,10 +28,16 @@ import android.view.textservice.TextInfo;
 
 import com.android.inputmethod.compat.TextInfoCompatUtils;
 import com.android.inputmethod.latin.NgramContext;
+import com.android.inputmethod.latin.utils.ExecutorUtils;
 import com.android.inputmethod.latin.utils.SpannableStringUtils;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 public final class AndroidSpellCheckerSession extends AndroidWordLevelSpellCheckerSession {
     private static final String TAG = AndroidSpellCheckerSession.class.getSimpleName();
@@ -84,7 +90,7 @@ public final class AndroidSpellCheckerSession extends AndroidWordLevelSpellCheck
                 if (TextUtils.isEmpty(splitText)) {
                     continue;
                 }
-                if (mSuggestionsCache.getSuggestionsFromCache(splitText.toString()) == null) {
+                if (!hasCachedSuggestions(splitText.toString())) {
                     continue;
                 }
                 final int newLength = splitText.length();
@@ -192,6 +198,12 @@ public final class AndroidSpellCheckerSession extends AndroidWordLevelSpellCheck
         return retval;
     }
 
+    /**
+     * Gets the suggestions for each word. The words only depend on the text of the previous
+     * word, not on its suggestions, so they are looked up in parallel on the
+     * {@link ExecutorUtils#SPELL_CHECK_LOOKUP} executor and on this thread. A word that appears
+     * several times after the same previous word is only looked up once.
+     */
     @Override
     public SuggestionsInfo[] onGetSuggestionsMultiple(TextInfo[] textInfos,
             int suggestionsLimit, boolean sequentialWords) {
@@ -199,6 +211,11 @@ public final class AndroidSpellCheckerSession extends AndroidWordLevelSpellCheck
         try {
             final int length = textInfos.length;
             final SuggestionsInfo[] retval = new SuggestionsInfo[length];
+            final NgramContext[] ngramContexts = new NgramContext[length];
+            // For each word, the index of the first identical word with the same previous word.
+            final int[] lookupIndices = new int[length];
+            final HashMap<String, Integer> lookupIndicesByKey = new HashMap<>();
+            final ArrayList<Integer> uniqueIndices = new ArrayList<>();
             for (int i = 0; i < length; ++i) {
                 final CharSequence prevWord;
                 if (sequentialWords && i > 0) {
@@ -211,10 +228,24 @@ public final class AndroidSpellCheckerSession extends AndroidWordLevelSpellCheck
                 } else {
                     prevWord = null;
                 }
-                final NgramContext ngramContext =
-                        new NgramContext(new NgramContext.WordInfo(prevWord));
+                ngramContexts[i] = new NgramContext(new NgramContext.WordInfo(prevWord));
+                final String key = textInfos[i].getText() + "\u0000"
+                        + (prevWord == null ? "" : prevWord);
+                final Integer lookupIndex = lookupIndicesByKey.get(key);
+                if (lookupIndex == null) {
+                    lookupIndicesByKey.put(key, i);
+                    lookupIndices[i] = i;
+                    uniqueIndices.add(i);
+                } else {
+                    lookupIndices[i] = lookupIndex;
+                }
+            }
+            lookUpInParallel(textInfos, ngramContexts, uniqueIndices, suggestionsLimit, retval);
+            for (int i = 0; i < length; ++i) {
+                if (lookupIndices[i] != i) {
+                    retval[i] = copySuggestionsInfo(retval[lookupIndices[i]]);
+                }
                 final TextInfo textInfo = textInfos[i];
-                retval[i] = onGetSuggestionsInternal(textInfo, ngramContext, suggestionsLimit);
                 retval[i].setCookieAndSequence(textInfo.getCookie(), textInfo.getSequence());
             }
             return retval;
@@ -222,4 +253,78 @@ public final class AndroidSpellCheckerSession extends AndroidWordLevelSpellCheck
             Binder.restoreCallingIdentity(ident);
         }
     }
+
+    /**
+     * Looks up the words at the given indices, the first one on this thread and the others on
+     * the {@link ExecutorUtils#SPELL_CHECK_LOOKUP} executor. A lookup that cannot run or fails
+     * there is retried on this thread.
+     */
+    private void lookUpInParallel(final TextInfo[] textInfos, final NgramContext[] ngramContexts,
+            final ArrayList<Integer> indices, final int suggestionsLimit,
+            final SuggestionsInfo[] outSuggestionsInfos) {
+        final int count = indices.size();
+        final ArrayList<Future<SuggestionsInfo>> lookups = new ArrayList<>(count);
+        for (int i = 1; i < count; ++i) {
+            final int index = indices.get(i);
+            Future<SuggestionsInfo> lookup = null;
+            try {
+                lookup = ExecutorUtils.getBackgroundExecutor(ExecutorUtils.SPELL_CHECK_LOOKUP)
+                        .submit(new Callable<SuggestionsInfo>() {
+                            @Override
+                            public SuggestionsInfo call() {
+                                return onGetSuggestionsInternal(textInfos[index],
+                                        ngramContexts[index], suggestionsLimit);
+                            }
+                        });
+            } catch (final RejectedExecutionException e) {
+                Log.w(TAG, "Cannot look up a word in parallel", e);
+            }
+            lookups.add(lookup);
+        }
+        if (count > 0) {
+            final int index = indices.get(0);
+            outSuggestionsInfos[index] = onGetSuggestionsInternal(textInfos[index],
+                    ngramContexts[index], suggestionsLimit);
+        }
+        boolean interrupted = false;
+        for (int i = 1; i < count; ++i) {
+            final int index = indices.get(i);
+            final Future<SuggestionsInfo> lookup = lookups.get(i - 1);
+            SuggestionsInfo suggestionsInfo = null;
+            while (lookup != null && suggestionsInfo == null) {
+                try {
+                    suggestionsInfo = lookup.get();
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                } catch (final ExecutionException e) {
+                    Log.e(TAG, "Failed to look up a word in parallel", e);
+                    break;
+                }
+            }
+            if (suggestionsInfo == null) {
+                suggestionsInfo = onGetSuggestionsInternal(textInfos[index],
+                        ngramContexts[index], suggestionsLimit);
+            }
+            outSuggestionsInfos[index] = suggestionsInfo;
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static SuggestionsInfo copySuggestionsInfo(final SuggestionsInfo suggestionsInfo) {
+        final int suggestionsCount = suggestionsInfo.getSuggestionsCount();
+        // A count of -1 means that no suggestions are available, which a null array keeps.
+        final String[] suggestions;
+        if (suggestionsCount < 0) {
+            suggestions = null;
+        } else {
+            suggestions = new String[suggestionsCount];
+            for (int i = 0; i < suggestionsCount; ++i) {
+                suggestions[i] = suggestionsInfo.getSuggestionAt(i);
+            }
+        }
+        return new SuggestionsInfo(suggestionsInfo.getSuggestionsAttributes(), suggestions,
+                suggestionsInfo.getCookie(), suggestionsInfo.getSequence());
+    }
 }
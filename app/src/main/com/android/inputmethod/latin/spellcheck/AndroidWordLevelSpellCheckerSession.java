@@ -16,14 +16,10 @@
 
 package com.android.inputmethod.latin.spellcheck;
 
-import android.content.ContentResolver;
-import android.database.ContentObserver;
 import android.os.Binder;
-import android.provider.UserDictionary.Words;
 import android.service.textservice.SpellCheckerService.Session;
 import android.text.TextUtils;
 import android.util.Log;
-import android.util.LruCache;
 import android.view.textservice.SuggestionsInfo;
 import android.view.textservice.TextInfo;
 
@@ -42,7 +38,7 @@ import com.android.inputmethod.latin.utils.StatsUtils;
 import com.android.inputmethod.latin.utils.SuggestionResults;
 
 import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Locale;
 
 public abstract class AndroidWordLevelSpellCheckerSession extends Session {
@@ -55,60 +51,12 @@ public abstract class AndroidWordLevelSpellCheckerSession extends Session {
     // Cache this for performance
     private int mScript; // One of SCRIPT_LATIN or SCRIPT_CYRILLIC for now.
     private final AndroidSpellCheckerService mService;
-    protected final SuggestionsCache mSuggestionsCache = new SuggestionsCache();
-    private final ContentObserver mObserver;
 
     private static final String quotesRegexp =
             "(\\u0022|\\u0027|\\u0060|\\u00B4|\\u2018|\\u2018|\\u201C|\\u201D)";
 
-    private static final class SuggestionsParams {
-        public final String[] mSuggestions;
-        public final int mFlags;
-        public SuggestionsParams(String[] suggestions, int flags) {
-            mSuggestions = suggestions;
-            mFlags = flags;
-        }
-    }
-
-    protected static final class SuggestionsCache {
-        private static final int MAX_CACHE_SIZE = 50;
-        private final LruCache<String, SuggestionsParams> mUnigramSuggestionsInfoCache =
-                new LruCache<>(MAX_CACHE_SIZE);
-
-        private static String generateKey(final String query) {
-            return query + "";
-        }
-
-        public SuggestionsParams getSuggestionsFromCache(final String query) {
-            return mUnigramSuggestionsInfoCache.get(query);
-        }
-
-        public void putSuggestionsToCache(
-                final String query, final String[] suggestions, final int flags) {
-            if (suggestions == null || TextUtils.isEmpty(query)) {
-                return;
-            }
-            mUnigramSuggestionsInfoCache.put(
-                    generateKey(query),
-                    new SuggestionsParams(suggestions, flags));
-        }
-
-        public void clearCache() {
-            mUnigramSuggestionsInfoCache.evictAll();
-        }
-    }
-
     AndroidWordLevelSpellCheckerSession(final AndroidSpellCheckerService service) {
         mService = service;
-        final ContentResolver cres = service.getContentResolver();
-
-        mObserver = new ContentObserver(null) {
-            @Override
-            public void onChange(boolean self) {
-                mSuggestionsCache.clearCache();
-            }
-        };
-        cres.registerContentObserver(Words.CONTENT_URI, true, mObserver);
     }
 
     @Override
@@ -119,10 +67,11 @@ public abstract class AndroidWordLevelSpellCheckerSession extends Session {
         mScript = ScriptUtils.getScriptFromSpellCheckerLocale(mLocale);
     }
 
-    @Override
-    public void onClose() {
-        final ContentResolver cres = mService.getContentResolver();
-        cres.unregisterContentObserver(mObserver);
+    /**
+     * Returns whether a word has recently been found misspelled, with some suggestions.
+     */
+    protected boolean hasCachedSuggestions(final String text) {
+        return mLocale != null && mService.getResultCache().hasSuggestions(mLocale, text);
     }
 
     private static final int CHECKABILITY_CHECKABLE = 0;
@@ -280,16 +229,22 @@ public abstract class AndroidWordLevelSpellCheckerSession extends Session {
                         false /* reportAsTypo */);
             }
 
-            final WordComposer composer = new WordComposer();
-            final int[] codePoints = StringUtils.toCodePointArray(text);
-            final int[] coordinates;
-            coordinates = keyboard.getCoordinates(codePoints);
-            composer.setComposingWord(codePoints, coordinates);
-            // TODO: Don't gather suggestions if the limit is <= 0 unless necessary
-            final SuggestionResults suggestionResults = mService.getSuggestionResults(
-                    mLocale, composer.getComposedDataSnapshot(), ngramContext, keyboard);
-            final Result result = getResult(capitalizeType, mLocale, suggestionsLimit,
-                    mService.getRecommendedThreshold(), text, suggestionResults);
+            final SpellCheckResultCache resultCache = mService.getResultCache();
+            Result allSuggestions = resultCache.get(mLocale, text, ngramContext);
+            if (null == allSuggestions) {
+                final int cacheGeneration = resultCache.getGeneration();
+                final WordComposer composer = new WordComposer();
+                final int[] codePoints = StringUtils.toCodePointArray(text);
+                final int[] coordinates;
+                coordinates = keyboard.getCoordinates(codePoints);
+                composer.setComposingWord(codePoints, coordinates);
+                final SuggestionResults suggestionResults = mService.getSuggestionResults(
+                        mLocale, composer.getComposedDataSnapshot(), ngramContext, keyboard);
+                allSuggestions = getResult(capitalizeType, mLocale,
+                        mService.getRecommendedThreshold(), text, suggestionResults);
+                resultCache.put(mLocale, text, ngramContext, allSuggestions, cacheGeneration);
+            }
+            final Result result = limitResult(allSuggestions, suggestionsLimit);
             if (DebugFlags.DEBUG_ENABLED) {
                 if (result.mSuggestions != null && result.mSuggestions.length > 0) {
                     final StringBuilder builder = new StringBuilder();
@@ -315,9 +270,7 @@ public abstract class AndroidWordLevelSpellCheckerSession extends Session {
                             ? SuggestionsInfoCompatUtils
                                     .getValueOf_RESULT_ATTR_HAS_RECOMMENDED_SUGGESTIONS()
                             : 0);
-            final SuggestionsInfo retval = new SuggestionsInfo(flags, result.mSuggestions);
-            mSuggestionsCache.putSuggestionsToCache(text, result.mSuggestions, flags);
-            return retval;
+            return new SuggestionsInfo(flags, result.mSuggestions);
         } catch (RuntimeException e) {
             // Don't kill the keyboard if there is a bug in the spell checker
             Log.e(TAG, "Exception while spellchecking", e);
@@ -326,7 +279,7 @@ public abstract class AndroidWordLevelSpellCheckerSession extends Session {
         }
     }
 
-    private static final class Result {
+    static final class Result {
         public final String[] mSuggestions;
         public final boolean mHasRecommendedSuggestions;
         public Result(final String[] gatheredSuggestions, final boolean hasRecommendedSuggestions) {
@@ -335,10 +288,13 @@ public abstract class AndroidWordLevelSpellCheckerSession extends Session {
         }
     }
 
+    /**
+     * Gathers all the suggestions, without cutting them to the limit of the request.
+     */
     private static Result getResult(final int capitalizeType, final Locale locale,
-            final int suggestionsLimit, final float recommendedThreshold, final String originalText,
+            final float recommendedThreshold, final String originalText,
             final SuggestionResults suggestionResults) {
-        if (suggestionResults.isEmpty() || suggestionsLimit <= 0) {
+        if (suggestionResults.isEmpty()) {
             return new Result(null /* gatheredSuggestions */,
                     false /* hasRecommendedSuggestions */);
         }
@@ -358,10 +314,7 @@ public abstract class AndroidWordLevelSpellCheckerSession extends Session {
         StringUtils.removeDupes(suggestions);
         // This returns a String[], while toArray() returns an Object[] which cannot be cast
         // into a String[].
-        final List<String> gatheredSuggestionsList =
-                suggestions.subList(0, Math.min(suggestions.size(), suggestionsLimit));
-        final String[] gatheredSuggestions =
-                gatheredSuggestionsList.toArray(new String[gatheredSuggestionsList.size()]);
+        final String[] gatheredSuggestions = suggestions.toArray(new String[suggestions.size()]);
 
         final int bestScore = suggestionResults.first().mScore;
         final String bestSuggestion = suggestions.get(0);
@@ -371,6 +324,18 @@ public abstract class AndroidWordLevelSpellCheckerSession extends Session {
         return new Result(gatheredSuggestions, hasRecommendedSuggestions);
     }
 
+    private static Result limitResult(final Result result, final int suggestionsLimit) {
+        if (result.mSuggestions == null || suggestionsLimit <= 0) {
+            return new Result(null /* gatheredSuggestions */,
+                    false /* hasRecommendedSuggestions */);
+        }
+        if (result.mSuggestions.length <= suggestionsLimit) {
+            return result;
+        }
+        return new Result(Arrays.copyOf(result.mSuggestions, suggestionsLimit),
+                result.mHasRecommendedSuggestions);
+    }
+
     /*
      * The spell checker acts on its own behalf. That is needed, in particular, to be able to
      * access the dictionary files, which the provider restricts to the identity of Latin IME.
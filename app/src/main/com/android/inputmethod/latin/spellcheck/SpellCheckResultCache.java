@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.spellcheck;
+
+import android.util.LruCache;
+
+import com.android.inputmethod.latin.NgramContext;
+import com.android.inputmethod.latin.spellcheck.AndroidWordLevelSpellCheckerSession.Result;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A cache of the suggestions computed for misspelled words, shared by all the spell checker
+ * sessions so that the words that several apps check are only looked up once. The suggestions
+ * are cached before they are cut to the limit of each request, so that requests with different
+ * limits share an entry.
+ *
+ * The cache has a generation that is incremented when the contents of any dictionary change. An
+ * entry records the generation from before its suggestions were looked up, and is dropped once
+ * the generation has changed since. Every entry depends on every dictionary: a word added to any
+ * of them may become a better suggestion than the cached ones, even for entries whose
+ * suggestions all came from other dictionaries. Whether a word is valid is not cached, so a word
+ * that has been added to a dictionary is never reported as misspelled.
+ */
+final class SpellCheckResultCache {
+    private static final int MAX_CACHE_SIZE = 512;
+
+    private final LruCache<Key, Entry> mCache = new LruCache<>(MAX_CACHE_SIZE);
+    // The same entries regardless of the previous words, to tell whether a word is misspelled.
+    private final LruCache<Key, Entry> mMisspelledWords = new LruCache<>(MAX_CACHE_SIZE);
+    private int mGeneration;
+    private int mHitCount;
+    private int mMissCount;
+    private int mInvalidatedCount;
+
+    private static final class Key {
+        private final Locale mLocale;
+        private final String mText;
+        @Nullable private final NgramContext mNgramContext;
+        private final int mHashCode;
+
+        public Key(final Locale locale, final String text,
+                @Nullable final NgramContext ngramContext) {
+            mLocale = locale;
+            mText = text;
+            mNgramContext = ngramContext;
+            mHashCode = Arrays.hashCode(new Object[] { locale, text, ngramContext });
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key other = (Key)o;
+            return mHashCode == other.mHashCode
+                    && mText.equals(other.mText)
+                    && mLocale.equals(other.mLocale)
+                    && (mNgramContext == null ? other.mNgramContext == null
+                            : mNgramContext.equals(other.mNgramContext));
+        }
+    }
+
+    private static final class Entry {
+        public final Result mResult;
+        public final int mGeneration;
+
+        public Entry(final Result result, final int generation) {
+            mResult = result;
+            mGeneration = generation;
+        }
+    }
+
+    @Nullable
+    private Entry getEntryLocked(final LruCache<Key, Entry> cache, final Key key) {
+        final Entry entry = cache.get(key);
+        if (entry != null && entry.mGeneration != mGeneration) {
+            cache.remove(key);
+            mInvalidatedCount++;
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the suggestions for a misspelled word, before they are cut to the limit of the
+     * request, or null if they are not cached.
+     */
+    @Nullable
+    public synchronized Result get(@Nonnull final Locale locale, @Nonnull final String text,
+            @Nullable final NgramContext ngramContext) {
+        final Entry entry = getEntryLocked(mCache, new Key(locale, text, ngramContext));
+        if (entry == null) {
+            mMissCount++;
+            return null;
+        }
+        mHitCount++;
+        return entry.mResult;
+    }
+
+    /**
+     * Returns whether the word is cached as misspelled with some suggestions, after any previous
+     * words.
+     */
+    public synchronized boolean hasSuggestions(@Nonnull final Locale locale,
+            @Nonnull final String text) {
+        final Entry entry = getEntryLocked(mMisspelledWords,
+                new Key(locale, text, null /* ngramContext */));
+        return entry != null && entry.mResult.mSuggestions != null;
+    }
+
+    /**
+     * Returns the current generation, to pass to {@link #put} for suggestions looked up after
+     * this call.
+     */
+    public synchronized int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * @param generation the value of {@link #getGeneration()} from before the suggestions were
+     * looked up. If a dictionary has changed since, the suggestions may be stale and are dropped
+     * by the next lookup.
+     */
+    public synchronized void put(@Nonnull final Locale locale, @Nonnull final String text,
+            @Nullable final NgramContext ngramContext, @Nonnull final Result result,
+            final int generation) {
+        final Entry entry = new Entry(result, generation);
+        mCache.put(new Key(locale, text, ngramContext), entry);
+        mMisspelledWords.put(new Key(locale, text, null /* ngramContext */), entry);
+    }
+
+    /**
+     * Drops all the entries, as the contents of a dictionary have changed.
+     */
+    public synchronized void onDictionaryChanged() {
+        mGeneration++;
+    }
+
+    public synchronized void clear() {
+        mCache.evictAll();
+        mMisspelledWords.evictAll();
+    }
+
+    public synchronized String dump() {
+        final int requestCount = mHitCount + mMissCount;
+        return "SpellCheckResultCache: size=" + mCache.size() + " hits=" + mHitCount
+                + " misses=" + mMissCount + " invalidated=" + mInvalidatedCount
+                + " hitRate=" + (requestCount == 0 ? 0.0f : (float)mHitCount / requestCount);
+    }
+}
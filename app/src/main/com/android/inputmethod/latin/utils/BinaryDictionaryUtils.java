@@ -19,7 +19,9 @@ package com.android.inputmethod.latin.utils;
 import com.android.inputmethod.annotations.UsedForTesting;
 import com.android.inputmethod.latin.BinaryDictionary;
 import com.android.inputmethod.latin.common.StringUtils;
+import com.android.inputmethod.latin.define.ProductionFlags;
 import com.android.inputmethod.latin.makedict.DictionaryHeader;
+import com.android.inputmethod.latin.makedict.MappedVer2Dictionary;
 import com.android.inputmethod.latin.makedict.UnsupportedFormatException;
 
 import java.io.File;
@@ -53,6 +55,14 @@ public final class BinaryDictionaryUtils {
 
     public static DictionaryHeader getHeaderWithOffsetAndLength(final File dictFile,
             final long offset, final long length) throws IOException, UnsupportedFormatException {
+        if (ProductionFlags.ENABLE_JAVA_DICTIONARY_READER && dictFile.isFile()) {
+            try {
+                // Version 2 headers are read from the file without setting up a native dictionary.
+                return MappedVer2Dictionary.readHeader(dictFile, offset, length);
+            } catch (final UnsupportedFormatException e) {
+                // Fall through to the native dictionary, which reads the other versions.
+            }
+        }
         // dictType is never used for reading the header. Passing an empty string.
         final BinaryDictionary binaryDictionary = new BinaryDictionary(
                 dictFile.getAbsolutePath(), offset, length,
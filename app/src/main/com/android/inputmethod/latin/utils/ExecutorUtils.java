@@ -26,6 +26,8 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
+import javax.annotation.Nonnull;
+
 /**
  * Utilities to manage executors.
  */
@@ -35,24 +37,77 @@ public class ExecutorUtils {
 
     public static final String KEYBOARD = "Keyboard";
     public static final String SPELLING = "Spelling";
+    public static final String SUGGESTION_LOOKUP = "SuggestionLookup";
+    public static final String SPELL_CHECK_LOOKUP = "SpellCheckLookup";
+    /** Builds keyboards ahead of time and writes compiled layouts, at a low priority. */
+    public static final String KEYBOARD_LAYOUT = "KeyboardLayout";
+
+    // Lanes of the KEYBOARD and SPELLING executors, from the most to the least urgent.
+    public static final int LANE_INTERACTIVE = PriorityScheduler.LANE_INTERACTIVE;
+    public static final int LANE_DICTIONARY_WRITE = PriorityScheduler.LANE_DICTIONARY_WRITE;
+    public static final int LANE_BULK_RELOAD = PriorityScheduler.LANE_BULK_RELOAD;
+
+    // One thread for each dictionary that can be looked up besides the first one.
+    private static final int SUGGESTION_LOOKUP_THREAD_COUNT = 3;
+    // Bulk reloads can only take one of the threads, so a rebuild of the contacts or main
+    // dictionary never holds back the writes and lookups of the other dictionaries. The tasks of
+    // a dictionary still run one after another since they share its serialization key.
+    private static final int KEYBOARD_THREAD_COUNT = 2;
+    private static final int SPELLING_THREAD_COUNT = 1;
+    /** The number of words of a spell check request that can be looked up at the same time. */
+    public static final int SPELL_CHECK_LOOKUP_THREAD_COUNT =
+            Math.max(2, Runtime.getRuntime().availableProcessors());
 
     private static ScheduledExecutorService sKeyboardExecutorService = newExecutorService(KEYBOARD);
     private static ScheduledExecutorService sSpellingExecutorService = newExecutorService(SPELLING);
+    private static ScheduledExecutorService sSuggestionLookupExecutorService =
+            newExecutorService(SUGGESTION_LOOKUP);
+    private static ScheduledExecutorService sSpellCheckLookupExecutorService =
+            newExecutorService(SPELL_CHECK_LOOKUP);
+    private static ScheduledExecutorService sKeyboardLayoutExecutorService =
+            newExecutorService(KEYBOARD_LAYOUT);
 
     private static ScheduledExecutorService newExecutorService(final String name) {
-        return Executors.newSingleThreadScheduledExecutor(new ExecutorFactory(name));
+        switch (name) {
+            case KEYBOARD:
+                return new PriorityScheduler(name, KEYBOARD_THREAD_COUNT,
+                        new ExecutorFactory(name));
+            case SPELLING:
+                return new PriorityScheduler(name, SPELLING_THREAD_COUNT,
+                        new ExecutorFactory(name));
+            case SUGGESTION_LOOKUP:
+                return Executors.newScheduledThreadPool(SUGGESTION_LOOKUP_THREAD_COUNT,
+                        new ExecutorFactory(name));
+            case SPELL_CHECK_LOOKUP:
+                return Executors.newScheduledThreadPool(SPELL_CHECK_LOOKUP_THREAD_COUNT,
+                        new ExecutorFactory(name));
+            case KEYBOARD_LAYOUT:
+                // A single thread, so that the keyboards are built one at a time and the other
+                // executors and the UI thread get the CPU first.
+                return Executors.newSingleThreadScheduledExecutor(
+                        new ExecutorFactory(name, Thread.MIN_PRIORITY));
+            default:
+                throw new IllegalArgumentException("Invalid executor: " + name);
+        }
     }
 
     private static class ExecutorFactory implements ThreadFactory {
         private final String mName;
+        private final int mPriority;
 
         private ExecutorFactory(final String name) {
+            this(name, Thread.NORM_PRIORITY);
+        }
+
+        private ExecutorFactory(final String name, final int priority) {
             mName = name;
+            mPriority = priority;
         }
 
         @Override
         public Thread newThread(final Runnable runnable) {
             Thread thread = new Thread(runnable, TAG);
+            thread.setPriority(mPriority);
             thread.setUncaughtExceptionHandler(new UncaughtExceptionHandler() {
                 @Override
                 public void uncaughtException(Thread thread, Throwable ex) {
@@ -89,11 +144,68 @@ public class ExecutorUtils {
                 return sKeyboardExecutorService;
             case SPELLING:
                 return sSpellingExecutorService;
+            case SUGGESTION_LOOKUP:
+                return sSuggestionLookupExecutorService;
+            case SPELL_CHECK_LOOKUP:
+                return sSpellCheckLookupExecutorService;
+            case KEYBOARD_LAYOUT:
+                return sKeyboardLayoutExecutorService;
             default:
                 throw new IllegalArgumentException("Invalid executor: " + name);
         }
     }
 
+    /**
+     * Runs a task on the named executor in a lane, after the tasks previously submitted with the
+     * same serialization key.
+     *
+     * @param name Executor's name.
+     * @param lane one of the LANE_* constants.
+     * @param serializationKey the key of the tasks that must not run concurrently with this one,
+     * typically the dictionary file the task works on.
+     * @param runnable the task.
+     */
+    public static void execute(final String name, final int lane,
+            @Nonnull final Object serializationKey, @Nonnull final Runnable runnable) {
+        final ScheduledExecutorService executorService = getBackgroundExecutor(name);
+        if (executorService instanceof PriorityScheduler) {
+            ((PriorityScheduler)executorService).execute(lane, serializationKey, runnable);
+        } else {
+            executorService.execute(runnable);
+        }
+    }
+
+    /**
+     * Waits until all the tasks submitted so far to the named executor have finished, whatever
+     * their lanes and serialization keys.
+     *
+     * @param name Executor's name.
+     */
+    @UsedForTesting
+    public static void awaitSubmittedTasks(final String name) throws InterruptedException {
+        final ScheduledExecutorService executorService = getBackgroundExecutor(name);
+        if (executorService instanceof PriorityScheduler) {
+            ((PriorityScheduler)executorService).awaitSubmittedTasks();
+        }
+    }
+
+    /**
+     * @return the queue depths and wait times of the KEYBOARD and SPELLING executors.
+     */
+    public static String dump() {
+        final StringBuilder sb = new StringBuilder();
+        for (final String name : new String[] { KEYBOARD, SPELLING }) {
+            final ScheduledExecutorService executorService = getBackgroundExecutor(name);
+            if (executorService instanceof PriorityScheduler) {
+                if (sb.length() > 0) {
+                    sb.append("\n");
+                }
+                sb.append(((PriorityScheduler)executorService).dump());
+            }
+        }
+        return sb.toString();
+    }
+
     public static void killTasks(final String name) {
         final ScheduledExecutorService executorService = getBackgroundExecutor(name);
         executorService.shutdownNow();
@@ -113,6 +225,15 @@ public class ExecutorUtils {
             case SPELLING:
                 sSpellingExecutorService = newExecutorService(SPELLING);
                 break;
+            case SUGGESTION_LOOKUP:
+                sSuggestionLookupExecutorService = newExecutorService(SUGGESTION_LOOKUP);
+                break;
+            case SPELL_CHECK_LOOKUP:
+                sSpellCheckLookupExecutorService = newExecutorService(SPELL_CHECK_LOOKUP);
+                break;
+            case KEYBOARD_LAYOUT:
+                sKeyboardLayoutExecutorService = newExecutorService(KEYBOARD_LAYOUT);
+                break;
             default:
                 throw new IllegalArgumentException("Invalid executor: " + name);
         }
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.utils;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records latencies in fixed-bucket histograms, so that they can be dumped or written to a file
+ * to compare builds on real devices.
+ *
+ * Recording only increments atomic counters, so it can be done from any thread on hot paths.
+ */
+public final class LatencyRecorder {
+    private static final String TAG = LatencyRecorder.class.getSimpleName();
+
+    public static final int METRIC_KEYSTROKE_TO_SUGGESTION_STRIP = 0;
+    public static final int METRIC_GET_SUGGESTIONS_NATIVE = 1;
+    public static final int METRIC_INPUT_CONNECTION = 2;
+    public static final int METRIC_DICTIONARY_LOAD = 3;
+    public static final int METRIC_KEYBOARD_BUILD = 4;
+    public static final int METRIC_GESTURE_TRAIL_DRAW = 5;
+    private static final String[] METRIC_NAMES = {
+        "keystrokeToSuggestionStrip",
+        "getSuggestionsNative",
+        "inputConnection",
+        "dictionaryLoad",
+        "keyboardBuild",
+        "gestureTrailDraw",
+    };
+
+    // The upper bounds of the buckets in milliseconds. The last bucket has no upper bound.
+    private static final long[] BUCKET_UPPER_BOUNDS_MS = {
+        1, 2, 4, 8, 16, 32, 64, 128, 256, 512, 1024, 2048, 4096
+    };
+
+    private static final Histogram[] sHistograms = new Histogram[METRIC_NAMES.length];
+    static {
+        for (int i = 0; i < sHistograms.length; i++) {
+            sHistograms[i] = new Histogram();
+        }
+    }
+
+    private LatencyRecorder() {
+        // This utility class is not publicly instantiable.
+    }
+
+    private static final class Histogram {
+        // One more bucket than upper bounds, for the durations above the last bound.
+        private final AtomicLongArray mBucketCounts =
+                new AtomicLongArray(BUCKET_UPPER_BOUNDS_MS.length + 1);
+        private final AtomicLong mTotalDuration = new AtomicLong();
+        private final AtomicLong mMaxDuration = new AtomicLong();
+
+        public void record(final long durationMs) {
+            mBucketCounts.incrementAndGet(getBucketIndex(durationMs));
+            mTotalDuration.addAndGet(durationMs);
+            long maxDuration;
+            while (durationMs > (maxDuration = mMaxDuration.get())) {
+                if (mMaxDuration.compareAndSet(maxDuration, durationMs)) {
+                    break;
+                }
+            }
+        }
+
+        private static int getBucketIndex(final long durationMs) {
+            for (int i = 0; i < BUCKET_UPPER_BOUNDS_MS.length; i++) {
+                if (durationMs < BUCKET_UPPER_BOUNDS_MS[i]) {
+                    return i;
+                }
+            }
+            return BUCKET_UPPER_BOUNDS_MS.length;
+        }
+
+        /**
+         * Appends the bucket that contains the given percentile, as "pN<bound", or as
+         * "pN>=lastBound" if the percentile falls in the unbounded bucket.
+         */
+        private static void appendPercentile(final StringBuilder sb, final long[] bucketCounts,
+                final long count, final int percentile) {
+            final long rank = (count * percentile + 99) / 100;
+            long seenCount = 0;
+            sb.append(" p").append(percentile);
+            for (int i = 0; i < BUCKET_UPPER_BOUNDS_MS.length; i++) {
+                seenCount += bucketCounts[i];
+                if (seenCount >= rank) {
+                    sb.append('<').append(BUCKET_UPPER_BOUNDS_MS[i]);
+                    return;
+                }
+            }
+            sb.append(">=").append(BUCKET_UPPER_BOUNDS_MS[BUCKET_UPPER_BOUNDS_MS.length - 1]);
+        }
+
+        public void dump(final StringBuilder sb, final String name) {
+            final long[] bucketCounts = new long[mBucketCounts.length()];
+            long count = 0;
+            for (int i = 0; i < bucketCounts.length; i++) {
+                bucketCounts[i] = mBucketCounts.get(i);
+                count += bucketCounts[i];
+            }
+            sb.append(name).append(": count=").append(count);
+            if (count == 0) {
+                sb.append('\n');
+                return;
+            }
+            sb.append(" avgMs=").append(mTotalDuration.get() / count)
+                    .append(" maxMs=").append(mMaxDuration.get());
+            appendPercentile(sb, bucketCounts, count, 50);
+            appendPercentile(sb, bucketCounts, count, 90);
+            appendPercentile(sb, bucketCounts, count, 99);
+            sb.append("\n  buckets:");
+            for (int i = 0; i < bucketCounts.length; i++) {
+                sb.append(' ');
+                if (i < BUCKET_UPPER_BOUNDS_MS.length) {
+                    sb.append('<').append(BUCKET_UPPER_BOUNDS_MS[i]);
+                } else {
+                    sb.append(">=").append(BUCKET_UPPER_BOUNDS_MS[i - 1]);
+                }
+                sb.append('=').append(bucketCounts[i]);
+            }
+            sb.append('\n');
+        }
+
+        public void reset() {
+            for (int i = 0; i < mBucketCounts.length(); i++) {
+                mBucketCounts.set(i, 0);
+            }
+            mTotalDuration.set(0);
+            mMaxDuration.set(0);
+        }
+    }
+
+    /**
+     * Records a duration for a metric.
+     *
+     * @param metric one of the METRIC_* constants.
+     * @param durationMs the duration in milliseconds.
+     */
+    public static void record(final int metric, final long durationMs) {
+        sHistograms[metric].record(Math.max(0, durationMs));
+    }
+
+    public static String dump() {
+        final StringBuilder sb = new StringBuilder("Latencies (ms):\n");
+        for (int i = 0; i < sHistograms.length; i++) {
+            sHistograms[i].dump(sb, METRIC_NAMES[i]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes the histograms to a file, replacing its contents.
+     *
+     * @return whether the file has been written.
+     */
+    public static boolean exportToFile(final File file) {
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            writer.write(dump());
+            return true;
+        } catch (final IOException e) {
+            Log.e(TAG, "Cannot export latencies to " + file, e);
+            return false;
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (final IOException e) {
+                    // Nothing we can do.
+                }
+            }
+        }
+    }
+
+    public static void reset() {
+        for (final Histogram histogram : sHistograms) {
+            histogram.reset();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.utils;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * This class is a holder of the result of the latest of a sequence of asynchronous computations.
+ *
+ * Each computation has a sequence number, which is greater for later requests. A result only
+ * replaces the held one if it comes from a later request, so results that arrive out of order
+ * are dropped.
+ *
+ * @param <E> the type of the result.
+ */
+public class LatestResultHolder<E> {
+    public static final int NOT_A_SEQUENCE_NUMBER = -1;
+
+    private final Object mLock = new Object();
+
+    private final String mTag;
+    private E mResult; // synchronized using {@link #mLock}.
+    private int mSequenceNumber = NOT_A_SEQUENCE_NUMBER; // synchronized using {@link #mLock}.
+
+    public LatestResultHolder(final String tag) {
+        mTag = tag;
+    }
+
+    /**
+     * Sets the result of a computation, unless the result of a later one has already been set.
+     *
+     * @param sequenceNumber the sequence number of the computation.
+     * @param result the value to set.
+     */
+    public void set(final int sequenceNumber, final E result) {
+        synchronized (mLock) {
+            if (sequenceNumber <= mSequenceNumber) {
+                return;
+            }
+            mSequenceNumber = sequenceNumber;
+            mResult = result;
+            mLock.notifyAll();
+        }
+    }
+
+    /**
+     * Gets the result of a computation if it is the one held.
+     *
+     * @param sequenceNumber the sequence number of the computation.
+     * @return the result, or null if it is not set or a later one has been set.
+     */
+    public E get(final int sequenceNumber) {
+        synchronized (mLock) {
+            return (sequenceNumber == mSequenceNumber) ? mResult : null;
+        }
+    }
+
+    /**
+     * Gets the result of a computation, waiting for it to be set.
+     * Causes the current thread to wait until the result of this computation or of a later one
+     * is set, or the specified time is elapsed. The time limit is a safeguard against a
+     * computation that never completes.
+     *
+     * @param sequenceNumber the sequence number of the computation.
+     * @param timeOut the maximum time to wait, in milliseconds.
+     * @return the result of the computation, or null if a later one has been set or the time
+     * limit has been reached.
+     */
+    public E await(final int sequenceNumber, final long timeOut) {
+        final long deadline = SystemClock.uptimeMillis() + timeOut;
+        synchronized (mLock) {
+            try {
+                long remainingTime = timeOut;
+                while (mSequenceNumber < sequenceNumber && remainingTime > 0) {
+                    mLock.wait(remainingTime);
+                    remainingTime = deadline - SystemClock.uptimeMillis();
+                }
+            } catch (final InterruptedException e) {
+                Log.w(mTag, "await() : Interrupted while waiting for #" + sequenceNumber);
+            }
+            return (sequenceNumber == mSequenceNumber) ? mResult : null;
+        }
+    }
+}
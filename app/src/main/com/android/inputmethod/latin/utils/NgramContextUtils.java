@@ -22,7 +22,6 @@ import com.android.inputmethod.latin.define.DecoderSpecificConstants;
 import com.android.inputmethod.latin.settings.SpacingAndPunctuations;
 
 import java.util.Arrays;
-import java.util.regex.Pattern;
 
 import javax.annotation.Nonnull;
 
@@ -31,11 +30,9 @@ public final class NgramContextUtils {
         // Intentional empty constructor for utility class.
     }
 
-    private static final Pattern NEWLINE_REGEX = Pattern.compile("[\\r\\n]+");
-    private static final Pattern SPACE_REGEX = Pattern.compile("\\s+");
     // Get context information from nth word before the cursor. n = 1 retrieves the words
     // immediately before the cursor, n = 2 retrieves the words before that, and so on. This splits
-    // on whitespace only.
+    // on whitespace only, scanning back from the cursor only over the words it needs.
     // Also, it won't return words that end in a separator (if the nth word before the cursor
     // ends in a separator, it returns information representing beginning-of-sentence).
     // Example (when Constants.MAX_PREV_WORD_COUNT_FOR_N_GRAM is 2):
@@ -59,43 +56,81 @@ public final class NgramContextUtils {
     public static NgramContext getNgramContextFromNthPreviousWord(final CharSequence prev,
             final SpacingAndPunctuations spacingAndPunctuations, final int n) {
         if (prev == null) return NgramContext.EMPTY_PREV_WORDS_INFO;
-        final String[] lines = NEWLINE_REGEX.split(prev);
-        if (lines.length == 0) {
+        // Only the last line counts, ignoring the line breaks at the end.
+        int lineEnd = prev.length();
+        while (lineEnd > 0 && isLineBreak(prev.charAt(lineEnd - 1))) {
+            lineEnd--;
+        }
+        if (lineEnd == 0 && prev.length() > 0) {
             return new NgramContext(WordInfo.BEGINNING_OF_SENTENCE_WORD_INFO);
         }
-        final String[] w = SPACE_REGEX.split(lines[lines.length - 1]);
+        int lineStart = lineEnd;
+        while (lineStart > 0 && !isLineBreak(prev.charAt(lineStart - 1))) {
+            lineStart--;
+        }
+        // Find the words of the line backwards from the cursor, only as many as are looked at
+        // below. Words are separated by whitespace, and a line that starts with whitespace has an
+        // empty first word. The word at index 0 is the last one.
+        final int maxWordCount = n + DecoderSpecificConstants.MAX_PREV_WORD_COUNT_FOR_N_GRAM;
+        final int[] wordStarts = new int[maxWordCount];
+        final int[] wordEnds = new int[maxWordCount];
+        int wordCount = 0;
+        int index = lineEnd;
+        while (index > lineStart && isWhitespace(prev.charAt(index - 1))) {
+            index--;
+        }
+        if (lineStart == lineEnd) {
+            // An empty line has one empty word.
+            wordCount = 1;
+        }
+        while (index > lineStart && wordCount < maxWordCount) {
+            wordEnds[wordCount] = index;
+            while (index > lineStart && !isWhitespace(prev.charAt(index - 1))) {
+                index--;
+            }
+            wordStarts[wordCount] = index;
+            wordCount++;
+            while (index > lineStart && isWhitespace(prev.charAt(index - 1))) {
+                index--;
+            }
+            if (index == lineStart && index < wordStarts[wordCount - 1]
+                    && wordCount < maxWordCount) {
+                wordStarts[wordCount] = index;
+                wordEnds[wordCount] = index;
+                wordCount++;
+            }
+        }
         final WordInfo[] prevWordsInfo =
                 new WordInfo[DecoderSpecificConstants.MAX_PREV_WORD_COUNT_FOR_N_GRAM];
         Arrays.fill(prevWordsInfo, WordInfo.EMPTY_WORD_INFO);
         for (int i = 0; i < prevWordsInfo.length; i++) {
-            final int focusedWordIndex = w.length - n - i;
+            final int focusedWordIndex = n + i - 1;
             // Referring to the word after the focused word.
-            if ((focusedWordIndex + 1) >= 0 && (focusedWordIndex + 1) < w.length) {
-                final String wordFollowingTheNthPrevWord = w[focusedWordIndex + 1];
-                if (!wordFollowingTheNthPrevWord.isEmpty()) {
-                    final char firstChar = wordFollowingTheNthPrevWord.charAt(0);
-                    if (spacingAndPunctuations.isWordConnector(firstChar)) {
-                        // The word following the focused word is starting with a word connector.
-                        // TODO: Return meaningful context for this case.
-                        break;
-                    }
+            final int followingWordIndex = focusedWordIndex - 1;
+            if (followingWordIndex >= 0 && followingWordIndex < wordCount
+                    && wordEnds[followingWordIndex] > wordStarts[followingWordIndex]) {
+                final char firstChar = prev.charAt(wordStarts[followingWordIndex]);
+                if (spacingAndPunctuations.isWordConnector(firstChar)) {
+                    // The word following the focused word is starting with a word connector.
+                    // TODO: Return meaningful context for this case.
+                    break;
                 }
             }
             // If we can't find (n + i) words, the context is beginning-of-sentence.
-            if (focusedWordIndex < 0) {
+            if (focusedWordIndex >= wordCount) {
                 prevWordsInfo[i] = WordInfo.BEGINNING_OF_SENTENCE_WORD_INFO;
                 break;
             }
 
-            final String focusedWord = w[focusedWordIndex];
+            final int start = wordStarts[focusedWordIndex];
+            final int end = wordEnds[focusedWordIndex];
             // If the word is empty, the context is beginning-of-sentence.
-            final int length = focusedWord.length();
-            if (length <= 0) {
+            if (end <= start) {
                 prevWordsInfo[i] = WordInfo.BEGINNING_OF_SENTENCE_WORD_INFO;
                 break;
             }
             // If the word ends in a sentence terminator, the context is beginning-of-sentence.
-            final char lastChar = focusedWord.charAt(length - 1);
+            final char lastChar = prev.charAt(end - 1);
             if (spacingAndPunctuations.isSentenceTerminator(lastChar)) {
                 prevWordsInfo[i] = WordInfo.BEGINNING_OF_SENTENCE_WORD_INFO;
                 break;
@@ -106,8 +141,19 @@ public final class NgramContextUtils {
                     || spacingAndPunctuations.isWordConnector(lastChar)) {
                 break;
             }
-            prevWordsInfo[i] = new WordInfo(focusedWord);
+            prevWordsInfo[i] = new WordInfo(prev.subSequence(start, end).toString());
         }
         return new NgramContext(prevWordsInfo);
     }
+
+    // The line terminators of {@link #getNgramContextFromNthPreviousWord}, as [\r\n].
+    private static boolean isLineBreak(final char c) {
+        return c == '\r' || c == '\n';
+    }
+
+    // The word separators of {@link #getNgramContextFromNthPreviousWord}, as the \s of regular
+    // expressions.
+    private static boolean isWhitespace(final char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
 }
@@ -0,0 +1,434 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.utils;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A scheduled executor that runs tasks in priority lanes on a small pool of threads.
+ *
+ * Tasks submitted with the same serialization key run one at a time, in the order they were
+ * submitted, whatever their lanes. Among the keys that have a task ready to run, the one whose
+ * next task is in the most urgent lane runs first. When there are several threads, bulk reloads
+ * never take the last one, so that a long reload does not hold back interactive work or
+ * dictionary writes. Tasks with different keys are not ordered: use
+ * {@link #awaitSubmittedTasks()} to wait for the tasks of all the lanes.
+ *
+ * Tasks submitted through the {@link ScheduledExecutorService} methods run in the interactive
+ * lane under a key shared by all of them, so they keep running one after another. Delayed tasks
+ * are queued when their delay has elapsed, and periodic tasks each time their period elapses.
+ * A delayed task whose delay elapses after a shutdown is canceled.
+ */
+public final class PriorityScheduler extends AbstractExecutorService
+        implements ScheduledExecutorService {
+    private static final String TAG = PriorityScheduler.class.getSimpleName();
+
+    public static final int LANE_INTERACTIVE = 0;
+    public static final int LANE_DICTIONARY_WRITE = 1;
+    public static final int LANE_BULK_RELOAD = 2;
+    private static final int LANE_COUNT = 3;
+    private static final String[] LANE_NAMES = { "interactive", "dictionary-write", "bulk-reload" };
+
+    private final String mName;
+    private final Thread[] mThreads;
+    private final ScheduledThreadPoolExecutor mTimer;
+    private final Object mDefaultKey = new Object();
+
+    // All the fields below are guarded by mLock.
+    private final Object mLock = new Object();
+    // The tasks that have not started yet, by serialization key, in submission order.
+    private final HashMap<Object, ArrayDeque<Task>> mPendingTasks = new HashMap<>();
+    // The keys that are not running and whose next task can start, by the lane of that task.
+    private final ArrayList<ArrayDeque<Object>> mReadyKeys = new ArrayList<>(LANE_COUNT);
+    private final HashSet<Object> mRunningKeys = new HashSet<>();
+    // The sequence numbers of the tasks that have not finished yet.
+    private final TreeSet<Long> mUnfinishedTaskNumbers = new TreeSet<>();
+    private long mNextTaskNumber;
+    private int mRunningBulkReloadCount;
+    private int mTerminatedThreadCount;
+    private boolean mIsShutdown;
+
+    // Metrics, by lane.
+    private final int[] mQueueDepths = new int[LANE_COUNT];
+    private final int[] mMaxQueueDepths = new int[LANE_COUNT];
+    private final long[] mStartedTaskCounts = new long[LANE_COUNT];
+    private final long[] mTotalWaitTimes = new long[LANE_COUNT];
+    private final long[] mMaxWaitTimes = new long[LANE_COUNT];
+
+    private static final class Task {
+        public final Runnable mRunnable;
+        public final Object mKey;
+        public final int mLane;
+        public final long mSubmitTime;
+        public final long mNumber;
+
+        public Task(final Runnable runnable, final Object key, final int lane,
+                final long number) {
+            mRunnable = runnable;
+            mKey = key;
+            mLane = lane;
+            mSubmitTime = SystemClock.uptimeMillis();
+            mNumber = number;
+        }
+    }
+
+    /**
+     * A task that runs after a delay. It is a future of its own so that it can still be canceled
+     * after it has been queued.
+     */
+    private static final class DelayedTask<V> extends FutureTask<V> implements ScheduledFuture<V> {
+        private ScheduledFuture<?> mTimerFuture;
+
+        public DelayedTask(final Callable<V> callable) {
+            super(callable);
+        }
+
+        public void setTimerFuture(final ScheduledFuture<?> timerFuture) {
+            mTimerFuture = timerFuture;
+        }
+
+        @Override
+        public long getDelay(final TimeUnit unit) {
+            return mTimerFuture.getDelay(unit);
+        }
+
+        @Override
+        public int compareTo(final Delayed other) {
+            return mTimerFuture.compareTo(other);
+        }
+
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            mTimerFuture.cancel(false /* mayInterruptIfRunning */);
+            return super.cancel(mayInterruptIfRunning);
+        }
+    }
+
+    public PriorityScheduler(final String name, final int threadCount,
+            final ThreadFactory threadFactory) {
+        mName = name;
+        for (int lane = 0; lane < LANE_COUNT; lane++) {
+            mReadyKeys.add(new ArrayDeque<>());
+        }
+        mTimer = new ScheduledThreadPoolExecutor(1 /* corePoolSize */, threadFactory);
+        mThreads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            mThreads[i] = threadFactory.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    runTasks();
+                }
+            });
+            mThreads[i].start();
+        }
+    }
+
+    /**
+     * Queues a task in a lane. It runs after all the tasks previously submitted with the same
+     * serialization key.
+     */
+    public void execute(final int lane, @Nonnull final Object serializationKey,
+            @Nonnull final Runnable runnable) {
+        if (lane < 0 || lane >= LANE_COUNT) {
+            throw new IllegalArgumentException("Invalid lane: " + lane);
+        }
+        synchronized (mLock) {
+            if (mIsShutdown) {
+                throw new RejectedExecutionException(mName + " has been shut down");
+            }
+            final Task task = new Task(runnable, serializationKey, lane, mNextTaskNumber++);
+            mUnfinishedTaskNumbers.add(task.mNumber);
+            ArrayDeque<Task> tasks = mPendingTasks.get(serializationKey);
+            if (tasks == null) {
+                tasks = new ArrayDeque<>();
+                mPendingTasks.put(serializationKey, tasks);
+            }
+            tasks.addLast(task);
+            mQueueDepths[lane]++;
+            mMaxQueueDepths[lane] = Math.max(mMaxQueueDepths[lane], mQueueDepths[lane]);
+            if (tasks.size() == 1 && !mRunningKeys.contains(serializationKey)) {
+                mReadyKeys.get(lane).addLast(serializationKey);
+                mLock.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void execute(@Nonnull final Runnable runnable) {
+        execute(LANE_INTERACTIVE, mDefaultKey, runnable);
+    }
+
+    private void runTasks() {
+        while (true) {
+            final Task task;
+            synchronized (mLock) {
+                Task nextTask;
+                while ((nextTask = pollReadyTaskLocked()) == null) {
+                    if (mIsShutdown && mPendingTasks.isEmpty()) {
+                        mTerminatedThreadCount++;
+                        mLock.notifyAll();
+                        return;
+                    }
+                    try {
+                        mLock.wait();
+                    } catch (final InterruptedException e) {
+                        // Check again whether we have been shut down.
+                    }
+                }
+                task = nextTask;
+            }
+            try {
+                task.mRunnable.run();
+            } catch (final Throwable e) {
+                // Keep this thread alive: the tasks queued after this one would never run.
+                Log.e(mName + "-" + task.mRunnable.getClass().getSimpleName(), "Task failed", e);
+            } finally {
+                // Don't let an interruption of this task leak into the next one.
+                Thread.interrupted();
+                synchronized (mLock) {
+                    onTaskFinishedLocked(task);
+                }
+            }
+        }
+    }
+
+    private Task pollReadyTaskLocked() {
+        for (int lane = 0; lane < LANE_COUNT; lane++) {
+            if (lane == LANE_BULK_RELOAD
+                    && mRunningBulkReloadCount >= Math.max(1, mThreads.length - 1)) {
+                continue;
+            }
+            final Object key = mReadyKeys.get(lane).pollFirst();
+            if (key == null) {
+                continue;
+            }
+            final Task task = mPendingTasks.get(key).pollFirst();
+            mRunningKeys.add(key);
+            if (lane == LANE_BULK_RELOAD) {
+                mRunningBulkReloadCount++;
+            }
+            final long waitTime = SystemClock.uptimeMillis() - task.mSubmitTime;
+            mQueueDepths[lane]--;
+            mStartedTaskCounts[lane]++;
+            mTotalWaitTimes[lane] += waitTime;
+            mMaxWaitTimes[lane] = Math.max(mMaxWaitTimes[lane], waitTime);
+            return task;
+        }
+        return null;
+    }
+
+    private void onTaskFinishedLocked(final Task task) {
+        if (task.mLane == LANE_BULK_RELOAD) {
+            mRunningBulkReloadCount--;
+        }
+        mUnfinishedTaskNumbers.remove(task.mNumber);
+        mRunningKeys.remove(task.mKey);
+        final ArrayDeque<Task> tasks = mPendingTasks.get(task.mKey);
+        if (tasks == null || tasks.isEmpty()) {
+            mPendingTasks.remove(task.mKey);
+        } else {
+            mReadyKeys.get(tasks.peekFirst().mLane).addLast(task.mKey);
+        }
+        mLock.notifyAll();
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(final Runnable command, final long delay,
+            final TimeUnit unit) {
+        return schedule(Executors.callable(command), delay, unit);
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(final Callable<V> callable, final long delay,
+            final TimeUnit unit) {
+        final DelayedTask<V> delayedTask = new DelayedTask<>(callable);
+        delayedTask.setTimerFuture(mTimer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (!executeFromTimer(delayedTask)) {
+                    delayedTask.cancel(false /* mayInterruptIfRunning */);
+                }
+            }
+        }, delay, unit));
+        return delayedTask;
+    }
+
+    /**
+     * Queues a task whose delay or period has elapsed.
+     *
+     * @return false if the task has been rejected because this executor has been shut down.
+     */
+    private boolean executeFromTimer(final Runnable runnable) {
+        try {
+            execute(runnable);
+            return true;
+        } catch (final RejectedExecutionException e) {
+            Log.w(TAG, "Dropped a delayed task of " + mName + " after shutdown", e);
+            return false;
+        }
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(final Runnable command, final long initialDelay,
+            final long period, final TimeUnit unit) {
+        return mTimer.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                executeFromTimer(command);
+            }
+        }, initialDelay, period, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(final Runnable command,
+            final long initialDelay, final long delay, final TimeUnit unit) {
+        return mTimer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                executeFromTimer(command);
+            }
+        }, initialDelay, delay, unit);
+    }
+
+    @Override
+    public void shutdown() {
+        mTimer.shutdown();
+        synchronized (mLock) {
+            mIsShutdown = true;
+            mLock.notifyAll();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        final ArrayList<Runnable> pendingRunnables = new ArrayList<>();
+        for (final Runnable runnable : mTimer.shutdownNow()) {
+            pendingRunnables.add(runnable);
+        }
+        synchronized (mLock) {
+            mIsShutdown = true;
+            for (final Map.Entry<Object, ArrayDeque<Task>> entry : mPendingTasks.entrySet()) {
+                for (final Task task : entry.getValue()) {
+                    pendingRunnables.add(task.mRunnable);
+                    mQueueDepths[task.mLane]--;
+                    mUnfinishedTaskNumbers.remove(task.mNumber);
+                }
+                entry.getValue().clear();
+            }
+            // Only the running tasks are left.
+            mPendingTasks.keySet().retainAll(mRunningKeys);
+            for (final ArrayDeque<Object> readyKeys : mReadyKeys) {
+                readyKeys.clear();
+            }
+            mLock.notifyAll();
+        }
+        for (final Thread thread : mThreads) {
+            thread.interrupt();
+        }
+        return pendingRunnables;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        synchronized (mLock) {
+            return mIsShutdown;
+        }
+    }
+
+    @Override
+    public boolean isTerminated() {
+        synchronized (mLock) {
+            return mTerminatedThreadCount == mThreads.length && mTimer.isTerminated();
+        }
+    }
+
+    @Override
+    public boolean awaitTermination(final long timeout, final TimeUnit unit)
+            throws InterruptedException {
+        final long deadline = SystemClock.uptimeMillis() + unit.toMillis(timeout);
+        synchronized (mLock) {
+            while (mTerminatedThreadCount < mThreads.length) {
+                final long remainingTime = deadline - SystemClock.uptimeMillis();
+                if (remainingTime <= 0) {
+                    return false;
+                }
+                mLock.wait(remainingTime);
+            }
+        }
+        return mTimer.awaitTermination(
+                Math.max(0, deadline - SystemClock.uptimeMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Waits until all the tasks submitted so far, in all the lanes and with all the keys, have
+     * finished or have been dropped by {@link #shutdownNow()}. Delayed tasks count once they have
+     * been queued. This must not be called from a task of this executor.
+     */
+    public void awaitSubmittedTasks() throws InterruptedException {
+        for (final Thread thread : mThreads) {
+            if (thread == Thread.currentThread()) {
+                throw new IllegalStateException("Waiting for " + mName + " from one of its tasks");
+            }
+        }
+        synchronized (mLock) {
+            final long lastTaskNumber = mNextTaskNumber - 1;
+            while (!mUnfinishedTaskNumbers.isEmpty()
+                    && mUnfinishedTaskNumbers.first() <= lastTaskNumber) {
+                mLock.wait();
+            }
+        }
+    }
+
+    public String dump() {
+        final StringBuilder sb = new StringBuilder(mName);
+        synchronized (mLock) {
+            for (int lane = 0; lane < LANE_COUNT; lane++) {
+                final long startedTaskCount = mStartedTaskCounts[lane];
+                sb.append("\n  ").append(LANE_NAMES[lane])
+                        .append(": queued=").append(mQueueDepths[lane])
+                        .append(" maxQueued=").append(mMaxQueueDepths[lane])
+                        .append(" started=").append(startedTaskCount)
+                        .append(" avgWaitMs=").append(startedTaskCount == 0
+                                ? 0 : mTotalWaitTimes[lane] / startedTaskCount)
+                        .append(" maxWaitMs=").append(mMaxWaitTimes[lane]);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -19,22 +19,30 @@ package com.android.inputmethod.latin.utils;
 import com.android.inputmethod.latin.SuggestedWords.SuggestedWordInfo;
 import com.android.inputmethod.latin.define.ProductionFlags;
 
+import java.util.AbstractCollection;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
-import java.util.TreeSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
- * A TreeSet of SuggestedWordInfo that is bounded in size and throws everything that's smaller
- * than its limit
+ * A collection of SuggestedWordInfo that is bounded in size and throws everything that's smaller
+ * than its limit. Elements are kept sorted in a fixed-size array, so adding a word does not
+ * allocate anything.
  */
-public final class SuggestionResults extends TreeSet<SuggestedWordInfo> {
+public final class SuggestionResults extends AbstractCollection<SuggestedWordInfo> {
     public final ArrayList<SuggestedWordInfo> mRawSuggestions;
     // TODO: Instead of a boolean , we may want to include the context of this suggestion results,
     // such as {@link NgramContext}.
     public final boolean mIsBeginningOfSentence;
     public final boolean mFirstSuggestionExceedsConfidenceThreshold;
-    private final int mCapacity;
+    private final Comparator<SuggestedWordInfo> mComparator;
+    // Sorted by mComparator. Only the first mSize elements are used.
+    private final SuggestedWordInfo[] mSuggestions;
+    private int mSize;
+    // Whether some dictionaries were left out of these results, e.g. because they were too slow.
+    private boolean mIsIncomplete;
 
     public SuggestionResults(final int capacity, final boolean isBeginningOfSentence,
             final boolean firstSuggestionExceedsConfidenceThreshold) {
@@ -45,8 +53,9 @@ public final class SuggestionResults extends TreeSet<SuggestedWordInfo> {
     private SuggestionResults(final Comparator<SuggestedWordInfo> comparator, final int capacity,
             final boolean isBeginningOfSentence,
             final boolean firstSuggestionExceedsConfidenceThreshold) {
-        super(comparator);
-        mCapacity = capacity;
+        mComparator = comparator;
+        mSuggestions = new SuggestedWordInfo[capacity];
+        mSize = 0;
         if (ProductionFlags.INCLUDE_RAW_SUGGESTIONS) {
             mRawSuggestions = new ArrayList<>();
         } else {
@@ -58,10 +67,29 @@ public final class SuggestionResults extends TreeSet<SuggestedWordInfo> {
 
     @Override
     public boolean add(final SuggestedWordInfo e) {
-        if (size() < mCapacity) return super.add(e);
-        if (comparator().compare(e, last()) > 0) return false;
-        super.add(e);
-        pollLast(); // removes the last element
+        int low = 0;
+        int high = mSize;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            final int comparison = mComparator.compare(mSuggestions[mid], e);
+            if (comparison < 0) {
+                low = mid + 1;
+            } else if (comparison > 0) {
+                high = mid;
+            } else {
+                // Like a set, don't add an element that compares equal to an existing one.
+                return false;
+            }
+        }
+        final int capacity = mSuggestions.length;
+        if (low >= capacity) return false;
+        // When full, the last element falls off the end.
+        final int shiftCount = Math.min(mSize, capacity - 1) - low;
+        System.arraycopy(mSuggestions, low, mSuggestions, low + 1, shiftCount);
+        mSuggestions[low] = e;
+        if (mSize < capacity) {
+            ++mSize;
+        }
         return true;
     }
 
@@ -71,6 +99,66 @@ public final class SuggestionResults extends TreeSet<SuggestedWordInfo> {
         return super.addAll(e);
     }
 
+    /**
+     * Returns the highest ranked suggestion.
+     * @throws NoSuchElementException if there are no suggestions.
+     */
+    public SuggestedWordInfo first() {
+        if (mSize == 0) {
+            throw new NoSuchElementException();
+        }
+        return mSuggestions[0];
+    }
+
+    /**
+     * Marks these results as missing the suggestions of some dictionaries. Such results must not
+     * be reused for later requests.
+     */
+    public void setIncomplete() {
+        mIsIncomplete = true;
+    }
+
+    public boolean isIncomplete() {
+        return mIsIncomplete;
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    public Iterator<SuggestedWordInfo> iterator() {
+        return new Iterator<SuggestedWordInfo>() {
+            private int mIndex = 0;
+
+            @Override
+            public boolean hasNext() {
+                return mIndex < mSize;
+            }
+
+            @Override
+            public SuggestedWordInfo next() {
+                if (mIndex >= mSize) {
+                    throw new NoSuchElementException();
+                }
+                return mSuggestions[mIndex++];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public Object[] toArray() {
+        final Object[] array = new Object[mSize];
+        System.arraycopy(mSuggestions, 0, array, 0, mSize);
+        return array;
+    }
+
     static final class SuggestedWordInfoComparator implements Comparator<SuggestedWordInfo> {
         // This comparator ranks the word info with the higher frequency first. That's because
         // that's the order we want our elements in.
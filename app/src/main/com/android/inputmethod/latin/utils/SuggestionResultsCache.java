@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.utils;
+
+import android.util.LruCache;
+
+import com.android.inputmethod.keyboard.KeyboardId;
+import com.android.inputmethod.latin.NgramContext;
+import com.android.inputmethod.latin.common.ComposedData;
+import com.android.inputmethod.latin.common.InputPointers;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A cache of the {@link SuggestionResults} computed for the words typed in the current input
+ * session.
+ *
+ * The decoder takes the touch coordinates into account and only returns its best candidates, so
+ * the results of a prefix are not a superset of the best results of a longer input: results can
+ * only be reused for exactly the same input. This typically happens when the user deletes the
+ * last letters of a word, or when the suggestion strip is updated again without new input. The
+ * whole cache is dropped when the contents of any dictionary, including the user history, may
+ * have changed, so that a word that has just been learned is suggested right away.
+ */
+public final class SuggestionResultsCache {
+    private static final int MAX_CACHE_SIZE = 32;
+
+    private final LruCache<Key, SuggestionResults> mCache = new LruCache<>(MAX_CACHE_SIZE);
+    private int mDictionaryContentsGeneration;
+    private int mHitCount;
+    private int mMissCount;
+
+    private static final class Key {
+        private final NgramContext mNgramContext;
+        private final String mTypedWord;
+        private final KeyboardId mKeyboardId;
+        private final boolean mBlockPotentiallyOffensive;
+        // The x coordinates followed by the y coordinates of the input pointers.
+        private final int[] mCoordinates;
+        private final int mHashCode;
+
+        public Key(final NgramContext ngramContext, final ComposedData composedData,
+                final KeyboardId keyboardId, final boolean blockPotentiallyOffensive) {
+            mNgramContext = ngramContext;
+            mTypedWord = composedData.mTypedWord;
+            mKeyboardId = keyboardId;
+            mBlockPotentiallyOffensive = blockPotentiallyOffensive;
+            final InputPointers inputPointers = composedData.mInputPointers;
+            final int pointerSize = inputPointers.getPointerSize();
+            mCoordinates = new int[pointerSize * 2];
+            System.arraycopy(inputPointers.getXCoordinates(), 0, mCoordinates, 0, pointerSize);
+            System.arraycopy(inputPointers.getYCoordinates(), 0, mCoordinates, pointerSize,
+                    pointerSize);
+            mHashCode = Arrays.hashCode(new Object[] {
+                    ngramContext,
+                    mTypedWord,
+                    keyboardId,
+                    blockPotentiallyOffensive,
+                    Arrays.hashCode(mCoordinates)
+            });
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key other = (Key)o;
+            return mHashCode == other.mHashCode
+                    && mBlockPotentiallyOffensive == other.mBlockPotentiallyOffensive
+                    && mTypedWord.equals(other.mTypedWord)
+                    && mKeyboardId.equals(other.mKeyboardId)
+                    && mNgramContext.equals(other.mNgramContext)
+                    && Arrays.equals(mCoordinates, other.mCoordinates);
+        }
+    }
+
+    /**
+     * Returns the cached results for this input, or null if there are none.
+     *
+     * @param dictionaryContentsGeneration the current generation of the dictionaries. If it
+     * differs from the one of the cached results, the cache is cleared.
+     */
+    @Nullable
+    public synchronized SuggestionResults get(@Nonnull final NgramContext ngramContext,
+            @Nonnull final ComposedData composedData, @Nonnull final KeyboardId keyboardId,
+            final boolean blockPotentiallyOffensive, final int dictionaryContentsGeneration) {
+        if (composedData.mIsBatchMode) {
+            return null;
+        }
+        if (dictionaryContentsGeneration != mDictionaryContentsGeneration) {
+            mCache.evictAll();
+            mDictionaryContentsGeneration = dictionaryContentsGeneration;
+        }
+        final SuggestionResults results = mCache.get(
+                new Key(ngramContext, composedData, keyboardId, blockPotentiallyOffensive));
+        if (results == null) {
+            mMissCount++;
+            return null;
+        }
+        mHitCount++;
+        return results;
+    }
+
+    public synchronized void put(@Nonnull final NgramContext ngramContext,
+            @Nonnull final ComposedData composedData, @Nonnull final KeyboardId keyboardId,
+            final boolean blockPotentiallyOffensive, final int dictionaryContentsGeneration,
+            @Nonnull final SuggestionResults results) {
+        if (composedData.mIsBatchMode || results.isIncomplete()
+                || dictionaryContentsGeneration != mDictionaryContentsGeneration) {
+            return;
+        }
+        mCache.put(new Key(ngramContext, composedData, keyboardId, blockPotentiallyOffensive),
+                results);
+    }
+
+    public synchronized void clear() {
+        mCache.evictAll();
+    }
+
+    public synchronized String dump() {
+        final int requestCount = mHitCount + mMissCount;
+        return "SuggestionResultsCache: hits=" + mHitCount + " misses=" + mMissCount
+                + " hitRate=" + (requestCount == 0 ? 0.0f : (float)mHitCount / requestCount);
+    }
+}
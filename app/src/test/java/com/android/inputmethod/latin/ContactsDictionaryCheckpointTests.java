@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Checks the reference counts of {@link ContactsDictionaryCheckpoint}, and that a checkpoint is
+ * read back as it was written, while a file that is not a checkpoint of this version is ignored.
+ */
+public class ContactsDictionaryCheckpointTests {
+    private static final long TIMESTAMP = 1234567890123L;
+    // The profile contacts have their own range of ids.
+    private static final long PROFILE_CONTACT_ID = Long.MAX_VALUE - 10;
+
+    private File mDirectory;
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = File.createTempFile(ContactsDictionaryCheckpointTests.class.getSimpleName(),
+                "" /* suffix */);
+        assertTrue(mDirectory.delete());
+        assertTrue(mDirectory.mkdir());
+        mFile = ContactsDictionaryCheckpoint.getFile(new File(mDirectory, "contacts.dict"));
+    }
+
+    @After
+    public void tearDown() {
+        for (final File file : mDirectory.listFiles()) {
+            file.delete();
+        }
+        mDirectory.delete();
+    }
+
+    private static ContactsDictionaryCheckpoint newCheckpoint() {
+        final ContactsDictionaryCheckpoint checkpoint = new ContactsDictionaryCheckpoint(TIMESTAMP);
+        checkpoint.putContactName(1, "Jane Doe");
+        checkpoint.putContactName(2, "John Doe");
+        checkpoint.putContactName(PROFILE_CONTACT_ID, "Zoë Doe");
+        checkpoint.retainWord("Jane");
+        checkpoint.retainWord("John");
+        checkpoint.retainWord("Zoë");
+        checkpoint.retainWord("Doe");
+        checkpoint.retainWord("Doe");
+        checkpoint.retainWord("Doe");
+        checkpoint.retainNgram("Jane Doe");
+        checkpoint.retainNgram("John Doe");
+        checkpoint.retainNgram("Zoë Doe");
+        return checkpoint;
+    }
+
+    private static ArrayList<Long> sorted(final ArrayList<Long> contactIds) {
+        Collections.sort(contactIds);
+        return contactIds;
+    }
+
+    private void overwrite(final int offset, final int value) throws IOException {
+        final RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.seek(offset);
+            file.writeInt(value);
+        } finally {
+            file.close();
+        }
+    }
+
+    @Test
+    public void testReferenceCounts() {
+        final ContactsDictionaryCheckpoint checkpoint = new ContactsDictionaryCheckpoint(TIMESTAMP);
+        checkpoint.retainWord("Doe");
+        checkpoint.retainWord("Doe");
+        assertFalse(checkpoint.releaseWord("Doe"));
+        assertTrue(checkpoint.releaseWord("Doe"));
+        // Not retained anymore, so this checkpoint does not own it.
+        assertFalse(checkpoint.releaseWord("Doe"));
+        assertFalse(checkpoint.releaseWord("Unknown"));
+        // The words and the n-grams are counted separately.
+        checkpoint.retainWord("Jane Doe");
+        assertFalse(checkpoint.releaseNgram("Jane Doe"));
+        checkpoint.retainNgram("Jane Doe");
+        assertTrue(checkpoint.releaseNgram("Jane Doe"));
+        assertTrue(checkpoint.releaseWord("Jane Doe"));
+    }
+
+    @Test
+    public void testContacts() {
+        final ContactsDictionaryCheckpoint checkpoint = newCheckpoint();
+        assertEquals(3, checkpoint.getContactCount());
+        assertEquals("Jane Doe", checkpoint.putContactName(1, "Jane Roe"));
+        assertEquals("Jane Roe", checkpoint.getContactName(1));
+        assertEquals(Arrays.asList(1L, 2L, PROFILE_CONTACT_ID),
+                sorted(checkpoint.getContactIdsFrom(0)));
+        assertEquals(Arrays.asList(PROFILE_CONTACT_ID),
+                checkpoint.getContactIdsFrom(PROFILE_CONTACT_ID));
+        assertEquals("John Doe", checkpoint.removeContact(2));
+        assertNull(checkpoint.removeContact(2));
+        assertNull(checkpoint.getContactName(2));
+        assertEquals(2, checkpoint.getContactCount());
+    }
+
+    @Test
+    public void testRoundTrip() {
+        newCheckpoint().write(mFile);
+        assertFalse(new File(mDirectory, mFile.getName() + ".tmp").exists());
+        final ContactsDictionaryCheckpoint checkpoint = ContactsDictionaryCheckpoint.read(mFile);
+        assertNotNull(checkpoint);
+        assertEquals(TIMESTAMP, checkpoint.getLastSyncTimestamp());
+        assertEquals(Arrays.asList(1L, 2L, PROFILE_CONTACT_ID),
+                sorted(checkpoint.getContactIdsFrom(0)));
+        assertEquals("Jane Doe", checkpoint.getContactName(1));
+        assertEquals("John Doe", checkpoint.getContactName(2));
+        assertEquals("Zoë Doe", checkpoint.getContactName(PROFILE_CONTACT_ID));
+        // The reference counts are read back: "Doe" is used by three names.
+        assertFalse(checkpoint.releaseWord("Doe"));
+        assertFalse(checkpoint.releaseWord("Doe"));
+        assertTrue(checkpoint.releaseWord("Doe"));
+        assertTrue(checkpoint.releaseWord("Zoë"));
+        assertTrue(checkpoint.releaseNgram("Zoë Doe"));
+        assertFalse(checkpoint.releaseNgram("Doe"));
+    }
+
+    @Test
+    public void testWriteReplaces() {
+        newCheckpoint().write(mFile);
+        final ContactsDictionaryCheckpoint checkpoint = ContactsDictionaryCheckpoint.read(mFile);
+        checkpoint.removeContact(2);
+        checkpoint.releaseWord("John");
+        checkpoint.setLastSyncTimestamp(TIMESTAMP + 1);
+        checkpoint.write(mFile);
+        final ContactsDictionaryCheckpoint readCheckpoint =
+                ContactsDictionaryCheckpoint.read(mFile);
+        assertEquals(TIMESTAMP + 1, readCheckpoint.getLastSyncTimestamp());
+        assertEquals(2, readCheckpoint.getContactCount());
+        assertNull(readCheckpoint.getContactName(2));
+        assertFalse(readCheckpoint.releaseWord("John"));
+    }
+
+    @Test
+    public void testMissingFile() {
+        assertNull(ContactsDictionaryCheckpoint.read(mFile));
+    }
+
+    @Test
+    public void testOtherFormat() throws IOException {
+        newCheckpoint().write(mFile);
+        // The magic number.
+        overwrite(0, 0);
+        assertNull(ContactsDictionaryCheckpoint.read(mFile));
+        newCheckpoint().write(mFile);
+        // The format version.
+        overwrite(Integer.SIZE / Byte.SIZE, 1);
+        assertNull(ContactsDictionaryCheckpoint.read(mFile));
+    }
+
+    @Test
+    public void testTruncated() throws IOException {
+        newCheckpoint().write(mFile);
+        final RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.setLength(file.length() - 1);
+        } finally {
+            file.close();
+        }
+        assertNull(ContactsDictionaryCheckpoint.read(mFile));
+        assertFalse(mFile.exists());
+    }
+}
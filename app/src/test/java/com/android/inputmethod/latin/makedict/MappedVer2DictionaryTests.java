@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.makedict;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.android.inputmethod.latin.Dictionary;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Locale;
+
+/**
+ * Checks the lookups of {@link MappedVer2Dictionary} in the bundled dictionaries. The expected
+ * probabilities are those of the native dictionary for the same words.
+ * MappedVer2DictionaryNativeTests, in the instrumentation tests, compares every word of the
+ * bundled dictionaries with the native dictionary.
+ */
+public class MappedVer2DictionaryTests {
+    // The unit tests run in the directory of the app module.
+    private static final File RAW_DIRECTORY = new File("src/main/res/raw");
+
+    private static MappedVer2Dictionary openDictionary(final String name, final Locale locale)
+            throws Exception {
+        final File file = new File(RAW_DIRECTORY, name);
+        return new MappedVer2Dictionary(file, 0 /* offset */, file.length(), locale,
+                Dictionary.TYPE_MAIN);
+    }
+
+    private static void assertProbabilities(final MappedVer2Dictionary dictionary,
+            final String word, final int probability, final int maxProbabilityOfExactMatches) {
+        assertEquals("probability of " + word, probability, dictionary.getFrequency(word));
+        assertEquals("exact matches of " + word, maxProbabilityOfExactMatches,
+                dictionary.getMaxFrequencyOfExactMatches(word));
+    }
+
+    @Test
+    public void testCodePointTable() throws Exception {
+        // The Russian dictionary stores its most frequent letters as one-byte indices in the
+        // code point table of its header.
+        final MappedVer2Dictionary dictionary = openDictionary("main_ru.dict", new Locale("ru"));
+        assertNotNull(dictionary.getHeader().mDictionaryOptions.mAttributes.get(
+                DictionaryHeader.CODE_POINT_TABLE_KEY));
+        assertTrue(dictionary.isInDictionary("и"));
+        assertProbabilities(dictionary, "и", 60, 60);
+        assertProbabilities(dictionary, "привет", 81, 81);
+        assertProbabilities(dictionary, "ПРИВЕТ", Dictionary.NOT_A_PROBABILITY, 81);
+        assertProbabilities(dictionary, "Москва", 137, 137);
+        assertProbabilities(dictionary, "москва", Dictionary.NOT_A_PROBABILITY, 137);
+    }
+
+    @Test
+    public void testBaseCharacters() throws Exception {
+        // The native dictionary folds ё into е, which a Unicode decomposition does not do.
+        final MappedVer2Dictionary russian = openDictionary("main_ru.dict", new Locale("ru"));
+        assertProbabilities(russian, "ёж", 90, 90);
+        assertProbabilities(russian, "еж", Dictionary.NOT_A_PROBABILITY, 90);
+        assertProbabilities(russian, "Еж", Dictionary.NOT_A_PROBABILITY, 90);
+        final MappedVer2Dictionary english = openDictionary("main_en.dict", Locale.ENGLISH);
+        assertProbabilities(english, "café", 103, 104);
+        assertProbabilities(english, "CAFE", Dictionary.NOT_A_PROBABILITY, 104);
+    }
+
+    @Test
+    public void testIntentionalOmissions() throws Exception {
+        final MappedVer2Dictionary dictionary = openDictionary("main_en.dict", Locale.ENGLISH);
+        assertNull(dictionary.getHeader().mDictionaryOptions.mAttributes.get(
+                DictionaryHeader.CODE_POINT_TABLE_KEY));
+        assertProbabilities(dictionary, "don't", 185, 185);
+        assertProbabilities(dictionary, "dont", Dictionary.NOT_A_PROBABILITY, 185);
+        assertProbabilities(dictionary, "the-", Dictionary.NOT_A_PROBABILITY,
+                Dictionary.NOT_A_PROBABILITY);
+        assertFalse(dictionary.isInDictionary(""));
+    }
+
+    @Test
+    public void testGermanUmlautDigraphs() throws Exception {
+        final MappedVer2Dictionary dictionary = openDictionary("main_de.dict", Locale.GERMAN);
+        assertProbabilities(dictionary, "Straße", 137, 137);
+        assertProbabilities(dictionary, "strasse", Dictionary.NOT_A_PROBABILITY, 92);
+        assertProbabilities(dictionary, "Äpfel", 82, 85);
+        assertProbabilities(dictionary, "aepfel", Dictionary.NOT_A_PROBABILITY, 82);
+        assertProbabilities(dictionary, "MAEDCHEN", Dictionary.NOT_A_PROBABILITY, 121);
+        // The native dictionary accepts any first letter for the umlaut of a digraph.
+        assertProbabilities(dictionary, "xepfel", Dictionary.NOT_A_PROBABILITY, 82);
+    }
+}
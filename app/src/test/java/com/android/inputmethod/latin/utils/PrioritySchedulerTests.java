@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks the order in which {@link PriorityScheduler} runs its tasks: by lane across the
+ * serialization keys, in submission order within a key, and without bulk reloads taking every
+ * thread.
+ */
+public class PrioritySchedulerTests {
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private PriorityScheduler mScheduler;
+    private final List<String> mRunTasks = Collections.synchronizedList(new ArrayList<String>());
+
+    private PriorityScheduler newScheduler(final int threadCount) {
+        mScheduler = new PriorityScheduler(PrioritySchedulerTests.class.getSimpleName(),
+                threadCount, Executors.defaultThreadFactory());
+        return mScheduler;
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (mScheduler != null) {
+            mScheduler.shutdownNow();
+            mScheduler.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private Runnable newTask(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                mRunTasks.add(name);
+            }
+        };
+    }
+
+    // A task that waits for the latch to be released, to hold a thread while tasks are queued.
+    private static Runnable newBlockingTask(final CountDownLatch started,
+            final CountDownLatch release) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+    private static void await(final CountDownLatch latch) throws InterruptedException {
+        assertTrue(latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testLanesRunByPriority() throws InterruptedException {
+        final PriorityScheduler scheduler = newScheduler(1 /* threadCount */);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        scheduler.execute(PriorityScheduler.LANE_INTERACTIVE, "blocking",
+                newBlockingTask(started, release));
+        await(started);
+        scheduler.execute(PriorityScheduler.LANE_BULK_RELOAD, "a", newTask("bulk a"));
+        scheduler.execute(PriorityScheduler.LANE_DICTIONARY_WRITE, "b", newTask("write b"));
+        scheduler.execute(PriorityScheduler.LANE_INTERACTIVE, "c", newTask("interactive c"));
+        scheduler.execute(PriorityScheduler.LANE_DICTIONARY_WRITE, "d", newTask("write d"));
+        scheduler.execute(PriorityScheduler.LANE_INTERACTIVE, "e", newTask("interactive e"));
+        release.countDown();
+        scheduler.awaitSubmittedTasks();
+        assertEquals(Arrays.asList("interactive c", "interactive e", "write b", "write d",
+                "bulk a"), mRunTasks);
+    }
+
+    @Test
+    public void testSameKeyRunsInSubmissionOrder() throws InterruptedException {
+        final PriorityScheduler scheduler = newScheduler(1 /* threadCount */);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        scheduler.execute(PriorityScheduler.LANE_INTERACTIVE, "blocking",
+                newBlockingTask(started, release));
+        await(started);
+        // The interactive task of "a" waits for the bulk reload of "a" submitted before it,
+        // while the interactive task of "b" does not.
+        scheduler.execute(PriorityScheduler.LANE_BULK_RELOAD, "a", newTask("bulk a"));
+        scheduler.execute(PriorityScheduler.LANE_INTERACTIVE, "a", newTask("interactive a"));
+        scheduler.execute(PriorityScheduler.LANE_INTERACTIVE, "b", newTask("interactive b"));
+        release.countDown();
+        scheduler.awaitSubmittedTasks();
+        assertEquals(Arrays.asList("interactive b", "bulk a", "interactive a"), mRunTasks);
+    }
+
+    @Test
+    public void testExecuteRunsInSubmissionOrder() throws InterruptedException {
+        final PriorityScheduler scheduler = newScheduler(2 /* threadCount */);
+        final ArrayList<String> expectedTasks = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final String name = "task " + i;
+            scheduler.execute(newTask(name));
+            expectedTasks.add(name);
+        }
+        scheduler.awaitSubmittedTasks();
+        assertEquals(expectedTasks, mRunTasks);
+    }
+
+    @Test
+    public void testBulkReloadsLeaveAThread() throws InterruptedException {
+        final PriorityScheduler scheduler = newScheduler(2 /* threadCount */);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        scheduler.execute(PriorityScheduler.LANE_BULK_RELOAD, "a",
+                newBlockingTask(started, release));
+        await(started);
+        scheduler.execute(PriorityScheduler.LANE_BULK_RELOAD, "b", newTask("bulk b"));
+        final CountDownLatch interactiveDone = new CountDownLatch(1);
+        scheduler.execute(PriorityScheduler.LANE_INTERACTIVE, "c", new Runnable() {
+            @Override
+            public void run() {
+                mRunTasks.add("interactive c");
+                interactiveDone.countDown();
+            }
+        });
+        // The second thread runs the interactive task, but not the second bulk reload.
+        await(interactiveDone);
+        assertEquals(Arrays.asList("interactive c"), mRunTasks);
+        release.countDown();
+        scheduler.awaitSubmittedTasks();
+        assertEquals(Arrays.asList("interactive c", "bulk b"), mRunTasks);
+    }
+
+    @Test
+    public void testShutdownNowReturnsPendingTasks() throws InterruptedException {
+        final PriorityScheduler scheduler = newScheduler(1 /* threadCount */);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        scheduler.execute(PriorityScheduler.LANE_INTERACTIVE, "blocking",
+                newBlockingTask(started, release));
+        await(started);
+        final Runnable pendingTask = newTask("pending");
+        scheduler.execute(PriorityScheduler.LANE_DICTIONARY_WRITE, "a", pendingTask);
+        assertEquals(Arrays.asList(pendingTask), scheduler.shutdownNow());
+        assertTrue(scheduler.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertFalse(mRunTasks.contains("pending"));
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.android.inputmethod.latin.SuggestedWords.SuggestedWordInfo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Checks that {@link SuggestionResults} keeps the best suggestions in order, as the sorted set
+ * it used to be backed by did.
+ */
+public class SuggestionResultsTests {
+    private static final int CAPACITY = 18;
+
+    private static SuggestedWordInfo newInfo(final String word, final int score) {
+        return new SuggestedWordInfo(word, "" /* prevWordsContext */, score,
+                SuggestedWordInfo.KIND_CORRECTION, null /* sourceDict */,
+                SuggestedWordInfo.NOT_AN_INDEX, SuggestedWordInfo.NOT_A_CONFIDENCE);
+    }
+
+    private static SuggestionResults newResults(final int capacity) {
+        return new SuggestionResults(capacity, false /* isBeginningOfSentence */,
+                false /* firstSuggestionExceedsConfidenceThreshold */);
+    }
+
+    private static ArrayList<String> getWords(final Iterable<SuggestedWordInfo> infos) {
+        final ArrayList<String> words = new ArrayList<>();
+        for (final SuggestedWordInfo info : infos) {
+            words.add(info.mWord);
+        }
+        return words;
+    }
+
+    @Test
+    public void testOrder() {
+        final SuggestionResults results = newResults(CAPACITY);
+        assertTrue(results.add(newInfo("b", 10)));
+        assertTrue(results.add(newInfo("abc", 20)));
+        assertTrue(results.add(newInfo("ab", 20)));
+        assertTrue(results.add(newInfo("aa", 20)));
+        assertTrue(results.add(newInfo("c", 30)));
+        // By score, then by code point count, then by word.
+        assertEquals(Arrays.asList("c", "aa", "ab", "abc", "b"), getWords(results));
+        assertEquals("c", results.first().mWord);
+        assertEquals(5, results.size());
+    }
+
+    @Test
+    public void testDuplicates() {
+        final SuggestionResults results = newResults(CAPACITY);
+        final SuggestedWordInfo info = newInfo("word", 10);
+        assertTrue(results.add(info));
+        assertFalse(results.add(newInfo("word", 10)));
+        // The same word with another score is another suggestion.
+        assertTrue(results.add(newInfo("word", 5)));
+        assertEquals(2, results.size());
+        assertSame(info, results.first());
+    }
+
+    @Test
+    public void testCapacity() {
+        final SuggestionResults results = newResults(3);
+        assertTrue(results.add(newInfo("a", 10)));
+        assertTrue(results.add(newInfo("b", 20)));
+        assertTrue(results.add(newInfo("c", 30)));
+        // Worse than all the kept suggestions.
+        assertFalse(results.add(newInfo("d", 5)));
+        // Better than the last one, which falls off.
+        assertTrue(results.add(newInfo("e", 15)));
+        assertEquals(Arrays.asList("c", "b", "e"), getWords(results));
+        assertEquals(3, results.size());
+    }
+
+    @Test
+    public void testEmpty() {
+        final SuggestionResults results = newResults(CAPACITY);
+        assertEquals(0, results.size());
+        assertFalse(results.iterator().hasNext());
+        assertFalse(results.addAll(null));
+        try {
+            results.first();
+            fail("first() should have thrown");
+        } catch (final NoSuchElementException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void testSameAsSortedSet() {
+        final Random random = new Random(42);
+        final SuggestionResults.SuggestedWordInfoComparator comparator =
+                new SuggestionResults.SuggestedWordInfoComparator();
+        for (int round = 0; round < 100; round++) {
+            final SuggestionResults results = newResults(CAPACITY);
+            final TreeSet<SuggestedWordInfo> expectedResults = new TreeSet<>(comparator);
+            for (int i = 0; i < 200; i++) {
+                final StringBuilder word = new StringBuilder();
+                final int length = 1 + random.nextInt(4);
+                for (int j = 0; j < length; j++) {
+                    word.append((char)('a' + random.nextInt(3)));
+                }
+                final SuggestedWordInfo info = newInfo(word.toString(), random.nextInt(50));
+                results.add(info);
+                // The old implementation: add to the set, then drop the worst one when full.
+                expectedResults.add(info);
+                if (expectedResults.size() > CAPACITY) {
+                    expectedResults.pollLast();
+                }
+            }
+            assertEquals(getWords(expectedResults), getWords(results));
+            assertArrayEquals(expectedResults.toArray(), results.toArray());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.keyboard;
+
+import com.android.inputmethod.keyboard.internal.KeyboardParams;
+import com.android.inputmethod.latin.common.Constants;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Builds the keyboard that the benchmarks use: a QWERTY phone layout of 1080 by 640 pixels, with
+ * the grid size of config-common.xml.
+ */
+public final class BenchmarkKeyboards {
+    public static final int KEYBOARD_WIDTH = 1080;
+    public static final int KEYBOARD_HEIGHT = 640;
+    public static final int GRID_WIDTH = 32;
+    public static final int GRID_HEIGHT = 16;
+    public static final int KEY_WIDTH = 108;
+    public static final int ROW_HEIGHT = 160;
+    private static final int HORIZONTAL_GAP = 8;
+    private static final int VERTICAL_GAP = 12;
+
+    private BenchmarkKeyboards() {
+        // This utility class is not publicly instantiable.
+    }
+
+    /**
+     * @return the keys of the keyboard, sorted by row and then from left to right.
+     */
+    @Nonnull
+    public static List<Key> newQwertyKeys() {
+        final KeyboardParams params = new KeyboardParams();
+        params.mHorizontalGap = HORIZONTAL_GAP;
+        params.mVerticalGap = VERTICAL_GAP;
+        final ArrayList<Key> keys = new ArrayList<>();
+        addLetterRow(keys, "qwertyuiop", 0 /* x */, 0 /* y */);
+        keys.add(new Key.Spacer(params, 0, ROW_HEIGHT, KEY_WIDTH / 2, ROW_HEIGHT));
+        addLetterRow(keys, "asdfghjkl", KEY_WIDTH / 2, ROW_HEIGHT);
+        keys.add(new Key.Spacer(params, KEYBOARD_WIDTH - KEY_WIDTH / 2, ROW_HEIGHT,
+                KEY_WIDTH / 2, ROW_HEIGHT));
+        final int thirdRowY = ROW_HEIGHT * 2;
+        keys.add(newKey(Constants.CODE_SHIFT, 0, thirdRowY, KEY_WIDTH * 3 / 2));
+        addLetterRow(keys, "zxcvbnm", KEY_WIDTH * 3 / 2, thirdRowY);
+        keys.add(newKey(Constants.CODE_DELETE, KEY_WIDTH * 17 / 2, thirdRowY, KEY_WIDTH * 3 / 2));
+        final int fourthRowY = ROW_HEIGHT * 3;
+        keys.add(newKey(Constants.CODE_SWITCH_ALPHA_SYMBOL, 0, fourthRowY, KEY_WIDTH * 3 / 2));
+        keys.add(newKey(Constants.CODE_COMMA, KEY_WIDTH * 3 / 2, fourthRowY, KEY_WIDTH));
+        keys.add(newKey(Constants.CODE_SPACE, KEY_WIDTH * 5 / 2, fourthRowY, KEY_WIDTH * 5));
+        keys.add(newKey(Constants.CODE_PERIOD, KEY_WIDTH * 15 / 2, fourthRowY, KEY_WIDTH));
+        keys.add(newKey(Constants.CODE_ENTER, KEY_WIDTH * 17 / 2, fourthRowY, KEY_WIDTH * 3 / 2));
+        return keys;
+    }
+
+    @Nonnull
+    public static Keyboard newQwertyKeyboard() {
+        return new Keyboard(KEYBOARD_WIDTH, KEYBOARD_HEIGHT, GRID_WIDTH, GRID_HEIGHT, KEY_WIDTH,
+                ROW_HEIGHT, newQwertyKeys());
+    }
+
+    private static void addLetterRow(@Nonnull final List<Key> keys, @Nonnull final String letters,
+            final int x, final int y) {
+        for (int i = 0; i < letters.length(); i++) {
+            keys.add(newKey(letters.charAt(i), x + KEY_WIDTH * i, y, KEY_WIDTH));
+        }
+    }
+
+    @Nonnull
+    private static Key newKey(final int code, final int x, final int y, final int width) {
+        final String label = (code > 0) ? new String(Character.toChars(code)) : null;
+        return new Key(label, 0 /* iconId */, code, null /* outputText */, null /* hintLabel */,
+                0 /* labelFlags */, Key.BACKGROUND_TYPE_NORMAL, x, y, width, ROW_HEIGHT,
+                HORIZONTAL_GAP, VERTICAL_GAP);
+    }
+}
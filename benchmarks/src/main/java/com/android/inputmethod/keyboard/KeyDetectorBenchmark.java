@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.keyboard;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+
+/**
+ * Measures how long it takes to find the key under a touch point. The points are spread evenly
+ * over the keyboard and a margin around it, so that both the hit map and the comparison of the
+ * nearest keys are used.
+ */
+@State(Scope.Benchmark)
+public class KeyDetectorBenchmark {
+    private static final int TOUCH_COUNT = 1024;
+    private static final int MARGIN = 32;
+    private static final long SEED = 0x4B657944L;
+
+    private final KeyDetector mKeyDetector = new KeyDetector();
+    private final int[] mXs = new int[TOUCH_COUNT];
+    private final int[] mYs = new int[TOUCH_COUNT];
+
+    @Setup
+    public void setUp() {
+        mKeyDetector.setKeyboard(BenchmarkKeyboards.newQwertyKeyboard(), 0.0f /* correctionX */,
+                0.0f /* correctionY */);
+        final Random random = new Random(SEED);
+        for (int i = 0; i < TOUCH_COUNT; i++) {
+            mXs[i] = random.nextInt(BenchmarkKeyboards.KEYBOARD_WIDTH + MARGIN * 2) - MARGIN;
+            mYs[i] = random.nextInt(BenchmarkKeyboards.KEYBOARD_HEIGHT + MARGIN * 2) - MARGIN;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TOUCH_COUNT)
+    public void detectHitKey(final Blackhole blackhole) {
+        final KeyDetector keyDetector = mKeyDetector;
+        for (int i = 0; i < TOUCH_COUNT; i++) {
+            blackhole.consume(keyDetector.detectHitKey(mXs[i], mYs[i]));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.keyboard;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * Measures how long it takes to compute the nearest keys of each cell of the proximity grid, and
+ * the hit map, when a keyboard is built, and to read the nearest keys of each cell. Each is
+ * compared with {@link ListGridProximityInfo}, the grid of one list per cell that the flat arrays
+ * replaced, which has no hit map. The heap that each grid retains is measured by
+ * {@link ProximityInfoFootprint}.
+ */
+@State(Scope.Benchmark)
+public class ProximityInfoBenchmark {
+    private static final int CELL_COUNT =
+            BenchmarkKeyboards.GRID_WIDTH * BenchmarkKeyboards.GRID_HEIGHT;
+
+    private List<Key> mKeys;
+    private ProximityInfo mProximityInfo;
+    private ListGridProximityInfo mListGridProximityInfo;
+    // The center of each cell of the grid.
+    private final int[] mXs = new int[CELL_COUNT];
+    private final int[] mYs = new int[CELL_COUNT];
+
+    @Setup
+    public void setUp() {
+        mKeys = BenchmarkKeyboards.newQwertyKeys();
+        mProximityInfo = computeNearestNeighbors();
+        mListGridProximityInfo = computeNearestNeighborsWithListGrid();
+        final int cellWidth = BenchmarkKeyboards.KEYBOARD_WIDTH / BenchmarkKeyboards.GRID_WIDTH;
+        final int cellHeight = BenchmarkKeyboards.KEYBOARD_HEIGHT / BenchmarkKeyboards.GRID_HEIGHT;
+        for (int i = 0; i < CELL_COUNT; i++) {
+            mXs[i] = (i % BenchmarkKeyboards.GRID_WIDTH) * cellWidth + cellWidth / 2;
+            mYs[i] = (i / BenchmarkKeyboards.GRID_WIDTH) * cellHeight + cellHeight / 2;
+        }
+    }
+
+    @Benchmark
+    public ProximityInfo computeNearestNeighbors() {
+        return new ProximityInfo(BenchmarkKeyboards.GRID_WIDTH, BenchmarkKeyboards.GRID_HEIGHT,
+                BenchmarkKeyboards.KEYBOARD_WIDTH, BenchmarkKeyboards.KEYBOARD_HEIGHT,
+                BenchmarkKeyboards.KEY_WIDTH, BenchmarkKeyboards.ROW_HEIGHT, mKeys);
+    }
+
+    @Benchmark
+    public ListGridProximityInfo computeNearestNeighborsWithListGrid() {
+        return new ListGridProximityInfo(BenchmarkKeyboards.GRID_WIDTH,
+                BenchmarkKeyboards.GRID_HEIGHT, BenchmarkKeyboards.KEYBOARD_WIDTH,
+                BenchmarkKeyboards.KEYBOARD_HEIGHT, BenchmarkKeyboards.KEY_WIDTH, mKeys);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CELL_COUNT)
+    public int getNearestKeys() {
+        final ProximityInfo proximityInfo = mProximityInfo;
+        int codeSum = 0;
+        for (int i = 0; i < CELL_COUNT; i++) {
+            final List<Key> nearestKeys = proximityInfo.getNearestKeys(mXs[i], mYs[i]);
+            for (int j = 0; j < nearestKeys.size(); j++) {
+                codeSum += nearestKeys.get(j).getCode();
+            }
+        }
+        return codeSum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CELL_COUNT)
+    public int getNearestKeysWithListGrid() {
+        final ListGridProximityInfo proximityInfo = mListGridProximityInfo;
+        int codeSum = 0;
+        for (int i = 0; i < CELL_COUNT; i++) {
+            final List<Key> nearestKeys = proximityInfo.getNearestKeys(mXs[i], mYs[i]);
+            for (int j = 0; j < nearestKeys.size(); j++) {
+                codeSum += nearestKeys.get(j).getCode();
+            }
+        }
+        return codeSum;
+    }
+}
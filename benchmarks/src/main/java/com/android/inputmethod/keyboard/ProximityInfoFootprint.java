@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.keyboard;
+
+import com.android.inputmethod.latin.define.ProductionFlags;
+
+import java.util.List;
+
+/**
+ * Prints the heap that a {@link ProximityInfo} and a {@link ListGridProximityInfo} of the
+ * benchmark keyboard retain, which JMH does not measure. The keys are shared by all the
+ * instances, so they are not counted. The size of the hit map of the ProximityInfo, one byte per
+ * 4 by 4 pixels, is printed apart since the list grid has none.
+ *
+ * Run with ./gradlew :benchmarks:proximityInfoFootprint.
+ */
+public final class ProximityInfoFootprint {
+    private static final int INSTANCE_COUNT = 2000;
+
+    private ProximityInfoFootprint() {
+        // This class is not publicly instantiable.
+    }
+
+    private interface Factory {
+        Object create(List<Key> keys);
+    }
+
+    public static void main(final String[] args) {
+        final List<Key> keys = BenchmarkKeyboards.newQwertyKeys();
+        final Factory proximityInfoFactory = new Factory() {
+            @Override
+            public Object create(final List<Key> sortedKeys) {
+                return new ProximityInfo(BenchmarkKeyboards.GRID_WIDTH,
+                        BenchmarkKeyboards.GRID_HEIGHT, BenchmarkKeyboards.KEYBOARD_WIDTH,
+                        BenchmarkKeyboards.KEYBOARD_HEIGHT, BenchmarkKeyboards.KEY_WIDTH,
+                        BenchmarkKeyboards.ROW_HEIGHT, sortedKeys);
+            }
+        };
+        final Factory listGridFactory = new Factory() {
+            @Override
+            public Object create(final List<Key> sortedKeys) {
+                return new ListGridProximityInfo(BenchmarkKeyboards.GRID_WIDTH,
+                        BenchmarkKeyboards.GRID_HEIGHT, BenchmarkKeyboards.KEYBOARD_WIDTH,
+                        BenchmarkKeyboards.KEYBOARD_HEIGHT, BenchmarkKeyboards.KEY_WIDTH,
+                        sortedKeys);
+            }
+        };
+        // Warm up, so that the classes and the code are loaded before measuring.
+        measureRetainedBytes(proximityInfoFactory, keys);
+        measureRetainedBytes(listGridFactory, keys);
+        System.out.println("ProximityInfo (flat arrays and hit map): "
+                + measureRetainedBytes(proximityInfoFactory, keys) + " bytes, of which hit map: "
+                + getHitMapBytes() + " bytes");
+        System.out.println("ListGridProximityInfo (one list per cell): "
+                + measureRetainedBytes(listGridFactory, keys) + " bytes");
+    }
+
+    private static int getHitMapBytes() {
+        if (!ProductionFlags.ENABLE_KEY_HIT_MAP) {
+            return 0;
+        }
+        // The same rounding as ProximityInfo.computeHitMap().
+        final int hitMapCellSize = 4;
+        return ((BenchmarkKeyboards.KEYBOARD_WIDTH + hitMapCellSize - 1) / hitMapCellSize)
+                * ((BenchmarkKeyboards.KEYBOARD_HEIGHT + hitMapCellSize - 1) / hitMapCellSize);
+    }
+
+    private static long measureRetainedBytes(final Factory factory, final List<Key> keys) {
+        final Object[] instances = new Object[INSTANCE_COUNT];
+        final long before = usedHeapBytes();
+        for (int i = 0; i < INSTANCE_COUNT; i++) {
+            instances[i] = factory.create(keys);
+        }
+        final long after = usedHeapBytes();
+        if (instances[INSTANCE_COUNT - 1] == null) {
+            throw new AssertionError();
+        }
+        return (after - before) / INSTANCE_COUNT;
+    }
+
+    private static long usedHeapBytes() {
+        final Runtime runtime = Runtime.getRuntime();
+        long usedBytes = Long.MAX_VALUE;
+        // A single System.gc() may leave some garbage behind, and ProximityInfo has a finalizer,
+        // so its instances are only collected once they have been finalized.
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            System.runFinalization();
+            usedBytes = Math.min(usedBytes, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return usedBytes;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.keyboard.internal;
+
+import android.content.res.Resources;
+
+import java.util.HashMap;
+import java.util.Locale;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The texts of the keys that the benchmarks resolve, as they are written in the keyboard layouts
+ * of res/xml.
+ */
+final class BenchmarkKeySpecs {
+    static final String[] RAW_TEXTS = {
+        "q", "!text/morekeys_w", "!text/morekeys_e", "!text/morekeys_r", "!text/morekeys_t",
+        "!text/morekeys_y", "!text/morekeys_u", "!text/morekeys_i", "!text/morekeys_o", "p",
+        "!text/morekeys_a", "!text/morekeys_s", "!text/morekeys_d", "f", "!text/morekeys_g",
+        "!text/morekeys_h", "!text/morekeys_j", "!text/morekeys_k", "!text/morekeys_l",
+        "!text/morekeys_z", "x", "!text/morekeys_c", "!text/morekeys_v", "b", "!text/morekeys_n",
+        "m", "!text/keyspec_comma", "!text/morekeys_question", "!text/morekeys_punctuation",
+        "!text/morekeys_single_quote", "!text/morekeys_symbols_1",
+        "!text/morekeys_symbols_percent", "!text/keyspec_currency",
+        "!text/morekeys_currency_dollar", "!text/keylabel_to_symbol", "!text/label_go_key",
+    };
+
+    private BenchmarkKeySpecs() {
+        // This utility class is not publicly instantiable.
+    }
+
+    @Nonnull
+    static KeyboardTextsSet newTextsSet(@Nonnull final Locale locale) {
+        final HashMap<String, String> strings = new HashMap<>();
+        strings.put("label_go_key", "Go");
+        final KeyboardTextsSet textsSet = new KeyboardTextsSet();
+        textsSet.setLocale(locale, new Resources(strings), "AOSP.KEYBOARD");
+        return textsSet;
+    }
+}
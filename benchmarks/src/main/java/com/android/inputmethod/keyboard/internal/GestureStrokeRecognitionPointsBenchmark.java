@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.keyboard.internal;
+
+import com.android.inputmethod.keyboard.BenchmarkKeyboards;
+import com.android.inputmethod.keyboard.Key;
+import com.android.inputmethod.latin.common.Constants;
+import com.android.inputmethod.latin.common.InputPointers;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures how long it takes to sample the points of a gesture. The gesture goes through the
+ * keys of a word, with some noise. It has a point every {@link #TIME_STEP_MS} milliseconds, and
+ * a move event every {@link #POINTS_PER_EVENT} points.
+ */
+@State(Scope.Benchmark)
+public class GestureStrokeRecognitionPointsBenchmark {
+    private static final String WORD = "keyboards";
+    private static final int POINT_COUNT = 200;
+    private static final int POINTS_PER_EVENT = 4;
+    private static final int TIME_STEP_MS = 2;
+    private static final int NOISE = 6;
+    private static final long SEED = 0x47657374L;
+
+    private final GestureStrokeRecognitionPoints mPoints = new GestureStrokeRecognitionPoints(
+            0 /* pointerId */, GestureStrokeRecognitionParams.DEFAULT);
+    private final InputPointers mBatchPoints = new InputPointers(
+            Constants.DEFAULT_GESTURE_POINTS_CAPACITY);
+    private final int[] mXs = new int[POINT_COUNT];
+    private final int[] mYs = new int[POINT_COUNT];
+
+    @Setup
+    public void setUp() {
+        mPoints.setKeyboardGeometry(BenchmarkKeyboards.KEY_WIDTH,
+                BenchmarkKeyboards.KEYBOARD_HEIGHT);
+        final List<Key> keys = BenchmarkKeyboards.newQwertyKeys();
+        final Random random = new Random(SEED);
+        for (int i = 0; i < POINT_COUNT; i++) {
+            // The position of the point along the path, in keys of the word.
+            final float position = (float)i * (WORD.length() - 1) / (POINT_COUNT - 1);
+            final int keyIndex = Math.min((int)position, WORD.length() - 2);
+            final Key from = findKey(keys, WORD.charAt(keyIndex));
+            final Key to = findKey(keys, WORD.charAt(keyIndex + 1));
+            final float ratio = position - keyIndex;
+            mXs[i] = (int)(centerX(from) + (centerX(to) - centerX(from)) * ratio)
+                    + random.nextInt(NOISE * 2 + 1) - NOISE;
+            mYs[i] = (int)(centerY(from) + (centerY(to) - centerY(from)) * ratio)
+                    + random.nextInt(NOISE * 2 + 1) - NOISE;
+        }
+    }
+
+    private static Key findKey(final List<Key> keys, final int code) {
+        for (final Key key : keys) {
+            if (key.getCode() == code) {
+                return key;
+            }
+        }
+        throw new IllegalArgumentException("No key for " + code);
+    }
+
+    private static int centerX(final Key key) {
+        return key.getX() + key.getWidth() / 2;
+    }
+
+    private static int centerY(final Key key) {
+        return key.getY() + key.getHeight() / 2;
+    }
+
+    // The last point of a move event is the event itself, the others are historical.
+    private static boolean isMajorEvent(final int index) {
+        return (index % POINTS_PER_EVENT) == 0 || index == POINT_COUNT - 1;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINT_COUNT)
+    public boolean addEventPoint() {
+        final GestureStrokeRecognitionPoints points = mPoints;
+        points.addDownEventPoint(mXs[0], mYs[0], 0 /* elapsedTimeSinceFirstDown */,
+                Integer.MAX_VALUE /* elapsedTimeSinceLastTyping */);
+        boolean isOnValidArea = true;
+        for (int i = 1; i < POINT_COUNT; i++) {
+            isOnValidArea &= points.addEventPoint(mXs[i], mYs[i], i * TIME_STEP_MS,
+                    isMajorEvent(i));
+        }
+        return isOnValidArea;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINT_COUNT)
+    public InputPointers addEventPointAndAppendBatch() {
+        final GestureStrokeRecognitionPoints points = mPoints;
+        final InputPointers batchPoints = mBatchPoints;
+        batchPoints.reset();
+        points.addDownEventPoint(mXs[0], mYs[0], 0 /* elapsedTimeSinceFirstDown */,
+                Integer.MAX_VALUE /* elapsedTimeSinceLastTyping */);
+        for (int i = 1; i < POINT_COUNT; i++) {
+            points.addEventPoint(mXs[i], mYs[i], i * TIME_STEP_MS, isMajorEvent(i));
+            if (isMajorEvent(i)) {
+                points.appendIncrementalBatchPoints(batchPoints);
+            }
+        }
+        points.appendAllBatchPoints(batchPoints);
+        return batchPoints;
+    }
+}
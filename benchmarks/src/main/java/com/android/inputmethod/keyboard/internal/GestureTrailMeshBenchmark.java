@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.keyboard.internal;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+
+import com.android.inputmethod.keyboard.BenchmarkKeyboards;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures how long it takes to build and draw the mesh of a gesture trail, for a synthetic
+ * stroke that fills the preview buffer of a trail, and compares it with the {@link RoundedLine}
+ * paths that are drawn per segment when ProductionFlags.ENABLE_BATCHED_GESTURE_TRAIL is false.
+ * The widths and the alphas fade out along the stroke as they do with the default trail
+ * parameters, without a shadow.
+ *
+ * The canvas only counts the vertices and the path points, and the path only records its
+ * points, so this compares the work done on the UI thread before the rasterization, which is
+ * cheaper for the paths here than on a device. GestureTrailDrawingTests in the instrumented tests
+ * measures the frame times, rasterization included.
+ */
+@State(Scope.Benchmark)
+public class GestureTrailMeshBenchmark {
+    // The preview capacity of GestureStrokeDrawingPoints.
+    private static final int POINT_COUNT = 256;
+    // The number of points of each stroke when the trail has several strokes.
+    private static final int POINTS_PER_STROKE = 64;
+    private static final int TIME_STEP_MS = 3;
+    // The default trail parameters, in pixels at 3x density and in milliseconds.
+    private static final float START_WIDTH = 30.0f;
+    private static final float END_WIDTH = 7.5f;
+    private static final float ANTIALIAS_WIDTH = 1.0f;
+    private static final int FADEOUT_START_DELAY = 100;
+    private static final int FADEOUT_DURATION = 800;
+    private static final int LINGER_DURATION = FADEOUT_START_DELAY + FADEOUT_DURATION;
+    // The number of times the stroke crosses the keyboard from side to side.
+    private static final int WAVE_COUNT = 3;
+    private static final int TRAIL_COLOR = 0xFF4DB6AC;
+
+    private final GestureTrailMesh mMesh = new GestureTrailMesh();
+    private final Canvas mCanvas = new Canvas();
+    private final Rect mBounds = new Rect();
+    private final RoundedLine mRoundedLine = new RoundedLine();
+    private final Paint mPaint = new Paint();
+    private final Rect mSegmentBounds = new Rect();
+    private final float[] mXs = new float[POINT_COUNT];
+    private final float[] mYs = new float[POINT_COUNT];
+    private final float[] mRadii = new float[POINT_COUNT];
+    private final int[] mAlphas = new int[POINT_COUNT];
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < POINT_COUNT; i++) {
+            final float position = (float)i / (POINT_COUNT - 1);
+            final double angle = Math.PI * WAVE_COUNT * position;
+            mXs[i] = (float)(BenchmarkKeyboards.KEYBOARD_WIDTH * (0.5 - 0.4 * Math.cos(angle)));
+            mYs[i] = BenchmarkKeyboards.KEYBOARD_HEIGHT * (0.1f + 0.8f * position);
+            // The first point is the oldest one.
+            final int elapsedTime = (POINT_COUNT - 1 - i) * TIME_STEP_MS;
+            mRadii[i] = (START_WIDTH
+                    - (START_WIDTH - END_WIDTH) * elapsedTime / LINGER_DURATION) / 2.0f;
+            mAlphas[i] = (elapsedTime < FADEOUT_START_DELAY) ? 255
+                    : 255 - 255 * (elapsedTime - FADEOUT_START_DELAY) / FADEOUT_DURATION;
+        }
+    }
+
+    private Rect buildAndDraw(final int pointsPerStroke) {
+        final GestureTrailMesh mesh = mMesh;
+        mesh.reset(TRAIL_COLOR);
+        for (int i = 0; i < POINT_COUNT; i++) {
+            if (i > 0 && i % pointsPerStroke == 0) {
+                mesh.endStroke();
+            }
+            mesh.addPoint(mXs[i], mYs[i], mRadii[i], mRadii[i] + ANTIALIAS_WIDTH, mAlphas[i]);
+        }
+        mesh.endStroke();
+        mesh.draw(mCanvas);
+        mesh.getBounds(mBounds);
+        return mBounds;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINT_COUNT)
+    public Rect buildAndDrawSingleStroke() {
+        return buildAndDraw(POINT_COUNT);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINT_COUNT)
+    public Rect buildAndDrawSeveralStrokes() {
+        return buildAndDraw(POINTS_PER_STROKE);
+    }
+
+    // The same loop as the one of GestureTrailDrawingPoints that draws a path per segment.
+    private Rect drawRoundedLines(final int pointsPerStroke) {
+        final RoundedLine roundedLine = mRoundedLine;
+        final Paint paint = mPaint;
+        final Rect bounds = mBounds;
+        bounds.setEmpty();
+        paint.setColor(TRAIL_COLOR);
+        paint.setStyle(Paint.Style.FILL);
+        for (int i = 1; i < POINT_COUNT; i++) {
+            // The first point of a stroke is a down point, which does not start a segment.
+            if (i % pointsPerStroke == 0) {
+                continue;
+            }
+            final Path path = roundedLine.makePath(mXs[i - 1], mYs[i - 1], mRadii[i - 1],
+                    mXs[i], mYs[i], mRadii[i]);
+            if (!path.isEmpty()) {
+                roundedLine.getBounds(mSegmentBounds);
+                bounds.union(mSegmentBounds);
+                paint.setAlpha(mAlphas[i]);
+                mCanvas.drawPath(path, paint);
+            }
+        }
+        return bounds;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINT_COUNT)
+    public Rect drawSingleStrokeWithRoundedLines() {
+        return drawRoundedLines(POINT_COUNT);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINT_COUNT)
+    public Rect drawSeveralStrokesWithRoundedLines() {
+        return drawRoundedLines(POINTS_PER_STROKE);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.keyboard.internal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Locale;
+
+/**
+ * Measures how long it takes to resolve the text references of the keys of a QWERTY layout, as
+ * the keyboard builder does for each key.
+ */
+@State(Scope.Benchmark)
+public class KeyboardTextsSetBenchmark {
+    private static final int TEXT_COUNT = 36;
+
+    @Param({ "en", "fr" })
+    public String locale;
+
+    private KeyboardTextsSet mTextsSet;
+
+    @Setup
+    public void setUp() {
+        if (BenchmarkKeySpecs.RAW_TEXTS.length != TEXT_COUNT) {
+            throw new IllegalStateException("TEXT_COUNT must be "
+                    + BenchmarkKeySpecs.RAW_TEXTS.length);
+        }
+        mTextsSet = BenchmarkKeySpecs.newTextsSet(new Locale(locale));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TEXT_COUNT)
+    public void resolveTextReference(final Blackhole blackhole) {
+        final KeyboardTextsSet textsSet = mTextsSet;
+        for (final String rawText : BenchmarkKeySpecs.RAW_TEXTS) {
+            blackhole.consume(textsSet.resolveTextReference(rawText));
+        }
+    }
+}
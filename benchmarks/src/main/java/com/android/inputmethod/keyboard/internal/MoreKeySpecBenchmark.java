@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.keyboard.internal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Measures how long it takes to split the more keys of the keys of a QWERTY layout, once their
+ * text references are resolved.
+ */
+@State(Scope.Benchmark)
+public class MoreKeySpecBenchmark {
+    @Param({ "en", "fr" })
+    public String locale;
+
+    private String[] mMoreKeys;
+
+    @Setup
+    public void setUp() {
+        final KeyboardTextsSet textsSet = BenchmarkKeySpecs.newTextsSet(new Locale(locale));
+        final ArrayList<String> moreKeys = new ArrayList<>();
+        for (final String rawText : BenchmarkKeySpecs.RAW_TEXTS) {
+            final String text = textsSet.resolveTextReference(rawText);
+            if (text != null) {
+                moreKeys.add(text);
+            }
+        }
+        mMoreKeys = moreKeys.toArray(new String[moreKeys.size()]);
+    }
+
+    @Benchmark
+    public void splitKeySpecs(final Blackhole blackhole) {
+        for (final String moreKeys : mMoreKeys) {
+            blackhole.consume(MoreKeySpec.splitKeySpecs(moreKeys));
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.common;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Measures how long it takes to add, append and copy the points of a gesture, with
+ * {@link InputPointers} and with the {@link ResizableIntArray} each of its coordinates is held in.
+ * The arrays start at the default capacity of a gesture, so larger gestures also measure how
+ * they grow.
+ */
+@State(Scope.Benchmark)
+public class InputPointersBenchmark {
+    private static final int POINTER_ID = 0;
+    private static final long SEED = 0x506F696EL;
+
+    @Param({ "64", "1024" })
+    public int pointerCount;
+
+    private final ResizableIntArray mXs = new ResizableIntArray(0);
+    private final ResizableIntArray mYs = new ResizableIntArray(0);
+    private final ResizableIntArray mTimes = new ResizableIntArray(0);
+    private final InputPointers mSource = new InputPointers(
+            Constants.DEFAULT_GESTURE_POINTS_CAPACITY);
+    private final InputPointers mDestination = new InputPointers(
+            Constants.DEFAULT_GESTURE_POINTS_CAPACITY);
+    private final ResizableIntArray mDestinationArray = new ResizableIntArray(
+            Constants.DEFAULT_GESTURE_POINTS_CAPACITY);
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(SEED);
+        for (int i = 0; i < pointerCount; i++) {
+            final int x = random.nextInt(1080);
+            final int y = random.nextInt(640);
+            final int time = i * 2;
+            mXs.add(x);
+            mYs.add(y);
+            mTimes.add(time);
+            mSource.addPointer(x, y, POINTER_ID, time);
+        }
+    }
+
+    @Benchmark
+    public InputPointers addPointer() {
+        final InputPointers pointers = mDestination;
+        pointers.reset();
+        final int[] xs = mXs.getPrimitiveArray();
+        final int[] ys = mYs.getPrimitiveArray();
+        final int[] times = mTimes.getPrimitiveArray();
+        for (int i = 0; i < pointerCount; i++) {
+            pointers.addPointer(xs[i], ys[i], POINTER_ID, times[i]);
+        }
+        return pointers;
+    }
+
+    @Benchmark
+    public InputPointers append() {
+        final InputPointers pointers = mDestination;
+        pointers.reset();
+        pointers.append(POINTER_ID, mTimes, mXs, mYs, 0 /* startPos */, pointerCount);
+        return pointers;
+    }
+
+    @Benchmark
+    public InputPointers copy() {
+        final InputPointers pointers = mDestination;
+        pointers.reset();
+        pointers.copy(mSource);
+        return pointers;
+    }
+
+    @Benchmark
+    public ResizableIntArray resizableIntArrayAdd() {
+        final ResizableIntArray array = mDestinationArray;
+        array.reset(Constants.DEFAULT_GESTURE_POINTS_CAPACITY);
+        final int[] xs = mXs.getPrimitiveArray();
+        for (int i = 0; i < pointerCount; i++) {
+            array.add(xs[i]);
+        }
+        return array;
+    }
+
+    @Benchmark
+    public ResizableIntArray resizableIntArrayAppend() {
+        final ResizableIntArray array = mDestinationArray;
+        array.reset(Constants.DEFAULT_GESTURE_POINTS_CAPACITY);
+        array.append(mXs, 0 /* startPos */, pointerCount);
+        return array;
+    }
+
+    @Benchmark
+    public ResizableIntArray resizableIntArrayCopy() {
+        final ResizableIntArray array = mDestinationArray;
+        array.reset(Constants.DEFAULT_GESTURE_POINTS_CAPACITY);
+        array.copy(mXs);
+        return array;
+    }
+}
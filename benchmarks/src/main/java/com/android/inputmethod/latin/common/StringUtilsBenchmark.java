@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.common;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures how long it takes to convert words to code points, as LatinIME does for the words it
+ * looks up in the dictionaries. Words with characters outside of the BMP are measured apart, as
+ * their surrogate pairs take a slower path.
+ */
+@State(Scope.Benchmark)
+public class StringUtilsBenchmark {
+    private static final int BMP_WORD_COUNT = 16;
+    private static final int SUPPLEMENTARY_WORD_COUNT = 8;
+
+    // Latin, Cyrillic, Greek, Arabic, Hebrew, Devanagari, Japanese and Korean words.
+    private static final String[] BMP_WORDS = {
+        "the", "keyboard", "suggestions", "don't", "well-known", "\u00DCber", "na\u00EFve",
+        "r\u00E9sum\u00E9", "Stra\u00DFe", "\u043F\u0440\u0438\u0432\u0435\u0442",
+        "\u03B3\u03B5\u03B9\u03AC", "\u0645\u0631\u062D\u0628\u0627", "\u05E9\u05DC\u05D5\u05DD",
+        "\u0928\u092E\u0938\u094D\u0924\u0947", "\u3053\u3093\u306B\u3061\u306F",
+        "\uC548\uB155\uD558\uC138\uC694",
+    };
+    // Emoji, sequences of emoji, mathematical letters and CJK extension B.
+    private static final String[] SUPPLEMENTARY_WORDS = {
+        "\uD83D\uDE00", "ok\uD83D\uDC4D", "\uD83C\uDF89party\uD83C\uDF89",
+        "\uD835\uDC9Cmath\uD835\uDC9C", "\uD83D\uDC68\u200D\uD83D\uDCBB", "x\uD840\uDC0By",
+        "\uD83C\uDDEB\uD83C\uDDF7", "love\u2764\uFE0F\uD83D\uDE0D",
+    };
+
+    @Benchmark
+    @OperationsPerInvocation(BMP_WORD_COUNT)
+    public void toCodePointArrayBmp(final Blackhole blackhole) {
+        for (final String word : BMP_WORDS) {
+            blackhole.consume(StringUtils.toCodePointArray(word));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SUPPLEMENTARY_WORD_COUNT)
+    public void toCodePointArraySupplementary(final Blackhole blackhole) {
+        for (final String word : SUPPLEMENTARY_WORDS) {
+            blackhole.consume(StringUtils.toCodePointArray(word));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.utils;
+
+import com.android.inputmethod.latin.common.Constants;
+
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The text before the cursor that the benchmarks read, as LatinIME keeps it for the editor:
+ * at most {@link Constants#EDITOR_CONTENTS_CACHE_SIZE} characters of an English text, cut at
+ * random positions.
+ */
+final class BenchmarkTexts {
+    private static final String TEXT = "Dear Mr. Smith, thank you for your letter of March 3. "
+            + "I read it twice before I could answer, because it raised more questions than I "
+            + "expected. Is the meeting still planned for 9 a.m. on Tuesday? If so, I will bring "
+            + "the draft, the budget and the notes from our last call. \"We can't wait much "
+            + "longer,\" said the head of the team, and I think she's right. The rest of the "
+            + "group agreed, e.g. the people in Paris and in New York, although some of them "
+            + "asked for more time.\n\nThe second point is about the new keyboard layout. Most "
+            + "users type with two thumbs on a phone, and they rarely look at the suggestions "
+            + "while they type. They look at them when they stop, or when a word is obviously "
+            + "wrong! That is why the strip must never lag behind the text. Some of the tests "
+            + "were run at 60 fps, others at 120 fps; both showed the same pattern. (We will "
+            + "share the full numbers next week.) Finally, the spelling of well-known names, "
+            + "like O'Brien or Jean-Luc, has to be kept as it is typed. Let me know what you "
+            + "think, and whether the U.S. team should join the call too. Best regards, and see "
+            + "you soon. P.S. The slides are attached; please don't forward them yet. ";
+    private static final int MIN_LENGTH = 16;
+
+    private BenchmarkTexts() {
+        // This utility class is not publicly instantiable.
+    }
+
+    /**
+     * @return texts that end at random positions of the text, each with up to
+     * {@link Constants#EDITOR_CONTENTS_CACHE_SIZE} characters.
+     */
+    @Nonnull
+    static String[] newTextsBeforeCursor(final int count, final long seed) {
+        final Random random = new Random(seed);
+        final String text = TEXT + TEXT;
+        final String[] texts = new String[count];
+        for (int i = 0; i < count; i++) {
+            final int end = MIN_LENGTH + random.nextInt(text.length() - MIN_LENGTH + 1);
+            texts[i] = text.substring(Math.max(0, end - Constants.EDITOR_CONTENTS_CACHE_SIZE),
+                    end);
+        }
+        return texts;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.utils;
+
+import android.text.TextUtils;
+
+import com.android.inputmethod.latin.settings.SpacingAndPunctuations;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures how long it takes to find the caps mode at the cursor from the text before it, as
+ * LatinIME does each time the cursor moves when auto-caps is on.
+ */
+@State(Scope.Benchmark)
+public class CapsModeUtilsBenchmark {
+    private static final int TEXT_COUNT = 256;
+    private static final long SEED = 0x43617073L;
+    private static final int REQUESTED_MODES = TextUtils.CAP_MODE_CHARACTERS
+            | TextUtils.CAP_MODE_WORDS | TextUtils.CAP_MODE_SENTENCES;
+
+    private final SpacingAndPunctuations mSpacingAndPunctuations = new SpacingAndPunctuations();
+    private String[] mTexts;
+
+    @Setup
+    public void setUp() {
+        mTexts = BenchmarkTexts.newTextsBeforeCursor(TEXT_COUNT, SEED);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TEXT_COUNT)
+    public void getCapsMode(final Blackhole blackhole) {
+        final String[] texts = mTexts;
+        for (int i = 0; i < TEXT_COUNT; i++) {
+            blackhole.consume(CapsModeUtils.getCapsMode(texts[i], REQUESTED_MODES,
+                    mSpacingAndPunctuations, false /* hasSpaceBefore */));
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.utils;
+
+import com.android.inputmethod.latin.settings.SpacingAndPunctuations;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures how long it takes to find the previous words of the n-gram context from the text
+ * before the cursor, with n = 1 as for a new word, and n = 2 as for the word that the cursor is
+ * at the end of.
+ */
+@State(Scope.Benchmark)
+public class NgramContextUtilsBenchmark {
+    private static final int TEXT_COUNT = 256;
+    private static final long SEED = 0x4E6772L;
+
+    @Param({ "1", "2" })
+    public int n;
+
+    private final SpacingAndPunctuations mSpacingAndPunctuations = new SpacingAndPunctuations();
+    private String[] mTexts;
+
+    @Setup
+    public void setUp() {
+        mTexts = BenchmarkTexts.newTextsBeforeCursor(TEXT_COUNT, SEED);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TEXT_COUNT)
+    public void getNgramContextFromNthPreviousWord(final Blackhole blackhole) {
+        final String[] texts = mTexts;
+        for (int i = 0; i < TEXT_COUNT; i++) {
+            blackhole.consume(NgramContextUtils.getNgramContextFromNthPreviousWord(texts[i],
+                    mSpacingAndPunctuations, n));
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package AOSP.KEYBOARD;
+
+/**
+ * The attributes of the keys that LatinIME's Key reads from the keyboard resources. The
+ * benchmarks build their keys from code, so the values are never used.
+ */
+public final class R {
+    private R() {
+        // This class only holds constants.
+    }
+
+    public static final class styleable {
+        public static final int Keyboard_Key_additionalMoreKeys = 0;
+        public static final int Keyboard_Key_altCode = 1;
+        public static final int Keyboard_Key_backgroundType = 2;
+        public static final int Keyboard_Key_keyActionFlags = 3;
+        public static final int Keyboard_Key_keyHintLabel = 4;
+        public static final int Keyboard_Key_keyIconDisabled = 5;
+        public static final int Keyboard_Key_keyLabelFlags = 6;
+        public static final int Keyboard_Key_maxMoreKeysColumn = 7;
+        public static final int Keyboard_Key_moreKeys = 8;
+        public static final int Keyboard_Key_visualInsetsLeft = 9;
+        public static final int Keyboard_Key_visualInsetsRight = 10;
+
+        private styleable() {
+            // This class only holds constants.
+        }
+    }
+}
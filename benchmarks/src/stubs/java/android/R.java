@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android;
+
+/**
+ * The framework attributes that LatinIME's Key uses for the states of its backgrounds.
+ */
+public final class R {
+    private R() {
+        // This class only holds constants.
+    }
+
+    public static final class attr {
+        public static final int state_pressed = 0x010100a7;
+        public static final int state_checkable = 0x0101009f;
+        public static final int state_checked = 0x010100a0;
+        public static final int state_active = 0x010100a2;
+        public static final int state_empty = 0x0101009c;
+
+        private attr() {
+            // This class only holds constants.
+        }
+    }
+}
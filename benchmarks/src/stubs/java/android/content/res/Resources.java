@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.content.res;
+
+import android.util.DisplayMetrics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The part of android.content.res.Resources that the benchmarked code uses. The string resources
+ * are given to the constructor by name, and get their identifiers in the order they are looked
+ * up.
+ */
+public class Resources {
+    private final Configuration mConfiguration = new Configuration();
+    private final Map<String, String> mStrings;
+    private final HashMap<String, Integer> mIdentifiers = new HashMap<>();
+    private final ArrayList<String> mNames = new ArrayList<>();
+
+    public Resources(final Map<String, String> strings) {
+        mStrings = strings;
+    }
+
+    public Configuration getConfiguration() {
+        return mConfiguration;
+    }
+
+    public void updateConfiguration(final Configuration config, final DisplayMetrics metrics) {
+        mConfiguration.locale = config.locale;
+    }
+
+    public String getResourcePackageName(final int resid) {
+        return "AOSP.KEYBOARD";
+    }
+
+    public int getIdentifier(final String name, final String defType, final String defPackage) {
+        final Integer identifier = mIdentifiers.get(name);
+        if (identifier != null) {
+            return identifier;
+        }
+        mNames.add(name);
+        mIdentifiers.put(name, mNames.size());
+        return mNames.size();
+    }
+
+    public String getString(final int id) {
+        final String name = (id > 0 && id <= mNames.size()) ? mNames.get(id - 1) : null;
+        final String string = (name == null) ? null : mStrings.get(name);
+        if (string == null) {
+            throw new IllegalArgumentException("Unknown string resource " + id);
+        }
+        return string;
+    }
+}
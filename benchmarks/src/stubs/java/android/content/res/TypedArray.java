@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.content.res;
+
+/**
+ * The part of android.content.res.TypedArray that LatinIME's Key and KeyStyle use to read the
+ * keyboard resources. The benchmarks build their keys from code, so nothing is ever read.
+ */
+public class TypedArray {
+    private TypedArray() {
+        // The benchmarks never read resources.
+    }
+
+    public boolean hasValue(final int index) {
+        throw new UnsupportedOperationException();
+    }
+
+    public int getInt(final int index, final int defValue) {
+        throw new UnsupportedOperationException();
+    }
+
+    public String getString(final int index) {
+        throw new UnsupportedOperationException();
+    }
+
+    public CharSequence getText(final int index) {
+        throw new UnsupportedOperationException();
+    }
+
+    public CharSequence[] getTextArray(final int index) {
+        throw new UnsupportedOperationException();
+    }
+
+    public float getFraction(final int index, final int base, final int pbase,
+            final float defValue) {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.graphics;
+
+/**
+ * The part of android.graphics.Canvas that the benchmarked code uses. Drawing only counts the
+ * vertices and the path points, so that the measurements are of the code that prepares them and
+ * not of the rasterization.
+ */
+public class Canvas {
+    public enum VertexMode {
+        TRIANGLES,
+        TRIANGLE_STRIP,
+        TRIANGLE_FAN
+    }
+
+    private long mDrawnVertexCount;
+    private long mDrawnPathPointCount;
+
+    public void drawVertices(final VertexMode mode, final int vertexCount, final float[] verts,
+            final int vertOffset, final float[] texs, final int texOffset, final int[] colors,
+            final int colorOffset, final short[] indices, final int indexOffset,
+            final int indexCount, final Paint paint) {
+        mDrawnVertexCount += vertexCount / 2;
+    }
+
+    public void drawPath(final Path path, final Paint paint) {
+        mDrawnPathPointCount += path.getPointCount();
+    }
+
+    public long getDrawnVertexCount() {
+        return mDrawnVertexCount;
+    }
+
+    public long getDrawnPathPointCount() {
+        return mDrawnPathPointCount;
+    }
+}
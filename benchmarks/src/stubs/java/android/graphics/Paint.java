@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.graphics;
+
+/**
+ * The part of android.graphics.Paint that the benchmarked code uses.
+ */
+public class Paint {
+    public enum Style {
+        FILL,
+        STROKE,
+        FILL_AND_STROKE
+    }
+
+    private int mColor;
+    private Style mStyle = Style.FILL;
+    private Xfermode mXfermode;
+
+    public void setColor(final int color) {
+        mColor = color;
+    }
+
+    public int getColor() {
+        return mColor;
+    }
+
+    public void setAlpha(final int a) {
+        mColor = (a << 24) | (mColor & 0x00FFFFFF);
+    }
+
+    public void setStyle(final Style style) {
+        mStyle = style;
+    }
+
+    public Style getStyle() {
+        return mStyle;
+    }
+
+    public Xfermode setXfermode(final Xfermode xfermode) {
+        mXfermode = xfermode;
+        return xfermode;
+    }
+
+    public Xfermode getXfermode() {
+        return mXfermode;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.graphics;
+
+import java.util.Arrays;
+
+/**
+ * The part of android.graphics.Path that the benchmarked code uses. It only records the points
+ * of the contours, and the start and end points of the arcs, whereas the real path is native and
+ * also flattens the arcs.
+ */
+public class Path {
+    private float[] mPoints = new float[32];
+    private int mPointCount;
+
+    public void rewind() {
+        mPointCount = 0;
+    }
+
+    public boolean isEmpty() {
+        return mPointCount == 0;
+    }
+
+    public void moveTo(final float x, final float y) {
+        addPoint(x, y);
+    }
+
+    public void lineTo(final float x, final float y) {
+        addPoint(x, y);
+    }
+
+    public void arcTo(final RectF oval, final float startAngle, final float sweepAngle) {
+        final float centerX = (oval.left + oval.right) / 2.0f;
+        final float centerY = (oval.top + oval.bottom) / 2.0f;
+        final float radiusX = (oval.right - oval.left) / 2.0f;
+        final float radiusY = (oval.bottom - oval.top) / 2.0f;
+        final double start = Math.toRadians(startAngle);
+        final double end = Math.toRadians(startAngle + sweepAngle);
+        addPoint(centerX + radiusX * (float)Math.cos(start),
+                centerY + radiusY * (float)Math.sin(start));
+        addPoint(centerX + radiusX * (float)Math.cos(end),
+                centerY + radiusY * (float)Math.sin(end));
+    }
+
+    public void close() {
+    }
+
+    public void computeBounds(final RectF bounds, final boolean exact) {
+        if (mPointCount == 0) {
+            bounds.set(0.0f, 0.0f, 0.0f, 0.0f);
+            return;
+        }
+        float left = mPoints[0];
+        float top = mPoints[1];
+        float right = left;
+        float bottom = top;
+        for (int i = 2; i < mPointCount * 2; i += 2) {
+            left = Math.min(left, mPoints[i]);
+            top = Math.min(top, mPoints[i + 1]);
+            right = Math.max(right, mPoints[i]);
+            bottom = Math.max(bottom, mPoints[i + 1]);
+        }
+        bounds.set(left, top, right, bottom);
+    }
+
+    public int getPointCount() {
+        return mPointCount;
+    }
+
+    private void addPoint(final float x, final float y) {
+        if (mPointCount * 2 == mPoints.length) {
+            mPoints = Arrays.copyOf(mPoints, mPoints.length * 2);
+        }
+        mPoints[mPointCount * 2] = x;
+        mPoints[mPointCount * 2 + 1] = y;
+        mPointCount++;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.graphics;
+
+/**
+ * The typefaces of android.graphics.Typeface that LatinIME's Key selects, without the fonts.
+ */
+public class Typeface {
+    public static final int NORMAL = 0;
+    public static final int BOLD = 1;
+
+    public static final Typeface DEFAULT = new Typeface(NORMAL);
+    public static final Typeface DEFAULT_BOLD = new Typeface(BOLD);
+    public static final Typeface MONOSPACE = new Typeface(NORMAL);
+
+    private final int mStyle;
+
+    private Typeface(final int style) {
+        mStyle = style;
+    }
+
+    public int getStyle() {
+        return mStyle;
+    }
+
+    public static Typeface defaultFromStyle(final int style) {
+        return (style == BOLD) ? DEFAULT_BOLD : DEFAULT;
+    }
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.text;
+
+/**
+ * The constants of android.text.InputType that the benchmarked code uses.
+ */
+public interface InputType {
+    public static final int TYPE_TEXT_FLAG_CAP_CHARACTERS = 0x00001000;
+    public static final int TYPE_TEXT_FLAG_CAP_WORDS = 0x00002000;
+    public static final int TYPE_TEXT_FLAG_CAP_SENTENCES = 0x00004000;
+}
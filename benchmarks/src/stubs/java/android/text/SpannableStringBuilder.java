@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.text;
+
+/**
+ * The part of android.text.SpannableStringBuilder that LatinIME's CombinerChain uses, without
+ * the spans.
+ */
+public class SpannableStringBuilder implements CharSequence {
+    private final StringBuilder mText;
+
+    public SpannableStringBuilder() {
+        mText = new StringBuilder();
+    }
+
+    public SpannableStringBuilder(final CharSequence text) {
+        mText = new StringBuilder(text);
+    }
+
+    public SpannableStringBuilder append(final CharSequence text) {
+        mText.append(text);
+        return this;
+    }
+
+    public void clear() {
+        mText.setLength(0);
+    }
+
+    @Override
+    public int length() {
+        return mText.length();
+    }
+
+    @Override
+    public char charAt(final int index) {
+        return mText.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+        return mText.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return mText.toString();
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.util;
+
+/**
+ * A stub of android.util.Log that drops everything, so that logging does not show up in the
+ * measurements.
+ */
+public final class Log {
+    private Log() {
+        // This class is not publicly instantiable.
+    }
+
+    public static int v(final String tag, final String msg) {
+        return 0;
+    }
+
+    public static int d(final String tag, final String msg) {
+        return 0;
+    }
+
+    public static int i(final String tag, final String msg) {
+        return 0;
+    }
+
+    public static int w(final String tag, final String msg) {
+        return 0;
+    }
+
+    public static int w(final String tag, final String msg, final Throwable tr) {
+        return 0;
+    }
+
+    public static int e(final String tag, final String msg) {
+        return 0;
+    }
+
+    public static int e(final String tag, final String msg, final Throwable tr) {
+        return 0;
+    }
+}
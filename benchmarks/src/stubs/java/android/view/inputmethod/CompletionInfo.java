@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.view.inputmethod;
+
+/**
+ * The part of android.view.inputmethod.CompletionInfo that LatinIME's SuggestedWords uses for
+ * the completions of the editor, which the benchmarks do not have.
+ */
+public class CompletionInfo {
+    private final CharSequence mText;
+
+    public CompletionInfo(final long id, final int index, final CharSequence text) {
+        mText = text;
+    }
+
+    public CharSequence getText() {
+        return mText;
+    }
+}
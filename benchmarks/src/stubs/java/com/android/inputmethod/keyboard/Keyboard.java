@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.keyboard;
+
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The part of LatinIME's Keyboard that {@link KeyDetector} uses, built from a list of real
+ * {@link Key}s and a real {@link ProximityInfo} instead of the keyboard resources. The app's
+ * Keyboard cannot be used as is, because its constructor builds the native proximity info, which
+ * needs the JNI library.
+ */
+public class Keyboard {
+    public final int mOccupiedWidth;
+    public final int mOccupiedHeight;
+    @Nonnull private final List<Key> mSortedKeys;
+    @Nonnull private final ProximityInfo mProximityInfo;
+
+    public Keyboard(final int occupiedWidth, final int occupiedHeight, final int gridWidth,
+            final int gridHeight, final int mostCommonKeyWidth, final int mostCommonKeyHeight,
+            @Nonnull final List<Key> sortedKeys) {
+        mOccupiedWidth = occupiedWidth;
+        mOccupiedHeight = occupiedHeight;
+        mSortedKeys = sortedKeys;
+        mProximityInfo = new ProximityInfo(gridWidth, gridHeight, occupiedWidth, occupiedHeight,
+                mostCommonKeyWidth, mostCommonKeyHeight, sortedKeys);
+    }
+
+    @Nonnull
+    public ProximityInfo getProximityInfo() {
+        return mProximityInfo;
+    }
+
+    @Nonnull
+    public List<Key> getSortedKeys() {
+        return mSortedKeys;
+    }
+
+    @Nonnull
+    public List<Key> getNearestKeys(final int x, final int y) {
+        // Avoid dead pixels at edges of the keyboard
+        final int adjustedX = Math.max(0, Math.min(x, mOccupiedWidth - 1));
+        final int adjustedY = Math.max(0, Math.min(y, mOccupiedHeight - 1));
+        return mProximityInfo.getNearestKeys(adjustedX, adjustedY);
+    }
+
+    public int getHitKeyIndex(final int x, final int y) {
+        return mProximityInfo.getHitKeyIndex(x, y);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.keyboard.internal;
+
+import android.content.res.TypedArray;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * The factories of LatinIME's KeyVisualAttributes that Key calls when it is read from the
+ * keyboard resources or from a compiled layout. The keys that the benchmarks build from code
+ * have no visual attributes, so none of them is ever called.
+ */
+public final class KeyVisualAttributes {
+    private KeyVisualAttributes() {
+        // The keys of the benchmarks have no visual attributes.
+    }
+
+    // Stub: LatinIME reads the attributes from the key attributes.
+    @Nullable
+    public static KeyVisualAttributes newInstance(@Nonnull final TypedArray keyAttr) {
+        throw new UnsupportedOperationException();
+    }
+
+    // Stub: LatinIME writes the attributes to a compiled layout.
+    public static void writeTo(@Nonnull final DataOutput out,
+            @Nullable final KeyVisualAttributes attrs) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    // Stub: LatinIME reads the attributes from a compiled layout.
+    @Nullable
+    public static KeyVisualAttributes readFrom(@Nonnull final DataInput in) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.keyboard.internal;
+
+import android.graphics.drawable.Drawable;
+
+import java.util.HashMap;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The icon names and ids of LatinIME's KeyboardIconsSet, in the same order, without the icons.
+ */
+public final class KeyboardIconsSet {
+    public static final String PREFIX_ICON = "!icon/";
+    public static final int ICON_UNDEFINED = 0;
+
+    // Stub: LatinIME lists the names with the attributes of their icons.
+    private static final String[] ICON_NAMES = {
+        "undefined", "shift_key", "delete_key", "settings_key", "space_key", "enter_key",
+        "go_key", "search_key", "send_key", "next_key", "done_key", "previous_key", "tab_key",
+        "shortcut_key", "space_key_for_number_layout", "shift_key_shifted",
+        "shortcut_key_disabled", "language_switch_key", "zwnj_key", "zwj_key",
+        "emoji_action_key", "emoji_normal_key",
+    };
+
+    // Icon name to icon id map.
+    private static final HashMap<String, Integer> sNameToIdsMap = new HashMap<>();
+
+    // Stub: LatinIME also maps the attributes to the icon ids.
+    static {
+        for (int iconId = 0; iconId < ICON_NAMES.length; iconId++) {
+            sNameToIdsMap.put(ICON_NAMES[iconId], iconId);
+        }
+    }
+
+    private KeyboardIconsSet() {
+        // The benchmarks never load the icons.
+    }
+
+    private static boolean isValidIconId(final int iconId) {
+        return iconId >= 0 && iconId < ICON_NAMES.length;
+    }
+
+    @Nonnull
+    public static String getIconName(final int iconId) {
+        return isValidIconId(iconId) ? ICON_NAMES[iconId] : "unknown<" + iconId + ">";
+    }
+
+    // Stub: LatinIME loads the icons from the keyboard theme, and the benchmarks draw no key.
+    public Drawable getIconDrawable(final int iconId) {
+        throw new UnsupportedOperationException();
+    }
+
+    public static int getIconId(final String name) {
+        Integer iconId = sNameToIdsMap.get(name);
+        if (iconId != null) {
+            return iconId;
+        }
+        throw new RuntimeException("unknown icon name: " + name);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.keyboard.internal;
+
+import android.content.res.TypedArray;
+
+/**
+ * The methods of LatinIME's KeyboardRow that Key calls when it is read from the keyboard
+ * resources. The benchmarks build their keys from code, so none of them is ever called.
+ */
+public final class KeyboardRow {
+    private KeyboardRow() {
+        // The benchmarks never read keyboard rows.
+    }
+
+    // Stub: LatinIME reads the height from the row attributes.
+    public int getRowHeight() {
+        throw new UnsupportedOperationException();
+    }
+
+    // Stub: LatinIME reads the flags from the row attributes.
+    public int getDefaultKeyLabelFlags() {
+        throw new UnsupportedOperationException();
+    }
+
+    // Stub: LatinIME reads the background type from the row attributes.
+    public int getDefaultBackgroundType() {
+        throw new UnsupportedOperationException();
+    }
+
+    // Stub: LatinIME moves the position of the next key of the row.
+    public void setXPos(final float keyXPos) {
+        throw new UnsupportedOperationException();
+    }
+
+    // Stub: LatinIME reads the position from the row attributes.
+    public int getKeyY() {
+        throw new UnsupportedOperationException();
+    }
+
+    // Stub: LatinIME reads the position from the key attributes.
+    public float getKeyX(final TypedArray keyAttr) {
+        throw new UnsupportedOperationException();
+    }
+
+    // Stub: LatinIME reads the width from the key attributes.
+    public float getKeyWidth(final TypedArray keyAttr, final float keyXPos) {
+        throw new UnsupportedOperationException();
+    }
+}
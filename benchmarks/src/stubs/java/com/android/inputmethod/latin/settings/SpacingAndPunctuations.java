@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.settings;
+
+import com.android.inputmethod.latin.common.Constants;
+import com.android.inputmethod.latin.common.StringUtils;
+
+import java.util.Arrays;
+
+/**
+ * LatinIME's SpacingAndPunctuations for English, with the values of
+ * donottranslate-config-spacing-and-punctuations.xml instead of the resources, and without the
+ * punctuation suggestions.
+ */
+public final class SpacingAndPunctuations {
+    private final int[] mSortedSymbolsPrecededBySpace;
+    private final int[] mSortedSymbolsFollowedBySpace;
+    private final int[] mSortedSymbolsClusteringTogether;
+    private final int[] mSortedWordConnectors;
+    public final int[] mSortedWordSeparators;
+    private final int mSentenceSeparator;
+    private final int mAbbreviationMarker;
+    private final int[] mSortedSentenceTerminators;
+    public final String mSentenceSeparatorAndSpace;
+    public final boolean mCurrentLanguageHasSpaces;
+    public final boolean mUsesAmericanTypography;
+    public final boolean mUsesGermanRules;
+
+    public SpacingAndPunctuations() {
+        mSortedSymbolsPrecededBySpace = StringUtils.toSortedCodePointArray("([{&");
+        mSortedSymbolsFollowedBySpace = StringUtils.toSortedCodePointArray(".,;:!?)]}&");
+        mSortedSymbolsClusteringTogether = StringUtils.toSortedCodePointArray("");
+        mSortedWordConnectors = StringUtils.toSortedCodePointArray("'-");
+        mSortedWordSeparators = StringUtils.toSortedCodePointArray(
+                "\t \n\u00A0()[]{}*&<>+=|.,;:!?/_\"");
+        mSortedSentenceTerminators = StringUtils.toSortedCodePointArray(".?!");
+        mSentenceSeparator = Constants.CODE_PERIOD;
+        mAbbreviationMarker = Constants.CODE_PERIOD;
+        mSentenceSeparatorAndSpace = new String(new int[] {
+                mSentenceSeparator, Constants.CODE_SPACE }, 0, 2);
+        mCurrentLanguageHasSpaces = true;
+        mUsesAmericanTypography = true;
+        mUsesGermanRules = false;
+    }
+
+    public boolean isWordSeparator(final int code) {
+        return Arrays.binarySearch(mSortedWordSeparators, code) >= 0;
+    }
+
+    public boolean isWordConnector(final int code) {
+        return Arrays.binarySearch(mSortedWordConnectors, code) >= 0;
+    }
+
+    public boolean isWordCodePoint(final int code) {
+        return Character.isLetter(code) || isWordConnector(code);
+    }
+
+    public boolean isUsuallyPrecededBySpace(final int code) {
+        return Arrays.binarySearch(mSortedSymbolsPrecededBySpace, code) >= 0;
+    }
+
+    public boolean isUsuallyFollowedBySpace(final int code) {
+        return Arrays.binarySearch(mSortedSymbolsFollowedBySpace, code) >= 0;
+    }
+
+    public boolean isClusteringSymbol(final int code) {
+        return Arrays.binarySearch(mSortedSymbolsClusteringTogether, code) >= 0;
+    }
+
+    public boolean isSentenceTerminator(final int code) {
+        return Arrays.binarySearch(mSortedSentenceTerminators, code) >= 0;
+    }
+
+    public boolean isAbbreviationMarker(final int code) {
+        return code == mAbbreviationMarker;
+    }
+
+    public boolean isSentenceSeparator(final int code) {
+        return code == mSentenceSeparator;
+    }
+}
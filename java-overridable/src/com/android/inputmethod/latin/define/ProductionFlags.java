@@ -55,4 +55,40 @@ public final class ProductionFlags {
      */
     public static final boolean ENABLE_PER_ACCOUNT_USER_HISTORY_DICTIONARY =
             ENABLE_ACCOUNT_SIGN_IN && false;
+
+    /**
+     * When {@code true}, the dictionaries of a
+     * {@link com.android.inputmethod.latin.DictionaryFacilitator} are looked up for suggestions
+     * concurrently instead of one after another.
+     */
+    public static final boolean ENABLE_PARALLEL_DICTIONARY_LOOKUP = false;
+
+    /**
+     * When {@code true}, the word lookups in read-only version 2 dictionaries, e.g. those of the
+     * spell checker, are done in Java on a memory-mapped file instead of through the native
+     * dictionary. MappedVer2DictionaryNativeTests must pass on a device before this is enabled.
+     */
+    public static final boolean ENABLE_JAVA_DICTIONARY_READER = false;
+
+    /**
+     * When {@code true}, the parsed keyboard layouts are saved in the cache directory and read back
+     * instead of parsing the keyboard XML again.
+     */
+    public static final boolean ENABLE_COMPILED_KEYBOARD_LAYOUTS = true;
+
+    /**
+     * When {@code true}, the keyboards precompute the key hit by each small area of the keyboard,
+     * so that most touch events do not need to compare the nearest keys.
+     */
+    public static final boolean ENABLE_KEY_HIT_MAP = true;
+
+    /**
+     * When {@code true}, each gesture trail is drawn as a single triangle mesh instead of a path
+     * per segment.
+     *
+     * This changes how the trail looks. When the theme enables the shadow, the mesh fades the
+     * edges out linearly to transparent instead of drawing the blurred shadow layer of the paths.
+     * The alpha also varies smoothly along the trail instead of per segment.
+     */
+    public static final boolean ENABLE_BATCHED_GESTURE_TRAIL = true;
 }
@@ -23,6 +23,8 @@ import com.android.inputmethod.latin.RichInputMethodManager;
 import com.android.inputmethod.latin.SuggestedWords;
 import com.android.inputmethod.latin.settings.SettingsValues;
 
+import java.io.File;
+
 @SuppressWarnings("unused")
 public final class StatsUtils {
 
@@ -105,4 +107,37 @@ public final class StatsUtils {
 
     public static void onDecoderLaggy(final int operation, final long duration) {
     }
+
+    public static void onInputConnectionOperation(final int operation, final long duration) {
+        LatencyRecorder.record(LatencyRecorder.METRIC_INPUT_CONNECTION, duration);
+    }
+
+    public static void onGetSuggestionsNative(final long duration) {
+        LatencyRecorder.record(LatencyRecorder.METRIC_GET_SUGGESTIONS_NATIVE, duration);
+    }
+
+    public static void onSuggestionStripShown(final long durationSinceInput) {
+        LatencyRecorder.record(LatencyRecorder.METRIC_KEYSTROKE_TO_SUGGESTION_STRIP,
+                durationSinceInput);
+    }
+
+    public static void onDictionaryLoaded(final String dictType, final long duration) {
+        LatencyRecorder.record(LatencyRecorder.METRIC_DICTIONARY_LOAD, duration);
+    }
+
+    public static void onKeyboardBuilt(final long duration) {
+        LatencyRecorder.record(LatencyRecorder.METRIC_KEYBOARD_BUILD, duration);
+    }
+
+    public static void onGestureTrailsDrawn(final long duration) {
+        LatencyRecorder.record(LatencyRecorder.METRIC_GESTURE_TRAIL_DRAW, duration);
+    }
+
+    public static String dump() {
+        return LatencyRecorder.dump();
+    }
+
+    public static boolean exportToFile(final File file) {
+        return LatencyRecorder.exportToFile(file);
+    }
 }